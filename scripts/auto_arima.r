@@ -1,3 +1,5 @@
+## Deprecated: only used by SeasonalAutoArimaRTimeSeries (time series type SEASONAL_AUTO_ARIMA_R).
+## Non-seasonal auto ARIMA models are fitted in the JVM by ArimaModel.autoArima instead.
 library(forecast)
 
 getForecast <- function(fit, h=10){
@@ -1,8 +1,5 @@
 package org.processmining.models.graphbased.directed.petrinet.elements;
 
-import com.google.common.collect.BoundType;
-import com.google.common.collect.SortedMultiset;
-import com.google.common.collect.TreeMultiset;
 import org.apache.commons.math3.distribution.*;
 import org.processmining.models.graphbased.directed.AbstractDirectedGraph;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
@@ -13,9 +10,8 @@ import org.processmining.plugins.stochasticpetrinet.distribution.*;
 import org.processmining.plugins.stochasticpetrinet.distribution.timeseries.ARMATimeSeries;
 import org.processmining.plugins.stochasticpetrinet.distribution.timeseries.SinusoidalSeries;
 import org.processmining.plugins.stochasticpetrinet.enricher.StochasticManifestCollector;
-import org.utils.datastructures.ComparablePair;
+import org.processmining.plugins.stochasticpetrinet.enricher.TrainingData;
 
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -82,10 +78,10 @@ public class TimedTransition extends Transition {
     protected String trainingData;
 
     /**
-     * a sorted view on all the training data that was used to train this transition.
+     * a columnar, time-indexed view on the training data (see {@link TrainingData}).
      * it is created on request and stays in memory, but is not serialized to disk - ({@link #trainingData} is).
      */
-    protected transient SortedMultiset<ComparablePair<Long, List<Object>>> trainingDataCache;
+    protected transient volatile TrainingData parsedTrainingData;
 
     /**
      * By default generate a timed transition with exponential firing rate lambda=1
@@ -162,8 +158,13 @@ public class TimedTransition extends Transition {
                         throw new IllegalArgumentException("Cannot create a logspline distribution with less than 10 sample values!");
                     }
                     try {
-                        dist = new RLogSplineDistribution(maxValue);
-                        ((RLogSplineDistribution) dist).addValues(distributionParameters);
+                        if (StochasticNetUtils.splinesSupported()) {
+                            dist = new RLogSplineDistribution(maxValue);
+                            ((RLogSplineDistribution) dist).addValues(distributionParameters);
+                        } else {
+                            dist = new LogSplineDistribution(maxValue);
+                            ((LogSplineDistribution) dist).addValues(distributionParameters);
+                        }
                         dist.getNumericalMean();
                     } catch (NonConvergenceException e) {
                         System.out.println("LogSpline fit not converged! Falling back to Gaussian Kernel density estimation");
@@ -327,6 +328,33 @@ public class TimedTransition extends Transition {
         this.distribution = dist;
     }
 
+    /**
+     * @return the tables of the distribution (see {@link TabulatedDistribution#getParameters()}), if it is a tabulated
+     * fit (e.g., of a log-spline in R) or a log-spline fitted in Java, or null otherwise
+     */
+    public double[] getDistributionSnapshot() {
+        if (distribution instanceof TabulatedDistribution) {
+            return ((TabulatedDistribution) distribution).getParameters();
+        }
+        if (distribution instanceof LogSplineDistribution) {
+            // censored fits cannot be reproduced from the observed values alone
+            return TabulatedDistribution.tabulate(distribution).getParameters();
+        }
+        if (distribution instanceof RLogSplineDistribution && ((RLogSplineDistribution) distribution).getTable() != null) {
+            return ((RLogSplineDistribution) distribution).getTable().getParameters();
+        }
+        return null;
+    }
+
+    /**
+     * Restores the distribution from its tables, without fitting it again (which for log-splines needs R).
+     *
+     * @param snapshot the tables of the distribution (see {@link #getDistributionSnapshot()})
+     */
+    public void setDistributionSnapshot(double[] snapshot) {
+        this.distribution = TabulatedDistribution.fromParameters(snapshot);
+    }
+
     public void setDistributionType(DistributionType distType) {
         this.distributionType = distType;
     }
@@ -346,23 +374,28 @@ public class TimedTransition extends Transition {
 
     public void setTrainingData(String trainingData) {
         this.trainingData = trainingData;
+        this.parsedTrainingData = null;
     }
 
-    public SortedMultiset<ComparablePair<Long, List<Object>>> getTrainingDataUpTo(long currentTime) {
-        if (this.trainingDataCache == null) {
-            // init training data cache:
-            SortedMultiset<ComparablePair<Long, List<Object>>> sortedTrainingData = TreeMultiset.<ComparablePair<Long, List<Object>>>create();
-            String[] entries = trainingData.split("\n");
-            // ignore header!
-            for (int i = 1; i < entries.length; i++) {
-                String[] entryParts = entries[i].split(StochasticManifestCollector.DELIMITER);
-                long time = Long.valueOf(entryParts[2]);
-                sortedTrainingData.add(new ComparablePair<>(time, Arrays.<Object>asList(Double.valueOf(entryParts[0]), Double.valueOf(entryParts[1]))));
+    /**
+     * Returns the training data parsed into a columnar store sorted by time, which answers
+     * queries about the training data observed before a point in time in logarithmic time.
+     * The training data is parsed only once (this method can be called concurrently).
+     *
+     * @return the parsed {@link TrainingData}, or null, if there is no training data
+     */
+    public TrainingData getParsedTrainingData() {
+        TrainingData parsed = parsedTrainingData;
+        if (parsed == null && trainingData != null) {
+            synchronized (this) {
+                parsed = parsedTrainingData;
+                if (parsed == null) {
+                    parsed = TrainingData.parse(trainingData);
+                    parsedTrainingData = parsed;
+                }
             }
-            this.trainingDataCache = sortedTrainingData;
         }
-        // retrieve subset of training data that fulfills condition
-        return this.trainingDataCache.headMultiset(new ComparablePair<Long, List<Object>>(currentTime, null), BoundType.OPEN);
+        return parsed;
     }
 
 }
@@ -35,8 +35,8 @@ public class EfficientDiscreteStochasticNetSemanticsImpl extends EfficientStocha
      * @return the time of firing
      */
     public int executeExecutableTransition(Transition toExecute, int transitionDuration) throws IllegalTransitionException {
-        super.executeExecutableTransition(toExecute);
         int tId = transitionPositionInArray.get(toExecute);
+        executeTransition(tId);
         return currentTimedMarking.executeTransitionWithDuration(transitionMatrix[tId], transitionDuration);
     }
 
@@ -44,8 +44,9 @@ public class EfficientDiscreteStochasticNetSemanticsImpl extends EfficientStocha
      * @return the duration of the transition
      */
     public int executeExecutableTransitionAtTime(Transition toExecute, Integer timeOfFiring) throws IllegalTransitionException {
-        super.executeExecutableTransition(toExecute);
-        return currentTimedMarking.executeTransitionAtTime(transitionMatrix[transitionPositionInArray.get(toExecute)], timeOfFiring);
+        int tId = transitionPositionInArray.get(toExecute);
+        executeTransition(tId);
+        return currentTimedMarking.executeTransitionAtTime(transitionMatrix[tId], timeOfFiring);
     }
 
     public int getDurationOfTransition(Transition toExecute, Short[] modelPlaceIds, int timeOfFiring) {
@@ -2,6 +2,7 @@ package org.processmining.models.semantics.petrinet.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -46,6 +47,47 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 	 */
 	protected Map<Short, Set<Short>> dependentTransitions;
 
+	/**
+	 * Compressed (CSR-style) encoding of the input places of each transition:
+	 * the inputs of transition t are stored in {@link #inputPlaces} and
+	 * {@link #inputWeights} at the positions [inputOffsets[t],
+	 * inputOffsets[t+1]).
+	 */
+	protected int[] inputOffsets;
+	protected int[] inputPlaces;
+	protected short[] inputWeights;
+
+	/**
+	 * Sparse delta vectors of the transitions: the non-zero entries of row t
+	 * of the {@link #transitionMatrix} are stored in {@link #deltaPlaces} and
+	 * {@link #deltaValues} at the positions [deltaOffsets[t],
+	 * deltaOffsets[t+1]).
+	 */
+	protected int[] deltaOffsets;
+	protected int[] deltaPlaces;
+	protected short[] deltaValues;
+
+	/**
+	 * Compressed encoding of the transitions whose enabling can change when
+	 * transition t fires (i.e., the consumers of all places whose token count
+	 * is changed by t) at the positions [affectedOffsets[t],
+	 * affectedOffsets[t+1]) of {@link #affectedTransitions}.
+	 */
+	protected int[] affectedOffsets;
+	protected int[] affectedTransitions;
+
+	/**
+	 * The set of enabled transitions in the {@link #currentMarking}. Updated
+	 * incrementally after each firing and recomputed on
+	 * {@link #setCurrentState(Marking)}.
+	 */
+	protected BitSet enabledTransitions;
+
+	/**
+	 * Priorities of the transitions (0 for non-timed transitions)
+	 */
+	protected int[] transitionPriorities;
+
 	public void initialize(Collection<Transition> transitions, Marking state) {
 		// fill transition matrix:
 		this.transitions = transitions.toArray(new Transition[transitions.size()]);
@@ -112,10 +154,157 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 			transitionInputs.put(transition, transitionInput);
 			transitionOutputs.put(transition, transitionOutput);
 		}
+		initializeCompressedStructure();
 		currentMarking = new short[this.places.length];
 		setCurrentState(state);
 	}
 
+	/**
+	 * Builds the primitive array encodings of the net structure out of the
+	 * {@link #transitionMatrix}.
+	 */
+	protected void initializeCompressedStructure() {
+		int numTransitions = transitions.length;
+		int numPlaces = places.length;
+
+		// input places of transitions and consumers of places:
+		inputOffsets = new int[numTransitions + 1];
+		int[] consumerCounts = new int[numPlaces + 1];
+		for (int t = 0; t < numTransitions; t++) {
+			int inputs = 0;
+			for (int p = 0; p < numPlaces; p++) {
+				if (transitionMatrix[t][p] < 0) {
+					inputs++;
+					consumerCounts[p + 1]++;
+				}
+			}
+			inputOffsets[t + 1] = inputOffsets[t] + inputs;
+		}
+		inputPlaces = new int[inputOffsets[numTransitions]];
+		inputWeights = new short[inputOffsets[numTransitions]];
+
+		// sparse delta vectors:
+		deltaOffsets = new int[numTransitions + 1];
+		for (int t = 0; t < numTransitions; t++) {
+			int changes = 0;
+			for (int p = 0; p < numPlaces; p++) {
+				if (transitionMatrix[t][p] != 0) {
+					changes++;
+				}
+			}
+			deltaOffsets[t + 1] = deltaOffsets[t] + changes;
+		}
+		deltaPlaces = new int[deltaOffsets[numTransitions]];
+		deltaValues = new short[deltaOffsets[numTransitions]];
+		for (int t = 0; t < numTransitions; t++) {
+			int pos = deltaOffsets[t];
+			for (int p = 0; p < numPlaces; p++) {
+				if (transitionMatrix[t][p] != 0) {
+					deltaPlaces[pos] = p;
+					deltaValues[pos] = transitionMatrix[t][p];
+					pos++;
+				}
+			}
+		}
+		int[] consumerOffsets = consumerCounts;
+		for (int p = 0; p < numPlaces; p++) {
+			consumerOffsets[p + 1] += consumerOffsets[p];
+		}
+		int[] consumers = new int[consumerOffsets[numPlaces]];
+		int[] consumerFill = Arrays.copyOf(consumerOffsets, numPlaces);
+		for (int t = 0; t < numTransitions; t++) {
+			int pos = inputOffsets[t];
+			for (int p = 0; p < numPlaces; p++) {
+				if (transitionMatrix[t][p] < 0) {
+					inputPlaces[pos] = p;
+					inputWeights[pos] = (short) -transitionMatrix[t][p];
+					pos++;
+					consumers[consumerFill[p]++] = t;
+				}
+			}
+		}
+
+		// transitions affected by a firing (deduplicated):
+		affectedOffsets = new int[numTransitions + 1];
+		int[] affected = new int[Math.max(16, numTransitions)];
+		boolean[] seen = new boolean[numTransitions];
+		int[] current = new int[numTransitions];
+		for (int t = 0; t < numTransitions; t++) {
+			int count = 0;
+			for (int d = deltaOffsets[t]; d < deltaOffsets[t + 1]; d++) {
+				int p = deltaPlaces[d];
+				for (int c = consumerOffsets[p]; c < consumerOffsets[p + 1]; c++) {
+					int consumer = consumers[c];
+					if (!seen[consumer]) {
+						seen[consumer] = true;
+						current[count++] = consumer;
+					}
+				}
+			}
+			int start = affectedOffsets[t];
+			if (start + count > affected.length) {
+				affected = Arrays.copyOf(affected, Math.max(affected.length * 2, start + count));
+			}
+			for (int i = 0; i < count; i++) {
+				affected[start + i] = current[i];
+				seen[current[i]] = false;
+			}
+			affectedOffsets[t + 1] = start + count;
+		}
+		affectedTransitions = Arrays.copyOf(affected, affectedOffsets[numTransitions]);
+
+		transitionPriorities = new int[numTransitions];
+		for (int t = 0; t < numTransitions; t++) {
+			if (transitions[t] instanceof TimedTransition) {
+				transitionPriorities[t] = ((TimedTransition) transitions[t]).getPriority();
+			}
+		}
+		enabledTransitions = new BitSet(numTransitions);
+	}
+
+	/**
+	 * Checks the enabling of a transition in the current marking. As in the
+	 * candidate based search, transitions without input places are never
+	 * enabled.
+	 */
+	protected boolean computeEnabled(int t) {
+		int start = inputOffsets[t];
+		int end = inputOffsets[t + 1];
+		if (start == end) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (currentMarking[inputPlaces[i]] < inputWeights[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Recomputes the enabling of all transitions (after the marking was
+	 * replaced).
+	 */
+	protected void recomputeEnabledTransitions() {
+		enabledTransitions.clear();
+		for (int t = 0; t < transitions.length; t++) {
+			if (computeEnabled(t)) {
+				enabledTransitions.set(t);
+			}
+		}
+	}
+
+	/**
+	 * Updates the enabling only of those transitions that share a place with
+	 * the transition that just fired.
+	 */
+	protected void updateEnabledTransitionsAfterFiring(int firedTransition) {
+		for (int i = affectedOffsets[firedTransition]; i < affectedOffsets[firedTransition + 1]; i++) {
+			int t = affectedTransitions[i];
+			enabledTransitions.set(t, computeEnabled(t));
+		}
+	}
+
 	/**
 	 * Overrides default semantics, as only one of the transitions with highest
 	 * priority can fire
@@ -143,22 +332,52 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 	}
 
 	protected List<Transition> getEnabledTransitionsByOnlyLookingAtPossibleCandidates() {
-		List<Transition> enabledTransitions = new ArrayList<Transition>();
+		List<Transition> enabled = new ArrayList<Transition>(enabledTransitions.cardinality());
+		for (int t = enabledTransitions.nextSetBit(0); t >= 0; t = enabledTransitions.nextSetBit(t + 1)) {
+			enabled.add(transitions[t]);
+		}
+		return enabled;
+	}
 
-		Set<Short> transitionCandidates = getTransitionCandidates();
-		for (short trans : transitionCandidates) {
-			List<Pair<Short, Short>> inputs = transitionInputs.get(trans);
-			boolean enabled = true;
-			for (Pair<Short, Short> input : inputs) {
-				enabled &= currentMarking[input.getFirst()] >= input.getSecond();
-				if (!enabled)
-					break;
-			}
-			if (enabled) {
-				enabledTransitions.add(transitions[trans]);
+	/**
+	 * Allocation-free variant of {@link #getExecutableTransitions()}. Writes the
+	 * ids of the enabled transitions of highest priority into the given buffer.
+	 *
+	 * @param buffer
+	 *            array of at least size {@link #getNumberOfTransitions()}
+	 * @return the number of executable transitions written into the buffer
+	 */
+	public int getExecutableTransitionIds(int[] buffer) {
+		int count = 0;
+		int priority = 0;
+		for (int t = enabledTransitions.nextSetBit(0); t >= 0; t = enabledTransitions.nextSetBit(t + 1)) {
+			if (transitionPriorities[t] == priority) {
+				buffer[count++] = t;
+			} else if (transitionPriorities[t] > priority) {
+				priority = transitionPriorities[t];
+				count = 0;
+				buffer[count++] = t;
 			}
 		}
-		return enabledTransitions;
+		return count;
+	}
+
+	/**
+	 * @param tId
+	 *            the transition id
+	 * @return whether the transition is enabled in the current marking
+	 *         (regardless of priorities)
+	 */
+	public boolean isEnabled(int tId) {
+		return enabledTransitions.get(tId);
+	}
+
+	public int getNumberOfTransitions() {
+		return transitions.length;
+	}
+
+	public int getNumberOfPlaces() {
+		return places.length;
 	}
 
 	protected List<Transition> getEnabledTransitionsBySearchingThroughHashMaps() {
@@ -243,6 +462,10 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 		return m;
 	}
 
+	/**
+	 * @return the internal marking array (token counts per place). Do not
+	 *         modify, as the enabled transitions are tracked incrementally!
+	 */
 	public short[] getCurrentInternalState() {
 		return currentMarking;
 	}
@@ -255,10 +478,12 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 		for (Place p : currentState) {
 			currentMarking[placePositionInArray.get(p)]++;
 		}
+		recomputeEnabledTransitions();
 	}
 
 	public void setCurrentState(short[] currentState) {
 		currentMarking = currentState.clone();
+		recomputeEnabledTransitions();
 	}
 
 	public short getPlaceId(Place p) {
@@ -281,17 +506,30 @@ public class EfficientStochasticNetSemanticsImpl implements StochasticNetSemanti
 
 	public PetrinetExecutionInformation executeExecutableTransition(Transition toExecute)
 			throws IllegalTransitionException {
-		int tId = transitionPositionInArray.get(toExecute);
-		short[] markingBeforeFiring = currentMarking.clone();
-
-		for (int place = 0; place < places.length; place++) {
-			currentMarking[place] += transitionMatrix[tId][place];
-			if (currentMarking[place] < 0) {
-				currentMarking = markingBeforeFiring;
-				throw new IllegalTransitionException(toExecute, getCurrentState());
+		executeTransition(transitionPositionInArray.get(toExecute));
+		return null;
+	}
+
+	/**
+	 * Fires a transition given by its id (see {@link #getTransitionId(Transition)}).
+	 * Only the places in the pre- and post-set of the transition are visited.
+	 * If the transition is not enabled, the marking stays untouched.
+	 *
+	 * @param tId
+	 *            the id of the transition to fire
+	 * @throws IllegalTransitionException
+	 *             if the transition is not enabled in the current marking
+	 */
+	public void executeTransition(int tId) throws IllegalTransitionException {
+		for (int i = inputOffsets[tId]; i < inputOffsets[tId + 1]; i++) {
+			if (currentMarking[inputPlaces[i]] < inputWeights[i]) {
+				throw new IllegalTransitionException(transitions[tId], getCurrentState());
 			}
 		}
-		return null;
+		for (int i = deltaOffsets[tId]; i < deltaOffsets[tId + 1]; i++) {
+			currentMarking[deltaPlaces[i]] += deltaValues[i];
+		}
+		updateEnabledTransitionsAfterFiring(tId);
 	}
 
 	public Object clone() {
@@ -1,60 +1,91 @@
 package org.processmining.models.semantics.petrinet.impl;
 
-import cern.colt.Arrays;
 import org.processmining.models.semantics.IllegalTransitionException;
 
-import java.util.*;
-
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Marking that stores the times of the tokens in a discrete time domain.
+ * <p>
+ * The token times of each place are kept in a sorted int array. The valid tokens of place i are stored
+ * between start[i] and start[i]+count[i], such that the oldest token is removed in constant time and new tokens are
+ * inserted in place. Times are stored relative to an offset. Markings are compared (and hashed) in normalized form,
+ * i.e., with the minimum token time shifted to zero, so that markings that only differ by a shift in time are equal.
+ *
+ * @author Andreas Rogge-Solti
+ */
 public class EfficientTimedMarking {
 
-//	private final String timedMarkingKey;
+    private static final int[] NO_TOKENS = new int[0];
 
-    private InternalMarking timedMarking;
+    private static volatile TimedMarkingStore markingStore = new TimedMarkingStore();
 
-    private static HashMap<InternalMarking, InternalMarking> markingCache = new HashMap<>();
+    /**
+     * token times of each place (relative to the offset)
+     */
+    private int[][] tokenTimes;
+    private int[] start;
+    private int[] count;
 
-    private InternalMarking findCanonicalValue(InternalMarking value) {
-        InternalMarking canon = markingCache.get(value);
-        if (canon == null) {
-            // not in the set, so put it there for the future
-            markingCache.put(value, value);
-            return value;
-        } else {
-            // in the set
-            return canon;
-        }
-    }
+    /**
+     * shared canonical version of the normalized timed marking (only set while the marking is packed)
+     */
+    private int[] packedMarking;
 
-    public static void clearCachedMarkings() {
-        System.out.println("Clearing " + markingCache.size() + " cached markings.");
-        markingCache.clear();
+    private int offset = 0;
+
+    /**
+     * Sets the store that is used to share equal packed markings (e.g., to change its capacity).
+     */
+    public static void setMarkingStore(TimedMarkingStore store) {
+        markingStore = store;
     }
 
-    private int offset = 0;
+    public static TimedMarkingStore getMarkingStore() {
+        return markingStore;
+    }
 
+    public static void clearCachedMarkings() {
+        markingStore.clear();
+    }
 
     public EfficientTimedMarking(List<Integer>[] state) {
-        this.timedMarking = new InternalMarking(state);
+        init(state.length);
+        for (int i = 0; i < state.length; i++) {
+            if (state[i] != null && !state[i].isEmpty()) {
+                int[] times = new int[state[i].size()];
+                int j = 0;
+                for (Integer time : state[i]) {
+                    times[j++] = time;
+                }
+                Arrays.sort(times);
+                tokenTimes[i] = times;
+                count[i] = times.length;
+            }
+        }
         normalize();
-//		this.timedMarkingKey = NormalizedMarkingCache.getInstance().getKey(timedMarking);
     }
 
-    @SuppressWarnings("unchecked")
     public EfficientTimedMarking(short[] currentMarking, int time) {
         this.offset = time;
-        List<Integer>[] newMarking = new List[currentMarking.length];
+        init(currentMarking.length);
         for (int i = 0; i < currentMarking.length; i++) {
-            List<Integer> places = new LinkedList<Integer>();
-
-            for (int j = 0; j < currentMarking[i]; j++) {
-                places.add(0);
-            }
-            if (!places.isEmpty()) {
-                newMarking[i] = places;
+            if (currentMarking[i] > 0) {
+                tokenTimes[i] = new int[currentMarking[i]];
+                count[i] = currentMarking[i];
             }
         }
-        this.timedMarking = new InternalMarking(newMarking);
-//		this.timedMarkingKey = NormalizedMarkingCache.getInstance().getKey(timedMarking);
+    }
+
+    private EfficientTimedMarking() {
+    }
+
+    private void init(int places) {
+        tokenTimes = new int[places][];
+        Arrays.fill(tokenTimes, NO_TOKENS);
+        start = new int[places];
+        count = new int[places];
     }
 
     /**
@@ -65,28 +96,35 @@ public class EfficientTimedMarking {
      * @return boolean
      */
     public boolean equalsMarking(short[] marking) {
-        return timedMarking.equalsMarking(marking);
+        unpack();
+        for (int i = 0; i < marking.length; i++) {
+            if (marking[i] != count[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public int length() {
-        return timedMarking.getMarking().length;
-    }
-
-    @SuppressWarnings("unchecked")
-    private List<Integer>[] copyState(List<Integer>[] state) {
-        List<Integer>[] copy = new LinkedList[state.length];
-        for (int i = 0; i < state.length; i++) {
-            if (state[i] != null) {
-                copy[i] = new LinkedList<>(state[i]);
-            }
-        }
-        return copy;
+        unpack();
+        return count.length;
     }
 
     public EfficientTimedMarking clone() {
-        InternalMarking clonedMarking = timedMarking.clone();
-        EfficientTimedMarking clone = new EfficientTimedMarking(clonedMarking.getMarking());
+        EfficientTimedMarking clone = new EfficientTimedMarking();
         clone.offset = offset;
+        if (packedMarking != null) {
+            // packed markings are immutable and can be shared
+            clone.packedMarking = packedMarking;
+        } else {
+            clone.init(count.length);
+            for (int i = 0; i < count.length; i++) {
+                if (count[i] > 0) {
+                    clone.tokenTimes[i] = Arrays.copyOfRange(tokenTimes[i], start[i], start[i] + count[i]);
+                    clone.count[i] = count[i];
+                }
+            }
+        }
         return clone;
     }
 
@@ -102,7 +140,6 @@ public class EfficientTimedMarking {
         int maxPlaceTime = removeTokensAndGetMaximumTime(transitionVector);
         int timeOfFiring = maxPlaceTime + transitionDuration;
         addTokensAtTime(transitionVector, timeOfFiring);
-        normalize();
         return timeOfFiring;
     }
 
@@ -117,24 +154,26 @@ public class EfficientTimedMarking {
     public int executeTransitionAtTime(short[] transitionVector, Integer timeOfFiring) throws IllegalTransitionException {
         int maxPlaceTime = removeTokensAndGetMaximumTime(transitionVector);
         addTokensAtTime(transitionVector, timeOfFiring);
-        normalize();
         return timeOfFiring - maxPlaceTime;
     }
 
     private int removeTokensAndGetMaximumTime(short[] transitionVector) throws IllegalTransitionException {
+        unpack();
+        for (int i = 0; i < transitionVector.length; i++) {
+            if (transitionVector[i] < 0 && count[i] < -transitionVector[i]) {
+                throw new IllegalTransitionException("transition " + Arrays.toString(transitionVector), "current state");
+            }
+        }
         int maxPlaceTime = Integer.MIN_VALUE;
         for (int i = 0; i < transitionVector.length; i++) {
             if (transitionVector[i] < 0) {
-                // remove the oldest tokens:
-                for (int j = transitionVector[i]; j < 0; j++) {
-                    if (timedMarking.getMarking()[i].isEmpty()) {
-                        throw new IllegalTransitionException("transition " + Arrays.toString(transitionVector), "current state");
-                    }
-                    Integer firstEntry = timedMarking.getMarking()[i].remove(0) + offset;
-                    if (timedMarking.getMarking()[i].isEmpty()) {
-                        timedMarking.getMarking()[i] = null;
-                    }
-                    maxPlaceTime = Math.max(maxPlaceTime, firstEntry);
+                // remove the oldest tokens (the youngest of them is the last one removed):
+                int removed = -transitionVector[i];
+                maxPlaceTime = Math.max(maxPlaceTime, tokenTimes[i][start[i] + removed - 1] + offset);
+                start[i] += removed;
+                count[i] -= removed;
+                if (count[i] == 0) {
+                    start[i] = 0;
                 }
             }
         }
@@ -142,172 +181,239 @@ public class EfficientTimedMarking {
     }
 
     private void addTokensAtTime(short[] transitionVector, int timeOfFiring) {
+        int time = timeOfFiring - offset;
         for (int i = 0; i < transitionVector.length; i++) {
-            if (transitionVector[i] > 0) {
-                for (int j = 0; j < transitionVector[i]; j++) {
-                    if (timedMarking.getMarking()[i] == null) {
-                        timedMarking.getMarking()[i] = new LinkedList<>();
-                    }
-                    timedMarking.getMarking()[i].add(timeOfFiring - offset);
-                }
-                Collections.sort(timedMarking.getMarking()[i]);
+            for (int j = 0; j < transitionVector[i]; j++) {
+                insertToken(i, time);
             }
         }
     }
 
+    /**
+     * Inserts a token into the sorted array of the place (tokens are usually added in time order,
+     * so the insertion position is mostly at the end)
+     */
+    private void insertToken(int place, int time) {
+        int[] times = tokenTimes[place];
+        int end = start[place] + count[place];
+        if (end == times.length) {
+            if (start[place] > 0) {
+                // move the valid tokens to the front
+                System.arraycopy(times, start[place], times, 0, count[place]);
+            } else {
+                times = Arrays.copyOf(times, Math.max(2, 2 * times.length));
+                tokenTimes[place] = times;
+            }
+            start[place] = 0;
+            end = count[place];
+        }
+        int pos = end;
+        while (pos > start[place] && times[pos - 1] > time) {
+            times[pos] = times[pos - 1];
+            pos--;
+        }
+        times[pos] = time;
+        count[place]++;
+    }
 
     public int getDurationOfFiring(short[] transitionVector, Short[] inputPlaces, int firingTime) {
+        unpack();
         int maxPlaceTime = Integer.MIN_VALUE;
         for (int i = 0; i < inputPlaces.length; i++) {
+            int place = inputPlaces[i];
             // look at the oldest tokens:
-            Iterator<Integer> iter = timedMarking.getMarking()[inputPlaces[i]].iterator();
-            int pos = 0;
-            while (pos > transitionVector[inputPlaces[i]]) {
-                maxPlaceTime = Math.max(maxPlaceTime, iter.next() + offset);
-                pos--;
+            int consumed = Math.min(-transitionVector[place], count[place]);
+            if (consumed > 0) {
+                maxPlaceTime = Math.max(maxPlaceTime, tokenTimes[place][start[place] + consumed - 1] + offset);
             }
         }
         return firingTime - maxPlaceTime;
     }
 
-    private void normalize() {
-        // searches for the minimum token time and shifts the offset so that the minimum token time is zero
+    /**
+     * @return the minimum token time relative to the offset (0, if there are no tokens)
+     */
+    private int getMinimumTokenTime() {
         int minimumTokenTime = Integer.MAX_VALUE;
-        for (int i = 0; i < length(); i++) {
-            if (timedMarking.getMarking()[i] != null) {
-                for (Integer tokenTime : timedMarking.getMarking()[i]) {
-                    minimumTokenTime = Math.min(minimumTokenTime, tokenTime);
-                }
+        for (int i = 0; i < count.length; i++) {
+            if (count[i] > 0) {
+                minimumTokenTime = Math.min(minimumTokenTime, tokenTimes[i][start[i]]);
             }
         }
+        return minimumTokenTime == Integer.MAX_VALUE ? 0 : minimumTokenTime;
+    }
+
+    /**
+     * Shifts the offset so that the minimum token time is zero
+     */
+    private void normalize() {
+        int minimumTokenTime = getMinimumTokenTime();
         if (minimumTokenTime != 0) {
             this.offset += minimumTokenTime;
-            for (int i = 0; i < length(); i++) {
-                if (timedMarking.getMarking()[i] != null) {
-                    for (int j = 0; j < timedMarking.getMarking()[i].size(); j++) {
-                        timedMarking.getMarking()[i].set(j, timedMarking.getMarking()[i].get(j) - minimumTokenTime);
-                    }
+            for (int i = 0; i < count.length; i++) {
+                for (int j = start[i]; j < start[i] + count[i]; j++) {
+                    tokenTimes[i][j] -= minimumTokenTime;
                 }
             }
         }
     }
 
     public int getNumberOfTokens(int i) {
-        return timedMarking.getMarking()[i] == null ? 0 : timedMarking.getMarking()[i].size();
+        unpack();
+        return count[i];
     }
 
     public short[] reduceToStructure() {
-        short[] structuralMarking = new short[length()];
-        for (int i = 0; i < length(); i++) {
-            structuralMarking[i] = (short) (timedMarking.getMarking()[i] == null ? 0 : timedMarking.getMarking()[i].size());
+        unpack();
+        short[] structuralMarking = new short[count.length];
+        for (int i = 0; i < count.length; i++) {
+            structuralMarking[i] = (short) count[i];
         }
         return structuralMarking;
     }
 
+    /**
+     * Replaces the marking by its normalized packed canonical version from the {@link TimedMarkingStore}.
+     * Packed markings are unpacked automatically on access.
+     */
     public void pack() {
-        timedMarking = findCanonicalValue(timedMarking);
-//		assert(timedMarkingKey.equals(NormalizedMarkingCache.getInstance().getKey(timedMarking)));
-//		timedMarking = null;
+        if (packedMarking == null) {
+            normalize();
+            packedMarking = markingStore.canonicalize(toPacked());
+            tokenTimes = null;
+            start = null;
+            count = null;
+        }
     }
 
     public void unpack() {
-        timedMarking = timedMarking.clone();
-//		if( timedMarking == null){
-//			timedMarking = NormalizedMarkingCache.getInstance().getMarking(timedMarkingKey).clone();
-//		}
-
-    }
-
-    public String toString() {
-        return "marking off:" + offset + ", " + Arrays.toString(timedMarking.getMarking());
+        if (packedMarking != null) {
+            int places = 0;
+            for (int pos = 0; pos < packedMarking.length; pos += packedMarking[pos] + 1) {
+                places++;
+            }
+            init(places);
+            int pos = 0;
+            for (int i = 0; i < places; i++) {
+                int tokens = packedMarking[pos++];
+                if (tokens > 0) {
+                    tokenTimes[i] = Arrays.copyOfRange(packedMarking, pos, pos + tokens);
+                    count[i] = tokens;
+                    pos += tokens;
+                }
+            }
+            packedMarking = null;
+        }
     }
 
-    private class InternalMarking {
-        private List<Integer>[] timedMarking;
-
-        public List<Integer>[] getMarking() {
-            return timedMarking;
+    /**
+     * @return for each place the number of tokens followed by their normalized times
+     */
+    private int[] toPacked() {
+        int size = count.length;
+        for (int c : count) {
+            size += c;
         }
+        int minimumTokenTime = getMinimumTokenTime();
+        int[] packed = new int[size];
+        int pos = 0;
+        for (int i = 0; i < count.length; i++) {
+            packed[pos++] = count[i];
+            for (int j = start[i]; j < start[i] + count[i]; j++) {
+                packed[pos++] = tokenTimes[i][j] - minimumTokenTime;
+            }
+        }
+        return packed;
+    }
 
-        public boolean equalsMarking(short[] marking) {
-            for (int i = 0; i < marking.length; i++) {
-                if (marking[i] != (timedMarking[i] == null ? 0 : timedMarking[i].size())) {
+    /**
+     * Compares the (unpacked) marking with a packed one without creating its packed version (see {@link #toPacked()}).
+     */
+    private boolean equalsPacked(int[] packed) {
+        int minimumTokenTime = getMinimumTokenTime();
+        int pos = 0;
+        for (int i = 0; i < count.length; i++) {
+            if (pos >= packed.length || packed[pos++] != count[i]) {
+                return false;
+            }
+            for (int j = start[i]; j < start[i] + count[i]; j++) {
+                if (packed[pos++] != tokenTimes[i][j] - minimumTokenTime) {
                     return false;
                 }
             }
-            return true;
         }
+        return pos == packed.length;
+    }
 
-        public InternalMarking(List<Integer>[] marking) {
-            this.timedMarking = marking;
+    public int hashCode() {
+        if (packedMarking != null) {
+            // same sequence of values as below
+            return Arrays.hashCode(packedMarking);
         }
-
-        public InternalMarking clone() {
-            List<Integer>[] clonedMarking = new LinkedList[timedMarking.length];
-            for (int i = 0; i < timedMarking.length; i++) {
-                if (timedMarking[i] != null) {
-                    clonedMarking[i] = new LinkedList<>(timedMarking[i]);
-                }
+        int minimumTokenTime = getMinimumTokenTime();
+        int hashCode = 1;
+        for (int i = 0; i < count.length; i++) {
+            hashCode = 31 * hashCode + count[i];
+            for (int j = start[i]; j < start[i] + count[i]; j++) {
+                hashCode = 31 * hashCode + tokenTimes[i][j] - minimumTokenTime;
             }
-            return new InternalMarking(clonedMarking);
         }
+        return hashCode;
+    }
 
-        public int hashCode() {
-            int hashCode = 1;
-            for (int i = 0; i < timedMarking.length; i++) {
-                if (timedMarking[i] != null) {
-                    Iterator<Integer> iter = timedMarking[i].iterator();
-                    while (iter.hasNext()) {
-                        hashCode += iter.next();
-                    }
-                    hashCode *= 2;
-                } else {
-                    hashCode *= 2;
-                }
-            }
-            return hashCode;
+    /**
+     * Two timed markings are equal, if they have the same tokens and the token times only differ by a shift in time.
+     * Neither marking is packed or unpacked by the comparison.
+     */
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
         }
-
-        public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (this == obj) {
-                return true;
-            }
-            if (!(obj instanceof InternalMarking)) {
-                return false;
-            }
-            InternalMarking otherMarking = (InternalMarking) obj;
-            // check deeply:
-            if (timedMarking.length != (otherMarking.timedMarking == null ? 0 : otherMarking.timedMarking.length)) {
-                return false;
-            }
-            for (int i = 0; i < timedMarking.length; i++) {
-                if (timedMarking[i] == null && otherMarking.timedMarking[i] == null) {
-                    continue;
-                }
-                if (timedMarking[i] == null || otherMarking.timedMarking[i] == null) {
-                    return false;
-                }
-                if (timedMarking[i].size() != otherMarking.timedMarking[i].size()) {
+        if (!(obj instanceof EfficientTimedMarking)) {
+            return false;
+        }
+        EfficientTimedMarking other = (EfficientTimedMarking) obj;
+        if (packedMarking != null && other.packedMarking != null) {
+            return packedMarking == other.packedMarking || Arrays.equals(packedMarking, other.packedMarking);
+        }
+        if (packedMarking != null) {
+            return other.equalsPacked(packedMarking);
+        }
+        if (other.packedMarking != null) {
+            return equalsPacked(other.packedMarking);
+        }
+        if (!Arrays.equals(count, other.count)) {
+            return false;
+        }
+        int minimumTokenTime = getMinimumTokenTime();
+        int otherMinimumTokenTime = other.getMinimumTokenTime();
+        for (int i = 0; i < count.length; i++) {
+            for (int j = 0; j < count[i]; j++) {
+                if (tokenTimes[i][start[i] + j] - minimumTokenTime != other.tokenTimes[i][other.start[i] + j] - otherMinimumTokenTime) {
                     return false;
                 }
-                Iterator<Integer> it1 = timedMarking[i].iterator();
-                Iterator<Integer> it2 = otherMarking.timedMarking[i].iterator();
-                while (it1.hasNext()) {
-                    int i1 = it1.next();
-                    int i2 = it2.next();
-                    if (i1 != i2) {
-                        return false;
-                    }
-                }
             }
-            return true;
         }
+        return true;
+    }
 
-        public String toString() {
-            return Arrays.toString(timedMarking);
+    public String toString() {
+        unpack();
+        int minimumTokenTime = getMinimumTokenTime();
+        StringBuilder buf = new StringBuilder("marking off:").append(offset + minimumTokenTime).append(", [");
+        for (int i = 0; i < count.length; i++) {
+            if (i > 0) buf.append(", ");
+            if (count[i] == 0) {
+                buf.append("null");
+            } else {
+                buf.append("[");
+                for (int j = start[i]; j < start[i] + count[i]; j++) {
+                    if (j > start[i]) buf.append(", ");
+                    buf.append(tokenTimes[i][j] - minimumTokenTime);
+                }
+                buf.append("]");
+            }
         }
+        return buf.append("]").toString();
     }
 }
@@ -0,0 +1,143 @@
+package org.processmining.models.semantics.petrinet.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Canonicalization store for timed markings in packed form.
+ * <p>
+ * A packed timed marking is an int array that contains for each place the number of tokens followed by
+ * the sorted (normalized) times of these tokens. Equal markings are mapped to one shared array instance.
+ * Markings are looked up by a 64-bit hash and compared element-wise on equal hashes, so collisions are handled.
+ * The store keeps at most capacity markings and evicts the least recently used ones.
+ * Evicted arrays remain valid for their users, they are just not shared anymore.
+ * <p>
+ * All methods are thread safe.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class TimedMarkingStore {
+
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private final int capacity;
+
+    private final LinkedHashMap<Key, Key> markings;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TimedMarkingStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TimedMarkingStore(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        this.capacity = capacity;
+        this.markings = new LinkedHashMap<Key, Key>(Math.min(capacity, 1024), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Key, Key> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the canonical instance of the packed marking. If no equal marking is stored, the given array
+     * becomes the canonical instance (it must not be modified afterwards).
+     *
+     * @param packedMarking int[] token counts and times of the places
+     * @return the shared array that is equal to the packed marking
+     */
+    public synchronized int[] canonicalize(int[] packedMarking) {
+        Key key = new Key(packedMarking);
+        Key canonical = markings.get(key);
+        if (canonical == null) {
+            misses++;
+            markings.put(key, key);
+            return packedMarking;
+        }
+        hits++;
+        return canonical.packedMarking;
+    }
+
+    public synchronized boolean contains(int[] packedMarking) {
+        return markings.containsKey(new Key(packedMarking));
+    }
+
+    public synchronized int size() {
+        return markings.size();
+    }
+
+    public synchronized void clear() {
+        markings.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * 64-bit hash of a packed marking (FNV-1a over the ints with a final avalanche step)
+     */
+    public static long hash(int[] packedMarking) {
+        long h = 0xcbf29ce484222325L;
+        for (int value : packedMarking) {
+            h ^= value;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Key {
+        private final int[] packedMarking;
+        private final long hash;
+
+        public Key(int[] packedMarking) {
+            this.packedMarking = packedMarking;
+            this.hash = TimedMarkingStore.hash(packedMarking);
+        }
+
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            // compare the full hashes first, and only on equal hashes the arrays (hash collisions)
+            return hash == other.hash && Arrays.equals(packedMarking, other.packedMarking);
+        }
+    }
+}
@@ -118,17 +118,12 @@ public class StochasticNetToPNMLConverter {
             specific.getProperties().put(PNMLToolSpecific.INVISIBLE, String.valueOf(tt.isInvisible()));
             specific.getProperties().put(PNMLToolSpecific.DISTRIBUTION_TYPE, tt.getDistributionType().toString());
             specific.getProperties().put(PNMLToolSpecific.TRAINING_DATA, tt.getTrainingData());
-            double[] parameters = tt.getDistributionParameters();
-            StringBuilder params = new StringBuilder();
-            if (parameters != null) {
-                for (double p : parameters) {
-                    if (params.length() != 0) {
-                        params.append(PNMLToolSpecific.VALUES_SEPARATOR);
-                    }
-                    params.append(String.valueOf(p));
-                }
+            specific.getProperties().put(PNMLToolSpecific.DISTRIBUTION_PARAMETERS, getValuesString(tt.getDistributionParameters()));
+            double[] snapshot = tt.getDistributionSnapshot();
+            if (snapshot != null) {
+                // allows to restore distributions that were fitted in R without R
+                specific.getProperties().put(PNMLToolSpecific.DISTRIBUTION_SNAPSHOT, getValuesString(snapshot));
             }
-            specific.getProperties().put(PNMLToolSpecific.DISTRIBUTION_PARAMETERS, params.toString());
             list.add(specific);
             transition.setToolspecific(list);
         } else {
@@ -146,6 +141,19 @@ public class StochasticNetToPNMLConverter {
         return transition;
     }
 
+    private String getValuesString(double[] values) {
+        StringBuilder valuesString = new StringBuilder();
+        if (values != null) {
+            for (double value : values) {
+                if (valuesString.length() != 0) {
+                    valuesString.append(PNMLToolSpecific.VALUES_SEPARATOR);
+                }
+                valuesString.append(String.valueOf(value));
+            }
+        }
+        return valuesString.toString();
+    }
+
     private String getName(AbstractGraphNode node) {
         return node.getLabel();
     }
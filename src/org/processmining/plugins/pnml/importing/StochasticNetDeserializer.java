@@ -18,6 +18,7 @@ import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeU
 import org.processmining.models.graphbased.directed.petrinet.configurable.impl.LayoutUtils;
 import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.graphbased.directed.petrinet.impl.StochasticNetImpl;
 import org.processmining.models.semantics.petrinet.Marking;
@@ -193,22 +194,16 @@ public class StochasticNetDeserializer {
                             DistributionType type = DistributionType.fromString(stochasticAnnotation.getProperties().get(PNMLToolSpecific.DISTRIBUTION_TYPE));
                             String parametersString = stochasticAnnotation.getProperties().get(PNMLToolSpecific.DISTRIBUTION_PARAMETERS);
                             String trainingData = stochasticAnnotation.getProperties().get(PNMLToolSpecific.TRAINING_DATA);
-                            double[] parameters = null;
-                            if (parametersString != null && !parametersString.isEmpty()) {
-                                String[] stringParameters = parametersString.split(PNMLToolSpecific.VALUES_SEPARATOR);
-                                parameters = new double[stringParameters.length];
-                                for (int i = 0; i < stringParameters.length; i++) {
-                                    double val = 0;
-                                    try {
-                                        val = Double.parseDouble(stringParameters[i]);
-                                    } catch (NumberFormatException nfe) {
-                                        val = 0;
-                                    }
-                                    parameters[i] = val;
-                                }
-                            }
+                            double[] parameters = getValues(parametersString);
+                            double[] snapshot = getValues(stochasticAnnotation.getProperties().get(PNMLToolSpecific.DISTRIBUTION_SNAPSHOT));
                             if (type.equals(DistributionType.IMMEDIATE)) {
                                 objects.put(key, net.addImmediateTransition(getName(transition), weight, priority, trainingData));
+                            } else if (snapshot != null) {
+                                // restore the tabulated distribution instead of fitting it again (e.g., in R)
+                                TimedTransition timedTransition = net.addTimedTransition(getName(transition), weight, DistributionType.UNDEFINED, trainingData, parameters);
+                                timedTransition.setDistributionType(type);
+                                timedTransition.setDistributionSnapshot(snapshot);
+                                objects.put(key, timedTransition);
                             } else {
                                 objects.put(key, net.addTimedTransition(getName(transition), weight, type, trainingData, parameters));
                             }
@@ -341,6 +336,24 @@ public class StochasticNetDeserializer {
         return null;
     }
 
+    private double[] getValues(String valuesString) {
+        double[] values = null;
+        if (valuesString != null && !valuesString.isEmpty()) {
+            String[] stringValues = valuesString.split(PNMLToolSpecific.VALUES_SEPARATOR);
+            values = new double[stringValues.length];
+            for (int i = 0; i < stringValues.length; i++) {
+                double val = 0;
+                try {
+                    val = Double.parseDouble(stringValues[i]);
+                } catch (NumberFormatException nfe) {
+                    val = 0;
+                }
+                values[i] = val;
+            }
+        }
+        return values;
+    }
+
     private String getName(PNMLTransition transition) {
         return transition.getName() == null ? transition.getId() == null ? "unnamed" : transition.getId() : transition.getName().getValue();
     }
@@ -22,6 +22,7 @@ public class PNMLToolSpecific {
     public static final String DISTRIBUTION_TYPE = "distributionType";
     public static final String DISTRIBUTION_PARAMETERS = "distributionParameters";
     public static final String TRAINING_DATA = "trainingData";
+    public static final String DISTRIBUTION_SNAPSHOT = "distributionSnapshot";
     public static final String VALUES_SEPARATOR = ";";
 
     @Attribute
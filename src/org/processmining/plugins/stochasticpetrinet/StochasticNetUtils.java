@@ -78,9 +78,11 @@ import org.processmining.plugins.petrinet.replayresult.PNRepResult;
 import org.processmining.plugins.pnalignanalysis.conformance.AlignmentPrecGenRes;
 import org.processmining.plugins.replayer.replayresult.SyncReplayResult;
 import org.processmining.plugins.stochasticpetrinet.distribution.DiracDeltaDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.InverseCdfTable;
 import org.processmining.plugins.stochasticpetrinet.distribution.RProvider;
 import org.processmining.plugins.stochasticpetrinet.distribution.SimpleHistogramDistribution;
-import org.processmining.plugins.stochasticpetrinet.distribution.TruncatedDistributionFactory;
+import org.processmining.plugins.stochasticpetrinet.distribution.timeseries.StatefulTimeseriesDistribution;
 import org.processmining.plugins.stochasticpetrinet.miner.QualityCriterion;
 import org.processmining.plugins.stochasticpetrinet.prediction.TimePredictor;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
@@ -353,15 +355,10 @@ public class StochasticNetUtils {
         //		long now = System.currentTimeMillis();
         double sample = positiveConstraint;
         RealDistribution distribution = transition.getDistribution();
-        String key = transition.getLabel() + "_" + transition.getDistributionType() + "_" + positiveConstraint;
-        // try to get distribution from cache:
-        if (transition.getDistributionType().equals(DistributionType.GAUSSIAN_KERNEL) && useCache
-                && distributionCache.containsKey(key)) {
-            sample = distributionCache.get(key).sample();
-        } else if (transition.getDistributionType().equals(DistributionType.IMMEDIATE)) {
+        if (transition.getDistributionType().equals(DistributionType.IMMEDIATE)) {
             return 0.0;
         } else {
-            sample = sampleWithConstraint(distribution, key, positiveConstraint);
+            sample = sampleWithConstraint(distribution, positiveConstraint);
         }
         //		long after = System.currentTimeMillis();
         //		System.out.println("sampling with constraint took "+(after-now)+" ms");
@@ -372,13 +369,11 @@ public class StochasticNetUtils {
      * Samples a value from the distribution
      *
      * @param distribution       {@link RealDistribution} sampling distribution
-     * @param cacheLabel         String denoting the key for this distribution to be cached
      * @param positiveConstraint sample should be bigger than this value (results in truncated
      *                           distribution)
      * @return
      */
-    public static double sampleWithConstraint(RealDistribution distribution, String cacheLabel,
-                                              double positiveConstraint) {
+    public static double sampleWithConstraint(RealDistribution distribution, double positiveConstraint) {
         double sample;
         if (Double.isInfinite(positiveConstraint) || positiveConstraint == Double.NEGATIVE_INFINITY) {
             sample = distribution.sample();
@@ -409,25 +404,103 @@ public class StochasticNetUtils {
         } else if (distribution instanceof ExponentialDistribution) {
             double constraint = Math.max(0, positiveConstraint);
             sample = distribution.sample() + constraint;
+        } else if (distribution instanceof GaussianKernelDistribution) {
+            sample = ((GaussianKernelDistribution) distribution).sampleWithConstraint(positiveConstraint);
         } else {
-            // be optimistic and try to sample 100 times:
-            for (int i = 0; i < 100; i++) {
-                sample = distribution.sample();
-                if (sample > positiveConstraint) {
-                    return sample;
-                }
+            sample = sampleTruncated(distribution, positiveConstraint, random);
+        }
+        return sample;
+    }
+
+    /**
+     * @deprecated the cache label is ignored, as truncated distributions are sampled directly,
+     * use {@link #sampleWithConstraint(RealDistribution, double)}
+     */
+    @Deprecated
+    public static double sampleWithConstraint(RealDistribution distribution, String cacheLabel, double positiveConstraint) {
+        return sampleWithConstraint(distribution, positiveConstraint);
+    }
+
+    /**
+     * Samples a value from the distribution with a given random number
+     * generator instead of the distribution's own one. This allows
+     * independent and reproducible random streams, e.g., when simulating in
+     * parallel.
+     *
+     * @param distribution       {@link RealDistribution} sampling distribution
+     * @param positiveConstraint sample should be bigger than this value (results in truncated
+     *                           distribution)
+     * @param random             the random number generator to use
+     * @return
+     */
+    public static double sampleWithConstraint(RealDistribution distribution, double positiveConstraint, Random random) {
+        if (Double.isInfinite(positiveConstraint)) {
+            return sample(distribution, random);
+        } else if (distribution instanceof SimpleHistogramDistribution) {
+            return ((SimpleHistogramDistribution) distribution).sample(positiveConstraint, random);
+        } else if (distribution instanceof DiracDeltaDistribution) {
+            return Math.max(positiveConstraint, distribution.sample());
+        } else if (distribution instanceof ExponentialDistribution) {
+            return sample(distribution, random) + Math.max(0, positiveConstraint);
+        } else if (distribution instanceof UniformRealDistribution) {
+            double lower = Math.max(positiveConstraint, distribution.getSupportLowerBound());
+            if (distribution.getSupportUpperBound() < lower) {
+                return positiveConstraint;
             }
-            // fall back to old method
-            RealDistribution wrapper = TruncatedDistributionFactory.getConstrainedWrapper(distribution,
-                    positiveConstraint);
-            if (useCache) {
-                // store distribution in cache
-                distributionCache.put(cacheLabel, wrapper);
-                //				System.out.println("caching distribution for "+key+". caching "+distributionCache.size()+" distributions");
+            return lower + random.nextDouble() * (distribution.getSupportUpperBound() - lower);
+        }
+        return sampleTruncated(distribution, positiveConstraint, random);
+    }
+
+    /**
+     * Samples from the distribution truncated at the lower bound without rejection:
+     * kernel densities and normal distributions are sampled exactly, other distributions
+     * by inverse transform sampling on a precomputed {@link InverseCdfTable}.
+     */
+    private static double sampleTruncated(RealDistribution distribution, double lowerBound, Random random) {
+        if (distribution instanceof GaussianKernelDistribution) {
+            return ((GaussianKernelDistribution) distribution).sampleWithConstraint(lowerBound, random);
+        } else if (distribution instanceof NormalDistribution) {
+            NormalDistribution normal = (NormalDistribution) distribution;
+            double sd = normal.getStandardDeviation();
+            return normal.getMean() + sd * GaussianKernelDistribution.sampleNormalTail((lowerBound - normal.getMean()) / sd, random);
+        } else if (distribution instanceof StatefulTimeseriesDistribution) {
+            // the distribution changes over time, so it can not be tabulated
+            double lowerProbability = distribution.cumulativeProbability(lowerBound);
+            if (lowerProbability >= 1) {
+                return lowerBound;
             }
-            sample = wrapper.sample();
+            double u = lowerProbability + random.nextDouble() * (1 - lowerProbability);
+            return Math.max(lowerBound, distribution.inverseCumulativeProbability(u));
         }
-        return sample;
+        return InverseCdfTable.getTable(distribution).sampleWithConstraint(lowerBound, random);
+    }
+
+    /**
+     * Samples a value from the distribution with a given random number
+     * generator.
+     *
+     * @param distribution {@link RealDistribution} sampling distribution
+     * @param random       the random number generator to use
+     * @return
+     */
+    public static double sample(RealDistribution distribution, Random random) {
+        if (distribution instanceof GaussianKernelDistribution) {
+            return ((GaussianKernelDistribution) distribution).sample(random);
+        } else if (distribution instanceof NormalDistribution) {
+            NormalDistribution normal = (NormalDistribution) distribution;
+            return normal.getMean() + random.nextGaussian() * normal.getStandardDeviation();
+        } else if (distribution instanceof ExponentialDistribution) {
+            return -((ExponentialDistribution) distribution).getMean() * Math.log(1 - random.nextDouble());
+        } else if (distribution instanceof DiracDeltaDistribution) {
+            return distribution.sample();
+        } else if (distribution instanceof SimpleHistogramDistribution) {
+            return ((SimpleHistogramDistribution) distribution).sample(Double.NEGATIVE_INFINITY, random);
+        } else if (distribution instanceof StatefulTimeseriesDistribution) {
+            // the distribution changes over time, so it can not be tabulated
+            return distribution.inverseCumulativeProbability(random.nextDouble());
+        }
+        return InverseCdfTable.getTable(distribution).sample(random);
     }
 
     /**
@@ -1215,17 +1288,11 @@ public class StochasticNetUtils {
         return new Pair<Long, Long>(lowerBound - buffer, upperBound + buffer);
     }
 
-    private static Map<String, RealDistribution> distributionCache = new HashMap<String, RealDistribution>();
-    private static boolean useCache = false;
-
     /**
-     * Enables or disables cache of distributions.
-     *
-     * @param useCache
+     * @deprecated distributions are not cached anymore, the call has no effect
      */
+    @Deprecated
     public synchronized static void useCache(boolean useCache) {
-        StochasticNetUtils.useCache = useCache;
-        distributionCache.clear();
     }
 
     /**
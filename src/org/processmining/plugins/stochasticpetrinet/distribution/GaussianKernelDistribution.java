@@ -3,7 +3,10 @@ package org.processmining.plugins.stochasticpetrinet.distribution;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.exception.NumberIsTooLargeException;
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.special.Erf;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.processmining.plugins.stochasticpetrinet.distribution.numeric.KernelDensityGrid;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
@@ -63,6 +66,35 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
     private Double cachedMean;
     private Double cachedVariance;
 
+    /**
+     * Constraints with at most this probability below them are sampled by rejection (see
+     * {@link #sampleWithConstraint(double, Random)}).
+     */
+    private static final double REJECTION_PROBABILITY = 0.5;
+
+    /**
+     * the number of rejected samples, before falling back to exact constrained sampling
+     */
+    private static final int REJECTION_TRIES = 8;
+
+    /**
+     * kernel positions and weights as arrays for constrained sampling (lazily created)
+     */
+    private transient volatile KernelArrays kernelArrays;
+
+    private transient volatile Random randomAdaptor;
+
+    /**
+     * precomputed density and cumulative distribution function (lazily created)
+     */
+    private transient volatile KernelDensityGrid grid;
+    private transient volatile boolean gridUnavailable;
+
+    /**
+     * if set, density and cumulative probability always sum up all kernels
+     */
+    private boolean exactEvaluation = false;
+
 
     public GaussianKernelDistribution() {
         this(0.1);
@@ -101,6 +133,7 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
         precision = (getReasonableUpperBound() - getReasonableLowerBound()) / NUMBER_OF_BINS;
 
         kernelPointsAndWeights = new TreeMap<Long, Double>();
+        kernelArrays = null;
         for (double val : sampleValues) {
             Long position = Math.round(val / precision);
             if (kernelPointsAndWeights.containsKey(position)) {
@@ -133,6 +166,49 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
         h = 1.06 * Math.min(sd, quantile25to75 / 1.34) * Math.pow(sampleValues.size(), -1 / 5.);
 
         ndist = new NormalDistribution(0, h);
+        grid = null;
+        gridUnavailable = false;
+    }
+
+    /**
+     * @param exactEvaluation if true, the density and the cumulative probability are computed exactly by summing up
+     *                        all kernels, otherwise they are interpolated on a {@link KernelDensityGrid}
+     *                        (and computed exactly only where the grid is not accurate).
+     */
+    public void setExactEvaluation(boolean exactEvaluation) {
+        this.exactEvaluation = exactEvaluation;
+    }
+
+    public boolean isExactEvaluation() {
+        return exactEvaluation;
+    }
+
+    /**
+     * @return the grid for fast evaluation, or null if exact evaluation is required
+     */
+    protected KernelDensityGrid getGrid() {
+        if (exactEvaluation || gridUnavailable) {
+            return null;
+        }
+        KernelDensityGrid currentGrid = grid;
+        if (currentGrid == null) {
+            synchronized (this) {
+                currentGrid = grid;
+                if (currentGrid == null && !gridUnavailable) {
+                    long[] positions = new long[kernelPointsAndWeights.size()];
+                    double[] weights = new double[positions.length];
+                    int i = 0;
+                    for (Map.Entry<Long, Double> entry : new TreeMap<Long, Double>(kernelPointsAndWeights).entrySet()) {
+                        positions[i] = entry.getKey();
+                        weights[i++] = entry.getValue();
+                    }
+                    currentGrid = KernelDensityGrid.create(positions, weights, precision, h);
+                    grid = currentGrid;
+                    gridUnavailable = currentGrid == null;
+                }
+            }
+        }
+        return currentGrid;
     }
 
     protected double[] getDoubleArray(List<Double> values) {
@@ -144,6 +220,17 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
     }
 
     public double cumulativeProbability(double x) {
+        KernelDensityGrid currentGrid = getGrid();
+        if (currentGrid != null) {
+            double cProb = currentGrid.cumulativeProbability(x);
+            if (!Double.isNaN(cProb)) {
+                return cProb;
+            }
+        }
+        return exactCumulativeProbability(x);
+    }
+
+    protected double exactCumulativeProbability(double x) {
         //double cProb = 0;
         BigDecimal cProb = new BigDecimal(0);
         if (h == 0) {
@@ -177,7 +264,17 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
     }
 
     public double density(double x) {
+        KernelDensityGrid currentGrid = getGrid();
+        if (currentGrid != null) {
+            double density = currentGrid.density(x);
+            if (!Double.isNaN(density)) {
+                return density;
+            }
+        }
+        return exactDensity(x);
+    }
 
+    protected double exactDensity(double x) {
 //		BigDecimal density = new BigDecimal(0);
 //		BigDecimal factor = new BigDecimal(1.0);
 //		factor = factor.divide(new BigDecimal(sampleValues.length), veryPrecise);
@@ -302,6 +399,196 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
         }
     }
 
+    /**
+     * Same as {@link #sample()}, but uses the given random number generator
+     * (e.g., to have independent streams in parallel simulation).
+     */
+    public double sample(Random random) {
+        return sampleKernels(random);
+    }
+
+    private double sampleKernels(Random random) {
+        int nextPos = random.nextInt(sampleValues.size());
+        Long pos = Math.round(sampleValues.get(nextPos) / precision);
+        if (h == 0) {
+            return pos * precision;
+        } else {
+            return random.nextGaussian() * h + pos * precision;
+        }
+    }
+
+    /**
+     * Samples from the distribution conditioned on values above the lower bound
+     * with the random number generator of this distribution.
+     *
+     * @see #sampleWithConstraint(double, Random)
+     */
+    public double sampleWithConstraint(double lowerBound) {
+        Random currentAdaptor = randomAdaptor;
+        if (currentAdaptor == null) {
+            synchronized (this) {
+                currentAdaptor = randomAdaptor;
+                if (currentAdaptor == null) {
+                    currentAdaptor = new RandomAdaptor(random);
+                    randomAdaptor = currentAdaptor;
+                }
+            }
+        }
+        return sampleWithConstraint(lowerBound, currentAdaptor);
+    }
+
+    /**
+     * Samples exactly from the distribution conditioned on values above the lower bound.
+     * If the bound is below the bulk of the distribution, a few unconstrained samples are tried first.
+     * Otherwise (or if these all fail), a kernel is selected with probability proportional to its weight times its
+     * mass above the bound, and the value is drawn from the normal distribution of that kernel truncated at the bound.
+     * Unlike rejection sampling, this takes constant time even deep in the tail.
+     *
+     * @param lowerBound the value that the sample should exceed
+     * @param random     the random number generator to use
+     */
+    public double sampleWithConstraint(double lowerBound, Random random) {
+        KernelArrays kernels = getKernelArrays();
+        if (isBelowBulk(lowerBound, kernels)) {
+            for (int tries = 0; tries < REJECTION_TRIES; tries++) {
+                double sample = sampleKernels(random);
+                if (sample > lowerBound) {
+                    return sample;
+                }
+            }
+        }
+        if (h == 0) {
+            return sampleKernelPositionAbove(lowerBound, kernels, random);
+        }
+        double[] logMasses = new double[kernels.centers.length];
+        double maxLogMass = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < kernels.centers.length; i++) {
+            logMasses[i] = kernels.logWeights[i] + logNormalTail((lowerBound - kernels.centers[i]) / h);
+            maxLogMass = Math.max(maxLogMass, logMasses[i]);
+        }
+        int kernel = pickIndex(logMasses, maxLogMass, random);
+        return kernels.centers[kernel] + h * sampleNormalTail((lowerBound - kernels.centers[kernel]) / h, random);
+    }
+
+    /**
+     * @return whether at most {@link #REJECTION_PROBABILITY} of the kernels' mass lies below the bound
+     */
+    private boolean isBelowBulk(double lowerBound, KernelArrays kernels) {
+        if (kernels.centers.length == 0 || lowerBound < kernels.centers[0] - 4 * h) {
+            return true;
+        }
+        KernelDensityGrid currentGrid = getGrid();
+        if (currentGrid != null) {
+            double cProb = currentGrid.cumulativeProbability(lowerBound);
+            return !Double.isNaN(cProb) && cProb <= REJECTION_PROBABILITY;
+        }
+        return false;
+    }
+
+    private double sampleKernelPositionAbove(double lowerBound, KernelArrays kernels, Random random) {
+        double[] logMasses = new double[kernels.centers.length];
+        boolean found = false;
+        for (int i = 0; i < kernels.centers.length; i++) {
+            found |= kernels.centers[i] > lowerBound;
+            logMasses[i] = kernels.centers[i] > lowerBound ? kernels.logWeights[i] : Double.NEGATIVE_INFINITY;
+        }
+        if (!found) {
+            return lowerBound;
+        }
+        return kernels.centers[pickIndex(logMasses, 0, random)];
+    }
+
+    private KernelArrays getKernelArrays() {
+        KernelArrays currentArrays = kernelArrays;
+        if (currentArrays == null) {
+            synchronized (this) {
+                currentArrays = kernelArrays;
+                if (currentArrays == null) {
+                    currentArrays = new KernelArrays(kernelPointsAndWeights, precision);
+                    kernelArrays = currentArrays;
+                }
+            }
+        }
+        return currentArrays;
+    }
+
+    /**
+     * @return the positions of the kernels (in ascending order)
+     */
+    protected double[] getKernelCenters() {
+        return getKernelArrays().centers;
+    }
+
+    protected double[] getKernelWeights() {
+        return getKernelArrays().weights;
+    }
+
+    /**
+     * @return the logarithms of the {@link #getKernelWeights() weights}
+     */
+    protected double[] getKernelLogWeights() {
+        return getKernelArrays().logWeights;
+    }
+
+    /**
+     * Selects an index with probability proportional to exp(logWeights[i]) (shifted by the given value to avoid underflow).
+     */
+    protected static int pickIndex(double[] logWeights, double shift, Random random) {
+        double sum = 0;
+        for (double logWeight : logWeights) {
+            sum += Math.exp(logWeight - shift);
+        }
+        double position = random.nextDouble() * sum;
+        double cumulative = 0;
+        int last = 0;
+        for (int i = 0; i < logWeights.length; i++) {
+            if (logWeights[i] > Double.NEGATIVE_INFINITY) {
+                last = i;
+                cumulative += Math.exp(logWeights[i] - shift);
+                if (cumulative >= position) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return log P(Z > a) for a standard normal variable Z (accurate also far in the tail)
+     */
+    protected static double logNormalTail(double a) {
+        if (a < 8) {
+            return Math.log(0.5 * Erf.erfc(a / Math.sqrt(2)));
+        }
+        // asymptotic expansion of the Mills ratio
+        double a2 = a * a;
+        return -a2 / 2 - Math.log(a * Math.sqrt(2 * Math.PI)) + Math.log(1 - 1 / a2 + 3 / (a2 * a2));
+    }
+
+    /**
+     * Samples a standard normal variable conditioned on values above a.
+     * Uses plain rejection for small a, and otherwise the exponential proposal described in:
+     * <p>
+     * Robert, C. P. (1995) Simulation of truncated normal variables. Statistics and Computing, 5(2), 121-125.
+     */
+    public static double sampleNormalTail(double a, Random random) {
+        if (a < 0.5) {
+            // acceptance rate is at least 30%
+            double z;
+            do {
+                z = random.nextGaussian();
+            } while (z <= a);
+            return z;
+        }
+        double lambda = (a + Math.sqrt(a * a + 4)) / 2;
+        while (true) {
+            double z = a - Math.log(1 - random.nextDouble()) / lambda;
+            if (random.nextDouble() <= Math.exp(-(z - lambda) * (z - lambda) / 2)) {
+                return z;
+            }
+        }
+    }
+
     public List<Double> getValues() {
         return this.sampleValues;
     }
@@ -322,4 +609,26 @@ public class GaussianKernelDistribution extends AnotherAbstractRealDistribution
     public double getReasonableLowerBound() {
         return sampleValues.get(0).doubleValue() - 10 * h;
     }
+
+    /**
+     * The kernels as arrays, which are filled completely before they are published.
+     */
+    private static class KernelArrays {
+        private final double[] centers;
+        private final double[] weights;
+        private final double[] logWeights;
+
+        public KernelArrays(Map<Long, Double> kernelPointsAndWeights, double precision) {
+            centers = new double[kernelPointsAndWeights.size()];
+            weights = new double[centers.length];
+            logWeights = new double[centers.length];
+            int i = 0;
+            for (Map.Entry<Long, Double> entry : new TreeMap<Long, Double>(kernelPointsAndWeights).entrySet()) {
+                centers[i] = entry.getKey() * precision;
+                weights[i] = entry.getValue();
+                logWeights[i] = Math.log(weights[i]);
+                i++;
+            }
+        }
+    }
 }
@@ -1,6 +1,6 @@
 package org.processmining.plugins.stochasticpetrinet.distribution;
 
-import java.math.BigDecimal;
+import java.util.Random;
 
 /**
  * Very plain boundary reflection kernel estimator.
@@ -36,16 +36,8 @@ public class GaussianReflectionKernelDistribution extends GaussianKernelDistribu
         if (x < threshold) {
             return 0;
         }
-        BigDecimal density = new BigDecimal(0);
-        BigDecimal factor = new BigDecimal(1.0);
-        factor = factor.divide(new BigDecimal(sampleValues.size()), veryPrecise);
-        for (Long pos : kernelPointsAndWeights.keySet()) {
-            double xKernelPos = pos * precision;
-            density = density.add(factor.multiply(new BigDecimal(ndist.density(x - xKernelPos)).multiply(new BigDecimal(kernelPointsAndWeights.get(pos)), veryPrecise), veryPrecise), veryPrecise);
-            density = density.add(factor.multiply(new BigDecimal(ndist.density((threshold - x) - xKernelPos)).multiply(new BigDecimal(kernelPointsAndWeights.get(pos)), veryPrecise), veryPrecise), veryPrecise);
-//			density += (1/weightSum) * ndist.density(x-xKernelPos)*kernelPointsAndWeights.get(pos);
-        }
-        return density.doubleValue();
+        // density of the reflected samples (threshold - sample) is added to the original one
+        return super.density(x) + super.density(threshold - x);
     }
 
 
@@ -54,5 +46,49 @@ public class GaussianReflectionKernelDistribution extends GaussianKernelDistribu
         return sample >= threshold ? sample : threshold - sample;
     }
 
+    public double sample(Random random) {
+        return reflect(super.sample(random));
+    }
+
+    private double reflect(double sample) {
+        return sample >= threshold ? sample : threshold - sample;
+    }
+
+    /**
+     * Exact conditional sampling as in the super class. A reflected sample exceeds the lower bound,
+     * if the unreflected value is above max(lowerBound, threshold), or below threshold - lowerBound.
+     * Both tails of each kernel are considered.
+     */
+    public double sampleWithConstraint(double lowerBound, Random random) {
+        if (lowerBound <= threshold || h == 0) {
+            // all reflected samples exceed the threshold (or no smoothing at all): reject
+            double sample;
+            int tries = 0;
+            do {
+                sample = reflect(super.sample(random));
+            } while (sample <= lowerBound && ++tries < 1000);
+            return Math.max(sample, lowerBound);
+        }
+        double upper = Math.max(lowerBound, threshold);
+        double lower = threshold - lowerBound;
+        double[] centers = getKernelCenters();
+        double[] logWeights = getKernelLogWeights();
+        double[] logMasses = new double[2 * centers.length];
+        double maxLogMass = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < centers.length; i++) {
+            logMasses[2 * i] = logWeights[i] + logNormalTail((upper - centers[i]) / h);
+            logMasses[2 * i + 1] = logWeights[i] + logNormalTail((centers[i] - lower) / h);
+            maxLogMass = Math.max(maxLogMass, Math.max(logMasses[2 * i], logMasses[2 * i + 1]));
+        }
+        int picked = pickIndex(logMasses, maxLogMass, random);
+        double center = centers[picked / 2];
+        if (picked % 2 == 0) {
+            return center + h * sampleNormalTail((upper - center) / h, random);
+        } else {
+            // lower tail, which is reflected at the threshold
+            return threshold - (center - h * sampleNormalTail((center - lower) / h, random));
+        }
+    }
+
 
 }
@@ -0,0 +1,140 @@
+package org.processmining.plugins.stochasticpetrinet.distribution;
+
+import org.apache.commons.math3.distribution.RealDistribution;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tabulated cumulative distribution function for fast (constrained) inverse transform sampling.
+ * <p>
+ * The cumulative probabilities are evaluated once on an equidistant grid between the {@link #TAIL_PROBABILITY}
+ * and 1-{@link #TAIL_PROBABILITY} quantiles, values in between are linearly interpolated in both directions.
+ * Outside the grid (in the tails) the distribution is evaluated exactly, such that constraints deep in the tail
+ * are still handled correctly. Building the table takes two quantile computations and {@link #SIZE} evaluations
+ * of the cumulative distribution function, which pays off quickly for distributions without a closed form inverse
+ * (where each quantile is found by a root search).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class InverseCdfTable {
+
+    public static final int SIZE = 1000;
+
+    public static final double TAIL_PROBABILITY = 0.001;
+
+    /**
+     * the maximal number of shared tables (the least recently used table is dropped first)
+     */
+    public static final int CACHED_TABLES = 256;
+
+    /**
+     * Shared tables in access order. The tables reference their distributions, so the cache must be bounded
+     * (weak keys would never be released).
+     */
+    private static final Map<RealDistribution, InverseCdfTable> tables = new LinkedHashMap<RealDistribution, InverseCdfTable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<RealDistribution, InverseCdfTable> eldest) {
+            return size() > CACHED_TABLES;
+        }
+    };
+
+    private final RealDistribution distribution;
+
+    private final double[] xs;
+
+    /**
+     * cumulative probabilities at xs (non-decreasing)
+     */
+    private final double[] ps;
+
+    /**
+     * Returns the (shared) table of the distribution.
+     * The table must only be used as long as the distribution does not change.
+     */
+    public static InverseCdfTable getTable(RealDistribution distribution) {
+        InverseCdfTable table;
+        synchronized (tables) {
+            table = tables.get(distribution);
+        }
+        if (table == null) {
+            // built outside of the lock, as this evaluates the distribution many times
+            table = new InverseCdfTable(distribution);
+            synchronized (tables) {
+                tables.put(distribution, table);
+            }
+        }
+        return table;
+    }
+
+    public InverseCdfTable(RealDistribution distribution) {
+        this.distribution = distribution;
+        double lower = distribution.inverseCumulativeProbability(TAIL_PROBABILITY);
+        double upper = distribution.inverseCumulativeProbability(1 - TAIL_PROBABILITY);
+        this.xs = new double[SIZE];
+        this.ps = new double[SIZE];
+        double step = (upper - lower) / (SIZE - 1);
+        for (int i = 0; i < SIZE; i++) {
+            xs[i] = i == SIZE - 1 ? upper : lower + i * step;
+            ps[i] = distribution.cumulativeProbability(xs[i]);
+            if (i > 0 && ps[i] < ps[i - 1]) {
+                // guard against numerical noise
+                ps[i] = ps[i - 1];
+            }
+        }
+    }
+
+    /**
+     * @return the interpolated quantile at probability p
+     */
+    public double inverseCumulativeProbability(double p) {
+        if (p < ps[0] || p > ps[SIZE - 1]) {
+            return distribution.inverseCumulativeProbability(p);
+        }
+        return interpolate(ps, xs, p);
+    }
+
+    /**
+     * @return the interpolated cumulative probability at x
+     */
+    public double cumulativeProbability(double x) {
+        if (x < xs[0] || x > xs[SIZE - 1]) {
+            return distribution.cumulativeProbability(x);
+        }
+        return interpolate(xs, ps, x);
+    }
+
+    public double sample(Random random) {
+        return inverseCumulativeProbability(random.nextDouble());
+    }
+
+    /**
+     * Samples from the distribution conditioned on values above the lower bound by
+     * inverse transform sampling of the truncated distribution.
+     */
+    public double sampleWithConstraint(double lowerBound, Random random) {
+        double lowerProbability = cumulativeProbability(lowerBound);
+        if (lowerProbability >= 1) {
+            return lowerBound;
+        }
+        double u = lowerProbability + random.nextDouble() * (1 - lowerProbability);
+        return Math.max(lowerBound, inverseCumulativeProbability(u));
+    }
+
+    /**
+     * Piecewise linear interpolation of the function given by the sorted keys and their values.
+     */
+    private static double interpolate(double[] keys, double[] values, double key) {
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            return values[i];
+        }
+        int upper = -i - 1;
+        int lower = upper - 1;
+        double width = keys[upper] - keys[lower];
+        return values[lower] + (width > 0 ? (key - keys[lower]) / width * (values[upper] - values[lower]) : 0);
+    }
+}
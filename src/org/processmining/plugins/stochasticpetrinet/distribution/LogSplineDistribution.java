@@ -0,0 +1,652 @@
+package org.processmining.plugins.stochasticpetrinet.distribution;
+
+import org.apache.commons.math3.distribution.AbstractRealDistribution;
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.random.Well1024a;
+
+import java.util.Arrays;
+
+/**
+ * Logspline density estimation in Java, that is, without R (see {@link RLogSplineDistribution}), for observed and
+ * randomly right-censored values.
+ * <p>
+ * The logarithm of the density is a natural cubic spline on [0, upper bound] (linear below the first and above the
+ * last knot), whose coefficients are fitted by maximum likelihood with Newton-Raphson iterations (with step halving).
+ * Right-censored values contribute the log-probability to exceed them, as in:
+ * <a href="http://amstat.tandfonline.com/doi/full/10.1080/10618600.1992.10474588">Kooperberg, Charles, and Charles J. Stone. "Logspline density estimation for censored data."
+ * Journal of Computational and Graphical Statistics 1.4 (1992): 301-328.</a>
+ * <p>
+ * The knots are placed at quantiles of the observed values (as many as the R variant allows), and are removed one
+ * by one (the knot that reduces the likelihood the least). The model with the smallest BIC is selected.
+ * The integrals of the likelihood and of the cumulative distribution function are computed by Gauss-Legendre
+ * quadrature on segments between the knots (and the censored values).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class LogSplineDistribution extends AbstractRealDistribution {
+    private static final long serialVersionUID = 3350166622359718542L;
+
+    public static final int MIN_KNOTS = 3;
+
+    public static final int MAX_ITERATIONS = 200;
+
+    /**
+     * number of quadrature segments between two knots
+     */
+    private static final int SUBDIVISIONS = 8;
+
+    /**
+     * number of quadrature segments above the last knot
+     */
+    private static final int TAIL_SEGMENTS = 16;
+
+    /**
+     * the upper tail is split into segments up to this many multiples of the inverse slope of the log-density
+     * (the remaining mass is below e^-TAIL_LENGTH, and the unbounded tail is not integrated further)
+     */
+    private static final double TAIL_LENGTH = 40;
+
+    private static final double[] GAUSS_NODES = {-0.9324695142031521, -0.6612093864662645, -0.2386191860831909,
+            0.2386191860831909, 0.6612093864662645, 0.9324695142031521};
+    private static final double[] GAUSS_WEIGHTS = {0.1713244923791704, 0.3607615730481386, 0.4679139345726910,
+            0.4679139345726910, 0.3607615730481386, 0.1713244923791704};
+
+    private double upperBound;
+
+    /**
+     * values are scaled by this factor (the largest knot) to keep the powers of the spline basis in a reasonable range
+     */
+    private double scale;
+
+    /**
+     * the knots (scaled)
+     */
+    private double[] knots;
+
+    private double[] coefficients;
+
+    /**
+     * logarithm of the normalizing constant of the (scaled) density
+     */
+    private double logNormalization;
+
+    private double logLikelihood;
+
+    /**
+     * segments (scaled) and the cumulative probabilities at their bounds
+     */
+    private double[] segmentBounds;
+    private double[] cumulativeProbabilities;
+
+    private double mean = Double.NaN;
+    private double variance = Double.NaN;
+
+    /**
+     * Fits a density with unbounded support [0,&infin;).
+     */
+    public LogSplineDistribution() {
+        this(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param upperBound the upper bound of the support (e.g., the longest trace duration), it is raised to the largest
+     *                   observed value, if necessary
+     */
+    public LogSplineDistribution(double upperBound) {
+        super(new Well1024a());
+        if (Double.isNaN(upperBound)) {
+            throw new IllegalArgumentException("The upper bound must be a number!");
+        }
+        this.upperBound = upperBound >= Double.MAX_VALUE ? Double.POSITIVE_INFINITY : upperBound;
+    }
+
+    public void addValues(double... values) throws NonConvergenceException {
+        initWithValues(values, new double[0]);
+    }
+
+    /**
+     * Fits the log-spline density to the observed and right-censored values.
+     *
+     * @param observedValues the observed (non-negative) values
+     * @param censoredValues the values that were exceeded (i.e., the observation stopped before the value occurred)
+     */
+    public void initWithValues(double[] observedValues, double[] censoredValues) throws NonConvergenceException {
+        double[] observed = observedValues.clone();
+        Arrays.sort(observed);
+        if (observed.length == 0 || observed[0] < 0) {
+            throw new IllegalArgumentException("Logspline fits need non-negative observed values!");
+        }
+        upperBound = Math.max(upperBound, observed[observed.length - 1]);
+        if (getInitialKnots(observed, MIN_KNOTS).length < MIN_KNOTS) {
+            throw new NonConvergenceException("Logspline fit to " + observed.length + " values needs at least " + MIN_KNOTS + " distinct values!");
+        }
+        scale = observed[observed.length - 1];
+        double boundScaled = upperBound / scale;
+        for (int i = 0; i < observed.length; i++) {
+            observed[i] /= scale;
+        }
+        double[] censored = new double[censoredValues.length];
+        int censoredCount = 0;
+        for (double value : censoredValues) {
+            // values beyond the upper bound (or before the start) are not informative
+            if (value > 0 && value < upperBound) {
+                censored[censoredCount++] = value / scale;
+            }
+        }
+        censored = Arrays.copyOf(censored, censoredCount);
+        Arrays.sort(censored);
+
+        // start with as many knots as the fit in R (fewer, if that fit does not converge)
+        Fit current = null;
+        for (int knotCount = Math.max(5, Math.min(12, 5 + (int) Math.log(observed.length))); current == null && knotCount >= MIN_KNOTS; knotCount--) {
+            double[] initialKnots = getInitialKnots(observed, knotCount);
+            if (initialKnots.length >= MIN_KNOTS) {
+                current = fit(initialKnots, observed, censored, boundScaled);
+            }
+        }
+        // stepwise knot deletion: select the model with the smallest BIC
+        double penalty = Math.log(observed.length + censored.length);
+        Fit best = null;
+        double bestBic = Double.POSITIVE_INFINITY;
+        while (current != null) {
+            double bic = -2 * current.logLikelihood + penalty * current.coefficients.length;
+            if (bic < bestBic) {
+                bestBic = bic;
+                best = current;
+            }
+            Fit next = null;
+            if (current.knots.length > MIN_KNOTS) {
+                for (int remove = 1; remove < current.knots.length - 1; remove++) {
+                    double[] fewerKnots = new double[current.knots.length - 1];
+                    System.arraycopy(current.knots, 0, fewerKnots, 0, remove);
+                    System.arraycopy(current.knots, remove + 1, fewerKnots, remove, fewerKnots.length - remove);
+                    Fit candidate = fit(fewerKnots, observed, censored, boundScaled);
+                    if (candidate != null && (next == null || candidate.logLikelihood > next.logLikelihood)) {
+                        next = candidate;
+                    }
+                }
+            }
+            current = next;
+        }
+        if (best == null) {
+            throw new NonConvergenceException("Logspline fit to " + observed.length + " observed and " + censored.length + " censored values did not converge!");
+        }
+        knots = best.knots;
+        coefficients = best.coefficients;
+        logNormalization = best.logNormalization;
+        logLikelihood = best.logLikelihood - observed.length * Math.log(scale);
+        tabulate(boundScaled);
+    }
+
+    /**
+     * Places the knots at quantiles of the observed values (the first and the last at the extremes).
+     */
+    private static double[] getInitialKnots(double[] sortedValues, int knotCount) {
+        int n = sortedValues.length;
+        double[] knots = new double[knotCount];
+        int distinct = 0;
+        for (int i = 0; i < knotCount; i++) {
+            double knot = sortedValues[(int) Math.round((n - 1) * i / (double) (knotCount - 1))];
+            if (distinct == 0 || knot > knots[distinct - 1]) {
+                knots[distinct++] = knot;
+            }
+        }
+        return Arrays.copyOf(knots, distinct);
+    }
+
+    /**
+     * Evaluates the natural cubic spline basis (without the constant) at the (scaled) value.
+     */
+    private static void basis(double u, double[] knots, double[] out) {
+        int last = knots.length - 1;
+        out[0] = u;
+        double dLast = truncatedPower(u, knots, last - 1);
+        for (int j = 0; j < last - 1; j++) {
+            out[j + 1] = truncatedPower(u, knots, j) - dLast;
+        }
+    }
+
+    private static double truncatedPower(double u, double[] knots, int j) {
+        int last = knots.length - 1;
+        return (cube(u - knots[j]) - cube(u - knots[last])) / (knots[last] - knots[j]);
+    }
+
+    private static double cube(double x) {
+        return x > 0 ? x * x * x : 0;
+    }
+
+    private static double spline(double u, double[] knots, double[] coefficients, double[] buffer) {
+        basis(u, knots, buffer);
+        double s = 0;
+        for (int j = 0; j < coefficients.length; j++) {
+            s += coefficients[j] * buffer[j];
+        }
+        return s;
+    }
+
+    /**
+     * @return the slope of the log-density above the last knot (where it is linear)
+     */
+    private static double tailSlope(double[] knots, double[] coefficients, double[] buffer) {
+        double last = knots[knots.length - 1];
+        return spline(last + 1, knots, coefficients, buffer) - spline(last, knots, coefficients, buffer);
+    }
+
+    /**
+     * @return the bounds of the quadrature segments: 0, subdivisions of the knot intervals, the (sorted) censored values
+     * and the segments of the linear tail up to the upper bound
+     */
+    private static double[] getSegmentBounds(double[] knots, double[] censored, double bound, double slope) {
+        double[] bounds = new double[1 + SUBDIVISIONS * knots.length + censored.length + TAIL_SEGMENTS + 2];
+        int count = 0;
+        bounds[count++] = 0;
+        for (int k = 0; k < knots.length; k++) {
+            double from = k == 0 ? 0 : knots[k - 1];
+            int parts = k == 0 ? 1 : SUBDIVISIONS;
+            for (int i = 1; i <= parts; i++) {
+                bounds[count++] = from + (knots[k] - from) * i / parts;
+            }
+        }
+        for (double c : censored) {
+            bounds[count++] = c;
+        }
+        Arrays.sort(bounds, 0, count);
+        double end = bounds[count - 1];
+        if (bound > end) {
+            // the log-density is linear in the tail, so its mass lies within a few multiples of the inverse slope
+            // of the last knot (decreasing density), or of the bound (increasing density), which is split evenly
+            double length = TAIL_LENGTH / Math.abs(slope);
+            double from = slope > 0 ? Math.max(end, bound - length) : end;
+            double to = slope < 0 ? Math.min(bound, end + length) : bound;
+            bounds[count++] = from;
+            for (int i = 1; i < TAIL_SEGMENTS; i++) {
+                bounds[count++] = from + (to - from) * i / TAIL_SEGMENTS;
+            }
+            bounds[count++] = to;
+            if (!Double.isInfinite(bound)) {
+                bounds[count++] = bound;
+            }
+        }
+        // remove duplicates
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (bounds[i] > bounds[distinct - 1]) {
+                bounds[distinct++] = bounds[i];
+            }
+        }
+        return Arrays.copyOf(bounds, distinct);
+    }
+
+    private static class Fit {
+        private double[] knots;
+        private double[] coefficients;
+        private double logNormalization;
+        private double logLikelihood;
+        private double[] gradient;
+        private double[][] hessian;
+    }
+
+    /**
+     * Fits the coefficients for fixed knots.
+     *
+     * @return the fit, or null if it did not converge
+     */
+    private static Fit fit(double[] knots, double[] observed, double[] censored, double bound) {
+        int p = knots.length - 1;
+        // start with an exponential distribution (a proper density for unbounded supports)
+        double mean = 0;
+        for (double value : observed) {
+            mean += value / observed.length;
+        }
+        double[] theta = new double[p];
+        theta[0] = -1 / Math.max(mean, 1e-6);
+        Fit fit = evaluate(knots, theta, observed, censored, bound);
+        if (fit == null) {
+            return null;
+        }
+        double[] delta = new double[p];
+        double[][] system = new double[p][p];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double damping = 0;
+            Fit next = null;
+            double stepLength = 0;
+            while (next == null && damping < 1e10) {
+                for (int i = 0; i < p; i++) {
+                    for (int j = 0; j < p; j++) {
+                        system[i][j] = -fit.hessian[i][j] + (i == j ? damping : 0);
+                    }
+                }
+                if (solve(system, fit.gradient, delta)) {
+                    double step = 1;
+                    for (int halving = 0; halving < 30 && next == null; halving++, step /= 2) {
+                        double[] candidate = new double[p];
+                        for (int j = 0; j < p; j++) {
+                            candidate[j] = fit.coefficients[j] + step * delta[j];
+                        }
+                        Fit candidateFit = evaluate(knots, candidate, observed, censored, bound);
+                        if (candidateFit != null && candidateFit.logLikelihood >= fit.logLikelihood - 1e-12 * Math.abs(fit.logLikelihood)) {
+                            next = candidateFit;
+                            stepLength = 0;
+                            for (int j = 0; j < p; j++) {
+                                stepLength = Math.max(stepLength, Math.abs(step * delta[j]));
+                            }
+                        }
+                    }
+                }
+                damping = damping == 0 ? 1e-6 * (1 + trace(fit.hessian)) : damping * 10;
+            }
+            if (next == null) {
+                return null;
+            }
+            double improvement = next.logLikelihood - fit.logLikelihood;
+            fit = next;
+            if (improvement < 1e-9 * (1 + Math.abs(fit.logLikelihood)) && stepLength < 1e-6) {
+                return fit;
+            }
+        }
+        return null;
+    }
+
+    private static double trace(double[][] matrix) {
+        double trace = 0;
+        for (int i = 0; i < matrix.length; i++) {
+            trace += Math.abs(matrix[i][i]);
+        }
+        return trace;
+    }
+
+    /**
+     * Computes the log-likelihood, its gradient and its Hessian for the coefficients.
+     *
+     * @return the evaluation, or null if the coefficients do not describe a proper density
+     */
+    private static Fit evaluate(double[] knots, double[] theta, double[] observed, double[] censored, double bound) {
+        int p = theta.length;
+        double[] buffer = new double[p];
+        double slope = tailSlope(knots, theta, buffer);
+        if (Double.isInfinite(bound) && !(slope < 0)) {
+            return null;
+        }
+        double[] bounds = getSegmentBounds(knots, censored, bound, slope);
+        int segments = bounds.length - 1;
+        int nodes = segments * GAUSS_NODES.length;
+
+        // log-density (up to the constant) at the quadrature nodes
+        double[][] nodeBasis = new double[nodes][p];
+        double[] nodeWeights = new double[nodes];
+        double[] nodeValues = new double[nodes];
+        double shift = Double.NEGATIVE_INFINITY;
+        for (int s = 0; s < segments; s++) {
+            double half = (bounds[s + 1] - bounds[s]) / 2;
+            double center = (bounds[s + 1] + bounds[s]) / 2;
+            for (int g = 0; g < GAUSS_NODES.length; g++) {
+                int node = s * GAUSS_NODES.length + g;
+                nodeWeights[node] = half * GAUSS_WEIGHTS[g];
+                nodeValues[node] = spline(center + half * GAUSS_NODES[g], knots, theta, nodeBasis[node]);
+                shift = Math.max(shift, nodeValues[node]);
+            }
+        }
+        if (Double.isInfinite(shift) || Double.isNaN(shift)) {
+            return null;
+        }
+
+        // integrals of exp(s), B*exp(s) and B*B'*exp(s) from the right, censored values are segment bounds
+        double integral = 0;
+        double[] first = new double[p];
+        double[][] second = new double[p][p];
+        int nextCensored = censored.length - 1;
+        double censoredLikelihood = 0;
+        double[] censoredGradient = new double[p];
+        double[][] censoredHessian = new double[p][p];
+        for (int s = segments - 1; s >= 0; s--) {
+            for (int g = GAUSS_NODES.length - 1; g >= 0; g--) {
+                int node = s * GAUSS_NODES.length + g;
+                double weight = nodeWeights[node] * Math.exp(nodeValues[node] - shift);
+                double[] b = nodeBasis[node];
+                integral += weight;
+                for (int i = 0; i < p; i++) {
+                    first[i] += weight * b[i];
+                    for (int j = 0; j <= i; j++) {
+                        second[i][j] += weight * b[i] * b[j];
+                    }
+                }
+            }
+            while (nextCensored >= 0 && censored[nextCensored] >= bounds[s]) {
+                // the probability to exceed the censored value and its derivatives
+                censoredLikelihood += Math.log(integral) + shift;
+                for (int i = 0; i < p; i++) {
+                    censoredGradient[i] += first[i] / integral;
+                    for (int j = 0; j <= i; j++) {
+                        censoredHessian[i][j] += second[i][j] / integral - first[i] * first[j] / (integral * integral);
+                    }
+                }
+                nextCensored--;
+            }
+        }
+        if (!(integral > 0) || Double.isInfinite(integral)) {
+            return null;
+        }
+        int n = observed.length + censored.length;
+        Fit fit = new Fit();
+        fit.knots = knots;
+        fit.coefficients = theta;
+        fit.logNormalization = Math.log(integral) + shift;
+        fit.gradient = new double[p];
+        fit.hessian = new double[p][p];
+        double logLikelihood = censoredLikelihood - n * fit.logNormalization;
+        for (double value : observed) {
+            logLikelihood += spline(value, knots, theta, buffer);
+            for (int i = 0; i < p; i++) {
+                fit.gradient[i] += buffer[i];
+            }
+        }
+        for (int i = 0; i < p; i++) {
+            fit.gradient[i] += censoredGradient[i] - n * first[i] / integral;
+            for (int j = 0; j <= i; j++) {
+                double h = censoredHessian[i][j] - n * (second[i][j] / integral - first[i] * first[j] / (integral * integral));
+                fit.hessian[i][j] = h;
+                fit.hessian[j][i] = h;
+            }
+        }
+        if (Double.isNaN(logLikelihood) || Double.isInfinite(logLikelihood)) {
+            return null;
+        }
+        fit.logLikelihood = logLikelihood;
+        return fit;
+    }
+
+    /**
+     * Solves the symmetric positive definite system by a Cholesky decomposition.
+     *
+     * @return false, if the matrix is not positive definite
+     */
+    private static boolean solve(double[][] matrix, double[] rhs, double[] solution) {
+        int n = rhs.length;
+        double[][] l = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i][j];
+                for (int k = 0; k < j; k++) {
+                    sum -= l[i][k] * l[j][k];
+                }
+                if (i == j) {
+                    if (!(sum > 0)) {
+                        return false;
+                    }
+                    l[i][i] = Math.sqrt(sum);
+                } else {
+                    l[i][j] = sum / l[j][j];
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            double sum = rhs[i];
+            for (int k = 0; k < i; k++) {
+                sum -= l[i][k] * solution[k];
+            }
+            solution[i] = sum / l[i][i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = solution[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= l[k][i] * solution[k];
+            }
+            solution[i] = sum / l[i][i];
+        }
+        return true;
+    }
+
+    /**
+     * Computes the cumulative probabilities at the segment bounds and the moments of the fitted density.
+     */
+    private void tabulate(double bound) {
+        double[] buffer = new double[coefficients.length];
+        segmentBounds = getSegmentBounds(knots, new double[0], bound, tailSlope(knots, coefficients, buffer));
+        cumulativeProbabilities = new double[segmentBounds.length];
+        double firstMoment = 0;
+        double secondMoment = 0;
+        for (int s = 0; s < segmentBounds.length - 1; s++) {
+            double half = (segmentBounds[s + 1] - segmentBounds[s]) / 2;
+            double center = (segmentBounds[s + 1] + segmentBounds[s]) / 2;
+            double mass = 0;
+            for (int g = 0; g < GAUSS_NODES.length; g++) {
+                double u = center + half * GAUSS_NODES[g];
+                double weight = half * GAUSS_WEIGHTS[g] * scaledDensity(u, buffer);
+                mass += weight;
+                firstMoment += weight * u;
+                secondMoment += weight * u * u;
+            }
+            cumulativeProbabilities[s + 1] = cumulativeProbabilities[s] + mass;
+        }
+        double total = cumulativeProbabilities[segmentBounds.length - 1];
+        for (int s = 0; s < cumulativeProbabilities.length; s++) {
+            cumulativeProbabilities[s] = Math.min(1, cumulativeProbabilities[s] / total);
+        }
+        mean = firstMoment / total * scale;
+        variance = Math.max(0, secondMoment / total - Math.pow(firstMoment / total, 2)) * scale * scale;
+    }
+
+    private double scaledDensity(double u, double[] buffer) {
+        return Math.exp(spline(u, knots, coefficients, buffer) - logNormalization);
+    }
+
+    /**
+     * @return the knots of the selected model
+     */
+    public double[] getKnots() {
+        double[] unscaledKnots = new double[knots.length];
+        for (int i = 0; i < knots.length; i++) {
+            unscaledKnots[i] = knots[i] * scale;
+        }
+        return unscaledKnots;
+    }
+
+    /**
+     * @return the log-likelihood of the observed and censored values under the fitted density
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    public double density(double x) {
+        if (x < 0 || x > upperBound) {
+            return 0;
+        }
+        return scaledDensity(x / scale, new double[coefficients.length]) / scale;
+    }
+
+    public double cumulativeProbability(double x) {
+        double u = x / scale;
+        if (u <= 0) {
+            return 0;
+        }
+        if (u >= segmentBounds[segmentBounds.length - 1]) {
+            return 1;
+        }
+        int s = Arrays.binarySearch(segmentBounds, u);
+        if (s >= 0) {
+            return cumulativeProbabilities[s];
+        }
+        s = -s - 2;
+        return Math.min(1, cumulativeProbabilities[s] + integrate(segmentBounds[s], u, new double[coefficients.length]));
+    }
+
+    private double integrate(double from, double to, double[] buffer) {
+        double half = (to - from) / 2;
+        double center = (to + from) / 2;
+        double integral = 0;
+        for (int g = 0; g < GAUSS_NODES.length; g++) {
+            integral += half * GAUSS_WEIGHTS[g] * scaledDensity(center + half * GAUSS_NODES[g], buffer);
+        }
+        return integral;
+    }
+
+    public double inverseCumulativeProbability(double p) throws OutOfRangeException {
+        if (p < 0 || p > 1) {
+            throw new OutOfRangeException(p, 0, 1);
+        }
+        if (p == 0) {
+            return 0;
+        }
+        if (p == 1) {
+            return getSupportUpperBound();
+        }
+        int s = Arrays.binarySearch(cumulativeProbabilities, p);
+        if (s >= 0) {
+            return segmentBounds[s] * scale;
+        }
+        s = Math.min(-s - 2, segmentBounds.length - 2);
+        // safeguarded Newton iterations within the segment (the cumulative distribution function is monotone)
+        double[] buffer = new double[coefficients.length];
+        double lower = segmentBounds[s];
+        double upper = segmentBounds[s + 1];
+        double u = (lower + upper) / 2;
+        for (int iteration = 0; iteration < 100; iteration++) {
+            double error = cumulativeProbabilities[s] + integrate(segmentBounds[s], u, buffer) - p;
+            if (error > 0) {
+                upper = u;
+            } else {
+                lower = u;
+            }
+            double density = scaledDensity(u, buffer);
+            double next = density > 0 ? u - error / density : Double.NaN;
+            if (!(next > lower && next < upper)) {
+                next = (lower + upper) / 2;
+            }
+            if (Math.abs(next - u) < 1e-12 * (1 + u)) {
+                u = next;
+                break;
+            }
+            u = next;
+        }
+        return u * scale;
+    }
+
+    public double getNumericalMean() {
+        return mean;
+    }
+
+    public double getNumericalVariance() {
+        return variance;
+    }
+
+    public double getSupportLowerBound() {
+        return 0;
+    }
+
+    public double getSupportUpperBound() {
+        return upperBound;
+    }
+
+    public boolean isSupportLowerBoundInclusive() {
+        return true;
+    }
+
+    public boolean isSupportUpperBoundInclusive() {
+        return false;
+    }
+
+    public boolean isSupportConnected() {
+        return true;
+    }
+}
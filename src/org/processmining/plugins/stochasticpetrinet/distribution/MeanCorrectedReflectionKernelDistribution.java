@@ -2,6 +2,8 @@ package org.processmining.plugins.stochasticpetrinet.distribution;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
+import java.util.Random;
+
 public class MeanCorrectedReflectionKernelDistribution extends GaussianReflectionKernelDistribution {
     private static final long serialVersionUID = 1376651647162154117L;
 
@@ -68,5 +70,13 @@ public class MeanCorrectedReflectionKernelDistribution extends GaussianReflectio
         return scale * super.sample();
     }
 
+    public double sample(Random random) {
+        return scale * super.sample(random);
+    }
+
+    public double sampleWithConstraint(double lowerBound, Random random) {
+        return scale * super.sampleWithConstraint(lowerBound / scale, random);
+    }
+
 
 }
@@ -84,6 +84,7 @@ public class RCensoredLogSplineDistribution extends RLogSplineDistribution {
                 throw new NonConvergenceException("Could not fit a logspline to the " + observedValues + " observed values and " + censoredValues.length + " censored values!\n" +
                         "Probably due to " + reason);
             } else {
+                snapshot();
                 // check whether convergence achieved.
                 try {
                     double mean = getNumericalMean();
@@ -159,7 +160,4 @@ public class RCensoredLogSplineDistribution extends RLogSplineDistribution {
 //		return numericalMean;
 //	}
 
-    public double getNumericalVariance() {
-        return Double.NaN;
-    }
 }
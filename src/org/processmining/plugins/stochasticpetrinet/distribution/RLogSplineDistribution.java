@@ -4,8 +4,14 @@ import org.apache.commons.math3.distribution.AbstractRealDistribution;
 import org.rosuda.JRI.REXP;
 import org.rosuda.JRI.Rengine;
 
+import java.util.Arrays;
+
 /**
  * Logspline density fitting to data using the logspline package in R.
+ * <p>
+ * Right after the fit, the density, the cumulative probabilities and the quantiles of the spline are tabulated
+ * (see {@link TabulatedDistribution}), and all further evaluations and samples are served from these tables in the JVM.
+ * That is, R is only needed for fitting, and not for each evaluation (each of which is a round-trip to the R session).
  *
  * @author Andreas Rogge-Solti
  */
@@ -35,6 +41,16 @@ public class RLogSplineDistribution extends AbstractRealDistribution {
 
     protected double[] values;
 
+    /**
+     * whether the fit is tabulated (otherwise each evaluation is done in R)
+     */
+    protected boolean tabulated = true;
+
+    /**
+     * the tabulated fit (if {@link #tabulated})
+     */
+    protected TabulatedDistribution table;
+
     public RLogSplineDistribution() {
         this("my_spline" + counter++);
     }
@@ -65,6 +81,7 @@ public class RLogSplineDistribution extends AbstractRealDistribution {
                 // failed to converge!
                 throw new NonConvergenceException("Logspline fit to " + values.length + " did not converge (maybe the values are too close to each other...)");
             }
+            snapshot();
         } finally {
             engine.eval("rm(" + getValsString() + ")");
         }
@@ -74,24 +91,103 @@ public class RLogSplineDistribution extends AbstractRealDistribution {
         return rName + "vals";
     }
 
+    public String getGridString() {
+        return rName + "grid";
+    }
+
+    /**
+     * @param tabulated whether to tabulate the fit (must be set before fitting)
+     */
+    public void setTabulated(boolean tabulated) {
+        this.tabulated = tabulated;
+    }
+
+    /**
+     * @return the tables of the fit, or null if it is not tabulated
+     */
+    public TabulatedDistribution getTable() {
+        return table;
+    }
+
+    /**
+     * Pulls dense tables of the fitted spline (between 0 and the 1-{@link TabulatedDistribution#TAIL_PROBABILITY}
+     * quantile) from R, with one evaluation per table.
+     */
+    protected void snapshot() throws NonConvergenceException {
+        table = null;
+        if (!tabulated) {
+            return;
+        }
+        int size = TabulatedDistribution.DEFAULT_SIZE;
+        try {
+            double upper = Math.min(upperBound, evalDoubles("q" + method + "(" + (1 - TabulatedDistribution.TAIL_PROBABILITY) + "," + rName + ")")[0]);
+            engine.assign(getGridString(), new REXP(TabulatedDistribution.getGrid(0, upper, size)));
+            double[] densities = evalDoubles("d" + method + "(" + getGridString() + "," + rName + ")");
+            double[] cumulativeProbabilities = evalDoubles("p" + method + "(" + getGridString() + "," + rName + ")");
+            double[] probabilities = TabulatedDistribution.getGrid(0, 1, size);
+            engine.assign(getGridString(), new REXP(Arrays.copyOfRange(probabilities, 1, size - 1)));
+            double[] innerQuantiles = evalDoubles("q" + method + "(" + getGridString() + "," + rName + ")");
+            if (densities.length != size || cumulativeProbabilities.length != size || innerQuantiles.length != size - 2) {
+                throw new NonConvergenceException("Could not tabulate the logspline fit!");
+            }
+            double[] quantiles = new double[size];
+            System.arraycopy(innerQuantiles, 0, quantiles, 1, size - 2);
+            quantiles[size - 1] = upper;
+            table = new TabulatedDistribution(0, upper, densities, cumulativeProbabilities, quantiles);
+        } catch (IllegalArgumentException e) {
+            throw new NonConvergenceException("Could not tabulate the logspline fit!", e);
+        } finally {
+            engine.eval("rm(" + getGridString() + ")");
+        }
+    }
+
+    private double[] evalDoubles(String expression) throws NonConvergenceException {
+        REXP exp = engine.eval(expression);
+        double[] result = exp == null ? null : exp.asDoubleArray();
+        if (result == null || result.length == 0) {
+            throw new NonConvergenceException("Could not evaluate " + expression + " in R!");
+        }
+        return result;
+    }
+
     public double probability(double x) {
         throw new UnsupportedOperationException("probability not supported!");
     }
 
     public double density(double x) {
+        if (table != null) {
+            return table.density(x);
+        }
         return engine.eval("d" + method + "(" + x + "," + rName + ")").asDouble();
     }
 
     public double cumulativeProbability(double x) {
+        if (table != null) {
+            return table.cumulativeProbability(x);
+        }
         return engine.eval("p" + method + "(" + x + "," + rName + ")").asDouble();
     }
 
+    /**
+     * Looks the quantile up in the tabulated fit, if available, and otherwise inverts the cumulative
+     * probability of the R fit numerically.
+     */
+    public double inverseCumulativeProbability(double p) {
+        if (table != null) {
+            return table.inverseCumulativeProbability(p);
+        }
+        return super.inverseCumulativeProbability(p);
+    }
+
     /**
      * Calculates the numerical mean under the plot function of the log-spline fit.
      * The upper bound for integration is the longest observed trace.
      * Might return Double.NaN in the worst case.
      */
     public double getNumericalMean() {
+        if (table != null) {
+            return table.getNumericalMean();
+        }
         long now = System.currentTimeMillis();
 //		try{
 //			if (Double.isNaN(numericalMean)){
@@ -135,6 +231,9 @@ public class RLogSplineDistribution extends AbstractRealDistribution {
     }
 
     public double getNumericalVariance() {
+        if (table != null) {
+            return table.getNumericalVariance();
+        }
         return Double.NaN;
     }
 
@@ -159,10 +258,22 @@ public class RLogSplineDistribution extends AbstractRealDistribution {
     }
 
     public double sample() {
+        if (table != null) {
+            return table.sample();
+        }
         return engine.eval("r" + method + "(1," + rName + ")").asDouble();
     }
 
+    public void reseedRandomGenerator(long seed) {
+        if (table != null) {
+            table.reseedRandomGenerator(seed);
+        }
+    }
+
     public double[] sample(int sampleSize) {
+        if (table != null) {
+            return table.sample(sampleSize);
+        }
         return engine.eval("r" + method + "(" + sampleSize + "," + rName + ")").asDoubleArray();
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -117,15 +118,7 @@ public class SimpleHistogramDistribution extends AbstractRealDistribution {
         if (constraint > samples[samples.length - 1]) {
             return constraint;
         }
-
-        // find index of constraint and sample above:
-        // assume that samples are ordered.
-        int indexOfConstraint = constraint > 0 ? StochasticNetUtils.getIndexBinarySearch(samples, constraint) : 0;
-
-        if (constraint > samples[indexOfConstraint]) {
-            indexOfConstraint++;
-        }
-
+        int indexOfConstraint = getIndexOfConstraint(constraint);
         int randomDraw = indexOfConstraint + random.nextInt(samples.length - indexOfConstraint);
         return samples[randomDraw];
 
@@ -155,6 +148,31 @@ public class SimpleHistogramDistribution extends AbstractRealDistribution {
 //		}
     }
 
+    /**
+     * Same as {@link #sample(double)}, but with a given random number generator.
+     */
+    public double sample(double constraint, Random random) {
+        if (constraint > samples[samples.length - 1]) {
+            return constraint;
+        }
+        int indexOfConstraint = getIndexOfConstraint(constraint);
+        return samples[indexOfConstraint + random.nextInt(samples.length - indexOfConstraint)];
+    }
+
+    /**
+     * @return the index of the first sample that is not smaller than the constraint
+     */
+    private int getIndexOfConstraint(double constraint) {
+        // find index of constraint and sample above:
+        // assume that samples are ordered.
+        int indexOfConstraint = constraint > 0 ? StochasticNetUtils.getIndexBinarySearch(samples, constraint) : 0;
+
+        if (constraint > samples[indexOfConstraint]) {
+            indexOfConstraint++;
+        }
+        return indexOfConstraint;
+    }
+
     private double calcNumericalMean() {
         double mean = 0;
         for (Integer key : binsAndValues.keySet()) {
@@ -0,0 +1,256 @@
+package org.processmining.plugins.stochasticpetrinet.distribution;
+
+import org.apache.commons.math3.distribution.AbstractRealDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.random.Well1024a;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of a distribution as dense tables, that is evaluated in the JVM by linear interpolation.
+ * <p>
+ * The density and the cumulative probabilities are tabulated on an equidistant grid between the lower and the upper
+ * bound of the support, the quantiles on an equidistant grid of probabilities between 0 and 1. This serves
+ * distributions that are expensive to evaluate (e.g., the log-splines that are fitted in R, see
+ * {@link RLogSplineDistribution}), such that the expensive fit is done only once. The tables can be stored as a flat
+ * array of {@link #getParameters() parameters} (e.g., in the PNML of a model) and restored without the original
+ * distribution.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class TabulatedDistribution extends AbstractRealDistribution {
+    private static final long serialVersionUID = 6042517416914727432L;
+
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * the mass above the upper bound of the table (if the support of the distribution reaches further)
+     */
+    public static final double TAIL_PROBABILITY = 1e-6;
+
+    private final double lower;
+    private final double upper;
+
+    /**
+     * densities at the equidistant points between lower and upper
+     */
+    private final double[] densities;
+
+    /**
+     * cumulative probabilities at the equidistant points between lower and upper (non-decreasing)
+     */
+    private final double[] cumulativeProbabilities;
+
+    /**
+     * quantiles at the equidistant probabilities between 0 and 1 (non-decreasing)
+     */
+    private final double[] quantiles;
+
+    private final double mean;
+    private final double variance;
+
+    /**
+     * @param lower                   the lower bound of the support
+     * @param upper                   the upper bound of the support
+     * @param densities               the densities at the equidistant points between (and including) lower and upper
+     * @param cumulativeProbabilities the cumulative probabilities at the same points
+     * @param quantiles               the quantiles at the equidistant probabilities between (and including) 0 and 1
+     */
+    public TabulatedDistribution(double lower, double upper, double[] densities, double[] cumulativeProbabilities, double[] quantiles) {
+        super(new Well1024a());
+        if (!(lower < upper) || Double.isInfinite(lower) || Double.isInfinite(upper)) {
+            throw new IllegalArgumentException("Tables need finite bounds with lower < upper!");
+        }
+        if (densities.length < 2 || densities.length != cumulativeProbabilities.length || quantiles.length < 2) {
+            throw new IllegalArgumentException("Tables need at least two entries (and as many densities as cumulative probabilities)!");
+        }
+        this.lower = lower;
+        this.upper = upper;
+        this.densities = densities;
+        this.cumulativeProbabilities = cumulativeProbabilities;
+        this.quantiles = quantiles;
+        for (int i = 0; i < densities.length; i++) {
+            if (!(densities[i] >= 0) || Double.isNaN(cumulativeProbabilities[i])) {
+                throw new IllegalArgumentException("Invalid density or cumulative probability at " + getX(i) + "!");
+            }
+            if (i > 0 && cumulativeProbabilities[i] < cumulativeProbabilities[i - 1]) {
+                // guard against numerical noise
+                cumulativeProbabilities[i] = cumulativeProbabilities[i - 1];
+            }
+        }
+        for (int i = 0; i < quantiles.length; i++) {
+            if (Double.isNaN(quantiles[i])) {
+                throw new IllegalArgumentException("Invalid quantile at " + getProbability(i) + "!");
+            }
+            if (i > 0 && quantiles[i] < quantiles[i - 1]) {
+                quantiles[i] = quantiles[i - 1];
+            }
+        }
+        // moments of the density on the grid (trapezoidal rule)
+        double step = getStep();
+        double mass = 0;
+        double firstMoment = 0;
+        double secondMoment = 0;
+        for (int i = 0; i < densities.length; i++) {
+            double weight = (i == 0 || i == densities.length - 1 ? 0.5 : 1) * step * densities[i];
+            double x = getX(i);
+            mass += weight;
+            firstMoment += weight * x;
+            secondMoment += weight * x * x;
+        }
+        this.mean = mass > 0 ? firstMoment / mass : (quantiles[0] + quantiles[quantiles.length - 1]) / 2;
+        this.variance = mass > 0 ? Math.max(0, secondMoment / mass - mean * mean) : 0;
+    }
+
+    /**
+     * Restores a distribution from its {@link #getParameters() parameters}.
+     */
+    public static TabulatedDistribution fromParameters(double[] parameters) {
+        int n = parameters.length > 0 ? (int) parameters[0] : 0;
+        int m = parameters.length > 3 + 2 * n ? (int) parameters[3 + 2 * n] : 0;
+        if (n < 2 || parameters.length != 4 + 2 * n + m) {
+            throw new IllegalArgumentException("Invalid parameters of a tabulated distribution!");
+        }
+        return new TabulatedDistribution(parameters[1], parameters[2],
+                Arrays.copyOfRange(parameters, 3, 3 + n),
+                Arrays.copyOfRange(parameters, 3 + n, 3 + 2 * n),
+                Arrays.copyOfRange(parameters, 4 + 2 * n, parameters.length));
+    }
+
+    /**
+     * Tabulates a distribution (in the JVM) with {@link #DEFAULT_SIZE} entries per table.
+     * Unbounded lower supports are cut at the {@link #TAIL_PROBABILITY} quantile, and upper supports at the
+     * 1-{@link #TAIL_PROBABILITY} quantile (also if they are bounded, e.g., by the longest trace duration, such that the
+     * grid is not wasted on the empty tail).
+     */
+    public static TabulatedDistribution tabulate(RealDistribution distribution) {
+        double lower = distribution.getSupportLowerBound();
+        if (Double.isInfinite(lower)) {
+            lower = distribution.inverseCumulativeProbability(TAIL_PROBABILITY);
+        }
+        double upper = Math.min(distribution.getSupportUpperBound(), distribution.inverseCumulativeProbability(1 - TAIL_PROBABILITY));
+        if (!(upper > lower)) {
+            upper = distribution.getSupportUpperBound();
+        }
+        double[] xs = getGrid(lower, upper, DEFAULT_SIZE);
+        double[] densities = new double[DEFAULT_SIZE];
+        double[] cumulativeProbabilities = new double[DEFAULT_SIZE];
+        for (int i = 0; i < DEFAULT_SIZE; i++) {
+            densities[i] = distribution.density(xs[i]);
+            cumulativeProbabilities[i] = distribution.cumulativeProbability(xs[i]);
+        }
+        double[] quantiles = new double[DEFAULT_SIZE];
+        double[] probabilities = getGrid(0, 1, DEFAULT_SIZE);
+        for (int i = 1; i < DEFAULT_SIZE - 1; i++) {
+            quantiles[i] = distribution.inverseCumulativeProbability(probabilities[i]);
+        }
+        quantiles[0] = lower;
+        quantiles[DEFAULT_SIZE - 1] = upper;
+        return new TabulatedDistribution(lower, upper, densities, cumulativeProbabilities, quantiles);
+    }
+
+    /**
+     * @return size equidistant points between (and including) lower and upper
+     */
+    public static double[] getGrid(double lower, double upper, int size) {
+        double[] grid = new double[size];
+        for (int i = 0; i < size; i++) {
+            grid[i] = i == size - 1 ? upper : lower + i * (upper - lower) / (size - 1);
+        }
+        return grid;
+    }
+
+    /**
+     * @return the tables as one array: the number n of points, lower, upper, n densities, n cumulative probabilities,
+     * the number m of quantiles and m quantiles
+     */
+    public double[] getParameters() {
+        int n = densities.length;
+        double[] parameters = new double[4 + 2 * n + quantiles.length];
+        parameters[0] = n;
+        parameters[1] = lower;
+        parameters[2] = upper;
+        System.arraycopy(densities, 0, parameters, 3, n);
+        System.arraycopy(cumulativeProbabilities, 0, parameters, 3 + n, n);
+        parameters[3 + 2 * n] = quantiles.length;
+        System.arraycopy(quantiles, 0, parameters, 4 + 2 * n, quantiles.length);
+        return parameters;
+    }
+
+    public double density(double x) {
+        if (x < lower || x > upper) {
+            return 0;
+        }
+        return interpolate(densities, (x - lower) / getStep());
+    }
+
+    public double cumulativeProbability(double x) {
+        if (x < lower) {
+            return 0;
+        }
+        if (x > upper) {
+            return 1;
+        }
+        return interpolate(cumulativeProbabilities, (x - lower) / getStep());
+    }
+
+    public double inverseCumulativeProbability(double p) throws OutOfRangeException {
+        if (p < 0 || p > 1) {
+            throw new OutOfRangeException(p, 0, 1);
+        }
+        return interpolate(quantiles, p * (quantiles.length - 1));
+    }
+
+    public double getNumericalMean() {
+        return mean;
+    }
+
+    public double getNumericalVariance() {
+        return variance;
+    }
+
+    public double getSupportLowerBound() {
+        return lower;
+    }
+
+    public double getSupportUpperBound() {
+        return upper;
+    }
+
+    public boolean isSupportLowerBoundInclusive() {
+        return true;
+    }
+
+    public boolean isSupportUpperBoundInclusive() {
+        return true;
+    }
+
+    public boolean isSupportConnected() {
+        return true;
+    }
+
+    private double getStep() {
+        return (upper - lower) / (densities.length - 1);
+    }
+
+    private double getX(int i) {
+        return lower + i * getStep();
+    }
+
+    private double getProbability(int i) {
+        return i / (double) (quantiles.length - 1);
+    }
+
+    /**
+     * Linear interpolation in a table with equidistant keys at the (fractional) index.
+     */
+    private static double interpolate(double[] table, double index) {
+        int i = (int) index;
+        if (i >= table.length - 1) {
+            return table[table.length - 1];
+        }
+        double fraction = index - i;
+        return table[i] + fraction * (table[i + 1] - table[i]);
+    }
+}
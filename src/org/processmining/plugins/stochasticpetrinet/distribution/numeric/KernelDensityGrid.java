@@ -0,0 +1,206 @@
+package org.processmining.plugins.stochasticpetrinet.distribution.numeric;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.special.Erf;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Binned Gaussian kernel density estimate evaluated on a regular grid.
+ * <p>
+ * The kernels are located on bins (multiples of the bin width), the grid subdivides each bin into
+ * {@link #OVERSAMPLING} steps. The density, its derivative and
+ * the cumulative distribution function at all grid points are computed at once by FFT convolution of the bin weights
+ * with the (discretized) normal density, its derivative and the normal CDF. Lookups between grid points use cubic
+ * Hermite interpolation (of the logarithm of the density, which is smooth also in the tails), so that each evaluation
+ * takes constant time.
+ * <p>
+ * Where the grid is not accurate (outside of it, or where FFT round-off dominates the tiny values in the left tail),
+ * {@link Double#NaN} is returned and the caller should evaluate the kernel sum exactly.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class KernelDensityGrid {
+
+    /**
+     * The grid extends this many bandwidths beyond the outermost kernels.
+     */
+    public static final double TAIL_BANDWIDTHS = 8;
+
+    /**
+     * Number of grid steps per bin (to keep the interpolation error small also between separated kernels)
+     */
+    public static final int OVERSAMPLING = 4;
+
+    /**
+     * Grids with more points are not built (exact evaluation is used instead).
+     */
+    public static final int MAX_GRID_SIZE = 1 << 20;
+
+    /**
+     * Values below this fraction of the maximum are dominated by round-off and not served from the grid.
+     */
+    public static final double RELATIVE_TOLERANCE = 1e-9;
+
+    private final double step;
+
+    /**
+     * position of the first grid point
+     */
+    private final double start;
+
+    private final double[] density;
+    private final double[] logDensity;
+    private final double[] logDensityDerivative;
+    private final double[] cdf;
+
+    private final double minDensity;
+
+    /**
+     * @param positions kernel positions in multiples of the bin width (sorted ascending)
+     * @param weights   weights of the kernels
+     * @param binWidth  width of the bins
+     * @param h         bandwidth (standard deviation) of the Gaussian kernels
+     * @return the grid, or null, if the grid would be too large or the parameters are degenerate
+     */
+    public static KernelDensityGrid create(long[] positions, double[] weights, double binWidth, double h) {
+        if (positions.length == 0 || !(binWidth > 0) || !(h > 0) || Double.isInfinite(binWidth) || Double.isInfinite(h)) {
+            return null;
+        }
+        double margin = FastMath.ceil(TAIL_BANDWIDTHS * h * OVERSAMPLING / binWidth);
+        double size = (positions[positions.length - 1] - positions[0]) * (double) OVERSAMPLING + 1 + 2 * margin;
+        if (size > MAX_GRID_SIZE) {
+            return null;
+        }
+        return new KernelDensityGrid(positions, weights, binWidth, h, (int) margin, (int) size);
+    }
+
+    private KernelDensityGrid(long[] positions, double[] weights, double binWidth, double h, int margin, int size) {
+        this.step = binWidth / OVERSAMPLING;
+        this.start = positions[0] * binWidth - margin * step;
+
+        double totalWeight = 0;
+        double[] binWeights = new double[size];
+        for (int i = 0; i < positions.length; i++) {
+            binWeights[(int) (positions[i] - positions[0]) * OVERSAMPLING + margin] += weights[i];
+            totalWeight += weights[i];
+        }
+
+        // kernels at offsets -margin..margin (in grid steps)
+        int kernelSize = 2 * margin + 1;
+        double[] densityKernel = new double[kernelSize];
+        double[] derivativeKernel = new double[kernelSize];
+        double[] cdfKernel = new double[kernelSize];
+        double normalization = 1 / (totalWeight * h * FastMath.sqrt(2 * FastMath.PI));
+        for (int m = -margin; m <= margin; m++) {
+            double z = m * step / h;
+            double phi = normalization * FastMath.exp(-z * z / 2);
+            densityKernel[m + margin] = phi;
+            derivativeKernel[m + margin] = -z / h * phi;
+            cdfKernel[m + margin] = 0.5 * Erf.erfc(-z / FastMath.sqrt(2)) / totalWeight;
+        }
+
+        int n = Integer.highestOneBit(size + kernelSize - 1);
+        if (n < size + kernelSize - 1) {
+            n <<= 1;
+        }
+        FastFourierTransformer transformer = new FastFourierTransformer(DftNormalization.STANDARD);
+        Complex[] weightTransform = transformer.transform(pad(binWeights, n), TransformType.FORWARD);
+        this.density = convolve(transformer, weightTransform, densityKernel, n, margin, size);
+        double[] densityDerivative = convolve(transformer, weightTransform, derivativeKernel, n, margin, size);
+        this.cdf = convolve(transformer, weightTransform, cdfKernel, n, margin, size);
+
+        // kernels further left than the margin contribute their full weight to the cdf
+        double cumulativeWeight = 0;
+        double maxDensity = 0;
+        for (int j = 0; j < size; j++) {
+            if (j - margin - 1 >= 0) {
+                cumulativeWeight += binWeights[j - margin - 1];
+            }
+            cdf[j] = FastMath.min(1, FastMath.max(0, cdf[j] + cumulativeWeight / totalWeight));
+            if (j > 0 && cdf[j] < cdf[j - 1]) {
+                cdf[j] = cdf[j - 1];
+            }
+            density[j] = FastMath.max(0, density[j]);
+            maxDensity = FastMath.max(maxDensity, density[j]);
+        }
+        this.minDensity = maxDensity * RELATIVE_TOLERANCE;
+
+        this.logDensity = new double[size];
+        this.logDensityDerivative = new double[size];
+        for (int j = 0; j < size; j++) {
+            if (density[j] < minDensity) {
+                logDensity[j] = Double.NaN;
+            } else {
+                logDensity[j] = FastMath.log(density[j]);
+                logDensityDerivative[j] = densityDerivative[j] / density[j];
+            }
+        }
+    }
+
+    /**
+     * @return the interpolated density at x, or NaN, if x is outside of the grid or in the far tails
+     */
+    public double density(double x) {
+        double position = (x - start) / step;
+        int j = (int) FastMath.floor(position);
+        if (j < 0 || j >= density.length - 1) {
+            return Double.NaN;
+        }
+        if (Double.isNaN(logDensity[j]) || Double.isNaN(logDensity[j + 1])) {
+            return Double.NaN;
+        }
+        return FastMath.exp(hermite(logDensity[j], logDensityDerivative[j], logDensity[j + 1], logDensityDerivative[j + 1], position - j));
+    }
+
+    /**
+     * @return the interpolated cumulative probability at x (1 right of the grid), or NaN, if x is left of the grid or in the far left tail
+     */
+    public double cumulativeProbability(double x) {
+        double position = (x - start) / step;
+        int j = (int) FastMath.floor(position);
+        if (j >= cdf.length - 1) {
+            // beyond the kernels' tails, the remaining mass is below double precision
+            return 1;
+        } else if (j < 0) {
+            return Double.NaN;
+        }
+        double value = hermite(cdf[j], density[j], cdf[j + 1], density[j + 1], position - j);
+        return value < RELATIVE_TOLERANCE ? Double.NaN : FastMath.min(1, value);
+    }
+
+    public int size() {
+        return density.length;
+    }
+
+    /**
+     * Cubic Hermite interpolation on the unit interval given values and derivatives (per unit of x) at both ends.
+     */
+    private double hermite(double y0, double d0, double y1, double d1, double t) {
+        double t2 = t * t;
+        double t3 = t2 * t;
+        return (2 * t3 - 3 * t2 + 1) * y0 + (t3 - 2 * t2 + t) * step * d0 + (-2 * t3 + 3 * t2) * y1 + (t3 - t2) * step * d1;
+    }
+
+    private static double[] convolve(FastFourierTransformer transformer, Complex[] weightTransform, double[] kernel, int n, int margin, int size) {
+        Complex[] kernelTransform = transformer.transform(pad(kernel, n), TransformType.FORWARD);
+        for (int i = 0; i < n; i++) {
+            kernelTransform[i] = kernelTransform[i].multiply(weightTransform[i]);
+        }
+        Complex[] result = transformer.transform(kernelTransform, TransformType.INVERSE);
+        // the kernel is centered at index margin
+        double[] values = new double[size];
+        for (int j = 0; j < size; j++) {
+            values[j] = result[j + margin].getReal();
+        }
+        return values;
+    }
+
+    private static double[] pad(double[] values, int n) {
+        double[] padded = new double[n];
+        System.arraycopy(values, 0, padded, 0, values.length);
+        return padded;
+    }
+}
@@ -0,0 +1,127 @@
+package org.processmining.plugins.stochasticpetrinet.enricher;
+
+import cern.colt.Arrays;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts, how often each transition fired in each marking, with the markings stored by a 64-bit hash (see
+ * {@link #getHash(short[], long[])}) instead of by their string representation.
+ * Markings with the same hash are kept in a chain and told apart by their tokens.
+ *
+ * @author Andreas Rogge-Solti
+ */
+class MarkingSelections {
+
+    private final int transitionCount;
+
+    private final TLongObjectHashMap<Selection> selections;
+
+    /**
+     * the selections in the order in which the markings were first visited
+     */
+    private final List<Selection> orderedSelections;
+
+    public MarkingSelections(int transitionCount) {
+        this.transitionCount = transitionCount;
+        this.selections = new TLongObjectHashMap<Selection>();
+        this.orderedSelections = new ArrayList<Selection>();
+    }
+
+    /**
+     * @return random 64-bit weights of the places, such that the weighted sum of the tokens is the hash of a marking
+     * (and can be updated with the token changes of each firing)
+     */
+    public static long[] getPlaceHashes(int placeCount) {
+        long[] placeHashes = new long[placeCount];
+        for (int place = 0; place < placeCount; place++) {
+            // finalizer of the 64-bit murmur hash
+            long hash = place + 0x9E3779B97F4A7C15L;
+            hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+            hash = (hash ^ (hash >>> 33)) * 0xC4CEB93FE1A85EC5L;
+            placeHashes[place] = hash ^ (hash >>> 33);
+        }
+        return placeHashes;
+    }
+
+    public static long getHash(short[] marking, long[] placeHashes) {
+        long hash = 0;
+        for (int place = 0; place < marking.length; place++) {
+            hash += marking[place] * placeHashes[place];
+        }
+        return hash;
+    }
+
+    /**
+     * Adds 1 to the firing count of a transition in a marking.
+     *
+     * @param marking  the marking in which the transition fired
+     * @param hash     the hash of the marking
+     * @param encTrans the transition that fired
+     */
+    public void addFiring(short[] marking, long hash, int encTrans) {
+        getCounts(marking, hash)[encTrans]++;
+    }
+
+    /**
+     * Adds the counts of other selections (e.g., collected on other cases).
+     */
+    public void addAll(MarkingSelections other) {
+        for (Selection selection : other.orderedSelections) {
+            int[] counts = getCounts(selection.marking, selection.hash);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += selection.counts[i];
+            }
+        }
+    }
+
+    private int[] getCounts(short[] marking, long hash) {
+        Selection first = selections.get(hash);
+        Selection selection = first;
+        while (selection != null && !java.util.Arrays.equals(selection.marking, marking)) {
+            selection = selection.next;
+        }
+        if (selection == null) {
+            selection = new Selection(marking.clone(), hash, new int[transitionCount], first);
+            selections.put(hash, selection);
+            orderedSelections.add(selection);
+        }
+        return selection.counts;
+    }
+
+    public int size() {
+        return orderedSelections.size();
+    }
+
+    /**
+     * @return the counts by the string representation of the markings (the count arrays are shared)
+     */
+    public Map<String, int[]> toMap() {
+        Map<String, int[]> map = new HashMap<String, int[]>();
+        for (Selection selection : orderedSelections) {
+            map.put(Arrays.toString(selection.marking), selection.counts);
+        }
+        return map;
+    }
+
+    private static class Selection {
+        private final short[] marking;
+        private final long hash;
+        private final int[] counts;
+        /**
+         * the next marking with the same hash
+         */
+        private final Selection next;
+
+        public Selection(short[] marking, long hash, int[] counts, Selection next) {
+            this.marking = marking;
+            this.hash = hash;
+            this.counts = counts;
+            this.next = next;
+        }
+    }
+}
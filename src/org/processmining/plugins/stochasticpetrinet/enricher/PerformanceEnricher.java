@@ -23,6 +23,7 @@ import org.processmining.plugins.petrinet.manifestreplayresult.ManifestEvClassPa
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.distribution.BernsteinExponentialApproximation;
 import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.LogSplineDistribution;
 import org.processmining.plugins.stochasticpetrinet.distribution.NonConvergenceException;
 import org.processmining.plugins.stochasticpetrinet.distribution.RCensoredLogSplineDistribution;
 import org.processmining.plugins.stochasticpetrinet.enricher.optimizer.WeightsOptimizer;
@@ -34,6 +35,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PerformanceEnricher {
 
@@ -44,12 +51,14 @@ public class PerformanceEnricher {
      */
     public static final double THRESHOLD_FOR_DETERMINISTIC_VALUES = 0.05;
 
-    private static int failCount = 0;
+    private static AtomicInteger failCount = new AtomicInteger();
 
     private StochasticManifestCollector performanceCollector;
 
     private Map<String, int[]> markingBasedSelections;
 
+    private List<TransitionFittingMetrics> fittingMetrics;
+
     private Random random;
 
     public PerformanceEnricher() {
@@ -93,36 +102,9 @@ public class PerformanceEnricher {
             performanceCollector.outputCorrelationMatrix();
         }
 
-        Iterator<Transition> originalTransitions = net.getTransitions().iterator();
-        Iterator<Transition> newTimedTransitions = sNet.getTransitions().iterator();
-        int progress = 0;
-
-        String feedbackMessage = ""; // captures messages occurring during conversion
-
-        if (context != null) {
-            context.getProgress().setMaximum(sNet.getTransitions().size());
-        }
-        while (originalTransitions.hasNext()) {
-            if (context != null) {
-                context.getProgress().setValue(progress++);
-            }
-            Transition originalTransition = originalTransitions.next();
-            TimedTransition newTimedTransition = (TimedTransition) newTimedTransitions.next();
-            int indexOfTransition = performanceCollector.getEncOfTrans(originalTransition);
-            List<Double> transitionStats = performanceCollector.getFiringTimes(indexOfTransition);
-            List<Double> censoredStats = performanceCollector.getCensoredFiringTimes(indexOfTransition);
-            String trainingData = performanceCollector.getTrainingData(indexOfTransition);
-
-            if (!censoredStats.isEmpty()) {
-                System.out.println("Transition " + originalTransition.getLabel() + " has " + censoredStats.size() + " censored and " + transitionStats.size() + " observed firings...");
-            }
+        String feedbackMessage = fitDistributions(context, net, sNet, mineConfig); // captures messages occurring during conversion
 
-            feedbackMessage += addTimingInformationToTransition(newTimedTransition, transitionStats, censoredStats, mineConfig, performanceCollector.getMeanTraceFitness(), performanceCollector.getMaxTraceDuration());
-
-            newTimedTransition.setDistribution(newTimedTransition.initDistribution(performanceCollector.getMaxTraceDuration()));
-            newTimedTransition.setTrainingData(trainingData);
-        }
-        // weights of the transitions are calculated based on firing ratios on each marking.
+        // weights of the transitions are calculated based on firing ratios on each marking (after all fits are done).
         double[] weights = new double[net.getTransitions().size()];
         Arrays.fill(weights, 1);
         markingBasedSelections = performanceCollector.getMarkingBasedSelections();
@@ -185,6 +167,91 @@ public class PerformanceEnricher {
         return stochasticNetAndMarking;
     }
 
+    /**
+     * Fits the distributions of all transitions as independent tasks on {@link PerformanceEnricherConfig#getFittingThreads()}
+     * threads (the time of each task is recorded in the {@link #getFittingMetrics() metrics}).
+     *
+     * @return the messages of the fits (in the order of the transitions)
+     */
+    private String fitDistributions(PluginContext context, PetrinetGraph net, StochasticNet sNet, final PerformanceEnricherConfig mineConfig) {
+        final double meanTraceFitness = performanceCollector.getMeanTraceFitness();
+        final double maxTraceDuration = performanceCollector.getMaxTraceDuration();
+
+        Iterator<Transition> originalTransitions = net.getTransitions().iterator();
+        Iterator<Transition> newTimedTransitions = sNet.getTransitions().iterator();
+        fittingMetrics = new ArrayList<TransitionFittingMetrics>();
+        List<Future<String>> fittings = new ArrayList<Future<String>>();
+        ExecutorService executor = Executors.newFixedThreadPool(getFittingThreads(mineConfig));
+        try {
+            while (originalTransitions.hasNext()) {
+                Transition originalTransition = originalTransitions.next();
+                final TimedTransition newTimedTransition = (TimedTransition) newTimedTransitions.next();
+                int indexOfTransition = performanceCollector.getEncOfTrans(originalTransition);
+                final List<Double> transitionStats = performanceCollector.getFiringTimes(indexOfTransition);
+                final List<Double> censoredStats = performanceCollector.getCensoredFiringTimes(indexOfTransition);
+                final String trainingData = performanceCollector.getTrainingData(indexOfTransition);
+
+                if (!censoredStats.isEmpty()) {
+                    System.out.println("Transition " + originalTransition.getLabel() + " has " + censoredStats.size() + " censored and " + transitionStats.size() + " observed firings...");
+                }
+
+                final TransitionFittingMetrics metrics = new TransitionFittingMetrics(originalTransition.getLabel(), transitionStats.size(), censoredStats.size());
+                fittingMetrics.add(metrics);
+                fittings.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        metrics.start();
+                        String message = addTimingInformationToTransition(newTimedTransition, transitionStats, censoredStats, mineConfig, meanTraceFitness, maxTraceDuration);
+                        if (newTimedTransition.getDistribution() == null) {
+                            // keep distributions that were fitted already (e.g., with censored values)
+                            newTimedTransition.setDistribution(newTimedTransition.initDistribution(maxTraceDuration));
+                        }
+                        newTimedTransition.setTrainingData(trainingData);
+                        metrics.finish(newTimedTransition.getDistributionType());
+                        return message;
+                    }
+                }));
+            }
+
+            if (context != null) {
+                context.getProgress().setMaximum(fittings.size());
+            }
+            String feedbackMessage = "";
+            int progress = 0;
+            for (Future<String> fitting : fittings) {
+                feedbackMessage += fitting.get();
+                if (context != null) {
+                    context.getProgress().setValue(++progress);
+                }
+            }
+            return feedbackMessage;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Fitting the distributions was interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Fitting the distributions failed!", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int getFittingThreads(PerformanceEnricherConfig mineConfig) {
+        if (mineConfig.getType().equals(DistributionType.LOGSPLINE) && StochasticNetUtils.splinesSupported()) {
+            // the R engine must not be called concurrently
+            return 1;
+        }
+        return mineConfig.getFittingThreads();
+    }
+
+    /**
+     * @return the time spent fitting each transition (in the order of the transitions) in the last call of
+     * {@link #transform(PluginContext, Manifest, PerformanceEnricherConfig)}
+     */
+    public List<TransitionFittingMetrics> getFittingMetrics() {
+        return fittingMetrics;
+    }
+
     private boolean getIsDeterministic(List<Double> transitionStats, List<Double> censoredStats, double traceFitness) {
         assert (!transitionStats.isEmpty());
 
@@ -228,6 +295,8 @@ public class PerformanceEnricher {
         DistributionType typeToMine = config.getType();
         String message = "";
         newTimedTransition.setPriority(0);
+        // the distribution is fitted anew (see below, or from the parameters afterwards)
+        newTimedTransition.setDistribution(null);
 
 //		if (newTimedTransition.getLabel().equalsIgnoreCase("D")){
 ////			typeToMine = DistributionType.GAUSSIAN_KERNEL;
@@ -329,8 +398,14 @@ public class PerformanceEnricher {
                         }
                         try {
                             // try using better approximation capable to deal with right censored data
-                            RCensoredLogSplineDistribution censoredDistribution = new RCensoredLogSplineDistribution(maxTraceLength);
-                            censoredDistribution.initWithValues(StochasticNetUtils.getAsDoubleArray(perturbedStats), StochasticNetUtils.getAsDoubleArray(censoredStats));
+                            RealDistribution censoredDistribution;
+                            if (StochasticNetUtils.splinesSupported()) {
+                                censoredDistribution = new RCensoredLogSplineDistribution(maxTraceLength);
+                                ((RCensoredLogSplineDistribution) censoredDistribution).initWithValues(StochasticNetUtils.getAsDoubleArray(perturbedStats), StochasticNetUtils.getAsDoubleArray(censoredStats));
+                            } else {
+                                censoredDistribution = new LogSplineDistribution(maxTraceLength);
+                                ((LogSplineDistribution) censoredDistribution).initWithValues(StochasticNetUtils.getAsDoubleArray(perturbedStats), StochasticNetUtils.getAsDoubleArray(censoredStats));
+                            }
                             newTimedTransition.setDistribution(censoredDistribution);
                             double newMean = censoredDistribution.getNumericalMean();
                             if (Double.isInfinite(newMean) || newMean > 100) {
@@ -338,7 +413,7 @@ public class PerformanceEnricher {
                                 newMean = censoredDistribution.getNumericalMean();
                             }
                         } catch (NonConvergenceException e) {
-                            System.err.println("----> bias correction failed the " + (failCount++) + ". time!");
+                            System.err.println("----> bias correction failed the " + failCount.getAndIncrement() + ". time!");
                             message = "Fitting of logspline with " + transitionStats.size() + " observed values and " + censoredStats.size() + " censored values failed to converge.\n" +
                                     "Falling back to log-spline estimation for transition " + newTimedTransition.getLabel() + " based on the observed values. (creating bias)\n";
                         }
@@ -361,15 +436,8 @@ public class PerformanceEnricher {
         final TimeConstraintsPanel constraintPanel = getConstraintPanel(net);
         final TimeConstraints constraints = new TimeConstraints();
 
-        DistributionType[] supportedTypes = new DistributionType[]{DistributionType.NORMAL, DistributionType.LOGNORMAL, DistributionType.EXPONENTIAL, DistributionType.GAUSSIAN_KERNEL, DistributionType.BERNSTEIN_EXPOLYNOMIAL, DistributionType.HISTOGRAM};
-        if (StochasticNetUtils.splinesSupported()) {
-            supportedTypes = Arrays.copyOf(supportedTypes, supportedTypes.length + 1);
-            supportedTypes[supportedTypes.length - 1] = DistributionType.LOGSPLINE;
-        } else {
-            panel.add(new JLabel("<html><body><p>To enable spline smoothers, make sure you have a running R installation<br>" +
-                    "and the native jri-binary is accessible in your java.library.path!</p></body></html"));
-            panel.add(StochasticNetUtils.linkify("See also the documentation PDF", "https://svn.win.tue.nl/repos/prom/Documentation/Package_StochasticPetriNets.pdf", "PDF-Documentation of the StochasticPetriNets plugin"));
-        }
+        // log-splines are fitted in R, if available, and in Java otherwise
+        DistributionType[] supportedTypes = new DistributionType[]{DistributionType.NORMAL, DistributionType.LOGNORMAL, DistributionType.EXPONENTIAL, DistributionType.GAUSSIAN_KERNEL, DistributionType.BERNSTEIN_EXPOLYNOMIAL, DistributionType.HISTOGRAM, DistributionType.LOGSPLINE};
         JComboBox distTypeSelection = panel.addComboBox("Type of distributions", supportedTypes);
         JComboBox timeUnitSelection = panel.addComboBox("Time unit in model", TimeUnit.values());
         JButton advancedTimeConstraintButton = new JButton("advanced settings");
@@ -23,6 +23,17 @@ public class PerformanceEnricherConfig {
 
     private TimeConstraints constraints;
 
+    /**
+     * the number of threads that fit the distributions of the transitions
+     */
+    private int fittingThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * the number of threads that replay the cases to collect the performance data (the collected data does not
+     * depend on it, but the log must support concurrent reads)
+     */
+    private int collectingThreads = 1;
+
     public PerformanceEnricherConfig(DistributionType distType, TimeUnit timeUnit, ExecutionPolicy executionPolicy, File correlationMatrixFile) {
         this(distType, timeUnit, executionPolicy, correlationMatrixFile, true);
     }
@@ -87,4 +98,26 @@ public class PerformanceEnricherConfig {
         this.constraints = constraints;
     }
 
+    public int getFittingThreads() {
+        return fittingThreads;
+    }
+
+    public void setFittingThreads(int fittingThreads) {
+        if (fittingThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
+        this.fittingThreads = fittingThreads;
+    }
+
+    public int getCollectingThreads() {
+        return collectingThreads;
+    }
+
+    public void setCollectingThreads(int collectingThreads) {
+        if (collectingThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
+        this.collectingThreads = collectingThreads;
+    }
+
 }
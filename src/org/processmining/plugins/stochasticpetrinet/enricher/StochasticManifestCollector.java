@@ -1,6 +1,6 @@
 package org.processmining.plugins.stochasticpetrinet.enricher;
 
-import cern.colt.Arrays;
+import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
@@ -25,6 +25,7 @@ import org.processmining.plugins.petrinet.manifestreplayresult.ManifestEvClassPa
 import org.processmining.plugins.stochasticpetrinet.analyzer.CaseStatistics;
 import org.processmining.plugins.stochasticpetrinet.analyzer.ReplayStep;
 import org.processmining.plugins.stochasticpetrinet.distribution.RCensoredLogSplineDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.RLogSplineDistribution;
 import org.processmining.plugins.stochasticpetrinet.enricher.optimizer.GradientDescent;
 import org.processmining.plugins.stochasticpetrinet.enricher.optimizer.MarkingBasedSelectionWeightCostFunction;
 
@@ -32,6 +33,11 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Simple analyzer for a manifest based replay.
@@ -81,29 +87,16 @@ public class StochasticManifestCollector {
      */
     protected Map<Integer, List<Double>> censoredTimes;
 
-    /**
-     * Stores the age of a transition in model time units since the last sampling period
-     */
-    protected Map<Integer, Double> ageVariables;
-
     /**
      * Collect for each trace the log-likelihood and other statistics according to a given probabilistic model.
      */
     private Map<Integer, CaseStatistics> caseStatisticsPerTrace;
 
 
-    /*******************************************************
-     * Attention: this helper (producerOfToken) assumes 1-boundedness!
-     *
-     * assigns to each marked place the replay step that created the token.
-     * Imagine a net where each timed transition has a color and paints tokens
-     * that it creates with that color.
-     * We can use this color to identify the last step and its timed transition (of which the timing
-     * behavior depends and create a dependency graph just like a Bayesian network.
-     *
-     * Does not store immediate transitions.
-     *******************************************************/
-    Map<Integer, Set<ReplayStep>> producerOfToken;
+    /**
+     * Replay steps (with their dependencies) are only needed for the {@link CaseStatistics} of {@link StochasticNet}s.
+     */
+    private boolean trackingReplaySteps;
 
     protected ManifestEvClassPattern manifest;
 
@@ -120,6 +113,23 @@ public class StochasticManifestCollector {
     protected TIntObjectHashMap<short[]> encodedTrans2Pred;
     protected TIntObjectHashMap<short[]> encodedTrans2Succ;
 
+    /**
+     * the input places of each transition (the places with a non-zero entry in {@link #encodedTrans2Pred})
+     */
+    private int[][] transInputPlaces;
+    /**
+     * the places whose tokens change when a transition fires
+     */
+    private int[][] transChangedPlaces;
+    /**
+     * the transitions that have the place as input place (their enabledness depends on the tokens in the place)
+     */
+    private int[][] placeConsumers;
+    /**
+     * the weights of the places in the hash of a marking (see {@link MarkingSelections#getHash(short[], long[])})
+     */
+    private long[] placeHashes;
+
     /**
      * indexed by the case id, these arrays contain the durations (time units) of the individual transitions
      */
@@ -133,23 +143,17 @@ public class StochasticManifestCollector {
      * the transitions are indexed by their encoded id used in the parent class's {@link #getTrans2Idx()}
      * the values in the array are the counts for the different observed next transitions.
      */
-    protected Map<String, int[]> markingBasedSelections;
-
-    /**
-     * Stores the longest trace's duration in time units of the model
-     */
-    protected double longestTrace = 0;
+    protected MarkingSelections markingBasedSelections;
 
     /**
-     * Stores the transitions that are enabled in the current marking.
+     * the string-keyed view of the {@link #markingBasedSelections} (created on demand)
      */
-    private Set<Integer> currentlyEnabled;
+    private Map<String, int[]> markingBasedSelectionsMap;
 
     /**
-     * Stores the transitions that were disabled by the current transition firing.
-     * Used for updating these in enabling-memory mode.
+     * Stores the longest trace's duration in time units of the model
      */
-    private Set<Integer> disabledTransitions;
+    protected double longestTrace = 0;
 
     /**
      * {@link ExecutionPolicy} of the net for which the performance is to be collected
@@ -165,22 +169,15 @@ public class StochasticManifestCollector {
      */
     private DescriptiveStatistics fitnessStatistic;
 
-    private boolean debugMessageShown;
-
     public StochasticManifestCollector(ManifestEvClassPattern manifest, PerformanceEnricherConfig config) {
         this.manifest = manifest;
         this.executionPolicy = config.getPolicy();
         this.config = config;
-        this.currentlyEnabled = new HashSet<Integer>();
-        this.ageVariables = new HashMap<Integer, Double>();
         this.firingTimes = new HashMap<Integer, List<Double>>();
         this.censoredTimes = new HashMap<Integer, List<Double>>();
-        this.markingBasedSelections = new HashMap<String, int[]>();
         this.caseStatisticsPerTrace = new HashMap<Integer, CaseStatistics>();
         this.fitnessStatistic = new DescriptiveStatistics();
 
-        this.debugMessageShown = false;
-
         // init transitions
         PetrinetGraph net = manifest.getNet();
         List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
@@ -237,16 +234,71 @@ public class StochasticManifestCollector {
                 encodedTrans2Succ.put(i, newOut);
             }
         }
+        encodeArcs(transSize, placeSize);
+        this.markingBasedSelections = new MarkingSelections(transSize);
+        this.trackingReplaySteps = net instanceof StochasticNet;
+    }
+
+    /**
+     * Stores the arcs of the encoded net as sparse lists, such that a firing only needs to look at the changed places
+     * and the transitions that consume from them.
+     */
+    private void encodeArcs(int transSize, int placeSize) {
+        transInputPlaces = new int[transSize][];
+        transChangedPlaces = new int[transSize][];
+        List<List<Integer>> consumers = new ArrayList<List<Integer>>();
+        for (int place = 0; place < placeSize; place++) {
+            consumers.add(new ArrayList<Integer>());
+        }
+        for (int tId = 0; tId < transSize; tId++) {
+            short[] pred = encodedTrans2Pred.get(tId);
+            short[] succ = encodedTrans2Succ.get(tId);
+            List<Integer> inputs = new ArrayList<Integer>();
+            List<Integer> changed = new ArrayList<Integer>();
+            for (int place = 0; place < placeSize; place++) {
+                boolean input = pred != null && pred[place] != 0;
+                if (input) {
+                    inputs.add(place);
+                    consumers.get(place).add(tId);
+                }
+                if (input || (succ != null && succ[place] != 0)) {
+                    changed.add(place);
+                }
+            }
+            transInputPlaces[tId] = toArray(inputs);
+            transChangedPlaces[tId] = toArray(changed);
+        }
+        placeConsumers = new int[placeSize][];
+        for (int place = 0; place < placeSize; place++) {
+            placeConsumers[place] = toArray(consumers.get(place));
+        }
+        placeHashes = createPlaceHashes(placeSize);
+    }
+
+    /**
+     * @return the weights of the places in the hashes of the markings (markings with equal hashes are still
+     * told apart by their tokens, see {@link MarkingSelections})
+     */
+    protected long[] createPlaceHashes(int placeCount) {
+        return MarkingSelections.getPlaceHashes(placeCount);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
     }
 
     public void collectDataFromManifest(XLog enrichedLog) {
         // performance calculation
-        int[] cases = manifest.getCasePointers();
+        final int[] cases = manifest.getCasePointers();
 
         // init table for case-based transition times (to look for dependencies and other analyses)
         transitionDurationsPerCase = new double[cases.length][];
 
-        this.debugMessageShown = false;
+        this.markingBasedSelectionsMap = null;
 
         XLog log = manifest.getLog();
         if (enrichedLog != null) {
@@ -257,124 +309,80 @@ public class StochasticManifestCollector {
             trainingDataHeader = RELATIVE_DURATION + DELIMITER + SYSTEM_LOAD + DELIMITER + TIMESTAMP;
         }
 
-        for (int i = 0; i < cases.length; i++) {
-            producerOfToken = new HashMap<Integer, Set<ReplayStep>>();
-
-            Pair<Long, Long> caseBounds = new Pair<Long, Long>(-1l, -1l);
-
-            if (cases[i] >= 0) {
-                // create initial marking
-                short[] marking = constructEncInitMarking(manifest.getInitMarking());
-                // reset last firing time
-                long lastFiringTime = Long.MIN_VALUE;
-                ageVariables.clear();
-
-                // add
-                transitionDurationsPerCase[i] = new double[idx2Trans.length];
-                java.util.Arrays.fill(transitionDurationsPerCase[i], Double.NaN);
-
-                // create trace iterator
-                Iterator<XEvent> it = log.get(i).iterator();
-
-
-                // now, iterate through all manifests for the case
-                int[] man = manifest.getManifestForCase(i);
-                int stepsInAlignment = 0;
-                int synchronousAndInvisibleMoves = 0;
-                int currIdx = 0;
-                while (currIdx < man.length) {
-                    if (man[currIdx] == Manifest.MOVELOG) {
-                        XEvent currEvent = it.next();
-                        long timeStamp = XTimeExtension.instance().extractTimestamp(currEvent).getTime();
-                        caseBounds = updateCaseBounds(timeStamp, caseBounds);
-                        // ignore for now... TODO: maybe use logmoves too
-                        currIdx++;
-                        stepsInAlignment++;
-                    } else if (man[currIdx] == Manifest.MOVEMODEL) {
-                        double time = Double.NaN;
-                        if (idx2Trans[man[currIdx + 1]].isInvisible()) {
-                            synchronousAndInvisibleMoves++;
-                            time = 0; // assume that invisible transitions are immediate
-                            int encTrans = man[currIdx + 1];
-                            String line = "";
-                            if (trainingDataHeader != null) {
-                                long firingTimeEstimate = lastFiringTime;
-                                if (firingTimeEstimate == Long.MIN_VALUE) {
-                                    // use first event's timestamp as an estimate (we don't exactly know when the process started)
-                                    firingTimeEstimate = XTimeExtension.instance().extractTimestamp(log.get(i).get(0)).getTime();
-                                }
-                                // the training line will be 0 duration; system load ; the last time stamp
-                                line = "0" + DELIMITER + ((XAttributeDiscrete) log.get(i).get(0).getAttributes().get(LoadAnnotationPlugin.CONTEXT_LOAD)).getValue() + DELIMITER + lastFiringTime;
-                                addTrainingDataLine(trainingDataHeader, encTrans, line);
-                            }
-
-                        }
-                        updateMarking(marking, man[currIdx + 1], time, lastFiringTime, i, null);
-                        currIdx += 2;
-                        stepsInAlignment++;
-                    } else if (man[currIdx] == Manifest.MOVESYNC) {
-                        // shared variable
-                        XEvent currEvent = it.next();
-                        // extract time information
-                        long currEventTime = XTimeExtension.instance().extractTimestamp(currEvent).getTime();
-                        caseBounds = updateCaseBounds(currEventTime, caseBounds);
-                        long timeSpentInMarking = 0;
-                        if (lastFiringTime != Long.MIN_VALUE) {
-                            timeSpentInMarking = currEventTime - lastFiringTime;
-                        }
-                        lastFiringTime = currEventTime;
-                        int encTrans = manifest.getEncTransOfManifest(man[currIdx + 1]);
-                        String line = "";
-                        if (trainingDataHeader != null) {
-                            line += ((XAttributeDiscrete) currEvent.getAttributes().get(LoadAnnotationPlugin.CONTEXT_LOAD)).getValue();
-                        }
-                        line = updateMarking(marking, encTrans, timeSpentInMarking / config.getUnitFactor(), currEventTime, i, line);
-                        addTrainingDataLine(trainingDataHeader, encTrans, line);
-
-                        currIdx += 2;
-                        stepsInAlignment++;
-                        synchronousAndInvisibleMoves++;
-                    }
-                }
-                double traceDurationInUnits = (caseBounds.getSecond() - caseBounds.getFirst()) / config.getUnitFactor();
-                longestTrace = Math.max(longestTrace, traceDurationInUnits);
-                fitnessStatistic.addValue(synchronousAndInvisibleMoves / (double) stepsInAlignment);
-                // after every replay, we collect the age variables:
-                for (Integer transitionId : ageVariables.keySet()) {
-                    censoredTimes.get(transitionId).add(ageVariables.get(transitionId));
-                }
-                ageVariables.clear();
-
-
-                // backward pass through all steps to connect dependency structure:
-                if (caseStatisticsPerTrace.containsKey(i)) {
-                    CaseStatistics cs = caseStatisticsPerTrace.get(i);
-                    cs.setCaseDuration(traceDurationInUnits);
-                    for (int step = cs.getReplaySteps().size() - 1; step >= 0; step--) {
-                        ReplayStep replayStep = cs.getReplaySteps().get(step);
-                        Set<ReplayStep> precedingReplaySteps = new HashSet<ReplayStep>();
-                        precedingReplaySteps.addAll(replayStep.parents);
-                        int parentPosition = step - 1;
-                        while (parentPosition >= 0 && precedingReplaySteps.size() > 0) {
-                            ReplayStep previousStep = cs.getReplaySteps().get(parentPosition);
-                            if (precedingReplaySteps.contains(previousStep)) {
-                                previousStep.children.add(replayStep);
-                                precedingReplaySteps.remove(previousStep);
-                            }
-                            parentPosition--;
-                        }
+        // the cases are independent: each thread replays a consecutive range of cases
+        int partitions = Math.max(1, Math.min(getCollectingThreads(), cases.length));
+        if (partitions == 1) {
+            CaseCollector collector = new CaseCollector();
+            collector.collect(cases, log, trainingDataHeader, 0, cases.length);
+            addAll(collector, trainingDataHeader);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<CaseCollector>> futures = new ArrayList<Future<CaseCollector>>();
+            final XLog replayedLog = log;
+            final String header = trainingDataHeader;
+            for (int partition = 0; partition < partitions; partition++) {
+                final int fromCase = (int) ((long) cases.length * partition / partitions);
+                final int toCase = (int) ((long) cases.length * (partition + 1) / partitions);
+                futures.add(executor.submit(new Callable<CaseCollector>() {
+                    public CaseCollector call() {
+                        CaseCollector collector = new CaseCollector();
+                        collector.collect(cases, replayedLog, header, fromCase, toCase);
+                        return collector;
                     }
+                }));
+            }
+            // merge in the order of the cases, such that the collected data is the same as in a sequential run
+            for (Future<CaseCollector> future : futures) {
+                addAll(future.get(), trainingDataHeader);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Collecting the performance data was interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Collecting the performance data failed!", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of threads that replay the cases (see {@link PerformanceEnricherConfig#getCollectingThreads()}),
+     * or 1, if the replay evaluates densities of distributions in R (which must not be called concurrently)
+     */
+    private int getCollectingThreads() {
+        if (trackingReplaySteps) {
+            for (Transition t : idx2Trans) {
+                if (t instanceof TimedTransition && ((TimedTransition) t).getDistribution() instanceof RLogSplineDistribution) {
+                    return 1;
                 }
             }
         }
+        return config.getCollectingThreads();
     }
 
-    protected void addTrainingDataLine(String trainingDataHeader, int encTrans, String line) {
-        if (trainingDataHeader != null && line != null) {
-            if (transitionTrainingDataStrings[encTrans] == null) {
-                transitionTrainingDataStrings[encTrans] = new StringBuilder(trainingDataHeader).append("\n");
+    /**
+     * Appends the data that was collected on the subsequent cases.
+     */
+    private void addAll(CaseCollector collector, String trainingDataHeader) {
+        for (int tId = 0; tId < idx2Trans.length; tId++) {
+            firingTimes.get(tId).addAll(collector.firingTimes.get(tId));
+            censoredTimes.get(tId).addAll(collector.censoredTimes.get(tId));
+            if (collector.trainingData[tId] != null) {
+                if (transitionTrainingDataStrings[tId] == null) {
+                    transitionTrainingDataStrings[tId] = new StringBuilder(trainingDataHeader).append("\n");
+                }
+                transitionTrainingDataStrings[tId].append(collector.trainingData[tId]);
             }
-            transitionTrainingDataStrings[encTrans].append(line).append("\n");
+        }
+        markingBasedSelections.addAll(collector.markingBasedSelections);
+        caseStatisticsPerTrace.putAll(collector.caseStatisticsPerTrace);
+        longestTrace = Math.max(longestTrace, collector.longestTrace);
+        for (int i = 0; i < collector.fitnessValues.size(); i++) {
+            fitnessStatistic.addValue(collector.fitnessValues.get(i));
         }
     }
 
@@ -388,220 +396,18 @@ public class StochasticManifestCollector {
         return new Pair<Long, Long>(start, end);
     }
 
-    /**
-     * @param marking
-     * @param encTrans
-     * @param timeSpentInMarking the relative duration (in time units of the net)
-     * @param timestamp          the absolute firing time of the transition (unix time stamp starting 1970)
-     * @param caseId
-     * @return String line to add
-     */
-    private String updateMarking(short[] marking, int encTrans, double timeSpentInMarking, long timestamp, int caseId, String data) {
-
-        String line = null;
-
-        // find competing transitions:
-        short[] markingBefore = marking.clone();
-
-        if (timeSpentInMarking < 0) {
-            System.out.println("Debug me! time should not be < 0!");
-        }
-        Set<ReplayStep> predecessorTimedTransitions = new HashSet<ReplayStep>();
-        currentlyEnabled = getConcurrentlyEnabledTransitions(marking);
-        ReplayStep currentStep = new ReplayStep(null, timeSpentInMarking, 0.0, predecessorTimedTransitions);
-        fireTransitionInMarking(marking, encTrans, predecessorTimedTransitions, currentStep);
-        Set<Integer> afterwardsEnabled = getConcurrentlyEnabledTransitions(marking);
-
-        // collect conflicting transitions that get disabled by this transition firing
-        disabledTransitions = new HashSet<Integer>();
-        for (Integer enabledBefore : currentlyEnabled) {
-            if (enabledBefore != encTrans && !afterwardsEnabled.contains(enabledBefore)) {
-                disabledTransitions.add(enabledBefore);
-            }
-        }
-
-        if (!Double.isNaN(timeSpentInMarking)) {
-            // we know that (0, or more) time passed! update transition ages of enabled transitions, if applicable
-            if (executionPolicy.equals(ExecutionPolicy.GLOBAL_PRESELECTION)) {
-                // add the time spent in the marking to the sole active transition:
-                // don't use transition ages
-            } else if (executionPolicy.equals(ExecutionPolicy.RACE_RESAMPLING)) {
-                // add the time spent in the marking to the sole active transition:
-//				firingTimes.get(encTrans).add(timeSpentInMarking);
-//				transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking;
-                // add right-censored values for all the other enabled transitions in this marking:
-                if (timeSpentInMarking > 0) {    // ignore vanishing markings of immediate transitions
-                    for (Integer enabledBefore : currentlyEnabled) {
-                        if (enabledBefore != encTrans) {
-                            censoredTimes.get(enabledBefore).add(timeSpentInMarking);
-                            line = "> " + timeSpentInMarking + DELIMITER + data;
-                        }
-                    }
-                }
-                // don't use transition ages
-            } else {
-                // either race - enabling, or race - age (minor difference: reset age for disabled transitions, only)
-
-                // get enabled time of transition:
-                double transitionEnabledTime = 0;
-                if (ageVariables.containsKey(encTrans)) {
-                    transitionEnabledTime = ageVariables.remove(encTrans);
-                }
-                if (timeSpentInMarking > 0) {
-                    for (Integer enabled : currentlyEnabled) {
-                        // update other enabled transition ages:
-                        if (enabled != encTrans) {
-                            if (!ageVariables.containsKey(enabled)) {
-                                ageVariables.put(enabled, 0.);
-                            }
-                            ageVariables.put(enabled, ageVariables.get(enabled) + timeSpentInMarking);
-                        }
-                    }
-                }
-                if (executionPolicy.equals(ExecutionPolicy.RACE_ENABLING_MEMORY)) {
-                    for (Integer disabled : disabledTransitions) {
-                        Transition t = idx2Trans[disabled];
-                        if (!t.isInvisible()) { // invisible transitions are by default immediate
-                            Double censoredTime = ageVariables.remove(disabled);
-                            if (censoredTime != null && censoredTime > 0) { // ignore losing against immediate transitions
-                                // only add to censored times, if transition had some progress before losing against the current transition
-                                censoredTimes.get(disabled).add(censoredTime);
-                            }
-                        }
-                    }
-                }
-                timeSpentInMarking += transitionEnabledTime;
-//				firingTimes.get(encTrans).add(timeSpentInMarking+transitionEnabledTime);
-//				transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking+transitionEnabledTime;
-            }
-            firingTimes.get(encTrans).add(timeSpentInMarking);
-            transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking;
-            line = timeSpentInMarking + DELIMITER + data + DELIMITER + timestamp;
-
-            if (manifest.getNet() instanceof StochasticNet) {
-                // get distribution:
-                TimedTransition timedTransition = null;
-                for (Transition t : manifest.getNet().getTransitions()) {
-                    if (getEncOfTrans(t) == encTrans) {
-                        if (t instanceof TimedTransition) {
-                            timedTransition = (TimedTransition) t;
-                        }
-                    }
-                }
-                if (timedTransition != null && !timedTransition.isInvisible()) {
-                    if (!caseStatisticsPerTrace.containsKey(caseId)) {
-                        caseStatisticsPerTrace.put(caseId, new CaseStatistics(caseId));
-                    }
-                    CaseStatistics caseStats = caseStatisticsPerTrace.get(caseId);
-                    double density = 1;
-                    if (timedTransition.getDistributionType().equals(DistributionType.IMMEDIATE)) {
-                        Set<Integer> conflictingTransitions = getConflictingTransitions(markingBefore, encTrans);
-                        double chanceToChooseTransitionOfConflictingTransitions = getChanceToChooseTransition(encTrans, conflictingTransitions);
-                        if (chanceToChooseTransitionOfConflictingTransitions < 1) {
-                            caseStats.makeChoice(chanceToChooseTransitionOfConflictingTransitions);
-                        }
-                    } else {
-                        density = timedTransition.getDistribution().density(timeSpentInMarking);
-                        double currentLogLikelihoodValue = caseStats.getLogLikelihood() + Math.log(density);
-                        caseStats.setLogLikelihood(currentLogLikelihoodValue);
-//						logLikelihoodPerTrace.put(caseId, caseStats);
-                    }
-                    if (density == 0 && !debugMessageShown) {
-                        // the model is not
-                        System.out.println("Probability 0! The model is not representing the data. It will be impossible to compute likelihood of the data given the model.");
-                        debugMessageShown = true;
-                    }
-                    currentStep.density = density;
-                    currentStep.transition = timedTransition;
-                    caseStats.addReplayStep(currentStep);
-                }
-            }
-        }
-        return line;
-    }
-
-    private double getChanceToChooseTransition(int encTrans, Set<Integer> conflictingTransitions) {
+    private double getChanceToChooseTransition(int encTrans, BitSet conflictingTransitions) {
         double weight = ((TimedTransition) idx2Trans[encTrans]).getWeight();
         double otherWeights = 0;
-        for (Integer transitionId : conflictingTransitions) {
+        for (int transitionId = conflictingTransitions.nextSetBit(0); transitionId >= 0; transitionId = conflictingTransitions.nextSetBit(transitionId + 1)) {
             otherWeights += ((TimedTransition) idx2Trans[transitionId]).getWeight();
         }
         return weight / (weight + otherWeights);
     }
 
-    private void fireTransitionInMarking(short[] marking, int encTrans, Set<ReplayStep> predecessorTimedTransitions, ReplayStep thisStep) {
-        addMarkingTransitionCounter(marking, encTrans);
-        // update marking
-        short[] pred = encodedTrans2Pred.get(encTrans);
-        if (pred != null) {
-            // decrease the value
-            for (int place = 0; place < pred.length; place++) {
-                if (pred[place] != 0) {
-                    marking[place] -= pred[place];
-                    if (producerOfToken.containsKey(place)) {
-                        predecessorTimedTransitions.addAll(producerOfToken.remove(place));
-                    }
-                }
-            }
-        }
-        short[] succ = encodedTrans2Succ.get(encTrans);
-        if (succ != null) {
-            // increase the value
-            for (int place = 0; place < succ.length; place++) {
-                if (succ[place] != 0) {
-                    marking[place] += succ[place];
-                    if (idx2Trans[encTrans] instanceof TimedTransition) {
-                        TimedTransition tt = (TimedTransition) idx2Trans[encTrans];
-                        if (!tt.getDistributionType().equals(DistributionType.IMMEDIATE)) {
-                            Set<ReplayStep> producingSteps = new HashSet<ReplayStep>();
-                            producingSteps.add(thisStep);
-                            producerOfToken.put(place, producingSteps);
-                        } else {
-                            // pass on all predecessors to following marking
-                            producerOfToken.put(place, predecessorTimedTransitions);
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Adds 1 to the firing counts of a transition in a marking.
-     *
-     * @param marking  the marking in which the transition fired
-     * @param encTrans the transition that fired
-     */
-    private void addMarkingTransitionCounter(short[] marking, int encTrans) {
-        // sanity check:
-        for (short s : marking) {
-            if (s < 0) {
-                System.out.println("Debug me! Marking < 0!");
-            }
-        }
-
-        String markingString = Arrays.toString(marking);
-        if (!markingBasedSelections.containsKey(markingString)) {
-            markingBasedSelections.put(markingString, new int[idx2Trans.length]);
-        }
-        markingBasedSelections.get(markingString)[encTrans]++;
-//		short[] markingInMap = null;
-//		for (short[] m : markingBasedSelections.keySet()){
-//			boolean equals = true;
-//			for (int i= 0; i < m.length; i++){
-//				equals = equals && marking[i] == m[i];
-//			}
-//			if(equals){
-//				markingInMap = m;
-//			}
-//		}
-//		if (markingInMap == null){
-//			markingInMap = marking;
-//		}
-//		if (!markingBasedSelections.containsKey(markingInMap)){
-//			markingBasedSelections.put(marking, new int[idx2Trans.length]);
-//		}
-//		markingBasedSelections.get(markingInMap)[encTrans]++;
+    @SuppressWarnings("unchecked")
+    private static Set<ReplayStep>[] createProducerTable(int placeCount) {
+        return new Set[placeCount];
     }
 
     private short[] constructEncInitMarking(Marking initMarking) {
@@ -613,51 +419,41 @@ public class StochasticManifestCollector {
     }
 
     /**
-     * Finds all transitions that are enabled in the given marking and returns
-     * a set of their indices (as used in {@link PerfCounter}).
+     * Checks, whether all input places of the transition are marked with enough tokens.
      *
-     * @param marking a marking containing the number of tokens on each place?
-     * @return
+     * @param marking a marking containing the number of tokens on each place
+     * @param tId     the encoded transition id (as used in {@link PerfCounter})
      */
-    private Set<Integer> getConcurrentlyEnabledTransitions(short[] marking) {
-        // go through all transitions and check, whether all their
-        // input places are set within the marking
-        Set<Integer> enabledTransitions = new HashSet<Integer>();
-        for (int tId = 0; tId < idx2Trans.length; tId++) { // tId is encoded transition id
-            // go through all input places of the transition:
-            short[] pred = this.encodedTrans2Pred.get(tId);
-            boolean transitionIsEnabled = true;
-            for (int i = 0; i < pred.length; i++) {
-                transitionIsEnabled = transitionIsEnabled && marking[i] >= pred[i];
-            }
-            if (transitionIsEnabled) {
-                enabledTransitions.add(tId);
+    private boolean isEnabled(short[] marking, int tId) {
+        short[] pred = this.encodedTrans2Pred.get(tId);
+        for (int place : transInputPlaces[tId]) {
+            if (marking[place] < pred[place]) {
+                return false;
             }
         }
-        return enabledTransitions;
+        return true;
     }
 
     /**
      * The conflicting transitions are those that are enabled in the marking, and share predecessors (inputs)
      * with the current transition that is about to fire.
      *
-     * @param marking    short[] indicating which places have (a) token(s).
-     * @param transition the transition that is about to fire.
-     * @return Set of conflicting transitions
+     * @param enabledTransitions the transitions enabled in the marking
+     * @param transition         the transition that is about to fire.
+     * @return the conflicting transitions
      */
-    private Set<Integer> getConflictingTransitions(short[] marking, int transition) {
-        Set<Integer> conflictingTransitions = new HashSet<Integer>();
+    private BitSet getConflictingTransitions(BitSet enabledTransitions, int transition) {
+        BitSet conflictingTransitions = new BitSet(idx2Trans.length);
         short[] predecessorsOfTransition = encodedTrans2Pred.get(transition);
-        Set<Integer> enabledTransitions = getConcurrentlyEnabledTransitions(marking);
-        for (int tId : enabledTransitions) {
+        for (int tId = enabledTransitions.nextSetBit(0); tId >= 0; tId = enabledTransitions.nextSetBit(tId + 1)) {
             boolean conflicting = false;
             if (tId != transition) { // ignore own transition
                 short[] predecessorsOfOtherTransition = encodedTrans2Pred.get(tId);
-                for (int i = 0; i < predecessorsOfTransition.length; i++) {
+                for (int i : transInputPlaces[transition]) {
                     conflicting = conflicting || (predecessorsOfTransition[i] > 0 && predecessorsOfOtherTransition[i] > 0);
                 }
                 if (conflicting) {
-                    conflictingTransitions.add(tId);
+                    conflictingTransitions.set(tId);
                 }
             }
         }
@@ -668,8 +464,14 @@ public class StochasticManifestCollector {
         return fitnessStatistic.getMean();
     }
 
+    /**
+     * @return the firing counts of the transitions by the string representation of the markings
+     */
     public Map<String, int[]> getMarkingBasedSelections() {
-        return markingBasedSelections;
+        if (markingBasedSelectionsMap == null) {
+            markingBasedSelectionsMap = markingBasedSelections.toMap();
+        }
+        return markingBasedSelectionsMap;
     }
 
     public int getEncOfTrans(Transition t) {
@@ -746,4 +548,428 @@ public class StochasticManifestCollector {
         }
         return header;
     }
+
+    /**
+     * Replays a range of cases and collects their data separately (such that ranges can be replayed in parallel).
+     * The replay state of the current case is reset for each case.
+     */
+    private class CaseCollector {
+
+        private final Map<Integer, List<Double>> firingTimes;
+        private final Map<Integer, List<Double>> censoredTimes;
+        private final Map<Integer, CaseStatistics> caseStatisticsPerTrace;
+        private final MarkingSelections markingBasedSelections;
+        /**
+         * the lines of the training data of each transition (without header)
+         */
+        private final StringBuilder[] trainingData;
+        /**
+         * the fitness values of the cases in the order of the cases
+         */
+        private final TDoubleArrayList fitnessValues;
+        private double longestTrace = 0;
+
+        /**
+         * Stores the age of a transition in model time units since the last sampling period
+         * (for the transitions in {@link #agedTransitions})
+         */
+        private double[] ageVariables;
+
+        /**
+         * the transitions that have an age in {@link #ageVariables}
+         */
+        private BitSet agedTransitions;
+
+        /*******************************************************
+         * Attention: this helper (producerOfToken) assumes 1-boundedness!
+         *
+         * assigns to each marked place the replay step that created the token.
+         * Imagine a net where each timed transition has a color and paints tokens
+         * that it creates with that color.
+         * We can use this color to identify the last step and its timed transition (of which the timing
+         * behavior depends and create a dependency graph just like a Bayesian network.
+         *
+         * Does not store immediate transitions.
+         *
+         * Indexed by the encoded places, only used if the replay steps are tracked (see {@link StochasticManifestCollector#trackingReplaySteps}).
+         *******************************************************/
+        private Set<ReplayStep>[] producerOfToken;
+
+        /**
+         * Stores the transitions that are enabled in the current marking (updated with each firing).
+         */
+        private BitSet enabled;
+
+        /**
+         * Stores the transitions that were enabled in the marking before the current transition firing.
+         */
+        private BitSet currentlyEnabled;
+
+        /**
+         * Stores the transitions that were disabled by the current transition firing.
+         * Used for updating these in enabling-memory mode.
+         */
+        private BitSet disabledTransitions;
+
+        /**
+         * the hash of the current marking (updated with each firing)
+         */
+        private long markingHash;
+
+        private boolean debugMessageShown;
+
+        public CaseCollector() {
+            int transSize = idx2Trans.length;
+            this.firingTimes = new HashMap<Integer, List<Double>>();
+            this.censoredTimes = new HashMap<Integer, List<Double>>();
+            for (int i = 0; i < transSize; i++) {
+                firingTimes.put(i, new ArrayList<Double>());
+                censoredTimes.put(i, new ArrayList<Double>());
+            }
+            this.caseStatisticsPerTrace = new HashMap<Integer, CaseStatistics>();
+            this.markingBasedSelections = new MarkingSelections(transSize);
+            this.trainingData = new StringBuilder[transSize];
+            this.fitnessValues = new TDoubleArrayList();
+            this.ageVariables = new double[transSize];
+            this.agedTransitions = new BitSet(transSize);
+            this.enabled = new BitSet(transSize);
+            this.currentlyEnabled = new BitSet(transSize);
+            this.disabledTransitions = new BitSet(transSize);
+            this.debugMessageShown = false;
+        }
+
+        public void collect(int[] cases, XLog log, String trainingDataHeader, int fromCase, int toCase) {
+            for (int i = fromCase; i < toCase; i++) {
+                if (trackingReplaySteps) {
+                    producerOfToken = createProducerTable(idx2Place.length);
+                }
+
+                Pair<Long, Long> caseBounds = new Pair<Long, Long>(-1l, -1l);
+
+                if (cases[i] >= 0) {
+                    // create initial marking
+                    short[] marking = constructEncInitMarking(manifest.getInitMarking());
+                    initEnabledTransitions(marking);
+                    // reset last firing time
+                    long lastFiringTime = Long.MIN_VALUE;
+                    agedTransitions.clear();
+
+                    // add
+                    transitionDurationsPerCase[i] = new double[idx2Trans.length];
+                    java.util.Arrays.fill(transitionDurationsPerCase[i], Double.NaN);
+
+                    // create trace iterator
+                    Iterator<XEvent> it = log.get(i).iterator();
+
+
+                    // now, iterate through all manifests for the case
+                    int[] man = manifest.getManifestForCase(i);
+                    int stepsInAlignment = 0;
+                    int synchronousAndInvisibleMoves = 0;
+                    int currIdx = 0;
+                    while (currIdx < man.length) {
+                        if (man[currIdx] == Manifest.MOVELOG) {
+                            XEvent currEvent = it.next();
+                            long timeStamp = XTimeExtension.instance().extractTimestamp(currEvent).getTime();
+                            caseBounds = updateCaseBounds(timeStamp, caseBounds);
+                            // ignore for now... TODO: maybe use logmoves too
+                            currIdx++;
+                            stepsInAlignment++;
+                        } else if (man[currIdx] == Manifest.MOVEMODEL) {
+                            double time = Double.NaN;
+                            if (idx2Trans[man[currIdx + 1]].isInvisible()) {
+                                synchronousAndInvisibleMoves++;
+                                time = 0; // assume that invisible transitions are immediate
+                                int encTrans = man[currIdx + 1];
+                                String line = "";
+                                if (trainingDataHeader != null) {
+                                    long firingTimeEstimate = lastFiringTime;
+                                    if (firingTimeEstimate == Long.MIN_VALUE) {
+                                        // use first event's timestamp as an estimate (we don't exactly know when the process started)
+                                        firingTimeEstimate = XTimeExtension.instance().extractTimestamp(log.get(i).get(0)).getTime();
+                                    }
+                                    // the training line will be 0 duration; system load ; the last time stamp
+                                    line = "0" + DELIMITER + ((XAttributeDiscrete) log.get(i).get(0).getAttributes().get(LoadAnnotationPlugin.CONTEXT_LOAD)).getValue() + DELIMITER + lastFiringTime;
+                                    addTrainingDataLine(trainingDataHeader, encTrans, line);
+                                }
+
+                            }
+                            updateMarking(marking, man[currIdx + 1], time, lastFiringTime, i, null);
+                            currIdx += 2;
+                            stepsInAlignment++;
+                        } else if (man[currIdx] == Manifest.MOVESYNC) {
+                            // shared variable
+                            XEvent currEvent = it.next();
+                            // extract time information
+                            long currEventTime = XTimeExtension.instance().extractTimestamp(currEvent).getTime();
+                            caseBounds = updateCaseBounds(currEventTime, caseBounds);
+                            long timeSpentInMarking = 0;
+                            if (lastFiringTime != Long.MIN_VALUE) {
+                                timeSpentInMarking = currEventTime - lastFiringTime;
+                            }
+                            lastFiringTime = currEventTime;
+                            int encTrans = manifest.getEncTransOfManifest(man[currIdx + 1]);
+                            String line = "";
+                            if (trainingDataHeader != null) {
+                                line += ((XAttributeDiscrete) currEvent.getAttributes().get(LoadAnnotationPlugin.CONTEXT_LOAD)).getValue();
+                            }
+                            line = updateMarking(marking, encTrans, timeSpentInMarking / config.getUnitFactor(), currEventTime, i, line);
+                            addTrainingDataLine(trainingDataHeader, encTrans, line);
+
+                            currIdx += 2;
+                            stepsInAlignment++;
+                            synchronousAndInvisibleMoves++;
+                        }
+                    }
+                    double traceDurationInUnits = (caseBounds.getSecond() - caseBounds.getFirst()) / config.getUnitFactor();
+                    longestTrace = Math.max(longestTrace, traceDurationInUnits);
+                    fitnessValues.add(synchronousAndInvisibleMoves / (double) stepsInAlignment);
+                    // after every replay, we collect the age variables:
+                    for (int transitionId = agedTransitions.nextSetBit(0); transitionId >= 0; transitionId = agedTransitions.nextSetBit(transitionId + 1)) {
+                        censoredTimes.get(transitionId).add(ageVariables[transitionId]);
+                    }
+                    agedTransitions.clear();
+
+
+                    // backward pass through all steps to connect dependency structure:
+                    if (caseStatisticsPerTrace.containsKey(i)) {
+                        CaseStatistics cs = caseStatisticsPerTrace.get(i);
+                        cs.setCaseDuration(traceDurationInUnits);
+                        for (int step = cs.getReplaySteps().size() - 1; step >= 0; step--) {
+                            ReplayStep replayStep = cs.getReplaySteps().get(step);
+                            Set<ReplayStep> precedingReplaySteps = new HashSet<ReplayStep>();
+                            precedingReplaySteps.addAll(replayStep.parents);
+                            int parentPosition = step - 1;
+                            while (parentPosition >= 0 && precedingReplaySteps.size() > 0) {
+                                ReplayStep previousStep = cs.getReplaySteps().get(parentPosition);
+                                if (precedingReplaySteps.contains(previousStep)) {
+                                    previousStep.children.add(replayStep);
+                                    precedingReplaySteps.remove(previousStep);
+                                }
+                                parentPosition--;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void addTrainingDataLine(String trainingDataHeader, int encTrans, String line) {
+            if (trainingDataHeader != null && line != null) {
+                if (trainingData[encTrans] == null) {
+                    trainingData[encTrans] = new StringBuilder();
+                }
+                trainingData[encTrans].append(line).append("\n");
+            }
+        }
+
+        /**
+         * @param marking
+         * @param encTrans
+         * @param timeSpentInMarking the relative duration (in time units of the net)
+         * @param timestamp          the absolute firing time of the transition (unix time stamp starting 1970)
+         * @param caseId
+         * @return String line to add
+         */
+        private String updateMarking(short[] marking, int encTrans, double timeSpentInMarking, long timestamp, int caseId, String data) {
+
+            String line = null;
+
+            if (timeSpentInMarking < 0) {
+                System.out.println("Debug me! time should not be < 0!");
+            }
+            // find competing transitions:
+            currentlyEnabled.clear();
+            currentlyEnabled.or(enabled);
+            Set<ReplayStep> predecessorTimedTransitions = null;
+            ReplayStep currentStep = null;
+            if (trackingReplaySteps) {
+                predecessorTimedTransitions = new HashSet<ReplayStep>();
+                currentStep = new ReplayStep(null, timeSpentInMarking, 0.0, predecessorTimedTransitions);
+            }
+            fireTransitionInMarking(marking, encTrans, predecessorTimedTransitions, currentStep);
+
+            // collect conflicting transitions that get disabled by this transition firing
+            disabledTransitions.clear();
+            disabledTransitions.or(currentlyEnabled);
+            disabledTransitions.andNot(enabled);
+            disabledTransitions.clear(encTrans);
+
+            if (!Double.isNaN(timeSpentInMarking)) {
+                // we know that (0, or more) time passed! update transition ages of enabled transitions, if applicable
+                if (executionPolicy.equals(ExecutionPolicy.GLOBAL_PRESELECTION)) {
+                    // add the time spent in the marking to the sole active transition:
+                    // don't use transition ages
+                } else if (executionPolicy.equals(ExecutionPolicy.RACE_RESAMPLING)) {
+                    // add the time spent in the marking to the sole active transition:
+    //				firingTimes.get(encTrans).add(timeSpentInMarking);
+    //				transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking;
+                    // add right-censored values for all the other enabled transitions in this marking:
+                    if (timeSpentInMarking > 0) {    // ignore vanishing markings of immediate transitions
+                        for (int enabledBefore = currentlyEnabled.nextSetBit(0); enabledBefore >= 0; enabledBefore = currentlyEnabled.nextSetBit(enabledBefore + 1)) {
+                            if (enabledBefore != encTrans) {
+                                censoredTimes.get(enabledBefore).add(timeSpentInMarking);
+                                line = "> " + timeSpentInMarking + DELIMITER + data;
+                            }
+                        }
+                    }
+                    // don't use transition ages
+                } else {
+                    // either race - enabling, or race - age (minor difference: reset age for disabled transitions, only)
+
+                    // get enabled time of transition:
+                    double transitionEnabledTime = 0;
+                    if (agedTransitions.get(encTrans)) {
+                        transitionEnabledTime = ageVariables[encTrans];
+                        agedTransitions.clear(encTrans);
+                    }
+                    if (timeSpentInMarking > 0) {
+                        for (int enabled = currentlyEnabled.nextSetBit(0); enabled >= 0; enabled = currentlyEnabled.nextSetBit(enabled + 1)) {
+                            // update other enabled transition ages:
+                            if (enabled != encTrans) {
+                                if (!agedTransitions.get(enabled)) {
+                                    agedTransitions.set(enabled);
+                                    ageVariables[enabled] = 0;
+                                }
+                                ageVariables[enabled] += timeSpentInMarking;
+                            }
+                        }
+                    }
+                    if (executionPolicy.equals(ExecutionPolicy.RACE_ENABLING_MEMORY)) {
+                        for (int disabled = disabledTransitions.nextSetBit(0); disabled >= 0; disabled = disabledTransitions.nextSetBit(disabled + 1)) {
+                            Transition t = idx2Trans[disabled];
+                            if (!t.isInvisible()) { // invisible transitions are by default immediate
+                                if (agedTransitions.get(disabled)) {
+                                    agedTransitions.clear(disabled);
+                                    double censoredTime = ageVariables[disabled];
+                                    if (censoredTime > 0) { // ignore losing against immediate transitions
+                                        // only add to censored times, if transition had some progress before losing against the current transition
+                                        censoredTimes.get(disabled).add(censoredTime);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    timeSpentInMarking += transitionEnabledTime;
+    //				firingTimes.get(encTrans).add(timeSpentInMarking+transitionEnabledTime);
+    //				transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking+transitionEnabledTime;
+                }
+                firingTimes.get(encTrans).add(timeSpentInMarking);
+                transitionDurationsPerCase[caseId][encTrans] = timeSpentInMarking;
+                line = timeSpentInMarking + DELIMITER + data + DELIMITER + timestamp;
+
+                if (trackingReplaySteps) {
+                    // get distribution:
+                    TimedTransition timedTransition = null;
+                    if (idx2Trans[encTrans] instanceof TimedTransition) {
+                        timedTransition = (TimedTransition) idx2Trans[encTrans];
+                    }
+                    if (timedTransition != null && !timedTransition.isInvisible()) {
+                        if (!caseStatisticsPerTrace.containsKey(caseId)) {
+                            caseStatisticsPerTrace.put(caseId, new CaseStatistics(caseId));
+                        }
+                        CaseStatistics caseStats = caseStatisticsPerTrace.get(caseId);
+                        double density = 1;
+                        if (timedTransition.getDistributionType().equals(DistributionType.IMMEDIATE)) {
+                            BitSet conflictingTransitions = getConflictingTransitions(currentlyEnabled, encTrans);
+                            double chanceToChooseTransitionOfConflictingTransitions = getChanceToChooseTransition(encTrans, conflictingTransitions);
+                            if (chanceToChooseTransitionOfConflictingTransitions < 1) {
+                                caseStats.makeChoice(chanceToChooseTransitionOfConflictingTransitions);
+                            }
+                        } else {
+                            density = timedTransition.getDistribution().density(timeSpentInMarking);
+                            double currentLogLikelihoodValue = caseStats.getLogLikelihood() + Math.log(density);
+                            caseStats.setLogLikelihood(currentLogLikelihoodValue);
+    //						logLikelihoodPerTrace.put(caseId, caseStats);
+                        }
+                        if (density == 0 && !debugMessageShown) {
+                            // the model is not
+                            System.out.println("Probability 0! The model is not representing the data. It will be impossible to compute likelihood of the data given the model.");
+                            debugMessageShown = true;
+                        }
+                        currentStep.density = density;
+                        currentStep.transition = timedTransition;
+                        caseStats.addReplayStep(currentStep);
+                    }
+                }
+            }
+            return line;
+        }
+
+        /**
+         * Fires the transition, that is, updates the marking, its hash and the enabled transitions (only those that
+         * consume from the changed places).
+         *
+         * @param predecessorTimedTransitions collects the steps that produced the consumed tokens (only if replay steps are tracked)
+         * @param thisStep                    the step of the firing (only if replay steps are tracked)
+         */
+        private void fireTransitionInMarking(short[] marking, int encTrans, Set<ReplayStep> predecessorTimedTransitions, ReplayStep thisStep) {
+            addMarkingTransitionCounter(marking, encTrans);
+            // update marking
+            short[] pred = encodedTrans2Pred.get(encTrans);
+            if (pred != null) {
+                // decrease the value
+                for (int place : transInputPlaces[encTrans]) {
+                    marking[place] -= pred[place];
+                    markingHash -= pred[place] * placeHashes[place];
+                    if (marking[place] < 0) {
+                        System.out.println("Debug me! Marking < 0!");
+                    }
+                    if (trackingReplaySteps && producerOfToken[place] != null) {
+                        predecessorTimedTransitions.addAll(producerOfToken[place]);
+                        producerOfToken[place] = null;
+                    }
+                }
+            }
+            short[] succ = encodedTrans2Succ.get(encTrans);
+            if (succ != null) {
+                // increase the value
+                for (int place : transChangedPlaces[encTrans]) {
+                    if (succ[place] != 0) {
+                        marking[place] += succ[place];
+                        markingHash += succ[place] * placeHashes[place];
+                        if (trackingReplaySteps && idx2Trans[encTrans] instanceof TimedTransition) {
+                            TimedTransition tt = (TimedTransition) idx2Trans[encTrans];
+                            if (!tt.getDistributionType().equals(DistributionType.IMMEDIATE)) {
+                                Set<ReplayStep> producingSteps = new HashSet<ReplayStep>();
+                                producingSteps.add(thisStep);
+                                producerOfToken[place] = producingSteps;
+                            } else {
+                                // pass on all predecessors to following marking
+                                producerOfToken[place] = predecessorTimedTransitions;
+                            }
+                        }
+                    }
+                }
+            }
+            // only the transitions consuming from the changed places can change their enabledness
+            for (int place : transChangedPlaces[encTrans]) {
+                for (int tId : placeConsumers[place]) {
+                    enabled.set(tId, isEnabled(marking, tId));
+                }
+            }
+        }
+
+        /**
+         * Adds 1 to the firing counts of a transition in a marking.
+         *
+         * @param marking  the marking in which the transition fired
+         * @param encTrans the transition that fired
+         */
+        private void addMarkingTransitionCounter(short[] marking, int encTrans) {
+            markingBasedSelections.addFiring(marking, markingHash, encTrans);
+        }
+
+        /**
+         * Sets the hash and the enabled transitions of the initial marking of a case
+         * (they are updated incrementally with each firing).
+         */
+        private void initEnabledTransitions(short[] marking) {
+            markingHash = MarkingSelections.getHash(marking, placeHashes);
+            enabled.clear();
+            for (int tId = 0; tId < idx2Trans.length; tId++) {
+                enabled.set(tId, isEnabled(marking, tId));
+            }
+        }
+    }
 }
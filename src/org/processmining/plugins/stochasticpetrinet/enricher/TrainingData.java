@@ -0,0 +1,165 @@
+package org.processmining.plugins.stochasticpetrinet.enricher;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Columnar, time-indexed view on the training data of a transition
+ * (see {@link StochasticManifestCollector#getTrainingData(int)} for the textual format).
+ * <p>
+ * The entries are sorted by their timestamps and stored in primitive arrays.
+ * Prefix sums of the durations allow to compute the statistics of all entries observed before a given time
+ * (as needed for rolling forecasts) in O(log n).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class TrainingData {
+
+    private final long[] timestamps;
+    private final double[] durations;
+    private final double[] loads;
+
+    /**
+     * The durations are shifted by this value before summing them up to keep the variance numerically stable.
+     */
+    private final double shift;
+
+    /**
+     * sums (and sums of squares) of the shifted durations of the first i entries
+     */
+    private final double[] durationSums;
+    private final double[] durationSquareSums;
+
+    /**
+     * Parses the training data of a transition.
+     * The first line is a header, and each of the other lines contains
+     * RELATIVE_DURATION {@value StochasticManifestCollector#DELIMITER} SYSTEM_LOAD {@value StochasticManifestCollector#DELIMITER} TIMESTAMP
+     *
+     * @param trainingData the training data as one String (one entry per line)
+     * @return the parsed training data
+     */
+    public static TrainingData parse(String trainingData) {
+        String[] entries = trainingData.split("\n");
+        int size = Math.max(0, entries.length - 1);
+        long[] timestamps = new long[size];
+        double[] durations = new double[size];
+        double[] loads = new double[size];
+        // ignore header!
+        for (int i = 0; i < size; i++) {
+            String[] entryParts = entries[i + 1].split(StochasticManifestCollector.DELIMITER);
+            durations[i] = Double.valueOf(entryParts[0]);
+            loads[i] = Double.valueOf(entryParts[1]);
+            timestamps[i] = Long.valueOf(entryParts[2]);
+        }
+        return new TrainingData(timestamps, durations, loads);
+    }
+
+    /**
+     * @param timestamps the times of the entries (in any order)
+     * @param durations  the durations of the entries
+     * @param loads      the system loads of the entries
+     */
+    public TrainingData(final long[] timestamps, double[] durations, double[] loads) {
+        int size = timestamps.length;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // stable: entries with the same time stay in the order of the input
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(timestamps[o1], timestamps[o2]);
+            }
+        });
+        this.timestamps = new long[size];
+        this.durations = new double[size];
+        this.loads = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            this.timestamps[i] = timestamps[order[i]];
+            this.durations[i] = durations[order[i]];
+            this.loads[i] = loads[order[i]];
+            sum += durations[i];
+        }
+        this.shift = size > 0 ? sum / size : 0;
+        this.durationSums = new double[size + 1];
+        this.durationSquareSums = new double[size + 1];
+        for (int i = 0; i < size; i++) {
+            double shifted = this.durations[i] - shift;
+            durationSums[i + 1] = durationSums[i] + shifted;
+            durationSquareSums[i + 1] = durationSquareSums[i] + shifted * shifted;
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * @param time the cutoff time (exclusive)
+     * @return the number of entries observed strictly before the given time, i.e., the size of the prefix
+     */
+    public int countBefore(long time) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param n size of the prefix
+     * @return the mean duration of the first n entries (NaN, if n is 0)
+     */
+    public double getMean(int n) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return shift + durationSums[n] / n;
+    }
+
+    /**
+     * @param n size of the prefix
+     * @return the (bias-corrected) standard deviation of the durations of the first n entries
+     * (NaN, if n is 0, and 0, if n is 1 - like {@link org.apache.commons.math3.stat.descriptive.DescriptiveStatistics})
+     */
+    public double getStandardDeviation(int n) {
+        if (n == 0) {
+            return Double.NaN;
+        } else if (n == 1) {
+            return 0;
+        }
+        double sum = durationSums[n];
+        double variance = (durationSquareSums[n] - sum * sum / n) / (n - 1);
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    /**
+     * @param n size of the prefix
+     * @return a copy of the durations of the first n entries (sorted by time)
+     */
+    public double[] getDurations(int n) {
+        return Arrays.copyOf(durations, n);
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double getDuration(int i) {
+        return durations[i];
+    }
+
+    public double getLoad(int i) {
+        return loads[i];
+    }
+}
@@ -0,0 +1,74 @@
+package org.processmining.plugins.stochasticpetrinet.enricher;
+
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
+
+/**
+ * Timing information of fitting the distribution of one transition in the {@link PerformanceEnricher}.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class TransitionFittingMetrics {
+
+    private final String transitionLabel;
+    private final int observedValues;
+    private final int censoredValues;
+
+    private DistributionType distributionType;
+    private String threadName;
+    private long startNanos;
+    private long durationNanos;
+
+    public TransitionFittingMetrics(String transitionLabel, int observedValues, int censoredValues) {
+        this.transitionLabel = transitionLabel;
+        this.observedValues = observedValues;
+        this.censoredValues = censoredValues;
+    }
+
+    void start() {
+        threadName = Thread.currentThread().getName();
+        startNanos = System.nanoTime();
+    }
+
+    void finish(DistributionType fittedType) {
+        durationNanos = System.nanoTime() - startNanos;
+        distributionType = fittedType;
+    }
+
+    public String getTransitionLabel() {
+        return transitionLabel;
+    }
+
+    public int getObservedValues() {
+        return observedValues;
+    }
+
+    public int getCensoredValues() {
+        return censoredValues;
+    }
+
+    /**
+     * @return the type of the fitted distribution (can differ from the configured type, e.g., for immediate transitions)
+     */
+    public DistributionType getDistributionType() {
+        return distributionType;
+    }
+
+    /**
+     * @return the name of the thread that fitted the distribution
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return the time spent fitting the distribution in milliseconds
+     */
+    public double getDurationMillis() {
+        return durationNanos / 1e6;
+    }
+
+    public String toString() {
+        return transitionLabel + " (" + distributionType + ", " + observedValues + " observed, " + censoredValues
+                + " censored values): " + getDurationMillis() + " ms on " + threadName;
+    }
+}
@@ -1,11 +1,28 @@
 package org.processmining.plugins.stochasticpetrinet.measures;
 
+import java.util.Arrays;
+
 public abstract class AbstractionLevel implements Comparable<AbstractionLevel> {
 
     public abstract String getName();
 
     public abstract int[] abstractFrom(int[] rawEncoding);
 
+    /**
+     * Extends the abstraction of a sequence by one element, such that
+     * append(abstractFrom(sequence), element) equals abstractFrom(sequence + element).
+     * This allows to abstract prefixes incrementally, while the sequence grows.
+     *
+     * @param abstraction the abstraction of a sequence (not modified)
+     * @param element     the encoded element appended to the sequence
+     * @return the abstraction of the extended sequence
+     */
+    public int[] append(int[] abstraction, int element) {
+        int[] extended = Arrays.copyOf(abstraction, abstraction.length + 1);
+        extended[abstraction.length] = element;
+        return abstractFrom(extended);
+    }
+
     public abstract double getLevel();
 
     public final int compareTo(AbstractionLevel level){
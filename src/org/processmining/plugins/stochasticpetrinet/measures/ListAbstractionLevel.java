@@ -1,5 +1,7 @@
 package org.processmining.plugins.stochasticpetrinet.measures;
 
+import java.util.Arrays;
+
 /**
  * Not really abstracting.
  */
@@ -13,6 +15,12 @@ public class ListAbstractionLevel extends AbstractionLevel {
         return rawEncoding.clone();
     }
 
+    public int[] append(int[] abstraction, int element) {
+        int[] extended = Arrays.copyOf(abstraction, abstraction.length + 1);
+        extended[abstraction.length] = element;
+        return extended;
+    }
+
     @Override
     public double getLevel() {
         return 0;
@@ -31,6 +31,19 @@ public class MultiSetAbstractionLevel extends AbstractionLevel {
         return result;
     }
 
+    public int[] append(int[] abstraction, int element) {
+        int position = Arrays.binarySearch(abstraction, element);
+        return insert(abstraction, position >= 0 ? position : -position - 1, element);
+    }
+
+    static int[] insert(int[] sorted, int position, int element) {
+        int[] result = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, position);
+        result[position] = element;
+        System.arraycopy(sorted, position, result, position + 1, sorted.length - position);
+        return result;
+    }
+
     @Override
     public double getLevel() {
         return 1;
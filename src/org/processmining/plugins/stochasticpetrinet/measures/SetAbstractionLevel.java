@@ -30,6 +30,14 @@ public class SetAbstractionLevel extends AbstractionLevel {
         return result;
     }
 
+    public int[] append(int[] abstraction, int element) {
+        int position = Arrays.binarySearch(abstraction, element);
+        if (position >= 0) {
+            return abstraction;
+        }
+        return MultiSetAbstractionLevel.insert(abstraction, -position - 1, element);
+    }
+
     @Override
     public double getLevel() {
         return 2;
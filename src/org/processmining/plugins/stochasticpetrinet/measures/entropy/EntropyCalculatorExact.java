@@ -13,6 +13,7 @@ import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeU
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.measures.AbstractionLevel;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
@@ -35,12 +36,25 @@ public class EntropyCalculatorExact extends AbstractEntropyCalculator {
         return "Model entropy measure (exact)";
     }
 
+    /**
+     * Computes the outcome probabilities on the reachability graph (see {@link OutcomeProbabilityExplorer}).
+     * Nets that need other semantics (e.g., with reset or inhibitor arcs) are still explored by the
+     * {@link PNSimulator} and their traces are abstracted afterwards.
+     */
     protected Map<Outcome, Double> getOutcomesAndCounts(UIPluginContext context, Petrinet net, Marking initialMarking, AbstractionLevel level) {
+        Semantics<Marking, Transition> semantics = StochasticNetUtils.getSemantics(net);
+        if (semantics instanceof EfficientStochasticNetSemanticsImpl) {
+            OutcomeProbabilityExplorer explorer = new OutcomeProbabilityExplorer(level);
+            explorer.setQuantile(config.getQuantile());
+            Map<Outcome, Double> outcomeProbabilities = explorer.computeOutcomeProbabilities(net, initialMarking);
+            if (context != null) {
+                context.log(outcomeProbabilities.size() + " outcomes computed in " + explorer.getNumberOfStates() + " states.");
+            }
+            return outcomeProbabilities;
+        }
         Map<Outcome, Double> outcomesAndCounts = new HashMap<>();
 
         // simulate traces deterministically:
-        Semantics<Marking, Transition> semantics = StochasticNetUtils.getSemantics(net);
-
         PNSimulator simulator = new PNSimulator();
 
 
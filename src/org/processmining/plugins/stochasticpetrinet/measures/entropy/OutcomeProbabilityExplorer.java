@@ -0,0 +1,292 @@
+package org.processmining.plugins.stochasticpetrinet.measures.entropy;
+
+import org.processmining.models.graphbased.directed.petrinet.PetrinetGraph;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.IllegalTransitionException;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.measures.AbstractionLevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Computes the probabilities of the outcomes of a net (i.e., the abstractions of its traces) directly on its
+ * reachability graph, without simulating a log.
+ * <p>
+ * A state is a pair of an encoded marking and the abstraction of the visible prefix that lead to it.
+ * Probability mass is pushed from the initial state along the transitions (with the probabilities of
+ * the executable transitions: weights for immediate transitions, rates for timed ones) until it reaches a final state,
+ * where it is added to the probability of the state's outcome. Prefixes that lead to the same marking and have the
+ * same abstraction are merged into one state, such that, e.g., the set abstraction of an acyclic net only
+ * visits a few states per marking. Loops are handled by pushing the mass that returns to a state again, until the mass
+ * left in the state space falls below the {@link #setTolerance(double) tolerance}.
+ * <p>
+ * A marking is final, if it only contains tokens in sink places (at most one per place).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class OutcomeProbabilityExplorer {
+
+    public static final double DEFAULT_TOLERANCE = 1e-12;
+
+    public static final int DEFAULT_MAX_STATES = 1 << 22;
+
+    private final AbstractionLevel level;
+
+    /**
+     * the exploration stops, once the outcomes cover this share of the probability mass
+     * (states with more mass are expanded first, if it is smaller than 1)
+     */
+    private double quantile = 1;
+
+    /**
+     * mass below this value is not pushed further (and missing in the outcomes)
+     */
+    private double tolerance = DEFAULT_TOLERANCE;
+
+    private int maxStates = DEFAULT_MAX_STATES;
+
+    private int numberOfStates;
+
+    private double unexploredMass;
+
+    public OutcomeProbabilityExplorer(AbstractionLevel level) {
+        this.level = level;
+    }
+
+    public void setQuantile(double quantile) {
+        if (quantile <= 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in (0,1]!");
+        }
+        this.quantile = quantile;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setMaxStates(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * @return the number of distinct states of the last exploration
+     */
+    public int getNumberOfStates() {
+        return numberOfStates;
+    }
+
+    /**
+     * @return the probability mass that did not reach a final state in the last exploration
+     * (because of the tolerance or the quantile)
+     */
+    public double getUnexploredMass() {
+        return unexploredMass;
+    }
+
+    /**
+     * @param net            the net (without reset or inhibitor arcs)
+     * @param initialMarking the initial marking
+     * @return the probabilities of the outcomes
+     */
+    public Map<Outcome, Double> computeOutcomeProbabilities(PetrinetGraph net, Marking initialMarking) {
+        EfficientStochasticNetSemanticsImpl semantics = new EfficientStochasticNetSemanticsImpl();
+        semantics.initialize(net.getTransitions(), initialMarking);
+
+        int transitionCount = semantics.getNumberOfTransitions();
+        int[] labels = new int[transitionCount];
+        double[] weights = new double[transitionCount];
+        double[] rates = new double[transitionCount];
+        boolean[] immediate = new boolean[transitionCount];
+        boolean[] timed = new boolean[transitionCount];
+        Map<String, Integer> labelCodes = new HashMap<>();
+        for (short t = 0; t < transitionCount; t++) {
+            Transition transition = semantics.getTransition(t);
+            labels[t] = -1;
+            if (!transition.isInvisible()) {
+                String label = transition.getLabel() != null && !transition.getLabel().trim().isEmpty() ? transition.getLabel() : "NA";
+                if (!labelCodes.containsKey(label)) {
+                    labelCodes.put(label, labelCodes.size());
+                }
+                labels[t] = labelCodes.get(label);
+            }
+            timed[t] = transition instanceof TimedTransition;
+            if (timed[t]) {
+                immediate[t] = ((TimedTransition) transition).getDistributionType().equals(DistributionType.IMMEDIATE);
+                weights[t] = StochasticNetUtils.getWeight(transition);
+                rates[t] = immediate[t] ? 0 : StochasticNetUtils.getFiringRate(transition);
+            }
+        }
+        boolean[] sinkPlaces = new boolean[semantics.getNumberOfPlaces()];
+        for (Place p : net.getPlaces()) {
+            short placeId = semantics.getPlaceId(p);
+            if (placeId >= 0) {
+                sinkPlaces[placeId] = net.getOutEdges(p).isEmpty();
+            }
+        }
+
+        final List<State> states = new ArrayList<>();
+        Map<State, Integer> stateIds = new HashMap<>();
+        double[] pending = new double[1024];
+        boolean[] queued = new boolean[1024];
+        boolean byMass = quantile < 1;
+        PriorityQueue<double[]> queue = new PriorityQueue<>(11, byMass ? new Comparator<double[]>() {
+            public int compare(double[] o1, double[] o2) {
+                return Double.compare(o2[1], o1[1]);
+            }
+        } : new Comparator<double[]>() {
+            public int compare(double[] o1, double[] o2) {
+                return Double.compare(o1[2], o2[2]);
+            }
+        });
+        long sequence = 0;
+
+        Map<Outcome, Double> outcomeProbabilities = new HashMap<>();
+        double absorbed = 0;
+        double pendingSum = 1;
+
+        State initial = new State(semantics.getCurrentInternalState().clone(), new int[0]);
+        states.add(initial);
+        stateIds.put(initial, 0);
+        pending[0] = 1;
+        queued[0] = true;
+        queue.add(new double[]{0, 1, sequence++});
+
+        int[] executable = new int[transitionCount];
+        double[] probabilities = new double[transitionCount];
+        while (!queue.isEmpty() && absorbed < quantile && pendingSum > tolerance) {
+            double[] entry = queue.poll();
+            int id = (int) entry[0];
+            if (!queued[id] || (byMass && entry[1] != pending[id])) {
+                // processed already, or superseded by an entry with more mass
+                continue;
+            }
+            double mass = pending[id];
+            pending[id] = 0;
+            queued[id] = false;
+            pendingSum -= mass;
+            State state = states.get(id);
+
+            if (isFinal(state.marking, sinkPlaces)) {
+                Outcome outcome = new Outcome(state.abstraction);
+                Double probability = outcomeProbabilities.get(outcome);
+                outcomeProbabilities.put(outcome, probability == null ? mass : probability + mass);
+                absorbed += mass;
+                continue;
+            }
+            semantics.setCurrentState(state.marking);
+            int count = semantics.getExecutableTransitionIds(executable);
+            if (count == 0) {
+                throw new IllegalArgumentException("Petri net contains a deadlock!");
+            }
+            getProbabilities(executable, count, timed, immediate, weights, rates, probabilities);
+            for (int i = 0; i < count; i++) {
+                int t = executable[i];
+                semantics.setCurrentState(state.marking);
+                try {
+                    semantics.executeTransition(t);
+                } catch (IllegalTransitionException e) {
+                    throw new IllegalStateException(e);
+                }
+                State successor = new State(semantics.getCurrentInternalState().clone(),
+                        labels[t] < 0 ? state.abstraction : level.append(state.abstraction, labels[t]));
+                Integer successorId = stateIds.get(successor);
+                if (successorId == null) {
+                    if (states.size() >= maxStates) {
+                        throw new IllegalArgumentException("State space exceeds " + maxStates + " states!");
+                    }
+                    successorId = states.size();
+                    states.add(successor);
+                    stateIds.put(successor, successorId);
+                    if (successorId == pending.length) {
+                        pending = Arrays.copyOf(pending, pending.length * 2);
+                        queued = Arrays.copyOf(queued, queued.length * 2);
+                    }
+                }
+                double successorMass = mass * probabilities[i];
+                pending[successorId] += successorMass;
+                pendingSum += successorMass;
+                if (pending[successorId] < tolerance) {
+                    continue;
+                }
+                if (byMass || !queued[successorId]) {
+                    queued[successorId] = true;
+                    queue.add(new double[]{successorId, pending[successorId], sequence++});
+                }
+            }
+        }
+        numberOfStates = states.size();
+        unexploredMass = Math.max(0, 1 - absorbed);
+        return outcomeProbabilities;
+    }
+
+    /**
+     * Probabilities of the executable transitions: equal for untimed transitions, proportional to the weights
+     * of immediate transitions, and proportional to the rates of timed transitions.
+     */
+    private static void getProbabilities(int[] executable, int count, boolean[] timed, boolean[] immediate,
+                                         double[] weights, double[] rates, double[] probabilities) {
+        boolean allTimed = true;
+        boolean allImmediate = true;
+        boolean noneImmediate = true;
+        for (int i = 0; i < count; i++) {
+            int t = executable[i];
+            allTimed &= timed[t];
+            allImmediate &= timed[t] && immediate[t];
+            noneImmediate &= timed[t] && !immediate[t];
+        }
+        double[] values = allTimed && allImmediate ? weights : (allTimed && noneImmediate ? rates : null);
+        double sum = 0;
+        if (values != null) {
+            for (int i = 0; i < count; i++) {
+                sum += values[executable[i]];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            probabilities[i] = sum > 0 ? values[executable[i]] / sum : 1. / count;
+        }
+    }
+
+    private static boolean isFinal(short[] marking, boolean[] sinkPlaces) {
+        for (int p = 0; p < marking.length; p++) {
+            if (marking[p] > (sinkPlaces[p] ? 1 : 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class State {
+        private final short[] marking;
+        private final int[] abstraction;
+        private final int hash;
+
+        public State(short[] marking, int[] abstraction) {
+            this.marking = marking;
+            this.abstraction = abstraction;
+            this.hash = 31 * Arrays.hashCode(marking) + Arrays.hashCode(abstraction);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State)) {
+                return false;
+            }
+            State other = (State) obj;
+            return hash == other.hash && Arrays.equals(marking, other.marking) && Arrays.equals(abstraction, other.abstraction);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package org.processmining.plugins.stochasticpetrinet.prediction;
 
 import org.apache.commons.math3.distribution.TDistribution;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
 import org.deckfour.xes.classification.XEventAndClassifier;
 import org.deckfour.xes.classification.XEventLifeTransClassifier;
 import org.deckfour.xes.classification.XEventNameClassifier;
@@ -14,18 +14,22 @@ import org.deckfour.xes.model.XTrace;
 import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.IllegalTransitionException;
 import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.models.semantics.petrinet.impl.PetrinetSemanticsFactory;
 import org.processmining.plugins.astar.petrinet.manifestreplay.PNManifestFlattener;
 import org.processmining.plugins.connectionfactories.logpetrinet.TransEvClassMapping;
 import org.processmining.plugins.petrinet.replayresult.StepTypes;
 import org.processmining.plugins.replayer.replayresult.SyncReplayResult;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.distribution.timeseries.StatefulTimeseriesDistribution;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractTimePredictor {
 
@@ -46,16 +50,91 @@ public abstract class AbstractTimePredictor {
      */
     public static final int MAX_RUNS = Integer.MAX_VALUE;
 
-    private static final Map<Integer, Map<Double, Double>> confidenceCache = new HashMap<>();
+    private static final Map<Integer, Map<Double, Double>> confidenceCache = new ConcurrentHashMap<>();
 
     public Pair<Double, Double> predict(StochasticNet model, XTrace observedEvents, Date currentTime, Marking initialMarking) {
         return predict(model, observedEvents, currentTime, initialMarking, false);
     }
 
 
+    private RemainingTimeCache cache;
+
+    /**
+     * @param cache a cache of simulated remaining times that is shared between predictions (or null to always simulate)
+     */
+    public void setCache(RemainingTimeCache cache) {
+        this.cache = cache;
+    }
+
+    public RemainingTimeCache getCache() {
+        return cache;
+    }
+
     public Pair<Double, Double> predict(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
-        DescriptiveStatistics stats = getPredictionStats(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
-        return new Pair<Double, Double>(stats.getMean(), getConfidenceIntervalWidth(stats, CONFIDENCE_INTERVAL));
+        Pair<StreamingStatistics, Long> statsAndOffset = getPredictionStatsAndOffset(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
+        StreamingStatistics stats = statsAndOffset.getFirst();
+        return new Pair<Double, Double>(stats.getMean() + statsAndOffset.getSecond(), getConfidenceIntervalWidth(stats, CONFIDENCE_INTERVAL));
+    }
+
+    /**
+     * Looks up the simulated end times in the cache, or simulates them.
+     *
+     * @return the statistics of simulated end times and the offset that needs to be added to them
+     * (a cached simulation may have started at an earlier last event)
+     */
+    protected Pair<StreamingStatistics, Long> getPredictionStatsAndOffset(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
+        Pair<StreamingStatistics, Long> statsAndOffset = getCachedPredictionStatsAndOffset(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
+        if (statsAndOffset == null) {
+            StreamingStatistics stats = getPredictionStats(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
+            cachePredictionStats(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics, stats);
+            statsAndOffset = new Pair<>(stats, 0L);
+        }
+        return statsAndOffset;
+    }
+
+    /**
+     * @return the cached statistics of simulated end times and the offset that needs to be added to them,
+     * or null, if they are not cached (or can not be cached)
+     */
+    protected Pair<StreamingStatistics, Long> getCachedPredictionStatsAndOffset(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
+        if (!isCacheable(model, useOnlyPastTrainingData, semantics)) {
+            return null;
+        }
+        long lastEventTime = getLastEventTime(observedEvents, currentTime);
+        RemainingTimeCache.Entry entry = cache.get(model, ((EfficientStochasticNetSemanticsImpl) semantics).getCurrentInternalState(),
+                isUseTimeConstraint(), getElapsedTime(lastEventTime, currentTime));
+        if (entry == null) {
+            return null;
+        }
+        return new Pair<>(entry.getStats(), lastEventTime - entry.getLastEventTime());
+    }
+
+    /**
+     * Stores the simulated end times of a case in the cache (if they can be cached).
+     */
+    protected void cachePredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics,
+                                        StreamingStatistics stats) {
+        if (isCacheable(model, useOnlyPastTrainingData, semantics)) {
+            long lastEventTime = getLastEventTime(observedEvents, currentTime);
+            cache.put(model, ((EfficientStochasticNetSemanticsImpl) semantics).getCurrentInternalState(), isUseTimeConstraint(),
+                    getElapsedTime(lastEventTime, currentTime), stats, lastEventTime);
+        }
+    }
+
+    private boolean isCacheable(StochasticNet model, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
+        // otherwise, the continuations depend on the absolute time
+        return cache != null && !useOnlyPastTrainingData && semantics instanceof EfficientStochasticNetSemanticsImpl && !containsTimeseriesDistributions(model);
+    }
+
+    private long getElapsedTime(long lastEventTime, Date currentTime) {
+        return isUseTimeConstraint() ? currentTime.getTime() - lastEventTime : 0;
+    }
+
+    /**
+     * @return whether the simulation only considers continuations that last longer than the time elapsed since the last event
+     */
+    public boolean isUseTimeConstraint() {
+        return false;
     }
 
     /**
@@ -99,14 +178,11 @@ public abstract class AbstractTimePredictor {
      */
     public Double computeRiskToMissTargetTime(StochasticNet model, XTrace observedEvents, Date currentTime, Date targetTime, Marking initialMarking, boolean useOnlyPastTrainingData) {
         Semantics<Marking, Transition> semantics = getSemantics(model, observedEvents, initialMarking);
-        DescriptiveStatistics stats = getPredictionStats(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
-        double[] sortedEstimates = stats.getSortedValues();
-        long[] longArray = new long[sortedEstimates.length];
-        for (int i = 0; i < sortedEstimates.length; i++) {
-            longArray[i] = (long) sortedEstimates[i];
-        }
+        Pair<StreamingStatistics, Long> statsAndOffset = getPredictionStatsAndOffset(model, observedEvents, currentTime, useOnlyPastTrainingData, semantics);
+        StreamingStatistics stats = statsAndOffset.getFirst();
+        double valuesBeforeTarget = stats.getCumulativeProbability(targetTime.getTime() - statsAndOffset.getSecond()) * stats.getN();
         // use discounting to avoid extreme probabilities
-        return 1 - (StochasticNetUtils.getIndexBinarySearch(longArray, targetTime.getTime()) + 0.5) / (sortedEstimates.length + 1);
+        return 1 - (valuesBeforeTarget + 0.5) / (stats.getN() + 1);
     }
 
     /**
@@ -117,14 +193,33 @@ public abstract class AbstractTimePredictor {
      * @param currentTime             the current time at prediction
      * @param useOnlyPastTrainingData indicator that tells us whether to only rely on training data that was observed in the past (relative to the currentTime)
      * @param semantics               the semantics with the current marking of the model that shows the starting point
-     * @return {@link DescriptiveStatistics} gathered from a set of simulated continuations of the current process
+     * @return {@link StreamingStatistics} gathered from a set of simulated continuations of the current process
+     */
+    protected abstract StreamingStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics);
+
+    protected static long getLastEventTime(XTrace observedEvents, Date currentTime) {
+        if (observedEvents.isEmpty()) {
+            return currentTime.getTime();
+        }
+        return XTimeExtension.instance().extractTimestamp(observedEvents.get(observedEvents.size() - 1)).getTime();
+    }
+
+    /**
+     * Time series distributions depend on the absolute time, so their continuations cannot be shared
      */
-    protected abstract DescriptiveStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics);
+    protected static boolean containsTimeseriesDistributions(StochasticNet model) {
+        for (Transition t : model.getTransitions()) {
+            if (((TimedTransition) t).getDistribution() instanceof StatefulTimeseriesDistribution) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    protected double getConfidenceIntervalWidth(DescriptiveStatistics summaryStatistics, double confidence) {
+    protected double getConfidenceIntervalWidth(StatisticalSummary summaryStatistics, double confidence) {
         int n = (int) summaryStatistics.getN() - 1;
         if (!confidenceCache.containsKey(n)) {
-            confidenceCache.put(n, new HashMap<Double, Double>());
+            confidenceCache.putIfAbsent(n, new ConcurrentHashMap<Double, Double>());
         }
         double a;
         if (!confidenceCache.get(n).containsKey(confidence)) {
@@ -138,13 +233,13 @@ public abstract class AbstractTimePredictor {
         return 2 * a * Math.sqrt(summaryStatistics.getVariance() / summaryStatistics.getN());
     }
 
-    protected double getErrorPercent(DescriptiveStatistics stats) {
+    protected double getErrorPercent(StatisticalSummary stats) {
         double mean = stats.getMean();
         double confidenceIntervalWidth = getConfidenceIntervalWidth(stats, CONFIDENCE_INTERVAL);
         return (mean / (mean - confidenceIntervalWidth / 2.) - 1) * 100;
     }
 
-    protected double getError(DescriptiveStatistics stats) {
+    protected double getError(StatisticalSummary stats) {
         return getConfidenceIntervalWidth(stats, CONFIDENCE_INTERVAL) / 2;
     }
 
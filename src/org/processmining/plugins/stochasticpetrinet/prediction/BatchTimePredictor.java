@@ -0,0 +1,233 @@
+package org.processmining.plugins.stochasticpetrinet.prediction;
+
+import org.deckfour.xes.classification.XEventAndClassifier;
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventLifeTransClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.framework.util.Pair;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.Semantics;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
+import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Predicts the remaining durations of all running cases of a log at once.
+ * <p>
+ * Cases with the same sequence of observed events are aligned to the model only once.
+ * Cases that end up in the same marking share one Monte Carlo simulation, as long as their continuations
+ * do not depend on the absolute time (i.e., no time series distributions and no restriction of the training data
+ * to the past). The simulated end times are then shifted by the time of the last event of each case.
+ * If the elapsed time since the last event constrains the simulation, cases share it only if their elapsed times fall
+ * into the same bucket (of the width that the {@link RemainingTimeCache} uses).
+ * The simulations of the groups run in parallel on a bounded thread pool.
+ * If the predictor has a {@link RemainingTimeCache}, the groups are looked up in (and added to) the cache.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class BatchTimePredictor {
+
+    private static final XEventClassifier EVENT_CLASSIFIER = new XEventAndClassifier(new XEventNameClassifier(), new XEventLifeTransClassifier());
+
+    private final TimePredictor predictor;
+
+    private final int threads;
+
+    /**
+     * @param predictor the predictor used for the alignment and simulation of each group of cases
+     * @param threads   the maximal number of groups that are simulated concurrently
+     */
+    public BatchTimePredictor(TimePredictor predictor, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
+        this.predictor = predictor;
+        this.threads = threads;
+    }
+
+    /**
+     * Batch version of {@link AbstractTimePredictor#predict(StochasticNet, XTrace, Date, Marking, boolean)}.
+     *
+     * @return for each trace of the log (in the same order) the point predictor and the 99 percent confidence interval width
+     */
+    public List<Pair<Double, Double>> predict(StochasticNet model, XLog runningCases, Date currentTime, Marking initialMarking, boolean useOnlyPastTrainingData) {
+        List<Pair<Double, Double>> predictions = new ArrayList<>(runningCases.size());
+        for (CasePrediction prediction : getPredictions(model, runningCases, currentTime, initialMarking, useOnlyPastTrainingData)) {
+            predictions.add(new Pair<>(prediction.stats.getMean() + prediction.offset,
+                    predictor.getConfidenceIntervalWidth(prediction.stats, AbstractTimePredictor.CONFIDENCE_INTERVAL)));
+        }
+        return predictions;
+    }
+
+    /**
+     * Batch version of {@link AbstractTimePredictor#computeRiskToMissTargetTime}.
+     *
+     * @return for each trace of the log (in the same order) the risk to miss the target time
+     */
+    public List<Double> computeRiskToMissTargetTime(StochasticNet model, XLog runningCases, Date currentTime, Date targetTime, Marking initialMarking,
+                                                    boolean useOnlyPastTrainingData) {
+        List<Double> risks = new ArrayList<>(runningCases.size());
+        for (CasePrediction prediction : getPredictions(model, runningCases, currentTime, initialMarking, useOnlyPastTrainingData)) {
+            StreamingStatistics stats = prediction.stats;
+            double valuesBeforeTarget = stats.getCumulativeProbability(targetTime.getTime() - prediction.offset) * stats.getN();
+            // use discounting to avoid extreme probabilities
+            risks.add(1 - (valuesBeforeTarget + 0.5) / (stats.getN() + 1));
+        }
+        return risks;
+    }
+
+    private List<CasePrediction> getPredictions(StochasticNet model, XLog runningCases, Date currentTime, Marking initialMarking, boolean useOnlyPastTrainingData) {
+        boolean shiftInvariant = !useOnlyPastTrainingData && !AbstractTimePredictor.containsTimeseriesDistributions(model);
+        long elapsedTimeBucket = predictor.getCache() != null ? predictor.getCache().getElapsedTimeBucket() : RemainingTimeCache.DEFAULT_ELAPSED_TIME_BUCKET;
+
+        Map<List<String>, Semantics<Marking, Transition>> alignedStates = new HashMap<>();
+        Map<Pair<Marking, Long>, SimulationGroup> groups = new LinkedHashMap<>();
+        List<SimulationGroup> groupsOfCases = new ArrayList<>(runningCases.size());
+        List<Long> lastEventTimes = new ArrayList<>(runningCases.size());
+        for (XTrace trace : runningCases) {
+            List<String> eventSequence = getEventSequence(trace);
+            Semantics<Marking, Transition> semantics = alignedStates.get(eventSequence);
+            if (semantics == null) {
+                semantics = predictor.getSemantics(model, trace, initialMarking);
+                alignedStates.put(eventSequence, semantics);
+            }
+            long lastEventTime = AbstractTimePredictor.getLastEventTime(trace, currentTime);
+            long timeKey;
+            if (shiftInvariant) {
+                // with a time constraint, the continuations depend on the time elapsed since the last event
+                timeKey = predictor.isUseTimeConstraint() ? (currentTime.getTime() - lastEventTime) / elapsedTimeBucket : 0;
+            } else {
+                timeKey = lastEventTime;
+            }
+            Pair<Marking, Long> key = new Pair<>(semantics.getCurrentState(), timeKey);
+            SimulationGroup group = groups.get(key);
+            if (group == null) {
+                group = new SimulationGroup(groups.size(), trace, semantics, lastEventTime);
+                groups.put(key, group);
+            }
+            groupsOfCases.add(group);
+            lastEventTimes.add(lastEventTime);
+        }
+
+        simulate(model, new ArrayList<>(groups.values()), currentTime, useOnlyPastTrainingData);
+
+        List<CasePrediction> predictions = new ArrayList<>(groupsOfCases.size());
+        for (int i = 0; i < groupsOfCases.size(); i++) {
+            SimulationGroup group = groupsOfCases.get(i);
+            predictions.add(new CasePrediction(group.stats, lastEventTimes.get(i) - group.lastEventTime + group.offset));
+        }
+        return predictions;
+    }
+
+    private void simulate(final StochasticNet model, List<SimulationGroup> groups, final Date currentTime, final boolean useOnlyPastTrainingData) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        if (threads == 1 || !predictor.supportsParallelSimulation(model, groups.get(0).semantics)) {
+            for (SimulationGroup group : groups) {
+                Pair<StreamingStatistics, Long> statsAndOffset = predictor.getPredictionStatsAndOffset(model, group.trace, currentTime, useOnlyPastTrainingData, group.semantics);
+                group.stats = statsAndOffset.getFirst();
+                group.offset = statsAndOffset.getSecond();
+            }
+            return;
+        }
+        List<SimulationGroup> uncachedGroups = new ArrayList<>(groups.size());
+        for (SimulationGroup group : groups) {
+            Pair<StreamingStatistics, Long> statsAndOffset = predictor.getCachedPredictionStatsAndOffset(model, group.trace, currentTime, useOnlyPastTrainingData, group.semantics);
+            if (statsAndOffset == null) {
+                uncachedGroups.add(group);
+            } else {
+                group.stats = statsAndOffset.getFirst();
+                group.offset = statsAndOffset.getSecond();
+            }
+        }
+        if (uncachedGroups.isEmpty()) {
+            return;
+        }
+        if (useOnlyPastTrainingData) {
+            TimePredictor.prepareTrainingData(model);
+        }
+        final PNSimulatorConfig config = predictor.createSimulationConfig(model);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, uncachedGroups.size()));
+        try {
+            List<Future<StreamingStatistics>> results = new ArrayList<>(uncachedGroups.size());
+            for (final SimulationGroup group : uncachedGroups) {
+                results.add(executor.submit(new Callable<StreamingStatistics>() {
+                    public StreamingStatistics call() {
+                        // each group uses its own random stream, such that results do not depend on the scheduling
+                        return predictor.getPredictionStatsWithRandomStreams(model, (EfficientStochasticNetSemanticsImpl) group.semantics, config,
+                                group.lastEventTime, currentTime, useOnlyPastTrainingData, 1, group.id, null);
+                    }
+                }));
+            }
+            for (int i = 0; i < uncachedGroups.size(); i++) {
+                SimulationGroup group = uncachedGroups.get(i);
+                group.stats = results.get(i).get();
+                predictor.cachePredictionStats(model, group.trace, currentTime, useOnlyPastTrainingData, group.semantics, group.stats);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Batch prediction failed!", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> getEventSequence(XTrace trace) {
+        List<String> eventSequence = new ArrayList<>(trace.size());
+        for (XEvent event : trace) {
+            eventSequence.add(EVENT_CLASSIFIER.getClassIdentity(event));
+        }
+        return eventSequence;
+    }
+
+    /**
+     * Cases that share the simulation of their continuations
+     */
+    private static class SimulationGroup {
+        private final int id;
+        private final XTrace trace;
+        private final Semantics<Marking, Transition> semantics;
+        private final long lastEventTime;
+        private StreamingStatistics stats;
+        /**
+         * time difference between the last event of the group and the start of its (possibly cached) simulation
+         */
+        private long offset;
+
+        public SimulationGroup(int id, XTrace trace, Semantics<Marking, Transition> semantics, long lastEventTime) {
+            this.id = id;
+            this.trace = trace;
+            this.semantics = semantics;
+            this.lastEventTime = lastEventTime;
+        }
+    }
+
+    private static class CasePrediction {
+        private final StreamingStatistics stats;
+        /**
+         * time difference between the last event of the case and the last event of its group
+         */
+        private final long offset;
+
+        public CasePrediction(StreamingStatistics stats, long offset) {
+            this.stats = stats;
+            this.offset = offset;
+        }
+    }
+}
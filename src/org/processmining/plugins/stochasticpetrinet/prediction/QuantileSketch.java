@@ -0,0 +1,264 @@
+package org.processmining.plugins.stochasticpetrinet.prediction;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch of bounded size (a merging t-digest).
+ * <p>
+ * Values are collected in a small buffer and periodically merged into weighted centroids.
+ * Centroids are kept small at the tails and larger in the center of the distribution, such that
+ * extreme quantiles (and therefore small risks of missing a deadline) remain accurate.
+ * The memory consumption only depends on the compression, not on the number of added values.
+ * <p>
+ * Reading (and merging into another sketch) does not change the sketch, so a sketch can be read concurrently
+ * once all values are added. Call {@link #compress()} before, to avoid merging the buffer on each read.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_COMPRESSION = 200;
+
+    private final double compression;
+
+    /**
+     * centroids sorted by their means
+     */
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+
+    /**
+     * unsorted values that are not yet merged into the centroids
+     */
+    private double[] buffer;
+    private int buffered;
+
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression controls the number of centroids (at most about compression many are kept)
+     */
+    public QuantileSketch(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be at least 10!");
+        }
+        this.compression = compression;
+        int maxCentroids = 2 * (int) Math.ceil(compression) + 10;
+        this.means = new double[maxCentroids];
+        this.weights = new double[maxCentroids];
+        this.buffer = new double[5 * (int) Math.ceil(compression)];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN to a quantile sketch!");
+        }
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        totalWeight++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values summarized by another sketch to this one.
+     * The other sketch is not changed.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.totalWeight == 0) {
+            return;
+        }
+        compress();
+        other = other.compressed();
+        double[] mergedMeans = new double[centroids + other.centroids];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int count = mergeSorted(means, weights, centroids, other.means, other.weights, other.centroids, mergedMeans, mergedWeights);
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        mergeCentroids(mergedMeans, mergedWeights, count);
+    }
+
+    public long getN() {
+        return (long) totalWeight;
+    }
+
+    /**
+     * @param x value
+     * @return the estimated fraction of values that are less or equal than x
+     */
+    public double cdf(double x) {
+        if (totalWeight == 0) {
+            return Double.NaN;
+        }
+        if (x < min) {
+            return 0;
+        }
+        if (x >= max) {
+            return 1;
+        }
+        QuantileSketch sketch = compressed();
+        double[] means = sketch.means;
+        double[] weights = sketch.weights;
+        int centroids = sketch.centroids;
+        // interpolate linearly between (min,0), (centroid means, cumulative weight at centroid centers) and (max,n)
+        double leftX = min;
+        double leftWeight = 0;
+        double cumulative = 0;
+        for (int i = 0; i < centroids; i++) {
+            double rightX = means[i];
+            double rightWeight = cumulative + weights[i] / 2;
+            if (x < rightX) {
+                return interpolate(x, leftX, rightX, leftWeight, rightWeight) / totalWeight;
+            }
+            cumulative += weights[i];
+            leftX = rightX;
+            leftWeight = rightWeight;
+        }
+        return interpolate(x, leftX, max, leftWeight, totalWeight) / totalWeight;
+    }
+
+    /**
+     * @param q quantile in [0,1]
+     * @return the estimated value below which a fraction of q of the values lies
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0,1]!");
+        }
+        if (totalWeight == 0) {
+            return Double.NaN;
+        }
+        QuantileSketch sketch = compressed();
+        double[] means = sketch.means;
+        double[] weights = sketch.weights;
+        int centroids = sketch.centroids;
+        double target = q * totalWeight;
+        double leftX = min;
+        double leftWeight = 0;
+        double cumulative = 0;
+        for (int i = 0; i < centroids; i++) {
+            double rightWeight = cumulative + weights[i] / 2;
+            if (target <= rightWeight) {
+                return interpolate(target, leftWeight, rightWeight, leftX, means[i]);
+            }
+            cumulative += weights[i];
+            leftX = means[i];
+            leftWeight = rightWeight;
+        }
+        return interpolate(target, leftWeight, totalWeight, leftX, max);
+    }
+
+    private static double interpolate(double x, double x0, double x1, double y0, double y1) {
+        if (x1 <= x0) {
+            return y1;
+        }
+        return y0 + (x - x0) / (x1 - x0) * (y1 - y0);
+    }
+
+    /**
+     * @return this sketch, if no values are buffered, otherwise a compressed copy
+     */
+    private QuantileSketch compressed() {
+        if (buffered == 0) {
+            return this;
+        }
+        QuantileSketch copy = new QuantileSketch(compression);
+        copy.means = means.clone();
+        copy.weights = weights.clone();
+        copy.centroids = centroids;
+        System.arraycopy(buffer, 0, copy.buffer, 0, buffered);
+        copy.buffered = buffered;
+        copy.totalWeight = totalWeight;
+        copy.min = min;
+        copy.max = max;
+        copy.compress();
+        return copy;
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    public void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] mergedMeans = new double[centroids + buffered];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int count = mergeSorted(means, weights, centroids, buffer, null, buffered, mergedMeans, mergedWeights);
+        buffered = 0;
+        mergeCentroids(mergedMeans, mergedWeights, count);
+    }
+
+    /**
+     * Merges two sorted lists of weighted values (a null weight array means weight one for each value).
+     */
+    private static int mergeSorted(double[] means1, double[] weights1, int n1, double[] means2, double[] weights2, int n2,
+                                   double[] targetMeans, double[] targetWeights) {
+        int i = 0, j = 0, k = 0;
+        while (i < n1 || j < n2) {
+            if (j >= n2 || (i < n1 && means1[i] <= means2[j])) {
+                targetMeans[k] = means1[i];
+                targetWeights[k++] = weights1 == null ? 1 : weights1[i];
+                i++;
+            } else {
+                targetMeans[k] = means2[j];
+                targetWeights[k++] = weights2 == null ? 1 : weights2[j];
+                j++;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * One pass over the sorted weighted values that combines neighbors as long as
+     * a centroid spans at most one unit of the scale function.
+     */
+    private void mergeCentroids(double[] sortedMeans, double[] sortedWeights, int count) {
+        centroids = 0;
+        double weightSoFar = 0;
+        double limit = totalWeight * q(k(0) + 1);
+        for (int i = 0; i < count; i++) {
+            double w = sortedWeights[i];
+            if (centroids > 0 && weightSoFar + weights[centroids - 1] + w <= limit) {
+                int c = centroids - 1;
+                weights[c] += w;
+                means[c] += (sortedMeans[i] - means[c]) * w / weights[c];
+            } else {
+                if (centroids > 0) {
+                    weightSoFar += weights[centroids - 1];
+                    limit = totalWeight * q(k(weightSoFar / totalWeight) + 1);
+                }
+                if (centroids == means.length) {
+                    means = Arrays.copyOf(means, 2 * centroids);
+                    weights = Arrays.copyOf(weights, 2 * centroids);
+                }
+                means[centroids] = sortedMeans[i];
+                weights[centroids] = w;
+                centroids++;
+            }
+        }
+    }
+
+    /**
+     * scale function that maps quantiles to the index of the centroid (k1 of the t-digest)
+     */
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+
+    private double q(double k) {
+        double x = Math.min(Math.PI / 2, k * 2 * Math.PI / compression);
+        return (Math.sin(x) + 1) / 2;
+    }
+}
@@ -0,0 +1,233 @@
+package org.processmining.plugins.stochasticpetrinet.prediction;
+
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded (least recently used) cache of simulated remaining times.
+ * <p>
+ * Cases that reach the same marking have statistically identical continuations (as long as these do not
+ * depend on the absolute time). Entries are keyed by the model, the marking of the efficient semantics and
+ * a bucket of the time elapsed since the last event (only relevant, if the simulation uses the elapsed time as a constraint).
+ * <p>
+ * Entries of a model are dropped automatically, when its distributions, weights, or priorities are replaced.
+ * Changes to the parameters of a distribution object itself are not detected, call {@link #invalidate(StochasticNet)} in that case.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class RemainingTimeCache {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * default width of the buckets of elapsed time (one minute)
+     */
+    public static final long DEFAULT_ELAPSED_TIME_BUCKET = 60000;
+
+    private final int capacity;
+
+    private final long elapsedTimeBucket;
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final Map<StochasticNet, Long> fingerprints = new IdentityHashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RemainingTimeCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_ELAPSED_TIME_BUCKET);
+    }
+
+    /**
+     * @param capacity          maximal number of cached markings
+     * @param elapsedTimeBucket width of the buckets (in milliseconds) of elapsed time that are considered equal
+     */
+    public RemainingTimeCache(final int capacity, long elapsedTimeBucket) {
+        if (capacity < 1 || elapsedTimeBucket < 1) {
+            throw new IllegalArgumentException("Capacity and bucket width must be positive!");
+        }
+        this.capacity = capacity;
+        this.elapsedTimeBucket = elapsedTimeBucket;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param model           the model
+     * @param marking         the internal state of the efficient semantics
+     * @param timeConstrained whether the simulation only considers continuations that last longer than the elapsed time
+     * @param elapsedTime     time since the last event (pass 0, if the simulation does not depend on it)
+     * @return the cached entry, or null
+     */
+    public synchronized Entry get(StochasticNet model, short[] marking, boolean timeConstrained, long elapsedTime) {
+        checkFingerprint(model);
+        Entry entry = entries.get(new Key(model, marking, timeConstrained, elapsedTime / elapsedTimeBucket));
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * The statistics are shared with all later readers (possibly in other threads), so they must not be changed afterwards.
+     *
+     * @param stats         simulated end times
+     * @param lastEventTime the time of the last event, at which the simulation started
+     */
+    public synchronized void put(StochasticNet model, short[] marking, boolean timeConstrained, long elapsedTime, StreamingStatistics stats, long lastEventTime) {
+        checkFingerprint(model);
+        stats.compress();
+        entries.put(new Key(model, marking.clone(), timeConstrained, elapsedTime / elapsedTimeBucket), new Entry(stats, lastEventTime));
+    }
+
+    /**
+     * Removes all entries of the model.
+     */
+    public synchronized void invalidate(StochasticNet model) {
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().model == model) {
+                keys.remove();
+            }
+        }
+        fingerprints.remove(model);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        fingerprints.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return width of the buckets (in milliseconds) of elapsed time that are considered equal
+     */
+    public long getElapsedTimeBucket() {
+        return elapsedTimeBucket;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : hits / (double) requests;
+    }
+
+    public synchronized String toString() {
+        return "RemainingTimeCache: " + entries.size() + "/" + capacity + " entries, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    private void checkFingerprint(StochasticNet model) {
+        long fingerprint = getFingerprint(model);
+        Long previous = fingerprints.get(model);
+        if (previous != null && previous != fingerprint) {
+            invalidate(model);
+        }
+        fingerprints.put(model, fingerprint);
+    }
+
+    /**
+     * Combines the execution policy, the identities of the distributions and the weights and priorities of the transitions
+     */
+    private static long getFingerprint(StochasticNet model) {
+        long fingerprint = 17;
+        fingerprint = 31 * fingerprint + (model.getExecutionPolicy() == null ? 0 : model.getExecutionPolicy().ordinal() + 1);
+        for (Transition t : model.getTransitions()) {
+            TimedTransition tt = (TimedTransition) t;
+            fingerprint = 31 * fingerprint + System.identityHashCode(tt);
+            fingerprint = 31 * fingerprint + System.identityHashCode(tt.getDistribution());
+            fingerprint = 31 * fingerprint + (tt.getDistributionType() == null ? 0 : tt.getDistributionType().ordinal());
+            fingerprint = 31 * fingerprint + Double.doubleToLongBits(tt.getWeight());
+            fingerprint = 31 * fingerprint + tt.getPriority();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Simulated end times together with the time the simulation started
+     */
+    public static class Entry {
+        private final StreamingStatistics stats;
+        private final long lastEventTime;
+
+        public Entry(StreamingStatistics stats, long lastEventTime) {
+            this.stats = stats;
+            this.lastEventTime = lastEventTime;
+        }
+
+        public StreamingStatistics getStats() {
+            return stats;
+        }
+
+        public long getLastEventTime() {
+            return lastEventTime;
+        }
+    }
+
+    private static class Key {
+        private final StochasticNet model;
+        private final short[] marking;
+        private final boolean timeConstrained;
+        private final long elapsedBucket;
+        private final int hash;
+
+        public Key(StochasticNet model, short[] marking, boolean timeConstrained, long elapsedBucket) {
+            this.model = model;
+            this.marking = marking;
+            this.timeConstrained = timeConstrained;
+            this.elapsedBucket = elapsedBucket;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(model) + Arrays.hashCode(marking)) + (timeConstrained ? 1 : 0))
+                    + (int) (elapsedBucket ^ (elapsedBucket >>> 32));
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return model == other.model && timeConstrained == other.timeConstrained && elapsedBucket == other.elapsedBucket
+                    && Arrays.equals(marking, other.marking);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.processmining.plugins.stochasticpetrinet.prediction;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+
+/**
+ * Constant memory statistics of simulated durations.
+ * <p>
+ * Mean and variance are updated with Welford's algorithm, the distribution of the values is
+ * captured by a {@link QuantileSketch}. Unlike DescriptiveStatistics, no values are stored, and
+ * two instances (e.g., gathered by different workers) can be merged.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class StreamingStatistics implements StatisticalSummary {
+
+    private long n;
+    private double mean;
+    /**
+     * sum of squared differences from the mean
+     */
+    private double m2;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    private final QuantileSketch sketch;
+
+    public StreamingStatistics() {
+        this(QuantileSketch.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression the compression of the quantile sketch (higher values are more accurate, but use more memory)
+     */
+    public StreamingStatistics(double compression) {
+        this.sketch = new QuantileSketch(compression);
+    }
+
+    public void addValue(double value) {
+        n++;
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+        sum += value;
+        min = n == 1 ? value : Math.min(min, value);
+        max = n == 1 ? value : Math.max(max, value);
+        sketch.add(value);
+    }
+
+    /**
+     * Adds the values summarized by other statistics to these ones (the other statistics remain valid).
+     */
+    public void merge(StreamingStatistics other) {
+        if (other.n == 0) {
+            return;
+        }
+        if (n == 0) {
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+        } else {
+            long total = n + other.n;
+            double delta = other.mean - mean;
+            mean += delta * other.n / total;
+            m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        n += other.n;
+        sum += other.sum;
+        sketch.merge(other.sketch);
+    }
+
+    /**
+     * Prepares the statistics for (concurrent) reading, after all values are added.
+     */
+    public void compress() {
+        sketch.compress();
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public double getMean() {
+        return n == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return the (bias corrected) sample variance
+     */
+    public double getVariance() {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n == 1 ? 0 : m2 / (n - 1);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param p percentile in (0,100]
+     * @return estimate of the p-th percentile of the values
+     */
+    public double getPercentile(double p) {
+        if (p <= 0 || p > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0,100]!");
+        }
+        return sketch.quantile(p / 100.);
+    }
+
+    /**
+     * @param x value
+     * @return estimated fraction of values less or equal than x
+     */
+    public double getCumulativeProbability(double x) {
+        return sketch.cdf(x);
+    }
+}
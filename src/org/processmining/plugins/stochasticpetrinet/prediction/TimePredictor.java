@@ -1,22 +1,46 @@
 package org.processmining.plugins.stochasticpetrinet.prediction;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.model.XTrace;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
-import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
+import org.processmining.plugins.stochasticpetrinet.simulator.TracelessSimulationKernel;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class TimePredictor extends AbstractTimePredictor {
 
+    /**
+     * Number of simulated runs between two checks of the confidence interval
+     */
+    private static final int RUNS_BETWEEN_ERROR_CHECKS = 300;
+
     private boolean useTimeContraint;
 
+    /**
+     * Number of worker threads for the Monte Carlo simulation. With 1, runs are simulated sequentially.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Seed for the random streams of the workers in parallel mode
+     */
+    private long seed = 1;
+
+    private ForkJoinPool pool;
+
     /**
      * Creates a stochastic Net predictor based on simulation that uses either the time as a constraint, or not.
      *
@@ -26,27 +50,67 @@ public class TimePredictor extends AbstractTimePredictor {
         this.useTimeContraint = useTimeConstraint;
     }
 
-    public DescriptiveStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
+    /**
+     * Creates a predictor that splits the simulated runs across a fork-join pool.
+     *
+     * @param useTimeConstraint indicator, whether to use the elapsed time as a constraint for the simulation
+     * @param parallelism       the number of workers (each with its own copy of the semantics and random stream)
+     */
+    public TimePredictor(boolean useTimeConstraint, int parallelism) {
+        this(useTimeConstraint);
+        setParallelism(parallelism);
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1!");
+        }
+        if (pool != null && pool.getParallelism() != parallelism) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    public boolean isUseTimeConstraint() {
+        return useTimeContraint;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the seed from which the random streams of the workers are derived in parallel mode.
+     * For a given seed and parallelism, predictions are reproducible.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public StreamingStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime, boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
         if (semantics.getCurrentState() == null) {
             System.out.println("Debug me!");
         }
         Marking currentMarking = semantics.getCurrentState();
-        Long lastEventTime;
-        if (observedEvents.isEmpty()) {
-            lastEventTime = currentTime.getTime();
-        } else {
-            lastEventTime = XTimeExtension.instance().extractTimestamp(observedEvents.get(observedEvents.size() - 1)).getTime();
-        }
+        Long lastEventTime = getLastEventTime(observedEvents, currentTime);
 //		System.out.println("Time between last event and current time: "+(currentTime.getTime()-lastEventTime)+"ms");
+        PNSimulatorConfig config = createSimulationConfig(model);
+
+        if (parallelism > 1 && supportsParallelSimulation(model, semantics)) {
+            return getPredictionStatsInParallel(model, (EfficientStochasticNetSemanticsImpl) semantics, config, lastEventTime, currentTime, useOnlyPastTrainingData);
+        }
+
         PNSimulator simulator = new PNSimulator();
         simulator.setUseOnlyPastTrainingData(useOnlyPastTrainingData);
-        PNSimulatorConfig config = new PNSimulatorConfig(1, model.getTimeUnit());
-        config.setSimulateTraceless(true); // do not create traces, as the generation of unique ids is just too slow.
 
-        DescriptiveStatistics stats = new DescriptiveStatistics();
+        StreamingStatistics stats = new StreamingStatistics();
         //long now = System.currentTimeMillis();
 
-//		StochasticNetUtils.useCache(true);
         double errorPercent = 100; // percentage in error of 99% confidence band
         int i = 0;
 //		double error = 1000000;
@@ -55,13 +119,140 @@ public class TimePredictor extends AbstractTimePredictor {
             i++;
             stats.addValue((Long) simulator.simulateOneTrace(model, semantics, config, currentMarking, lastEventTime, currentTime.getTime(), i, useTimeContraint, null));
             semantics.setCurrentState(currentMarking);
-            if (i % 300 == 0) {
+            if (i % RUNS_BETWEEN_ERROR_CHECKS == 0) {
                 // update error:
                 errorPercent = getErrorPercent(stats);
 //				error = getError(stats);
             }
         }
-        if (i > 300) System.out.println("i " + i);
         return stats;
     }
+
+    /**
+     * Parallel version of the Monte Carlo simulation. Each worker owns a clone of the semantics, a simulator
+     * and a random stream derived from the seed of the configuration. In each round, the workers simulate
+     * their share of {@link #RUNS_BETWEEN_ERROR_CHECKS} runs. The statistics of the workers are merged in worker order
+     * and the simulation stops on the same confidence interval criterion as the sequential one.
+     */
+    protected StreamingStatistics getPredictionStatsInParallel(StochasticNet model, EfficientStochasticNetSemanticsImpl semantics, PNSimulatorConfig config,
+                                                               long lastEventTime, Date currentTime, boolean useOnlyPastTrainingData) {
+        if (useOnlyPastTrainingData) {
+            prepareTrainingData(model);
+        }
+        return getPredictionStatsWithRandomStreams(model, semantics, config, lastEventTime, currentTime, useOnlyPastTrainingData, parallelism, 0, getPool());
+    }
+
+    /**
+     * Simulates with workers that do not share any random generator with other simulations, such that
+     * this method can be called concurrently (as long as the training data is prepared, see {@link #prepareTrainingData}).
+     * Worker w uses the random stream firstStreamId + w of the configured seed.
+     *
+     * @param workerCount   number of workers. A single worker simulates in the calling thread.
+     * @param firstStreamId the id of the random stream of the first worker
+     * @param executor      the executor running the workers (only used with more than one worker)
+     */
+    StreamingStatistics getPredictionStatsWithRandomStreams(StochasticNet model, EfficientStochasticNetSemanticsImpl semantics, PNSimulatorConfig config,
+                                                            long lastEventTime, Date currentTime, boolean useOnlyPastTrainingData,
+                                                            int workerCount, long firstStreamId, ExecutorService executor) {
+        short[] startMarking = semantics.getCurrentInternalState().clone();
+        int runsPerWorker = (int) Math.ceil(RUNS_BETWEEN_ERROR_CHECKS / (double) workerCount);
+        List<SimulationWorker> workers = new ArrayList<>();
+        for (int w = 0; w < workerCount; w++) {
+            PNSimulator simulator = new PNSimulator();
+            simulator.setUseOnlyPastTrainingData(useOnlyPastTrainingData);
+            TracelessSimulationKernel kernel = new TracelessSimulationKernel(simulator, (EfficientStochasticNetSemanticsImpl) semantics.clone(), null);
+            kernel.setRandom(PNSimulator.createRandomStream(config.getSeed(), firstStreamId + w));
+            workers.add(new SimulationWorker(kernel, config, startMarking, runsPerWorker, lastEventTime, currentTime.getTime(),
+                    useTimeContraint, useOnlyPastTrainingData));
+        }
+
+        StreamingStatistics stats = new StreamingStatistics();
+        double errorPercent = 100;
+        int i = 0;
+        while (errorPercent > ERROR_BOUND_PERCENT && i < MAX_RUNS) {
+            if (workerCount == 1) {
+                StreamingStatistics workerStats = workers.get(0).call();
+                stats.merge(workerStats);
+                i += workerStats.getN();
+            } else {
+                try {
+                    for (Future<StreamingStatistics> result : executor.invokeAll(workers)) {
+                        StreamingStatistics workerStats = result.get();
+                        stats.merge(workerStats);
+                        i += workerStats.getN();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException("Parallel simulation failed!", e);
+                }
+            }
+            errorPercent = getErrorPercent(stats);
+        }
+        return stats;
+    }
+
+    PNSimulatorConfig createSimulationConfig(StochasticNet model) {
+        PNSimulatorConfig config = new PNSimulatorConfig(1, model.getTimeUnit());
+        config.setSimulateTraceless(true); // do not create traces, as the generation of unique ids is just too slow.
+        config.setSeed(seed);
+        return config;
+    }
+
+    /**
+     * Initializes the lazily parsed training data of the transitions before it is accessed concurrently.
+     */
+    static void prepareTrainingData(StochasticNet model) {
+        for (Transition t : model.getTransitions()) {
+            ((TimedTransition) t).getParsedTrainingData();
+        }
+    }
+
+    /**
+     * Parallel simulation is supported for the efficient semantics, as long as no transition
+     * depends on the global time (time series distributions have a shared state).
+     */
+    boolean supportsParallelSimulation(StochasticNet model, Semantics<Marking, Transition> semantics) {
+        return TracelessSimulationKernel.isApplicable(semantics) && !containsTimeseriesDistributions(model);
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Simulates a fixed number of runs from the start marking with its own kernel.
+     */
+    private static class SimulationWorker implements Callable<StreamingStatistics> {
+        private final TracelessSimulationKernel kernel;
+        private final PNSimulatorConfig config;
+        private final short[] startMarking;
+        private final int runs;
+        private final long lastEventTime;
+        private final long currentTime;
+        private final boolean useTimeConstraint;
+        private final boolean useOnlyPastTrainingData;
+
+        public SimulationWorker(TracelessSimulationKernel kernel, PNSimulatorConfig config, short[] startMarking, int runs,
+                                long lastEventTime, long currentTime, boolean useTimeConstraint, boolean useOnlyPastTrainingData) {
+            this.kernel = kernel;
+            this.config = config;
+            this.startMarking = startMarking;
+            this.runs = runs;
+            this.lastEventTime = lastEventTime;
+            this.currentTime = currentTime;
+            this.useTimeConstraint = useTimeConstraint;
+            this.useOnlyPastTrainingData = useOnlyPastTrainingData;
+        }
+
+        public StreamingStatistics call() {
+            StreamingStatistics durations = new StreamingStatistics();
+            for (int r = 0; r < runs; r++) {
+                kernel.getSemantics().setCurrentState(startMarking);
+                durations.addValue(kernel.simulate(config, lastEventTime, currentTime, useTimeConstraint, useOnlyPastTrainingData));
+            }
+            return durations;
+        }
+    }
 }
@@ -8,7 +8,6 @@ import org.processmining.framework.util.ui.widgets.ProMTextField;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.ExecutionPolicy;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeUnit;
-import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 
 import javax.swing.*;
 import java.awt.*;
@@ -89,14 +88,8 @@ public class PredictionExperimentConfig {
             fileNameField = addTextField("File name to store experiment results:", String.valueOf(config.getResultFileName()));
             learnSPNFromDataBox = addCheckBox("Learn stochastic Net properties from data?", config.getLearnSPNFromData());
 
-            DistributionType[] supportedTypes = new DistributionType[]{DistributionType.NORMAL, DistributionType.EXPONENTIAL, DistributionType.GAUSSIAN_KERNEL, DistributionType.HISTOGRAM};
-            if (StochasticNetUtils.splinesSupported()) {
-                supportedTypes = Arrays.copyOf(supportedTypes, supportedTypes.length + 1);
-                supportedTypes[supportedTypes.length - 1] = DistributionType.LOGSPLINE;
-            } else {
-                add(new JLabel("To enable spline smoothers, make sure you have a running R installation \n" +
-                        "and the native jri-binary is accessible in your java.library.path!"));
-            }
+            // log-splines are fitted in R, if available, and in Java otherwise
+            DistributionType[] supportedTypes = new DistributionType[]{DistributionType.NORMAL, DistributionType.EXPONENTIAL, DistributionType.GAUSSIAN_KERNEL, DistributionType.HISTOGRAM, DistributionType.LOGSPLINE};
 
             learnedDistributionTypeBox = addComboBox("Learned distribution type for SPN:", supportedTypes);
             learnedDistributionTypeBox.setSelectedIndex(0);
@@ -12,13 +12,19 @@ import java.util.List;
 public class TimeSeriesConfiguration {
 
 
+    /**
+     * AUTO_ARIMA fits non-seasonal models in the JVM, SEASONAL_AUTO_ARIMA_R fits multi-seasonal (daily and weekly)
+     * models of hourly data in R.
+     */
     public enum TimeSeriesType {
-        AUTO_ARIMA, AVERAGE_METHOD, NAIVE_METHOD, SEASONAL_METHOD, DRIFT_METHOD, LAST_OBSERVATION;
+        AUTO_ARIMA, SEASONAL_AUTO_ARIMA_R, AVERAGE_METHOD, NAIVE_METHOD, SEASONAL_METHOD, DRIFT_METHOD, LAST_OBSERVATION;
 
         public Class<? extends TimeSeries<Double>> getTimeSeriesClass() {
             switch (this) {
                 case AUTO_ARIMA:
                     return AutoArimaTimeSeries.class;
+                case SEASONAL_AUTO_ARIMA_R:
+                    return SeasonalAutoArimaRTimeSeries.class;
                 case SEASONAL_METHOD:
                     return SeasonalNaiveMethodTimeSeries.class;
                 case NAIVE_METHOD:
@@ -1,6 +1,5 @@
 package org.processmining.plugins.stochasticpetrinet.prediction.timeseries;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.model.XTrace;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
@@ -8,8 +7,8 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
-import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.prediction.AbstractTimePredictor;
+import org.processmining.plugins.stochasticpetrinet.prediction.StreamingStatistics;
 import org.processmining.plugins.stochasticpetrinet.prediction.TimePredictor;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
@@ -34,7 +33,7 @@ public class TimeseriesPredictor extends AbstractTimePredictor {
     }
 
 
-    protected DescriptiveStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime,
+    protected StreamingStatistics getPredictionStats(StochasticNet model, XTrace observedEvents, Date currentTime,
                                                        boolean useOnlyPastTrainingData, Semantics<Marking, Transition> semantics) {
         Marking currentMarking = semantics.getCurrentState();
 
@@ -48,10 +47,9 @@ public class TimeseriesPredictor extends AbstractTimePredictor {
                     .getTime();
         }
 
-        DescriptiveStatistics stats = new DescriptiveStatistics();
+        StreamingStatistics stats = new StreamingStatistics();
         //long now = System.currentTimeMillis();
 
-        StochasticNetUtils.useCache(true);
         double errorPercent = 100; // percentage in error of 99% confidence band
         int i = 0;
         long now = System.currentTimeMillis();
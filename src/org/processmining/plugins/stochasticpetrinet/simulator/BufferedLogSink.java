@@ -0,0 +1,85 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Base class of the sinks that write simulated traces as text to a stream.
+ * The text is collected in a buffer of configurable size, before it is written (UTF-8 encoded).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public abstract class BufferedLogSink implements SimulatedLogSink {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    protected final StringBuilder buffer = new StringBuilder();
+
+    private final Writer writer;
+
+    private final int bufferSize;
+
+    /**
+     * @param out        the target stream (closed by {@link #close()})
+     * @param bufferSize number of characters that are collected before they are written
+     */
+    protected BufferedLogSink(OutputStream out, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive!");
+        }
+        this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return a stream to the file, which is compressed, if its name ends with ".gz"
+     */
+    protected static OutputStream openStream(File file, int bufferSize) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, bufferSize);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the buffer, if it holds at least buffer size characters.
+     */
+    protected void flushIfFull() {
+        if (buffer.length() >= bufferSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the remaining buffer and closes the stream.
+     */
+    public void close() {
+        try {
+            try {
+                writer.write(buffer.toString());
+                buffer.setLength(0);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            writer.write(buffer.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.setLength(0);
+    }
+}
@@ -0,0 +1,73 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams simulated events to a CSV file with one row per event
+ * (columns: case, activity, timestamp in milliseconds, lifecycle transition). Files ending with ".gz" are compressed.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class CsvLogSink extends BufferedLogSink {
+
+    public static final String SEPARATOR = ";";
+
+    public CsvLogSink(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       the target file (compressed, if its name ends with ".gz")
+     * @param bufferSize number of characters that are collected before they are written
+     */
+    public CsvLogSink(File file, int bufferSize) throws IOException {
+        this(openStream(file, bufferSize), bufferSize);
+    }
+
+    public CsvLogSink(OutputStream out, int bufferSize) {
+        super(out, bufferSize);
+    }
+
+    public void startLog(String logName) {
+        buffer.append("case").append(SEPARATOR).append("activity").append(SEPARATOR).append("timestamp").append(SEPARATOR).append("lifecycle\n");
+    }
+
+    public void addTrace(XTrace trace) {
+        String caseId = getValue(trace.getAttributes().get(PNSimulator.CONCEPT_NAME));
+        for (XEvent event : trace) {
+            buffer.append(caseId).append(SEPARATOR);
+            buffer.append(getValue(event.getAttributes().get(PNSimulator.CONCEPT_NAME))).append(SEPARATOR);
+            XAttribute time = event.getAttributes().get(PNSimulator.TIME_TIMESTAMP);
+            if (time instanceof XAttributeTimestamp) {
+                buffer.append(((XAttributeTimestamp) time).getValueMillis());
+            }
+            buffer.append(SEPARATOR);
+            buffer.append(getValue(event.getAttributes().get(PNSimulator.LIFECYCLE_TRANSITION))).append('\n');
+        }
+        flushIfFull();
+    }
+
+    public void endLog() {
+    }
+
+    /**
+     * @return the value of the attribute, quoted if necessary
+     */
+    private static String getValue(XAttribute attribute) {
+        if (attribute == null) {
+            return "";
+        }
+        String value = attribute.toString();
+        if (value.contains(SEPARATOR) || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Compact search tree of a state space exploration.
+ * <p>
+ * Each visited state is stored as a record of its parent state, the transition that led to it and the time
+ * of the firing. Prefixes are not stored, but can be reconstructed by following the parent pointers from a state
+ * back to the root (state 0). The records are kept in primitive arrays (16 bytes per state).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class ExplorationTree {
+
+    public static final int ROOT = 0;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] parents;
+    private int[] transitions;
+    private long[] times;
+
+    private int size;
+
+    /**
+     * @param startTime the time of the initial state (the root)
+     */
+    public ExplorationTree(long startTime) {
+        this.parents = new int[INITIAL_CAPACITY];
+        this.transitions = new int[INITIAL_CAPACITY];
+        this.times = new long[INITIAL_CAPACITY];
+        parents[ROOT] = -1;
+        transitions[ROOT] = -1;
+        times[ROOT] = startTime;
+        size = 1;
+    }
+
+    /**
+     * @param parent     the state from which the transition was fired
+     * @param transition index of the fired transition
+     * @param time       the firing time
+     * @return the index of the new state
+     */
+    public int addState(int parent, int transition, long time) {
+        if (size == parents.length) {
+            int capacity = parents.length * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            transitions = Arrays.copyOf(transitions, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        parents[size] = parent;
+        transitions[size] = transition;
+        times[size] = time;
+        return size++;
+    }
+
+    /**
+     * @return the parent state, or -1 for the root
+     */
+    public int getParent(int state) {
+        return parents[state];
+    }
+
+    /**
+     * @return the index of the transition leading to the state, or -1 for the root
+     */
+    public int getTransition(int state) {
+        return transitions[state];
+    }
+
+    public long getTime(int state) {
+        return times[state];
+    }
+
+    public int getDepth(int state) {
+        int depth = 0;
+        for (int s = state; s != ROOT; s = parents[s]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return the states on the path from the root (excluded) to the given state (included)
+     */
+    public int[] getPath(int state) {
+        int[] path = new int[getDepth(state)];
+        int i = path.length;
+        for (int s = state; s != ROOT; s = parents[s]) {
+            path[--i] = s;
+        }
+        return path;
+    }
+
+    public int size() {
+        return size;
+    }
+}
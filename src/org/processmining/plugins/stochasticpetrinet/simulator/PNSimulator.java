@@ -1,10 +1,8 @@
 package org.processmining.plugins.stochasticpetrinet.simulator;
 
-import com.google.common.collect.SortedMultiset;
 import org.apache.commons.math3.distribution.ExponentialDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.RealDistribution;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.deckfour.xes.extension.std.XConceptExtension;
 import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.factory.XFactoryRegistry;
@@ -26,17 +24,24 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.IllegalTransitionException;
 import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.models.semantics.petrinet.impl.StochasticNetSemanticsImpl;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
 import org.processmining.plugins.stochasticpetrinet.distribution.timeseries.StatefulTimeseriesDistribution;
+import org.processmining.plugins.stochasticpetrinet.enricher.TrainingData;
 import org.uncommons.maths.random.MersenneTwisterRNG;
-import org.utils.datastructures.ComparablePair;
 import org.utils.datastructures.LimitedTreeMap;
 import org.utils.datastructures.Triple;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Very plain simulator only used for evaluation of the evaluation of the mining of stochastic Petri nets
@@ -89,6 +94,29 @@ public class PNSimulator {
     protected LimitedTreeMap<Integer, Map<Transition, RealDistribution>> cachedDurations;
     protected double logProbabilityOfCurrentTrace;
 
+    /**
+     * Index based kernel used for traceless simulation (see {@link PNSimulatorConfig#simulateTraceless}).
+     * Created lazily for the last used semantics and final marking.
+     */
+    protected TracelessSimulationKernel tracelessKernel;
+    protected Marking tracelessKernelFinalMarking;
+
+    /**
+     * Random number generator of this simulator for picking transitions and sampling durations of traces
+     * (null: use the shared generator and the generators of the distributions).
+     */
+    protected Random traceRandom;
+
+    /**
+     * semantics used by this simulator, when it is a worker of {@link #simulateInParallel}
+     */
+    private Semantics<Marking, Transition> workerSemantics;
+
+    /**
+     * number of traces that are simulated by one task in {@link #simulateInParallel}
+     */
+    private static final int TRACES_PER_TASK = 32;
+
     public PNSimulator() {
         transitionRemainingTimes = new HashMap<Transition, Long>();
         cachedDurations = new LimitedTreeMap<>(1000);
@@ -140,6 +168,223 @@ public class PNSimulator {
     public XLog simulate(UIPluginContext context, PetrinetGraph petriNet,
                          Semantics<Marking, Transition> semantics, PNSimulatorConfig config, Marking initialMarking, Marking finalMarking) {
         XLog log = null;
+        initSimulation(context, petriNet, config, initialMarking, traceRandom == null);
+        if (config != null) {
+            log = XFactoryRegistry.instance().currentDefault().createLog();
+            XConceptExtension.instance().assignName(log, getLogName(petriNet, config));
+
+            if (!config.deterministicBoundedStateSpaceExploration) {
+                // do a trace by trace simulation (assumed independence from each other..)
+                simulateTraces(context, petriNet, semantics, config, initialMarking, finalMarking, new XLogCollector(log));
+            } else {
+                // explore the state space of the structural model best-first (most likely traces first),
+                // but produce only valid traces that correctly finish within a certain threshold.
+                long time = config.startTime != null ? config.startTime.getTime() : System.currentTimeMillis();
+                semantics.initialize(petriNet.getTransitions(), initialMarking);
+                exploreStateSpace(log, petriNet, semantics, config, initialMarking, getEndPlaces(petriNet), time);
+            }
+
+            if (context != null) {
+                context.log(config.numberOfTraces + " traces generated successfully.");
+            }
+        }
+        return log;
+
+
+    }
+
+    /**
+     * Performs a trace by trace simulation according to a given configuration {@link PNSimulatorConfig} and
+     * passes each trace to the sink instead of collecting them in a log. This way, the memory needed
+     * does not grow with the number of simulated traces (e.g., when streaming to a {@link XesLogSink} or {@link CsvLogSink}).
+     * The sink is closed after the simulation.
+     *
+     * @param context        {@link UIPluginContext} ProM plugin context (may be null)
+     * @param petriNet       a petri net (preferable with stochastic timing information
+     * @param semantics      a {@link Semantics} according to which simulation should be performed
+     * @param config         {@link PNSimulatorConfig} (the bounded state space exploration is not supported)
+     * @param initialMarking
+     * @param finalMarking
+     * @param sink           receives the simulated traces
+     * @return the number of simulated traces
+     */
+    public long simulate(UIPluginContext context, PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
+                         PNSimulatorConfig config, Marking initialMarking, Marking finalMarking, SimulatedLogSink sink) {
+        if (config.deterministicBoundedStateSpaceExploration || config.simulateTraceless) {
+            throw new IllegalArgumentException("Only trace by trace simulation can be streamed to a sink!");
+        }
+        initSimulation(context, petriNet, config, initialMarking, traceRandom == null);
+        try {
+            sink.startLog(getLogName(petriNet, config));
+            simulateTraces(context, petriNet, semantics, config, initialMarking, finalMarking, sink);
+            sink.endLog();
+        } finally {
+            sink.close();
+        }
+        if (context != null) {
+            context.log(config.numberOfTraces + " traces generated successfully.");
+        }
+        return config.numberOfTraces;
+    }
+
+    /**
+     * Parallel version of {@link #simulate(UIPluginContext, PetrinetGraph, Semantics, PNSimulatorConfig, Marking, Marking)}.
+     *
+     * @param threads the number of threads to use
+     * @see #simulateInParallel(UIPluginContext, PetrinetGraph, Semantics, PNSimulatorConfig, Marking, Marking, SimulatedLogSink, int)
+     */
+    public XLog simulateInParallel(UIPluginContext context, PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
+                                   PNSimulatorConfig config, Marking initialMarking, Marking finalMarking, int threads) {
+        XLog log = XFactoryRegistry.instance().currentDefault().createLog();
+        XConceptExtension.instance().assignName(log, getLogName(petriNet, config));
+        simulateInParallel(context, petriNet, semantics, config, initialMarking, finalMarking, new XLogCollector(log), threads);
+        return log;
+    }
+
+    /**
+     * Simulates the traces with several threads. Each thread owns its simulator (with the clocks of the transitions)
+     * and its semantics. Trace i is simulated with its own random stream {@link #createRandomStream}(seed, i) and
+     * the arrival times are drawn from a separate stream, so that the resulting log only depends on the seed of the
+     * configuration (and the start time, see {@link PNSimulatorConfig#setStartTime(Date)}), but not on the number of threads.
+     * The traces are passed to the sink in trace order, and only a bounded number of simulated traces are kept in memory.
+     * <p>
+     * Models with time series distributions are simulated by a single worker thread (trace after trace), as these distributions
+     * depend on the global time. The shared random number generator is not reseeded, as it is not used by the traces.
+     *
+     * @param semantics the semantics (each thread uses a new instance of its class)
+     * @param sink      receives the simulated traces (it is closed after the simulation)
+     * @param threads   the number of threads to use
+     * @return the number of simulated traces
+     */
+    public long simulateInParallel(UIPluginContext context, final PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
+                                   final PNSimulatorConfig config, final Marking initialMarking, final Marking finalMarking, SimulatedLogSink sink, int threads) {
+        if (config.deterministicBoundedStateSpaceExploration || config.simulateTraceless) {
+            throw new IllegalArgumentException("Only trace by trace simulation can be run in parallel!");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
+        if (containsTimeseriesDistributions(petriNet)) {
+            threads = 1;
+        }
+        initSimulation(context, petriNet, config, initialMarking, false);
+
+        final BlockingQueue<PNSimulator> workers = new LinkedBlockingQueue<>();
+        for (int w = 0; w < threads; w++) {
+            PNSimulator worker = new PNSimulator();
+            worker.setUseOnlyPastTrainingData(useOnlyPastTrainingData);
+            worker.workerSemantics = createSemantics(semantics);
+            workers.add(worker);
+        }
+        if (useOnlyPastTrainingData) {
+            // parse the training data before it is accessed concurrently
+            for (Transition t : petriNet.getTransitions()) {
+                if (t instanceof TimedTransition) {
+                    ((TimedTransition) t).getParsedTrainingData();
+                }
+            }
+        }
+
+        Random arrivalRandom = createRandomStream(config.seed, -1);
+        long traceStart = config.startTime != null ? config.startTime.getTime() : System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            sink.startLog(getLogName(petriNet, config));
+            // tasks that are submitted, but not yet passed to the sink (in trace order)
+            Deque<Future<List<XTrace>>> pending = new ArrayDeque<>();
+            long next = 0;
+            long written = 0;
+            while (written < config.numberOfTraces) {
+                while (next < config.numberOfTraces && pending.size() < 4 * threads) {
+                    final long first = next;
+                    final long[] starts = new long[(int) Math.min(TRACES_PER_TASK, config.numberOfTraces - first)];
+                    for (int k = 0; k < starts.length; k++) {
+                        traceStart += (long) (StochasticNetUtils.sample(arrivalDistribution, arrivalRandom) * config.unitFactor.getUnitFactorToMillis());
+                        starts[k] = traceStart;
+                    }
+                    next += starts.length;
+                    pending.add(executor.submit(new Callable<List<XTrace>>() {
+                        public List<XTrace> call() throws InterruptedException {
+                            PNSimulator worker = workers.take();
+                            try {
+                                List<XTrace> traces = new ArrayList<>(starts.length);
+                                for (int k = 0; k < starts.length; k++) {
+                                    traces.add(worker.simulateSeededTrace(petriNet, config, initialMarking, finalMarking, first + k, starts[k]));
+                                }
+                                return traces;
+                            } finally {
+                                workers.add(worker);
+                            }
+                        }
+                    }));
+                }
+                for (XTrace trace : pending.poll().get()) {
+                    sink.addTrace(trace);
+                    written++;
+                }
+                if (context != null) {
+                    context.getProgress().setValue((int) ((written / (double) config.numberOfTraces) * 1000));
+                }
+            }
+            sink.endLog();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Parallel simulation failed!", e);
+        } finally {
+            executor.shutdownNow();
+            sink.close();
+        }
+        if (context != null) {
+            context.log(config.numberOfTraces + " traces generated successfully.");
+        }
+        return config.numberOfTraces;
+    }
+
+    private XTrace simulateSeededTrace(PetrinetGraph petriNet, PNSimulatorConfig config, Marking initialMarking, Marking finalMarking, long i, long traceStart) {
+        setRandom(createRandomStream(config.seed, i));
+        workerSemantics.initialize(petriNet.getTransitions(), initialMarking);
+        XTrace trace = (XTrace) simulateOneTrace(petriNet, workerSemantics, config, initialMarking, traceStart, traceStart, i, false, finalMarking);
+        trace.getAttributes().put(SIMULATED_LOG_PROBABILITY, new XAttributeContinuousImpl(SIMULATED_LOG_PROBABILITY, this.logProbabilityOfCurrentTrace));
+        return trace;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Semantics<Marking, Transition> createSemantics(Semantics<Marking, Transition> semantics) {
+        try {
+            return semantics.getClass().newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Semantics " + semantics.getClass().getName() + " can not be instantiated for parallel simulation!", e);
+        }
+    }
+
+    private static boolean containsTimeseriesDistributions(PetrinetGraph petriNet) {
+        for (Transition t : petriNet.getTransitions()) {
+            if (t instanceof TimedTransition && ((TimedTransition) t).getDistribution() instanceof StatefulTimeseriesDistribution) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the random number generator used by this simulator for picking transitions and sampling durations
+     * of traces (e.g., to have independent streams in parallel simulation).
+     *
+     * @param random the random number generator, or null to use the shared one (and the generators of the distributions)
+     */
+    public void setRandom(Random random) {
+        this.traceRandom = random;
+    }
+
+    protected Random getRandom() {
+        return traceRandom != null ? traceRandom : random;
+    }
+
+    /**
+     * @param seedSharedRandom whether to reseed the shared random number generator with the seed of the configuration
+     *                         (not when the traces are simulated with their own random streams, see {@link #setRandom(Random)})
+     */
+    private void initSimulation(UIPluginContext context, PetrinetGraph petriNet, PNSimulatorConfig config, Marking initialMarking, boolean seedSharedRandom) {
         if (initialMarking == null || initialMarking.isEmpty()) {
             if (context != null) {
                 context.log("No initial marking found! Trying to use a default one...");
@@ -152,11 +397,9 @@ public class PNSimulator {
         if (config != null) {
             arrivalDistribution = new ExponentialDistribution(config.arrivalRate);
             transitionRemainingTimes = new HashMap<Transition, Long>();
-            random.setSeed(config.seed);
-            log = XFactoryRegistry.instance().currentDefault().createLog();
-            XConceptExtension.instance().assignName(log, config.logName + " (from " + petriNet.getLabel() + ")");
-
-            Date traceStart = new Date();
+            if (seedSharedRandom) {
+                random.setSeed(config.seed);
+            }
 
             // show progress to the user:
             if (context != null) {
@@ -164,46 +407,30 @@ public class PNSimulator {
                 context.getProgress().setMinimum(0);
                 context.getProgress().setMaximum(1000);
             }
+        }
+    }
 
-            if (!config.deterministicBoundedStateSpaceExploration) {
-                // do a trace by trace simulation (assumed independence from each other..)
-                for (long i = 0; i < config.numberOfTraces; i++) {
-                    if (context != null) {
-                        context.getProgress().setValue((int) ((i/(double)config.numberOfTraces) * 1000));
-                    }
-
-                    traceStart = getNextArrivalDate(traceStart, config.unitFactor);
-                    //Map<Place, List<Long>> placeTimes = new HashMap<Place, List<Long>>();
-                    //updatePlaceTimes(initialMarking, traceStart, placeTimes);
-                    semantics.initialize(petriNet.getTransitions(), initialMarking);
-
-                    XTrace trace = (XTrace) simulateOneTrace(petriNet, semantics, config, initialMarking, traceStart.getTime(), traceStart.getTime(), i, false, finalMarking);
-                    trace.getAttributes().put(SIMULATED_LOG_PROBABILITY, new XAttributeContinuousImpl(SIMULATED_LOG_PROBABILITY, this.logProbabilityOfCurrentTrace));
-                    log.add(trace);
-                }
-            } else {
-                // explore the state space of the structural model with a breadth first search,
-                // but produce only valid traces that correctly finish within a certain threshold.
-                long time = System.currentTimeMillis();
-
-                XTrace trace = createTrace(1, config);
-                LinkedList<VisitState> statesToVisit = new LinkedList<>();
-                statesToVisit.add(new VisitState(trace, initialMarking, time, new BigDecimal(1.0)));
-                semantics.initialize(petriNet.getTransitions(), initialMarking);
-                Marking endPlaces = getEndPlaces(petriNet);
-                if (petriNet.getLabel().equals("s00000633##s00004419")) {
-                    throw new IllegalArgumentException("Too many states!");
-                }
-                addAllDifferentTracesToLog(log, petriNet, statesToVisit, semantics, new HashMap<String, Set<Integer>>(), config, endPlaces);
-            }
+    private String getLogName(PetrinetGraph petriNet, PNSimulatorConfig config) {
+        return config.logName + " (from " + petriNet.getLabel() + ")";
+    }
 
+    private void simulateTraces(UIPluginContext context, PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
+                                PNSimulatorConfig config, Marking initialMarking, Marking finalMarking, SimulatedLogSink sink) {
+        Date traceStart = config.startTime != null ? config.startTime : new Date();
+        for (long i = 0; i < config.numberOfTraces; i++) {
             if (context != null) {
-                context.log(config.numberOfTraces + " traces generated successfully.");
+                context.getProgress().setValue((int) ((i/(double)config.numberOfTraces) * 1000));
             }
-        }
-        return log;
 
+            traceStart = getNextArrivalDate(traceStart, config.unitFactor);
+            //Map<Place, List<Long>> placeTimes = new HashMap<Place, List<Long>>();
+            //updatePlaceTimes(initialMarking, traceStart, placeTimes);
+            semantics.initialize(petriNet.getTransitions(), initialMarking);
 
+            XTrace trace = (XTrace) simulateOneTrace(petriNet, semantics, config, initialMarking, traceStart.getTime(), traceStart.getTime(), i, false, finalMarking);
+            trace.getAttributes().put(SIMULATED_LOG_PROBABILITY, new XAttributeContinuousImpl(SIMULATED_LOG_PROBABILITY, this.logProbabilityOfCurrentTrace));
+            sink.addTrace(trace);
+        }
     }
 
     protected Marking getEndPlaces(PetrinetGraph petriNet) {
@@ -216,40 +443,62 @@ public class PNSimulator {
         return endPlaces;
     }
 
-    protected void addAllDifferentTracesToLog(XLog log, PetrinetGraph petriNet, LinkedList<VisitState> statesToVisit,
-                                              Semantics<Marking, Transition> semantics, Map<String, Set<Integer>> numberOfDecisionTransitions, PNSimulatorConfig config, Marking endPlaces) {
-
-        BigDecimal cumulativeProb = new BigDecimal(0.0);
-        while (!statesToVisit.isEmpty() && cumulativeProb.doubleValue() < config.getQuantile()) {
-            VisitState currentStateWithTime = statesToVisit.removeFirst();
-            XTrace prefix = currentStateWithTime.getTrace();
-            Marking currentMarking = currentStateWithTime.getMarking();
-            long time = currentStateWithTime.getTime();
-            BigDecimal probability = currentStateWithTime.getProbability();
-
-//			if (prefix.size() > config.maxEventsInOneTrace*10){
-//				throw new IllegalArgumentException("Petri net contains a potential lifelock!");
-//			}
-            if (!config.allowUnbounded && !isOneBounded(currentMarking)) {
-                throw new IllegalArgumentException("Petri net is not 1-bounded!");
-            }
-//			if (statesToVisit.size() > config.maxEventsInOneTraceEventsInOneTrace*10){
-//				throw new IllegalArgumentException("Too many states!");
-//			}
-            if (log.size() > config.numberOfTraces) {
-                return;
+    /**
+     * Explores the state space of the net best-first, i.e., the states are expanded in the order of decreasing
+     * probability of their prefixes. Each reached final state yields a trace. The exploration stops, once
+     * the traces cover the {@link PNSimulatorConfig#getQuantile()} of the probability mass, or
+     * {@link PNSimulatorConfig#numberOfTraces} traces are generated, or all states are explored.
+     * To keep loops finite, a transition is not fired again, if its label already occurs 20 times in the prefix.
+     * <p>
+     * Visited states are stored compactly in an {@link ExplorationTree} and the events of a trace are only
+     * created for final states. Unexplored states exceeding {@link PNSimulatorConfig#getMaxFrontierStatesInMemory()}
+     * are spilled to disk (see {@link StateSpaceFrontier}).
+     *
+     * @param log            the log to which the traces are added
+     * @param petriNet       the net
+     * @param semantics      initialized {@link Semantics} of the net
+     * @param config         {@link PNSimulatorConfig}
+     * @param initialMarking the initial marking
+     * @param endPlaces      the places that a final marking may contain
+     * @param startTime      the time of the initial state
+     */
+    protected void exploreStateSpace(XLog log, PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
+                                     PNSimulatorConfig config, Marking initialMarking, Marking endPlaces, long startTime) {
+        List<Place> places = new ArrayList<>(petriNet.getPlaces());
+        Map<Place, Integer> placeIndices = new HashMap<>();
+        for (Place p : places) {
+            placeIndices.put(p, placeIndices.size());
+        }
+        List<Transition> transitions = new ArrayList<>(petriNet.getTransitions());
+        Map<Transition, Integer> transitionIndices = new HashMap<>();
+        Map<String, Integer> labelIndices = new HashMap<>();
+        int[] transitionLabels = new int[transitions.size()];
+        for (Transition t : transitions) {
+            transitionIndices.put(t, transitionIndices.size());
+            String label = getLabel(t);
+            if (!labelIndices.containsKey(label)) {
+                labelIndices.put(label, labelIndices.size());
             }
-
-            if (isFinal(currentMarking, endPlaces)) {
-                // ensure proper naming:
-                String instance = String.valueOf(log.size());
-                XConceptExtension.instance().assignName(prefix, "tr_" + instance);
-                for (XEvent e : prefix) {
-                    XConceptExtension.instance().assignInstance(e, instance);
+            transitionLabels[transitionIndices.get(t)] = labelIndices.get(label);
+        }
+        int[] labelCounts = new int[labelIndices.size()];
+
+        ExplorationTree tree = new ExplorationTree(startTime);
+        double cumulativeProbability = 0;
+        try (StateSpaceFrontier frontier = new StateSpaceFrontier(config.getMaxFrontierStatesInMemory())) {
+            frontier.add(new StateSpaceFrontier.FrontierState(ExplorationTree.ROOT, 0, encodeMarking(initialMarking, placeIndices)));
+            while (!frontier.isEmpty() && cumulativeProbability < config.getQuantile() && log.size() < config.numberOfTraces) {
+                StateSpaceFrontier.FrontierState current = frontier.poll();
+                Marking currentMarking = decodeMarking(current.getMarking(), places);
+
+                if (!config.allowUnbounded && !isOneBounded(currentMarking)) {
+                    throw new IllegalArgumentException("Petri net is not 1-bounded!");
+                }
+                if (isFinal(currentMarking, endPlaces)) {
+                    log.add(materializeTrace(tree, current, petriNet, transitions, String.valueOf(log.size())));
+                    cumulativeProbability += Math.exp(current.getLogProbability());
+                    continue;
                 }
-                log.add(prefix);
-                cumulativeProb = cumulativeProb.add(probability);
-            } else {
                 // explore all executable transitions:
                 semantics.setCurrentState(currentMarking);
                 Collection<Transition> executableTransitions = semantics.getExecutableTransitions();
@@ -258,62 +507,94 @@ public class PNSimulator {
                 }
                 Map<Transition, Double> transitionProbabilities = getTransitionProbabilities(executableTransitions, semantics);
 
-                for (Transition t : executableTransitions) {
-//					String markingTransitionCombination = currentMarking.toString()+"_"+t.getLabel()+t.getId();
-//					if (!numberOfDecisionTransitions.containsKey(markingTransitionCombination)){
-//						numberOfDecisionTransitions.put(markingTransitionCombination, new HashSet<Integer>());
-//					}
-
-                    BigDecimal probOfTransition = new BigDecimal(1.0/executableTransitions.size());
-
-                    int numberOfTimesAlreadyInTrace = 0;
-
-                    for (XEvent event : prefix) {
-                        if (XConceptExtension.instance().extractName(event).equals(t.getLabel())) {
-                            numberOfTimesAlreadyInTrace++;
-                        }
+                Arrays.fill(labelCounts, 0);
+                for (int s = current.getState(); s != ExplorationTree.ROOT; s = tree.getParent(s)) {
+                    if (!transitions.get(tree.getTransition(s)).isInvisible()) {
+                        labelCounts[transitionLabels[tree.getTransition(s)]]++;
                     }
+                }
+                long time = tree.getTime(current.getState());
+                for (Transition t : executableTransitions) {
+                    int transitionIndex = transitionIndices.get(t);
                     // TODO: deal with very large state spaces!!
                     // sampling needs some correction mechanism (maybe use LoLA to estimate state space)
                     // should be able to use that information in a smart way.
-                    if (numberOfTimesAlreadyInTrace >= 20) {
-                        // old version: numberOfDecisionTransitions.get(markingTransitionCombination).size() > 5
-
+                    if (labelCounts[transitionLabels[transitionIndex]] >= 20) {
                         // do not explore this transition further...
-                    } else {
-//						numberOfDecisionTransitions.get(markingTransitionCombination).add(prefix.size());
-                        semantics.setCurrentState(currentMarking);
-                        XTrace clone = (XTrace) prefix.clone();
-                        StochasticNetUtils.updateLogProbability(clone, Math.log(transitionProbabilities.get(t)));
-                        if (!t.isInvisible()) {
-                            if (!prefix.isEmpty()) {
-                                long lastEventTime = XTimeExtension.instance().extractTimestamp(prefix.get(prefix.size() - 1)).getTime();
-                                time = Math.max(time, lastEventTime);
-                            }
-                            if (t instanceof TimedTransition) {
-                                TimedTransition tt = (TimedTransition) t;
-                                if (tt.getDistribution() instanceof StatefulTimeseriesDistribution) {
-                                    ((StatefulTimeseriesDistribution) tt.getDistribution()).setCurrentTime(time);
-                                }
-                                time += (long) (config.unitFactor.getUnitFactorToMillis() * StochasticNetUtils.sampleWithConstraint(tt, 0.1));
-                            } else {
-                                time += random.nextDouble() * config.unitFactor.getUnitFactorToMillis();
+                        continue;
+                    }
+                    long firingTime = time;
+                    if (!t.isInvisible()) {
+                        if (t instanceof TimedTransition) {
+                            TimedTransition tt = (TimedTransition) t;
+                            if (tt.getDistribution() instanceof StatefulTimeseriesDistribution) {
+                                ((StatefulTimeseriesDistribution) tt.getDistribution()).setCurrentTime(time);
                             }
-                            XEvent e = createSimulatedEvent(t, petriNet, time, XConceptExtension.instance().extractName(clone));
-                            clone.add(e);
+                            firingTime += (long) (config.unitFactor.getUnitFactorToMillis() * StochasticNetUtils.sampleWithConstraint(tt, 0.1));
+                        } else {
+                            firingTime += random.nextDouble() * config.unitFactor.getUnitFactorToMillis();
                         }
-                        try {
-                            semantics.executeExecutableTransition(t);
-                        } catch (IllegalTransitionException e1) {
-                            e1.printStackTrace();
-                        }
-                        statesToVisit.addLast(new VisitState(clone, semantics.getCurrentState(), time, probability.multiply(probOfTransition)));
                     }
+                    semantics.setCurrentState(currentMarking);
+                    try {
+                        semantics.executeExecutableTransition(t);
+                    } catch (IllegalTransitionException e1) {
+                        e1.printStackTrace();
+                    }
+                    int successor = tree.addState(current.getState(), transitionIndex, firingTime);
+                    frontier.add(new StateSpaceFrontier.FrontierState(successor,
+                            current.getLogProbability() + Math.log(transitionProbabilities.get(t)),
+                            encodeMarking(semantics.getCurrentState(), placeIndices)));
                 }
             }
         }
     }
 
+    /**
+     * Creates the trace of the events on the path to a state of the exploration.
+     */
+    private XTrace materializeTrace(ExplorationTree tree, StateSpaceFrontier.FrontierState finalState, PetrinetGraph petriNet,
+                                    List<Transition> transitions, String instance) {
+        XAttributeMap traceAttributes = new XAttributeMapImpl();
+        traceAttributes.put(CONCEPT_NAME, new XAttributeLiteralImpl(CONCEPT_NAME, "tr_" + instance));
+        XTrace trace = new XTraceImpl(traceAttributes);
+        for (int state : tree.getPath(finalState.getState())) {
+            Transition t = transitions.get(tree.getTransition(state));
+            if (!t.isInvisible()) {
+                trace.add(createSimulatedEvent(t, petriNet, tree.getTime(state), instance));
+            }
+        }
+        StochasticNetUtils.updateLogProbability(trace, finalState.getLogProbability());
+        return trace;
+    }
+
+    /**
+     * Encodes a marking as the sorted indices of the places with tokens (one entry per token).
+     */
+    private int[] encodeMarking(Marking marking, Map<Place, Integer> placeIndices) {
+        int tokens = 0;
+        for (Place p : marking.baseSet()) {
+            tokens += marking.occurrences(p);
+        }
+        int[] encoded = new int[tokens];
+        int i = 0;
+        for (Place p : marking.baseSet()) {
+            for (int token = 0; token < marking.occurrences(p); token++) {
+                encoded[i++] = placeIndices.get(p);
+            }
+        }
+        Arrays.sort(encoded);
+        return encoded;
+    }
+
+    private Marking decodeMarking(int[] encoded, List<Place> places) {
+        Marking marking = new Marking();
+        for (int place : encoded) {
+            marking.add(places.get(place));
+        }
+        return marking;
+    }
+
     /**
      * Retrieves the transition probabilities (normalized (sums to one) -> one must be chosen).
      * Only considers these cases:
@@ -355,7 +636,7 @@ public class PNSimulator {
                 }
             } else if (allTimed) {
                 for (Transition t : transitions) {
-                    transitionProbabilities.put(t, StochasticNetUtils.getFiringRate(t) / cumulativeWeightAndRate.getFirst());
+                    transitionProbabilities.put(t, StochasticNetUtils.getFiringRate(t) / cumulativeWeightAndRate.getSecond());
                 }
             } else { // mixed -> should not be the case, as semantics should take care of this case and not return both as executable!
                 System.out.println("Debug me: why are mixed (immediate/timed) transitions here?");
@@ -401,6 +682,12 @@ public class PNSimulator {
      */
     public Object simulateOneTrace(PetrinetGraph petriNet, Semantics<Marking, Transition> semantics,
                                    PNSimulatorConfig config, Marking initialMarking, long traceStart, long constraint, long i, boolean useTimeConstraint, Marking finalMarking) {
+        if (config.simulateTraceless && TracelessSimulationKernel.isApplicable(semantics)) {
+            TracelessSimulationKernel kernel = getTracelessKernel((EfficientStochasticNetSemanticsImpl) semantics, finalMarking);
+            lastFiringTime = kernel.simulate(config, traceStart, constraint, useTimeConstraint, useOnlyPastTrainingData);
+            this.logProbabilityOfCurrentTrace = kernel.getLogProbabilityOfLastRun();
+            return lastFiringTime;
+        }
         XTrace trace = createTrace(i, config);
 
         transitionRemainingTimes = new HashMap<Transition, Long>();
@@ -450,6 +737,15 @@ public class PNSimulator {
         return getReturnObject(trace, lastFiringTime, config);
     }
 
+    protected TracelessSimulationKernel getTracelessKernel(EfficientStochasticNetSemanticsImpl semantics, Marking finalMarking) {
+        if (tracelessKernel == null || tracelessKernel.getSemantics() != semantics
+                || (finalMarking == null ? tracelessKernelFinalMarking != null : !finalMarking.equals(tracelessKernelFinalMarking))) {
+            tracelessKernel = new TracelessSimulationKernel(this, semantics, finalMarking);
+            tracelessKernelFinalMarking = finalMarking;
+        }
+        return tracelessKernel;
+    }
+
     public double getLogProbabilityOfLastTrace() {
         return this.logProbabilityOfCurrentTrace;
     }
@@ -697,30 +993,41 @@ public class PNSimulator {
      * @return
      */
     protected double sampleDurationForTransition(double positiveConstraint, long startOfTransition, TimedTransition timedT, TimeUnit unitFactor, LimitedTreeMap<Integer, Map<Transition, RealDistribution>> cachedDurations, boolean useOnlyPastTrainingData) {
+        RealDistribution dist = getDistributionForSampling(startOfTransition, timedT, cachedDurations, useOnlyPastTrainingData);
+        if (traceRandom != null) {
+            return StochasticNetUtils.sampleWithConstraint(dist, positiveConstraint, traceRandom);
+        }
+        return StochasticNetUtils.sampleWithConstraint(dist, positiveConstraint);
+    }
+
+    /**
+     * @param startOfTransition       long the current time (or better: the last observed event's time)
+     * @param timedT                  {@link TimedTransition} that captures information about the duration distribution from which the sample should be taken.
+     * @param cachedDurations         cache of the distributions estimated from the training data up to a certain size
+     * @param useOnlyPastTrainingData flag that indicates whether only past training data is allowed to be used
+     * @return the distribution from which the duration of the transition is sampled
+     */
+    protected RealDistribution getDistributionForSampling(long startOfTransition, TimedTransition timedT, LimitedTreeMap<Integer, Map<Transition, RealDistribution>> cachedDurations, boolean useOnlyPastTrainingData) {
         RealDistribution dist;
         if (useOnlyPastTrainingData && !(timedT.getDistribution() instanceof StatefulTimeseriesDistribution)) {
-            SortedMultiset<ComparablePair<Long, List<Object>>> sortedTrainingData = timedT.getTrainingDataUpTo(startOfTransition);
-            int sizeOfTrainingData = sortedTrainingData.size();
+            TrainingData trainingData = timedT.getParsedTrainingData();
+            int sizeOfTrainingData = trainingData.countBefore(startOfTransition);
             if (!cachedDurations.containsKey(sizeOfTrainingData)) {
                 cachedDurations.put(sizeOfTrainingData, new HashMap<Transition, RealDistribution>());
             }
             if (cachedDurations.get(sizeOfTrainingData).containsKey(timedT)) {
                 dist = cachedDurations.get(sizeOfTrainingData).get(timedT);
             } else {
-                DescriptiveStatistics stats = new DescriptiveStatistics();
-                for (ComparablePair<Long, List<Object>> pair : sortedTrainingData) {
-                    stats.addValue((Double) pair.getSecond().get(0));
-                }
                 switch (timedT.getDistributionType()) {
                     case EXPONENTIAL:
-                        dist = new ExponentialDistribution(stats.getMean());
+                        dist = new ExponentialDistribution(trainingData.getMean(sizeOfTrainingData));
                         break;
                     case NORMAL:
-                        dist = new NormalDistribution(stats.getMean(), stats.getStandardDeviation());
+                        dist = new NormalDistribution(trainingData.getMean(sizeOfTrainingData), trainingData.getStandardDeviation(sizeOfTrainingData));
                         break;
                     case GAUSSIAN_KERNEL:
                         dist = new GaussianKernelDistribution();
-                        ((GaussianKernelDistribution) dist).addValues(stats.getValues());
+                        ((GaussianKernelDistribution) dist).addValues(trainingData.getDurations(sizeOfTrainingData));
                         break;
                     case DETERMINISTIC:
                         dist = timedT.getDistribution();
@@ -737,8 +1044,7 @@ public class PNSimulator {
         if (dist instanceof StatefulTimeseriesDistribution) {
             ((StatefulTimeseriesDistribution) dist).setCurrentTime(startOfTransition);
         }
-        StochasticNetUtils.useCache(false);
-        return StochasticNetUtils.sampleWithConstraint(dist, "", positiveConstraint);
+        return dist;
     }
 
 //	private void updatePlaceTimes(Collection<Place> places, Date time, Map<Place, List<Long>> placeTimes) {
@@ -783,7 +1089,7 @@ public class PNSimulator {
 
             // either transitions are all immediate -> pick one randomly according to their relative weights...
             if (allImmediate) {
-                Pair<Integer, Double> indexAndProbability = pickTransitionAccordingToWeights(transitions, new Date(constraint), semantics, useOnlyPastTrainingData);
+                Pair<Integer, Double> indexAndProbability = pickTransitionAccordingToWeights(transitions, new Date(constraint), semantics, useOnlyPastTrainingData, getRandom());
                 Transition t = getTransitionWithIndex(transitions, indexAndProbability.getFirst());
                 transitionRemainingTimes.put(t, 0l);
                 return new Triple<Transition, Long, Double>(t, 0l, indexAndProbability.getSecond());
@@ -792,7 +1098,7 @@ public class PNSimulator {
                 double probability = 1;
                 // select according to selection policy:
                 if (config.executionPolicy.equals(ExecutionPolicy.GLOBAL_PRESELECTION)) {
-                    Pair<Integer, Double> indexAndProbability = pickTransitionAccordingToWeights(transitions, new Date(constraint), semantics, useOnlyPastTrainingData);
+                    Pair<Integer, Double> indexAndProbability = pickTransitionAccordingToWeights(transitions, new Date(constraint), semantics, useOnlyPastTrainingData, getRandom());
                     // restrict the set of enabled transitions to the randomly picked one:
                     Transition t = getTransitionWithIndex(transitions, indexAndProbability.getFirst());
                     transitions = new LinkedList<Transition>();
@@ -845,7 +1151,7 @@ public class PNSimulator {
             }
         } else {
             // pick randomly:
-            int randomPick = random.nextInt(transitions.size());
+            int randomPick = getRandom().nextInt(transitions.size());
             Transition t = getTransitionWithIndex(transitions, randomPick);
             return new Triple<Transition, Long, Double>(t, getTransitionRemainingTime(t, config.unitFactor, transitionRemainingTimes, startOfTransition, 0, cachedDurationDistributions, useOnlyPastTrainingData), 1.0 / transitions.size());
         }
@@ -898,6 +1204,13 @@ public class PNSimulator {
      * @return
      */
     public static Pair<Integer, Double> pickTransitionAccordingToWeights(Collection<Transition> transitions, Date currentTime, Semantics<Marking, Transition> semantics, boolean useOnlyPastTrainingData) {
+        return pickTransitionAccordingToWeights(transitions, currentTime, semantics, useOnlyPastTrainingData, random);
+    }
+
+    /**
+     * Same as {@link #pickTransitionAccordingToWeights(Collection, Date, Semantics, boolean)}, but with a given random number generator.
+     */
+    public static Pair<Integer, Double> pickTransitionAccordingToWeights(Collection<Transition> transitions, Date currentTime, Semantics<Marking, Transition> semantics, boolean useOnlyPastTrainingData, Random random) {
         double[] weights = new double[transitions.size()];
         double cumulativeWeights = 0;
         int i = 0;
@@ -905,7 +1218,7 @@ public class PNSimulator {
             TimedTransition tt = (TimedTransition) transition;
             double weight;
             if (useOnlyPastTrainingData) {
-                weight = tt.getTrainingDataUpTo(currentTime.getTime()).size();
+                weight = tt.getParsedTrainingData().countBefore(currentTime.getTime());
             } else {
                 weight = tt.getWeight();
             }
@@ -926,6 +1239,34 @@ public class PNSimulator {
         return t;
     }
 
+    /**
+     * Creates an independent random number generator for a given stream of a simulation.
+     * The same seed and stream id always produce the same sequence of numbers.
+     *
+     * @param seed     the seed of the simulation (see {@link PNSimulatorConfig#getSeed()})
+     * @param streamId the id of the stream (e.g., the worker or trace number)
+     * @return a seeded {@link MersenneTwisterRNG}
+     */
+    public static Random createRandomStream(long seed, long streamId) {
+        byte[] seedBytes = new byte[16];
+        long first = mix(seed + 0x9E3779B97F4A7C15L * (2 * streamId + 1));
+        long second = mix(first + 0x9E3779B97F4A7C15L);
+        for (int b = 0; b < 8; b++) {
+            seedBytes[b] = (byte) (first >>> (8 * b));
+            seedBytes[b + 8] = (byte) (second >>> (8 * b));
+        }
+        return new MersenneTwisterRNG(seedBytes);
+    }
+
+    /**
+     * splitmix64 finalizer to spread the bits of consecutive seeds
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     protected Date getNextArrivalDate(Date lastTime, TimeUnit unitFactor) {
         return new Date(lastTime.getTime() + (long) (arrivalDistribution.sample() * unitFactor.getUnitFactorToMillis()));
     }
@@ -933,4 +1274,28 @@ public class PNSimulator {
     public void setUseOnlyPastTrainingData(boolean useOnlyPastTrainingData) {
         this.useOnlyPastTrainingData = useOnlyPastTrainingData;
     }
+
+    /**
+     * Collects the simulated traces in a log
+     */
+    private static class XLogCollector implements SimulatedLogSink {
+        private final XLog log;
+
+        public XLogCollector(XLog log) {
+            this.log = log;
+        }
+
+        public void startLog(String logName) {
+        }
+
+        public void addTrace(XTrace trace) {
+            log.add(trace);
+        }
+
+        public void endLog() {
+        }
+
+        public void close() {
+        }
+    }
 }
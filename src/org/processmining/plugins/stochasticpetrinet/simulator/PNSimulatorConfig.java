@@ -4,6 +4,8 @@ import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.ExecutionPolicy;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeUnit;
 
+import java.util.Date;
+
 /**
  * Configuration parameters for the simple simulation of (stochastic) Petri Nets.
  * Used by {@link PNSimulator}.
@@ -69,13 +71,28 @@ public class PNSimulatorConfig {
      */
     boolean allowUnbounded = true;
 
+    /**
+     * The arrival time of the first trace is drawn after this time (null: the time of the simulation)
+     */
+    Date startTime;
+
     /**
      * Counter variable to provide a basic form of unique labeling of logs
      * generated by the of consequent use of the simulator.
      */
     private static int counter = 1;
 
-    private double quantile;
+    /**
+     * The deterministic state space exploration stops, once the traces cover this probability mass
+     * (by default, the whole state space (bounded by loop iterations) is explored).
+     */
+    private double quantile = 1;
+
+    /**
+     * Maximal number of unexplored states kept in memory during the deterministic state space exploration.
+     * Less likely states beyond that are spilled to disk.
+     */
+    private int maxFrontierStatesInMemory = 1 << 20;
 
 
     public PNSimulatorConfig(long numberOfTraces, StochasticNet net) {
@@ -146,10 +163,22 @@ public class PNSimulatorConfig {
         this.allowUnbounded = allowUnbounded;
     }
 
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
     public void setSeed(long seed) {
         this.seed = seed;
     }
 
+    public long getSeed() {
+        return seed;
+    }
+
     public void setSimulateTraceless(boolean simulateTraceLess) {
         this.simulateTraceless = simulateTraceLess;
     }
@@ -169,4 +198,15 @@ public class PNSimulatorConfig {
     public double getQuantile() {
         return quantile;
     }
+
+    public int getMaxFrontierStatesInMemory() {
+        return maxFrontierStatesInMemory;
+    }
+
+    public void setMaxFrontierStatesInMemory(int maxFrontierStatesInMemory) {
+        if (maxFrontierStatesInMemory < 2) {
+            throw new IllegalArgumentException("At least two states must fit into memory!");
+        }
+        this.maxFrontierStatesInMemory = maxFrontierStatesInMemory;
+    }
 }
@@ -1,6 +1,5 @@
 package org.processmining.plugins.stochasticpetrinet.simulator;
 
-import com.google.common.collect.SortedMultiset;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.RealDistribution;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
@@ -13,14 +12,12 @@ import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.distribution.DiracDeltaDistribution;
+import org.processmining.plugins.stochasticpetrinet.enricher.TrainingData;
 import org.processmining.plugins.stochasticpetrinet.prediction.timeseries.TimeSeriesConfiguration;
-import org.processmining.plugins.stochasticpetrinet.prediction.timeseries.TimeSeriesConfiguration.MissingDataHandling;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.IncrementalAggregation;
 import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.LastObservationTimeSeries;
-import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Observation;
 import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Prediction;
 import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.TimeSeries;
-import org.utils.datastructures.Aggregate;
-import org.utils.datastructures.ComparablePair;
 import org.utils.datastructures.LimitedTreeMap;
 
 import java.util.*;
@@ -51,11 +48,19 @@ public class PNTimeSeriesSimulator extends PNSimulator {
     private Map<Transition, TimeSeries<Double>> cachedTransitionTimeSeries;
     private Map<Transition, TimeSeries<Double>> cachedTransitionDecisionTimeSeries;
 
+    /**
+     * the training data aggregated so far (decision counts and average durations per time index) of each transition
+     */
+    private Map<Transition, IncrementalAggregation> decisionAggregations;
+    private Map<Transition, IncrementalAggregation> durationAggregations;
+
 
     public PNTimeSeriesSimulator(TimeSeriesConfiguration config) {
         super();
         cachedTransitionTimeSeries = new HashMap<>();
         cachedTransitionDecisionTimeSeries = new HashMap<>();
+        decisionAggregations = new HashMap<>();
+        durationAggregations = new HashMap<>();
         cachedPredictedDurations = new LimitedTreeMap<>(CACHE_SIZES);
         cachedConflictingProbabilities = new LimitedTreeMap<>(CACHE_SIZES);
         this.config = config;
@@ -99,69 +104,27 @@ public class PNTimeSeriesSimulator extends PNSimulator {
                         cachedTransitionDecisionTimeSeries.put(t, timeSeries);
                     }
 
-                    // TODO: avoid reiterating all the training data somehow.
-                    SortedMultiset<ComparablePair<Long, List<Object>>> trainingDataSoFar = tt.getTrainingDataUpTo(currentTime.getTime());
+                    TrainingData trainingData = tt.getParsedTrainingData();
+                    int trainingDataSoFar = trainingData.countBefore(currentTime.getTime());
                     if (timeSeries instanceof LastObservationTimeSeries) {
-                        probabilities.put(tt, (double) trainingDataSoFar.size());
+                        probabilities.put(tt, (double) trainingDataSoFar);
                     } else {
-
-                        List<List<Object>> sortedDecisions = new LinkedList<>();
-                        for (ComparablePair<Long, List<Object>> pair : trainingDataSoFar) {
-                            List<Object> list = Arrays.<Object>asList(config.getIndexForTime(pair.getFirst()), semantics.getTransitionId(t), pair.getSecond().get(0), pair.getSecond().get(1));
-                            sortedDecisions.add(list);
+                        // only aggregate the decisions that were observed since the last prediction
+                        IncrementalAggregation count = getAggregation(decisionAggregations, t, false);
+                        if (trainingDataSoFar < count.getConsumed()) {
+                            count.clear();
+                        }
+                        for (int i = count.getConsumed(); i < trainingDataSoFar; i++) {
+                            count.add(config.getIndexForTime(trainingData.getTimestamp(i)), 1);
                         }
 
-                        Aggregate.Function<List<Object>, Long> groupBy = new Aggregate.Function<List<Object>, Long>() {
-                            @Override
-                            public Long apply(List<Object> item) {
-                                // group by the time index
-                                return (Long) (item.get(0));
-                            }
-                        };
-
-                        Map<Long, Integer> count = Aggregate.sum(sortedDecisions, groupBy,
-                                new Aggregate.Function<List<Object>, Integer>() {
-                                    @Override
-                                    public Integer apply(List<Object> item) {
-                                        return 1;
-                                    }
-                                });
-
-                        if (count.size() == 1) {
-                            probabilities.put(t, Double.valueOf(count.values().iterator().next()));
+                        if (count.size() <= 1) {
+                            probabilities.put(t, (double) trainingDataSoFar);
                         } else {
-                            // go through all elements of the map
-                            List<Observation<Double>> observations = new ArrayList<>();
-
-                            Iterator<Long> iter = count.keySet().iterator();
-                            Long current = iter.next();
-                            Long next = iter.hasNext() ? iter.next() : null;
-
-                            double mean = StochasticNetUtils.getMean(count.values());
-
-                            do {
-                                Observation<Double> observedCount = new Observation<>();
-                                observedCount.timestamp = current; // no real time stamp but rather the time index in the time series
-                                if (count.containsKey(current)) {
-                                    observedCount.observation = Double.valueOf(count.get(current));
-                                } else {
-                                    // missing value!
-                                    // replace with last observation
-                                    observedCount.observation = handleMissingValue(observations, config.getMissingDataHandling(), mean);
-                                }
-                                observations.add(observedCount);
-
-                                if (next != null && current + 1 < next) {
-                                    current++;
-                                } else {
-                                    current = next;
-                                    next = iter.hasNext() ? iter.next() : null;
-                                }
-                            } while (current != null && current < index);
-                            timeSeries.resetTo(observations);
+                            long lastIndex = count.updateSeries(timeSeries, index, config.getMissingDataHandling());
 
                             // forecast horizon:
-                            int h = (int) (index - observations.get(observations.size() - 1).timestamp);
+                            int h = (int) (index - lastIndex);
                             Prediction<Double> prediction = timeSeries.predict(h);
                             probabilities.put(t, prediction.prediction);
                         }
@@ -176,19 +139,6 @@ public class PNTimeSeriesSimulator extends PNSimulator {
         return probabilities;
     }
 
-    private Double handleMissingValue(List<Observation<Double>> observations, MissingDataHandling missingDataHandling, double mean) {
-        switch (missingDataHandling) {
-            case KEEP_AS_NAN:
-                return Double.NaN;
-            case REPLACE_WITH_LAST_OBSERVATION:
-                return observations.get(observations.size() - 1).observation;
-            case REPLACE_WITH_MEAN:
-            default:
-                return mean;
-        }
-    }
-
-
 //
 //					Map<Long, String> sortedDecisions = new LimitedTreeMap<>(CACHE_SIZES);
 //					
@@ -390,103 +340,35 @@ public class PNTimeSeriesSimulator extends PNSimulator {
                 TimeSeries<Double> transitionSeries = getTimeSeriesForTransition(timedT);
 
 
-                // aggregate by average:
-                // TODO: avoid reiterating all the training data somehow.
-                SortedMultiset<ComparablePair<Long, List<Object>>> trainingDataSoFar = timedT.getTrainingDataUpTo(startOfTransition);
-                LinkedList<List<Object>> sortedDurations = new LinkedList<>();
-                for (ComparablePair<Long, List<Object>> pair : trainingDataSoFar) {
-                    List<Object> list = Arrays.<Object>asList(config.getIndexForTime(pair.getFirst() - (long) ((Double) pair.getSecond().get(0) * unitFactor.getUnitFactorToMillis())),
-                            pair.getSecond().get(0),
-                            pair.getSecond().get(1));
-                    sortedDurations.add(list);
-                }
+                TrainingData trainingData = timedT.getParsedTrainingData();
+                int trainingDataSoFar = trainingData.countBefore(startOfTransition);
 
                 if (transitionSeries instanceof LastObservationTimeSeries) {
                     // special case: do not aggregate into hourly(or other) intervals, but only return the very last observation as predictor.
-                    ((LastObservationTimeSeries) transitionSeries).setLastObservation((Double) sortedDurations.getLast().get(1));
+                    ((LastObservationTimeSeries) transitionSeries).setLastObservation(trainingData.getDuration(trainingDataSoFar - 1));
                     return transitionSeries.predict(0).prediction;
                 }
 
-
-//				// aggregate by average:
-//				String trainingData = timedT.getTrainingData();
-//				Map<Long, List<Object>> sortedDurations = new TreeMap<>();
-//				String[] entries = trainingData.split("\n");
-//				// ignore header!
-//				for (int i = 1; i < entries.length; i++) {
-//					String[] entryParts = entries[i].split(StochasticManifestCollector.DELIMITER);
-//					long time = Long.valueOf(entryParts[2]);
-//					sortedDurations.put(time, Arrays.<Object>asList(config.getIndexForTime(time),
-//							Double.valueOf(entryParts[0]), Double.valueOf(entryParts[1])));
-//				}
-                Aggregate.Function<List<Object>, Long> groupBy = new Aggregate.Function<List<Object>, Long>() {
-                    @Override
-                    public Long apply(List<Object> item) {
-                        // group by the time index
-                        return (Long) (item.get(0));
-                    }
-                };
-
-                Map<Long, Double> avgs = Aggregate.avg(sortedDurations, groupBy,
-                        new Aggregate.Function<List<Object>, Double>() {
-                            @Override
-                            public Double apply(List<Object> item) {
-                                return (Double) item.get(1);
-                            }
-                        });
+                // aggregate by average (grouped by the index of the start time), only the durations observed since the last prediction are added:
+                IncrementalAggregation avgs = getAggregation(durationAggregations, timedT, true);
+                if (trainingDataSoFar < avgs.getConsumed()) {
+                    avgs.clear();
+                }
+                for (int i = avgs.getConsumed(); i < trainingDataSoFar; i++) {
+                    long startTime = trainingData.getTimestamp(i) - (long) (trainingData.getDuration(i) * unitFactor.getUnitFactorToMillis());
+                    avgs.add(config.getIndexForTime(startTime), trainingData.getDuration(i));
+                }
 
                 if (avgs.size() == 1) {
-                    DescriptiveStatistics stats = new DescriptiveStatistics();
-                    for (ComparablePair<Long, List<Object>> pair : trainingDataSoFar) {
-                        stats.addValue(Double.valueOf(pair.getSecond().get(0).toString())); // duration
-                    }
+                    DescriptiveStatistics stats = new DescriptiveStatistics(trainingData.getDurations(trainingDataSoFar));
                     Prediction<Double> prediction = new Prediction<>();
-                    prediction.prediction = avgs.values().iterator().next();
-                    if (!(Math.abs(prediction.prediction - stats.getMean()) < 0.001)) {
-                        System.err.println("average computation failed! Should be: " + stats.getMean() + ", but is: " + prediction.prediction);
-                    }
+                    prediction.prediction = stats.getMean();
                     prediction.lower5Percentile = stats.getPercentile(2.5);
                     prediction.upper95Percentile = stats.getPercentile(97.5);
                     predictionDist = getDistributionForPrediction(prediction);
-
                 } else {
-                    // go through all elements of the map
-                    List<Observation<Double>> observations = new ArrayList<>();
-
-                    double mean = StochasticNetUtils.getMean(avgs.values());
-
-                    Iterator<Long> iter = avgs.keySet().iterator();
-                    if (avgs.size() == 0) {
-                        System.out.println("debug me!");
-                    }
-                    Long current = iter.next();
-                    Long next = iter.hasNext() ? iter.next() : null;
-                    do {
-                        Observation<Double> observedAverage = new Observation<>();
-                        observedAverage.timestamp = current; // no real time stamp but rather the time index in the time series
-                        if (avgs.containsKey(current)) {
-                            observedAverage.observation = Double.valueOf(avgs.get(current));
-                        } else {
-                            // replace with last observation
-                            observedAverage.observation = handleMissingValue(observations, config.getMissingDataHandling(), mean);
-                        }
-                        observations.add(observedAverage);
-
-                        if (next != null && current + 1 < next) {
-                            current++;
-                        } else {
-                            current = next;
-                            next = iter.hasNext() ? iter.next() : null;
-                        }
-                    } while (current != null && current < index);
-                    transitionSeries.resetTo(observations);
-
-
-                    Observation<Double> lastObservation = transitionSeries.getLastObservation();
-                    //				long lastIndex = config.getIndexForTime(lastObservation.timestamp);
-                    long lastIndex = lastObservation.timestamp;
-                    long thisIndex = config.getIndexForTime(startOfTransition);
-                    int horizon = (int) (thisIndex - lastIndex);
+                    long lastIndex = avgs.updateSeries(transitionSeries, index, config.getMissingDataHandling());
+                    int horizon = (int) (index - lastIndex);
                     Prediction<Double> prediction = transitionSeries.predict(horizon);
                     predictionDist = getDistributionForPrediction(prediction);
                 }
@@ -496,7 +378,7 @@ public class PNTimeSeriesSimulator extends PNSimulator {
                 cachedPredictedDurations.get(index).put(timedT, predictionDist);
             }
             StochasticNetUtils.setCacheEnabled(false);
-            return StochasticNetUtils.sampleWithConstraint(predictionDist, "", positiveConstraint);
+            return StochasticNetUtils.sampleWithConstraint(predictionDist, positiveConstraint);
 
 
 //				if (transitionDurationFits.containsKey(timedT)){
@@ -603,7 +485,7 @@ public class PNTimeSeriesSimulator extends PNSimulator {
 //					double[] predictionArray = predictedDuration.asDoubles();
 //					NormalDistribution dist = new NormalDistribution(predictionArray[0], (predictionArray[0]-predictionArray[2]) / 2 ); // 95% equals to roughly 2 sigma in an assumed normal distribution
 //					StochasticNetUtils.setCacheEnabled(false);
-//					return StochasticNetUtils.sampleWithConstraint(dist, "", positiveConstraint);
+//					return StochasticNetUtils.sampleWithConstraint(dist, positiveConstraint);
 //				} catch (REXPMismatchException e) {
 //					e.printStackTrace();
 //				} catch (REngineException e) {
@@ -653,6 +535,15 @@ public class PNTimeSeriesSimulator extends PNSimulator {
     }
 
 
+    private IncrementalAggregation getAggregation(Map<Transition, IncrementalAggregation> aggregations, Transition t, boolean average) {
+        IncrementalAggregation aggregation = aggregations.get(t);
+        if (aggregation == null) {
+            aggregation = new IncrementalAggregation(average);
+            aggregations.put(t, aggregation);
+        }
+        return aggregation;
+    }
+
     private TimeSeries<Double> getTimeSeriesForTransition(TimedTransition timedT) {
         if (cachedTransitionTimeSeries.containsKey(timedT)) {
             return cachedTransitionTimeSeries.get(timedT);
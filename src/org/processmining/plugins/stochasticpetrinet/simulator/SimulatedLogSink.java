@@ -0,0 +1,37 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import org.deckfour.xes.model.XTrace;
+
+/**
+ * Receives the traces of a simulation one by one (see
+ * {@link PNSimulator#simulate(org.processmining.contexts.uitopia.UIPluginContext, org.processmining.models.graphbased.directed.petrinet.PetrinetGraph, org.processmining.models.semantics.Semantics, PNSimulatorConfig, org.processmining.models.semantics.petrinet.Marking, org.processmining.models.semantics.petrinet.Marking, SimulatedLogSink)}),
+ * such that simulated logs do not have to be kept in memory.
+ * <p>
+ * Sinks that write to files report I/O problems as {@link java.io.UncheckedIOException}.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public interface SimulatedLogSink {
+
+    /**
+     * Called once before the first trace.
+     *
+     * @param logName the name of the simulated log
+     */
+    void startLog(String logName);
+
+    /**
+     * Called for each simulated trace. The trace is not used by the simulator afterwards.
+     */
+    void addTrace(XTrace trace);
+
+    /**
+     * Called once after the last trace, if the simulation succeeded.
+     */
+    void endLog();
+
+    /**
+     * Called once after the simulation (also if it failed, in which case {@link #endLog()} is not called).
+     */
+    void close();
+}
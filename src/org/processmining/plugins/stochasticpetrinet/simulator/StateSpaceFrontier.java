@@ -0,0 +1,167 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.TreeSet;
+
+/**
+ * Frontier of unexplored states of a best-first state space exploration.
+ * <p>
+ * States are polled in the order of decreasing probability (ties are broken by the order of insertion).
+ * At most a given number of states is kept in memory. Once the frontier grows beyond that limit,
+ * the less likely half of the states is spilled to a temporary file. Spilled states are read back,
+ * when the states in memory are exhausted (latest spill first). Thus, the ordering is strictly best-first only
+ * as long as no states are spilled.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class StateSpaceFrontier implements Closeable {
+
+    /**
+     * An unexplored state: the index in the {@link ExplorationTree}, its probability and its (encoded) marking.
+     */
+    public static class FrontierState {
+        private final int state;
+        private final double logProbability;
+        private final int[] marking;
+
+        public FrontierState(int state, double logProbability, int[] marking) {
+            this.state = state;
+            this.logProbability = logProbability;
+            this.marking = marking;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public double getLogProbability() {
+            return logProbability;
+        }
+
+        /**
+         * @return sorted indices of the places holding tokens (one entry per token)
+         */
+        public int[] getMarking() {
+            return marking;
+        }
+    }
+
+    private static final Comparator<FrontierState> MOST_LIKELY_FIRST = new Comparator<FrontierState>() {
+        public int compare(FrontierState o1, FrontierState o2) {
+            int result = Double.compare(o2.logProbability, o1.logProbability);
+            return result != 0 ? result : Integer.compare(o1.state, o2.state);
+        }
+    };
+
+    private final int maxStatesInMemory;
+
+    private final TreeSet<FrontierState> states = new TreeSet<>(MOST_LIKELY_FIRST);
+
+    private final Deque<File> spillFiles = new ArrayDeque<>();
+
+    private long spilledStates;
+
+    /**
+     * @param maxStatesInMemory the maximal number of states to keep in memory (at least 2)
+     */
+    public StateSpaceFrontier(int maxStatesInMemory) {
+        if (maxStatesInMemory < 2) {
+            throw new IllegalArgumentException("At least two states must fit into memory!");
+        }
+        this.maxStatesInMemory = maxStatesInMemory;
+    }
+
+    public void add(FrontierState state) {
+        states.add(state);
+        if (states.size() > maxStatesInMemory) {
+            spill(states.size() - maxStatesInMemory / 2);
+        }
+    }
+
+    public boolean isEmpty() {
+        return states.isEmpty() && spillFiles.isEmpty();
+    }
+
+    /**
+     * @return the most likely state in memory (reloading spilled states if necessary), or null if the frontier is empty
+     */
+    public FrontierState poll() {
+        if (states.isEmpty() && !spillFiles.isEmpty()) {
+            reload(spillFiles.removeLast());
+        }
+        return states.pollFirst();
+    }
+
+    /**
+     * @return the number of states in the frontier (in memory and on disk)
+     */
+    public long size() {
+        return states.size() + spilledStates;
+    }
+
+    /**
+     * Removes the remaining spill files.
+     */
+    public void close() {
+        while (!spillFiles.isEmpty()) {
+            spillFiles.removeLast().delete();
+        }
+        spilledStates = 0;
+        states.clear();
+    }
+
+    private void spill(int count) {
+        try {
+            File file = File.createTempFile("frontier", ".states");
+            file.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    FrontierState state = states.pollLast();
+                    out.writeInt(state.state);
+                    out.writeDouble(state.logProbability);
+                    out.writeInt(state.marking.length);
+                    for (int place : state.marking) {
+                        out.writeInt(place);
+                    }
+                }
+            }
+            spillFiles.addLast(file);
+            spilledStates += count;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill states of the exploration to disk!", e);
+        }
+    }
+
+    private void reload(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int state = in.readInt();
+                double logProbability = in.readDouble();
+                int[] marking = new int[in.readInt()];
+                for (int j = 0; j < marking.length; j++) {
+                    marking[j] = in.readInt();
+                }
+                states.add(new FrontierState(state, logProbability, marking));
+            }
+            spilledStates -= count;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled states of the exploration!", e);
+        } finally {
+            file.delete();
+        }
+    }
+}
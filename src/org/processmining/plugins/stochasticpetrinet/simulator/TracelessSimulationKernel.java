@@ -0,0 +1,360 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.ExecutionPolicy;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.IllegalTransitionException;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Simulation kernel for the traceless mode of the {@link PNSimulator} (see {@link PNSimulatorConfig#simulateTraceless}).
+ * <p>
+ * Works only on transition and place indices of an {@link EfficientStochasticNetSemanticsImpl}:
+ * the clocks of the transitions are kept in a long[] array, the final marking is a precomputed
+ * token vector and no {@link Marking} objects are created during a run.
+ * The selection and memory policies are the same as in {@link PNSimulator#pickTransition} and
+ * {@link PNSimulator#updateTransitionMemoriesAfterFiring}.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class TracelessSimulationKernel {
+
+    /**
+     * Marks transitions that have no running clock
+     */
+    private static final long NO_CLOCK = Long.MIN_VALUE;
+
+    private final PNSimulator simulator;
+    private final EfficientStochasticNetSemanticsImpl semantics;
+
+    private final TimedTransition[] transitions;
+    private final boolean[] immediate;
+    private final double[] weights;
+    private final double[] firingRates;
+
+    /**
+     * token vector of the final marking, or null, if the simulation should run until no transition is enabled
+     */
+    private final short[] finalMarking;
+
+    /**
+     * remaining times of the transitions ({@link #NO_CLOCK}, if the transition has no running clock)
+     */
+    private final long[] clocks;
+    /**
+     * ids of the transitions that have a running clock (the first {@link #clockedCount} entries are valid)
+     */
+    private final int[] clockedTransitions;
+    private int clockedCount;
+
+    private int[] executable;
+    private int[] executableAfterFiring;
+    private final double[] selectionWeights;
+
+    private Random random;
+    /**
+     * if set, durations are sampled with this generator instead of the distributions' own generators
+     */
+    private Random durationRandom;
+
+    private long lastFiringTime;
+    private double logProbability;
+
+    /**
+     * @param simulator    the simulator providing the duration sampling (and its cache of distributions)
+     * @param semantics    the semantics that is used to fire transitions
+     * @param finalMarking the marking at which the simulation stops (can be null)
+     */
+    public TracelessSimulationKernel(PNSimulator simulator, EfficientStochasticNetSemanticsImpl semantics, Marking finalMarking) {
+        this.simulator = simulator;
+        this.semantics = semantics;
+        int numTransitions = semantics.getNumberOfTransitions();
+        this.transitions = new TimedTransition[numTransitions];
+        this.immediate = new boolean[numTransitions];
+        this.weights = new double[numTransitions];
+        this.firingRates = new double[numTransitions];
+        for (short t = 0; t < numTransitions; t++) {
+            Transition transition = semantics.getTransition(t);
+            if (!(transition instanceof TimedTransition)) {
+                throw new IllegalArgumentException("The simulation kernel can only simulate nets with timed transitions!");
+            }
+            TimedTransition tt = (TimedTransition) transition;
+            transitions[t] = tt;
+            immediate[t] = tt.getDistributionType().equals(DistributionType.IMMEDIATE);
+            weights[t] = tt.getWeight();
+            firingRates[t] = immediate[t] ? 1. : 1.0 / tt.getDistribution().getNumericalMean();
+        }
+        if (finalMarking != null) {
+            this.finalMarking = new short[semantics.getNumberOfPlaces()];
+            for (Place p : finalMarking) {
+                this.finalMarking[semantics.getPlaceId(p)]++;
+            }
+        } else {
+            this.finalMarking = null;
+        }
+        this.clocks = new long[numTransitions];
+        Arrays.fill(clocks, NO_CLOCK);
+        this.clockedTransitions = new int[numTransitions];
+        this.executable = new int[numTransitions];
+        this.executableAfterFiring = new int[numTransitions];
+        this.selectionWeights = new double[numTransitions];
+        this.random = PNSimulator.random;
+    }
+
+    /**
+     * Checks whether the kernel can be used for simulating with the given semantics.
+     * Only the plain {@link EfficientStochasticNetSemanticsImpl} with {@link TimedTransition}s is supported.
+     */
+    public static boolean isApplicable(Object semantics) {
+        if (semantics == null || !semantics.getClass().equals(EfficientStochasticNetSemanticsImpl.class)) {
+            return false;
+        }
+        EfficientStochasticNetSemanticsImpl effiSemantics = (EfficientStochasticNetSemanticsImpl) semantics;
+        for (short t = 0; t < effiSemantics.getNumberOfTransitions(); t++) {
+            if (!(effiSemantics.getTransition(t) instanceof TimedTransition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public EfficientStochasticNetSemanticsImpl getSemantics() {
+        return semantics;
+    }
+
+    /**
+     * Sets the random number generator used for selecting among transitions and for sampling durations.
+     * Durations are then sampled by {@link StochasticNetUtils#sampleWithConstraint(RealDistribution, double, Random)},
+     * such that a kernel with its own generator produces an independent and reproducible stream of runs.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+        this.durationRandom = random;
+    }
+
+    /**
+     * Simulates one run from the current marking of the semantics.
+     *
+     * @param config                  the simulation configuration (execution policy, time unit, maximal events)
+     * @param traceStart              the time of the last observed event
+     * @param constraint              the time that all simulated firings should be greater than (if useTimeConstraint is set)
+     * @param useTimeConstraint       whether to left-truncate the durations of timed transitions by the constraint
+     * @param useOnlyPastTrainingData whether only the training data up to the current time should be used
+     * @return the time of the last firing in the run
+     */
+    public long simulate(PNSimulatorConfig config, long traceStart, long constraint, boolean useTimeConstraint, boolean useOnlyPastTrainingData) {
+        resetClocks();
+        lastFiringTime = traceStart;
+        logProbability = 0;
+
+        int executableCount = semantics.getExecutableTransitionIds(executable);
+        int eventsProduced = 0;
+        while (executableCount > 0 && eventsProduced++ < config.maxEventsInOneTrace && !isFinal()) {
+            int picked = pickTransition(config, executableCount, constraint, useTimeConstraint, useOnlyPastTrainingData);
+            long elapsed = clocks[picked];
+            try {
+                semantics.executeTransition(picked);
+            } catch (IllegalTransitionException e) {
+                e.printStackTrace();
+                break;
+            }
+            int afterCount = semantics.getExecutableTransitionIds(executableAfterFiring);
+            updateClocksAfterFiring(config.executionPolicy, executableCount, picked, elapsed, afterCount);
+            lastFiringTime += elapsed;
+
+            int[] swap = executable;
+            executable = executableAfterFiring;
+            executableAfterFiring = swap;
+            executableCount = afterCount;
+        }
+        return lastFiringTime;
+    }
+
+    public double getLogProbabilityOfLastRun() {
+        return logProbability;
+    }
+
+    private boolean isFinal() {
+        return finalMarking != null && Arrays.equals(finalMarking, semantics.getCurrentInternalState());
+    }
+
+    /**
+     * Index based version of {@link PNSimulator#pickTransition}.
+     *
+     * @return the id of the transition that fires next. Its clock holds the time until firing.
+     */
+    private int pickTransition(PNSimulatorConfig config, int count, long constraint, boolean useTimeConstraint, boolean useOnlyPastTrainingData) {
+        boolean allImmediate = true;
+        boolean allTimed = true;
+        for (int i = 0; i < count; i++) {
+            allImmediate &= immediate[executable[i]];
+            allTimed &= !immediate[executable[i]];
+        }
+        if (allImmediate) {
+            int t = pickAccordingToWeights(count, constraint, useOnlyPastTrainingData);
+            setClock(t, 0);
+            return t;
+        } else if (allTimed) {
+            // restrict the candidates to the randomly picked one in case of preselection:
+            int preselected = -1;
+            if (config.executionPolicy.equals(ExecutionPolicy.GLOBAL_PRESELECTION)) {
+                preselected = pickAccordingToWeights(count, constraint, useOnlyPastTrainingData);
+            }
+            int candidates = preselected >= 0 ? 1 : count;
+            double cumulativeRates = 0;
+            int next = -1;
+            long nextTime = Long.MAX_VALUE;
+            for (int i = 0; i < candidates; i++) {
+                int t = preselected >= 0 ? preselected : executable[i];
+                long remainingTime;
+                if (useTimeConstraint) {
+                    double samplingConstraint = Math.max(0, (constraint - lastFiringTime) / config.unitFactor.getUnitFactorToMillis());
+                    remainingTime = getRemainingTime(t, config, samplingConstraint, useOnlyPastTrainingData);
+                    if (remainingTime + lastFiringTime < constraint) {
+                        remainingTime = constraint - lastFiringTime;
+                        clocks[t] = remainingTime;
+                    }
+                } else {
+                    remainingTime = getRemainingTime(t, config, 0, useOnlyPastTrainingData);
+                }
+                // ties are resolved in favor of the later transition (as the sorted map in the PNSimulator does)
+                if (remainingTime <= nextTime) {
+                    nextTime = remainingTime;
+                    next = t;
+                }
+                cumulativeRates += firingRates[t];
+            }
+            logProbability += Math.log(firingRates[next] / cumulativeRates);
+            return next;
+        } else {
+            // semantics should make sure, that only the transitions of the highest priority are enabled in the current marking!
+            throw new IllegalArgumentException("Stochastic semantics bug! There should either be only immediate or only timed activities enabled!");
+        }
+    }
+
+    private int pickAccordingToWeights(int count, long currentTime, boolean useOnlyPastTrainingData) {
+        double cumulativeWeights = 0;
+        for (int i = 0; i < count; i++) {
+            int t = executable[i];
+            selectionWeights[i] = useOnlyPastTrainingData ? transitions[t].getParsedTrainingData().countBefore(currentTime) : weights[t];
+            cumulativeWeights += selectionWeights[i];
+        }
+        double position = random.nextDouble() * cumulativeWeights;
+        double cumulative = 0;
+        int index = count - 1;
+        for (int i = 0; i < count; i++) {
+            cumulative += selectionWeights[i];
+            if (cumulative >= position) {
+                index = i;
+                break;
+            }
+        }
+        logProbability += Math.log(selectionWeights[index] / cumulativeWeights);
+        return executable[index];
+    }
+
+    /**
+     * Index based version of {@link PNSimulator#getTransitionRemainingTime}.
+     */
+    private long getRemainingTime(int t, PNSimulatorConfig config, double positiveConstraint, boolean useOnlyPastTrainingData) {
+        if (clocks[t] != NO_CLOCK) {
+            return clocks[t];
+        }
+        long duration;
+        if (immediate[t]) {
+            duration = 0;
+        } else {
+            double sample;
+            if (durationRandom != null) {
+                RealDistribution dist = simulator.getDistributionForSampling(lastFiringTime, transitions[t], simulator.cachedDurations, useOnlyPastTrainingData);
+                sample = StochasticNetUtils.sampleWithConstraint(dist, positiveConstraint, durationRandom);
+            } else {
+                sample = simulator.sampleDurationForTransition(positiveConstraint, lastFiringTime, transitions[t], config.unitFactor, simulator.cachedDurations, useOnlyPastTrainingData);
+            }
+            duration = (long) (sample * config.unitFactor.getUnitFactorToMillis());
+        }
+        setClock(t, duration);
+        return duration;
+    }
+
+    /**
+     * Index based version of {@link PNSimulator#updateTransitionMemoriesAfterFiring}.
+     */
+    private void updateClocksAfterFiring(ExecutionPolicy policy, int executableCount, int fired, long elapsed, int afterCount) {
+        removeClock(fired);
+        switch (policy) {
+            case GLOBAL_PRESELECTION:
+                // only one transition is allowed. (no transition count-downs should be used at all...)
+                break;
+            case RACE_RESAMPLING:
+                // reset all clocks after firing.
+                resetClocks();
+                break;
+            case RACE_ENABLING_MEMORY:
+                // reset clocks of all transitions that are not executable any more, and reduce the others by the elapsed time
+                for (int i = clockedCount - 1; i >= 0; i--) {
+                    int t = clockedTransitions[i];
+                    if (contains(executableAfterFiring, afterCount, t)) {
+                        clocks[t] -= elapsed;
+                    } else {
+                        removeClock(t);
+                    }
+                }
+                break;
+            case RACE_AGE_MEMORY:
+                if (elapsed > 0) {
+                    // reduce clocks of all enabled transitions
+                    for (int i = 0; i < executableCount; i++) {
+                        int t = executable[i];
+                        if (t != fired && clocks[t] != NO_CLOCK) {
+                            clocks[t] -= elapsed;
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    private static boolean contains(int[] ids, int count, int t) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setClock(int t, long value) {
+        if (clocks[t] == NO_CLOCK) {
+            clockedTransitions[clockedCount++] = t;
+        }
+        clocks[t] = value;
+    }
+
+    private void removeClock(int t) {
+        if (clocks[t] != NO_CLOCK) {
+            clocks[t] = NO_CLOCK;
+            for (int i = 0; i < clockedCount; i++) {
+                if (clockedTransitions[i] == t) {
+                    clockedTransitions[i] = clockedTransitions[--clockedCount];
+                    break;
+                }
+            }
+        }
+    }
+
+    private void resetClocks() {
+        for (int i = 0; i < clockedCount; i++) {
+            clocks[clockedTransitions[i]] = NO_CLOCK;
+        }
+        clockedCount = 0;
+    }
+}
@@ -0,0 +1,123 @@
+package org.processmining.plugins.stochasticpetrinet.simulator;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XAttributeContinuous;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+
+/**
+ * Streams simulated traces to an XES file. Files ending with ".gz" are compressed.
+ * <p>
+ * Only the trace that is currently written is held in memory, the rest is buffered by a write buffer of configurable size.
+ * The closing tag of the log is only written, if the simulation succeeded, such that the files of failed simulations are not valid.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class XesLogSink extends BufferedLogSink {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+
+    public XesLogSink(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       the target file (compressed, if its name ends with ".gz")
+     * @param bufferSize number of characters that are collected before they are written
+     */
+    public XesLogSink(File file, int bufferSize) throws IOException {
+        this(openStream(file, bufferSize), bufferSize);
+    }
+
+    public XesLogSink(OutputStream out, int bufferSize) {
+        super(out, bufferSize);
+    }
+
+    public void startLog(String logName) {
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+        buffer.append("<log xes.version=\"1.0\" xes.features=\"nested-attributes\">\n");
+        buffer.append("\t<extension name=\"Lifecycle\" prefix=\"lifecycle\" uri=\"http://www.xes-standard.org/lifecycle.xesext\"/>\n");
+        buffer.append("\t<extension name=\"Time\" prefix=\"time\" uri=\"http://www.xes-standard.org/time.xesext\"/>\n");
+        buffer.append("\t<extension name=\"Concept\" prefix=\"concept\" uri=\"http://www.xes-standard.org/concept.xesext\"/>\n");
+        buffer.append("\t<string key=\"").append(PNSimulator.CONCEPT_NAME).append("\" value=\"");
+        appendEscaped(logName);
+        buffer.append("\"/>\n");
+        flushIfFull();
+    }
+
+    public void addTrace(XTrace trace) {
+        buffer.append("\t<trace>\n");
+        for (XAttribute attribute : trace.getAttributes().values()) {
+            appendAttribute("\t\t", attribute);
+        }
+        for (XEvent event : trace) {
+            buffer.append("\t\t<event>\n");
+            for (XAttribute attribute : event.getAttributes().values()) {
+                appendAttribute("\t\t\t", attribute);
+            }
+            buffer.append("\t\t</event>\n");
+        }
+        buffer.append("\t</trace>\n");
+        flushIfFull();
+    }
+
+    public void endLog() {
+        buffer.append("</log>\n");
+    }
+
+    private void appendAttribute(String indent, XAttribute attribute) {
+        String value;
+        String type;
+        if (attribute instanceof XAttributeTimestamp) {
+            type = "date";
+            value = dateFormat.format(((XAttributeTimestamp) attribute).getValue());
+        } else if (attribute instanceof XAttributeBoolean) {
+            type = "boolean";
+            value = String.valueOf(((XAttributeBoolean) attribute).getValue());
+        } else if (attribute instanceof XAttributeContinuous) {
+            type = "float";
+            value = String.valueOf(((XAttributeContinuous) attribute).getValue());
+        } else if (attribute instanceof XAttributeDiscrete) {
+            type = "int";
+            value = String.valueOf(((XAttributeDiscrete) attribute).getValue());
+        } else {
+            type = "string";
+            value = attribute.toString();
+        }
+        buffer.append(indent).append('<').append(type).append(" key=\"");
+        appendEscaped(attribute.getKey());
+        buffer.append("\" value=\"");
+        appendEscaped(value);
+        buffer.append("\"/>\n");
+    }
+
+    private void appendEscaped(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<':
+                    buffer.append("&lt;");
+                    break;
+                case '>':
+                    buffer.append("&gt;");
+                    break;
+                case '&':
+                    buffer.append("&amp;");
+                    break;
+                case '"':
+                    buffer.append("&quot;");
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,663 @@
+package org.processmining.plugins.stochasticpetrinet.simulator.timeseries;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.PointValuePair;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.NelderMeadSimplex;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.SimplexOptimizer;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A (non-seasonal) ARIMA(p,d,q) model fitted in the JVM.
+ * <p>
+ * The model follows R's <code>arima</code> function: the series is differenced d times and an ARMA(p,q) model
+ * (with mean, if the constant is included) is fitted to the differences by maximizing the exact Gaussian likelihood.
+ * The likelihood is computed by a Kalman filter on the state space form of the ARMA process and the AR part is
+ * kept stationary by optimizing the partial autocorrelations (Jones, 1980). Conditional sum of squares estimates
+ * serve as starting values.
+ * <p>
+ * {@link #autoArima(double[])} selects the orders like <code>auto.arima</code> of the forecast package: the order of
+ * differencing by repeated KPSS tests, and the AR and MA orders by the stepwise search of Hyndman and Khandakar (2008)
+ * minimizing the AICc.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class ArimaModel {
+
+    public static final int MAX_P = 5;
+    public static final int MAX_Q = 5;
+    public static final int MAX_ORDER = 5;
+    public static final int MAX_D = 2;
+
+    /**
+     * 5% critical value of the KPSS test for level stationarity
+     */
+    public static final double KPSS_CRITICAL_VALUE = 0.463;
+
+    /**
+     * Series longer than this are searched with conditional sum of squares estimates
+     * (only the selected model is fitted by maximum likelihood).
+     */
+    public static final int APPROXIMATION_THRESHOLD = 150;
+
+    private static final int MAX_EVALUATIONS = 10000;
+
+    private final int p;
+    private final int d;
+    private final int q;
+    private final boolean includeConstant;
+
+    private final double[] ar;
+    private final double[] ma;
+    private final double mean;
+
+    private final double sigma2;
+    private final double logLikelihood;
+
+    /**
+     * number of observations the likelihood is based on
+     */
+    private final int nUsed;
+
+    /**
+     * the predicted state of the ARMA process after the last observation
+     */
+    private final double[] state;
+
+    /**
+     * last value of the series differenced 0..d-1 times (for integrating the forecasts)
+     */
+    private final double[] lastValues;
+
+    /**
+     * Fits an ARIMA(p,d,q) model by maximum likelihood.
+     *
+     * @param y               the series
+     * @param p               order of the AR part
+     * @param d               order of differencing
+     * @param q               order of the MA part
+     * @param includeConstant whether to include a mean (for d=0) or a drift (for d=1) term
+     * @return the fitted model
+     */
+    public static ArimaModel fit(double[] y, int p, int d, int q, boolean includeConstant) {
+        return fit(y, p, d, q, includeConstant, false);
+    }
+
+    /**
+     * @param approximate if true, only the conditional sum of squares is minimized
+     */
+    public static ArimaModel fit(double[] y, int p, int d, int q, boolean includeConstant, boolean approximate) {
+        if (d > 1 && includeConstant) {
+            throw new IllegalArgumentException("A constant is only supported for d <= 1!");
+        }
+        double[] w = difference(y, d);
+        int k = p + q + (includeConstant ? 1 : 0);
+        if (w.length <= k + p + 1) {
+            throw new IllegalArgumentException("Not enough observations to fit an ARIMA(" + p + "," + d + "," + q + ") model!");
+        }
+        double[] parameters = new double[k];
+        if (includeConstant) {
+            parameters[k - 1] = mean(w);
+        }
+        parameters = minimize(new ConditionalSumOfSquares(w, p, q, includeConstant), parameters);
+        if (!approximate) {
+            parameters = minimize(new NegativeLogLikelihood(w, p, q, includeConstant), parameters);
+        }
+        return new ArimaModel(y, w, p, d, q, includeConstant, parameters, approximate);
+    }
+
+    /**
+     * Selects and fits an ARIMA model automatically (see class comment).
+     *
+     * @param y the series (without missing values)
+     * @return the model with the smallest AICc
+     */
+    public static ArimaModel autoArima(double[] y) {
+        int d = getNumberOfDifferences(y);
+        boolean constant = d <= 1;
+        boolean approximate = y.length - d > APPROXIMATION_THRESHOLD;
+
+        Set<String> tried = new HashSet<>();
+        ArimaModel best = null;
+        int[][] startModels = new int[][]{{2, 2}, {0, 0}, {1, 0}, {0, 1}};
+        for (int[] order : startModels) {
+            best = better(best, tryFit(y, order[0], d, order[1], constant, approximate, tried));
+        }
+        if (constant) {
+            best = better(best, tryFit(y, 0, d, 0, false, approximate, tried));
+        }
+        if (best == null) {
+            // too short for any model (except the random walk/white noise)
+            return fit(y, 0, d, 0, false, false);
+        }
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[][] neighbors = new int[][]{{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {1, 1}, {-1, 1}, {1, -1}};
+            for (int[] step : neighbors) {
+                int p = best.p + step[0];
+                int q = best.q + step[1];
+                if (p < 0 || q < 0 || p > MAX_P || q > MAX_Q || p + q > MAX_ORDER) {
+                    continue;
+                }
+                ArimaModel candidate = tryFit(y, p, d, q, best.includeConstant, approximate, tried);
+                if (candidate != null && candidate.getAicc() < best.getAicc()) {
+                    best = candidate;
+                    improved = true;
+                    break;
+                }
+            }
+            if (!improved && constant) {
+                ArimaModel candidate = tryFit(y, best.p, d, best.q, !best.includeConstant, approximate, tried);
+                if (candidate != null && candidate.getAicc() < best.getAicc()) {
+                    best = candidate;
+                    improved = true;
+                }
+            }
+        }
+        if (approximate) {
+            try {
+                return fit(y, best.p, d, best.q, best.includeConstant, false);
+            } catch (IllegalArgumentException e) {
+                return best;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of differences needed for the series to pass the KPSS test (at most {@link #MAX_D})
+     */
+    public static int getNumberOfDifferences(double[] y) {
+        int d = 0;
+        double[] x = y;
+        while (d < MAX_D && x.length > 2 && !isConstant(x) && getKpssStatistic(x) > KPSS_CRITICAL_VALUE) {
+            x = difference(x, 1);
+            d++;
+        }
+        return d;
+    }
+
+    /**
+     * @return the KPSS test statistic for level stationarity (with trunc(3 sqrt(n) / 13) lags)
+     */
+    public static double getKpssStatistic(double[] x) {
+        int n = x.length;
+        double mean = mean(x);
+        double[] e = new double[n];
+        double partialSum = 0;
+        double sumOfSquaredPartialSums = 0;
+        double variance = 0;
+        for (int t = 0; t < n; t++) {
+            e[t] = x[t] - mean;
+            partialSum += e[t];
+            sumOfSquaredPartialSums += partialSum * partialSum;
+            variance += e[t] * e[t];
+        }
+        variance /= n;
+        int lags = (int) (3 * FastMath.sqrt(n) / 13);
+        for (int l = 1; l <= lags; l++) {
+            double autocovariance = 0;
+            for (int t = l; t < n; t++) {
+                autocovariance += e[t] * e[t - l];
+            }
+            variance += 2 * (1 - l / (lags + 1.)) * autocovariance / n;
+        }
+        return sumOfSquaredPartialSums / ((double) n * n * variance);
+    }
+
+    private ArimaModel(double[] y, double[] w, int p, int d, int q, boolean includeConstant, double[] parameters, boolean approximate) {
+        this.p = p;
+        this.d = d;
+        this.q = q;
+        this.includeConstant = includeConstant;
+        this.ar = transformToStationary(parameters, p);
+        this.ma = new double[q];
+        System.arraycopy(parameters, p, ma, 0, q);
+        this.mean = includeConstant ? parameters[p + q] : 0;
+
+        double[] x = center(w, mean);
+        this.state = new double[Math.max(p, q + 1)];
+        double[] result = kalmanFilter(x, ar, ma, state);
+        if (approximate) {
+            double ssq = conditionalSumOfSquares(x, ar, ma);
+            this.nUsed = w.length - p;
+            this.sigma2 = ssq / nUsed;
+        } else {
+            this.nUsed = w.length;
+            this.sigma2 = result[0] / nUsed;
+        }
+        this.logLikelihood = -0.5 * (nUsed * FastMath.log(2 * FastMath.PI * sigma2) + nUsed + (approximate ? 0 : result[1]));
+
+        this.lastValues = new double[d];
+        double[] series = y;
+        for (int level = 0; level < d; level++) {
+            lastValues[level] = series[series.length - 1];
+            series = difference(series, 1);
+        }
+    }
+
+    /**
+     * Computes the forecasts and their standard errors.
+     *
+     * @param h the forecast horizon
+     * @return the point forecasts (first row) and their standard errors (second row) for 1..h steps ahead
+     */
+    public double[][] forecast(int h) {
+        double[][] result = new double[2][h];
+        int r = state.length;
+        double[] a = state.clone();
+        double[] last = lastValues.clone();
+        for (int k = 0; k < h; k++) {
+            double value = a[0] + mean;
+            for (int level = d - 1; level >= 0; level--) {
+                last[level] += value;
+                value = last[level];
+            }
+            result[0][k] = value;
+            // a = T a
+            double a0 = a[0];
+            for (int i = 0; i < r; i++) {
+                a[i] = (i < p ? ar[i] * a0 : 0) + (i + 1 < r ? a[i + 1] : 0);
+            }
+        }
+
+        // psi weights of phi(B)(1-B)^d
+        double[] phi = ar.clone();
+        for (int i = 0; i < d; i++) {
+            double[] integrated = new double[phi.length + 1];
+            for (int j = 0; j < integrated.length; j++) {
+                integrated[j] = (j < phi.length ? phi[j] : 0) - (j > 0 ? phi[j - 1] : -1);
+            }
+            phi = integrated;
+        }
+        double[] psi = new double[h];
+        double sumOfSquares = 0;
+        for (int j = 0; j < h; j++) {
+            psi[j] = j == 0 ? 1 : (j <= q ? ma[j - 1] : 0);
+            for (int i = 1; i <= Math.min(j, phi.length); i++) {
+                psi[j] += phi[i - 1] * psi[j - i];
+            }
+            sumOfSquares += psi[j] * psi[j];
+            result[1][j] = FastMath.sqrt(sigma2 * sumOfSquares);
+        }
+        return result;
+    }
+
+    public int getP() {
+        return p;
+    }
+
+    public int getD() {
+        return d;
+    }
+
+    public int getQ() {
+        return q;
+    }
+
+    public boolean isIncludeConstant() {
+        return includeConstant;
+    }
+
+    public double[] getArCoefficients() {
+        return ar.clone();
+    }
+
+    public double[] getMaCoefficients() {
+        return ma.clone();
+    }
+
+    /**
+     * @return the mean (d=0) or drift (d=1) of the model
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    public double getSigma2() {
+        return sigma2;
+    }
+
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    public double getAic() {
+        return -2 * logLikelihood + 2 * getNumberOfParameters();
+    }
+
+    public double getAicc() {
+        int k = getNumberOfParameters();
+        return getAic() + 2. * k * (k + 1) / (nUsed - k - 1);
+    }
+
+    private int getNumberOfParameters() {
+        // + 1 for the variance
+        return p + q + (includeConstant ? 1 : 0) + 1;
+    }
+
+    public String toString() {
+        return "ARIMA(" + p + "," + d + "," + q + ")" + (includeConstant ? (d == 0 ? " with mean" : " with drift") : "");
+    }
+
+    private static ArimaModel tryFit(double[] y, int p, int d, int q, boolean constant, boolean approximate, Set<String> tried) {
+        if (!tried.add(p + "," + q + "," + constant)) {
+            return null;
+        }
+        try {
+            ArimaModel model = fit(y, p, d, q, constant, approximate);
+            return Double.isNaN(model.getAicc()) || Double.isInfinite(model.getAicc()) ? null : model;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static ArimaModel better(ArimaModel best, ArimaModel candidate) {
+        if (best == null || (candidate != null && candidate.getAicc() < best.getAicc())) {
+            return candidate;
+        }
+        return best;
+    }
+
+    private static double[] minimize(MultivariateFunction function, double[] start) {
+        if (start.length == 0) {
+            return start;
+        }
+        SimplexOptimizer optimizer = new SimplexOptimizer(1e-10, 1e-12);
+        double[] point = start;
+        try {
+            // restart once to avoid a collapsed simplex
+            for (int i = 0; i < 2; i++) {
+                PointValuePair optimum = optimizer.optimize(new MaxEval(MAX_EVALUATIONS), new ObjectiveFunction(function),
+                        GoalType.MINIMIZE, new InitialGuess(point), new NelderMeadSimplex(point.length, 0.1));
+                point = optimum.getPoint();
+            }
+        } catch (TooManyEvaluationsException e) {
+            // keep the best point found so far
+        }
+        return point;
+    }
+
+    /**
+     * Objective: 0.5 log of the conditional sum of squares (conditioned on the first p observations).
+     */
+    private static class ConditionalSumOfSquares implements MultivariateFunction {
+        private final double[] w;
+        private final int p;
+        private final int q;
+        private final boolean includeConstant;
+
+        public ConditionalSumOfSquares(double[] w, int p, int q, boolean includeConstant) {
+            this.w = w;
+            this.p = p;
+            this.q = q;
+            this.includeConstant = includeConstant;
+        }
+
+        public double value(double[] parameters) {
+            double[] ma = new double[q];
+            System.arraycopy(parameters, p, ma, 0, q);
+            double[] x = center(w, includeConstant ? parameters[p + q] : 0);
+            double ssq = conditionalSumOfSquares(x, transformToStationary(parameters, p), ma);
+            double value = 0.5 * FastMath.log(ssq / (w.length - p));
+            return Double.isNaN(value) ? Double.MAX_VALUE : value;
+        }
+    }
+
+    /**
+     * Objective: the exact negative log-likelihood (up to constants, concentrated with respect to the variance).
+     */
+    private static class NegativeLogLikelihood implements MultivariateFunction {
+        private final double[] w;
+        private final int p;
+        private final int q;
+        private final boolean includeConstant;
+
+        public NegativeLogLikelihood(double[] w, int p, int q, boolean includeConstant) {
+            this.w = w;
+            this.p = p;
+            this.q = q;
+            this.includeConstant = includeConstant;
+        }
+
+        public double value(double[] parameters) {
+            double[] ma = new double[q];
+            System.arraycopy(parameters, p, ma, 0, q);
+            double[] x = center(w, includeConstant ? parameters[p + q] : 0);
+            double[] result = kalmanFilter(x, transformToStationary(parameters, p), ma, null);
+            if (result == null) {
+                return Double.MAX_VALUE;
+            }
+            double value = 0.5 * (FastMath.log(result[0] / w.length) + result[1] / w.length);
+            return Double.isNaN(value) ? Double.MAX_VALUE : value;
+        }
+    }
+
+    private static double conditionalSumOfSquares(double[] x, double[] ar, double[] ma) {
+        int p = ar.length;
+        int q = ma.length;
+        double[] e = new double[x.length];
+        double ssq = 0;
+        for (int t = p; t < x.length; t++) {
+            double residual = x[t];
+            for (int i = 0; i < p; i++) {
+                residual -= ar[i] * x[t - i - 1];
+            }
+            for (int j = 0; j < Math.min(q, t - p); j++) {
+                residual -= ma[j] * e[t - j - 1];
+            }
+            e[t] = residual;
+            ssq += residual * residual;
+        }
+        return ssq;
+    }
+
+    /**
+     * Runs the Kalman filter on the state space form x_t = Z a_t, a_t = T a_{t-1} + R e_t of the ARMA process.
+     *
+     * @param x          the centered series
+     * @param ar         AR coefficients
+     * @param ma         MA coefficients
+     * @param finalState if not null, receives the predicted state after the last observation
+     * @return the sum of squared standardized innovations and the sum of the logarithms of their variances,
+     * or null, if the filter breaks down
+     */
+    private static double[] kalmanFilter(double[] x, double[] ar, double[] ma, double[] finalState) {
+        int p = ar.length;
+        int q = ma.length;
+        int r = Math.max(p, q + 1);
+        double[] phi = new double[r];
+        System.arraycopy(ar, 0, phi, 0, p);
+        double[] rVector = new double[r];
+        rVector[0] = 1;
+        System.arraycopy(ma, 0, rVector, 1, q);
+
+        double[][] pMatrix = getInitialCovariance(phi, rVector);
+        if (pMatrix == null) {
+            return null;
+        }
+        double[] a = new double[r];
+        double[][] tp = new double[r][r];
+        double ssq = 0;
+        double sumLog = 0;
+        for (int t = 0; t < x.length; t++) {
+            double f = pMatrix[0][0];
+            if (!(f > 0)) {
+                return null;
+            }
+            double v = x[t] - a[0];
+            ssq += v * v / f;
+            sumLog += FastMath.log(f);
+            // update
+            double[] k = new double[r];
+            for (int i = 0; i < r; i++) {
+                k[i] = pMatrix[i][0] / f;
+            }
+            double[] firstRow = pMatrix[0].clone();
+            for (int i = 0; i < r; i++) {
+                a[i] += k[i] * v;
+                for (int j = 0; j < r; j++) {
+                    pMatrix[i][j] -= k[i] * firstRow[j];
+                }
+            }
+            // predict: a = T a, P = T P T' + R R'
+            double a0 = a[0];
+            for (int i = 0; i < r; i++) {
+                a[i] = phi[i] * a0 + (i + 1 < r ? a[i + 1] : 0);
+            }
+            for (int i = 0; i < r; i++) {
+                for (int j = 0; j < r; j++) {
+                    tp[i][j] = phi[i] * pMatrix[0][j] + (i + 1 < r ? pMatrix[i + 1][j] : 0);
+                }
+            }
+            for (int i = 0; i < r; i++) {
+                for (int j = 0; j < r; j++) {
+                    pMatrix[i][j] = tp[i][0] * phi[j] + (j + 1 < r ? tp[i][j + 1] : 0) + rVector[i] * rVector[j];
+                }
+            }
+        }
+        if (finalState != null) {
+            System.arraycopy(a, 0, finalState, 0, r);
+        }
+        return new double[]{ssq, sumLog};
+    }
+
+    /**
+     * Solves P = T P T' + R R' for the stationary covariance of the state.
+     */
+    private static double[][] getInitialCovariance(double[] phi, double[] rVector) {
+        int r = phi.length;
+        double[][] t = new double[r][r];
+        for (int i = 0; i < r; i++) {
+            t[i][0] = phi[i];
+            if (i + 1 < r) {
+                t[i][i + 1] = 1;
+            }
+        }
+        int n = r * r;
+        // (I - T kron T) vec(P) = vec(R R')
+        double[][] m = new double[n][n + 1];
+        for (int i = 0; i < r; i++) {
+            for (int j = 0; j < r; j++) {
+                int row = i * r + j;
+                for (int k = 0; k < r; k++) {
+                    for (int l = 0; l < r; l++) {
+                        m[row][k * r + l] = (row == k * r + l ? 1 : 0) - t[i][k] * t[j][l];
+                    }
+                }
+                m[row][n] = rVector[i] * rVector[j];
+            }
+        }
+        double[] solution = solve(m);
+        if (solution == null) {
+            return null;
+        }
+        double[][] pMatrix = new double[r][r];
+        for (int i = 0; i < r; i++) {
+            System.arraycopy(solution, i * r, pMatrix[i], 0, r);
+        }
+        return pMatrix;
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting of the augmented matrix.
+     */
+    private static double[] solve(double[][] m) {
+        int n = m.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(m[pivot][col]) < 1e-12) {
+                return null;
+            }
+            double[] tmp = m[col];
+            m[col] = m[pivot];
+            m[pivot] = tmp;
+            for (int row = col + 1; row < n; row++) {
+                double factor = m[row][col] / m[col][col];
+                for (int k = col; k <= n; k++) {
+                    m[row][k] -= factor * m[col][k];
+                }
+            }
+        }
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = m[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= m[row][k] * x[k];
+            }
+            x[row] = sum / m[row][row];
+        }
+        return x;
+    }
+
+    /**
+     * Maps the first p (unconstrained) parameters to the coefficients of a stationary AR process
+     * (the parameters are the inverse hyperbolic tangents of the partial autocorrelations).
+     */
+    private static double[] transformToStationary(double[] parameters, int p) {
+        double[] phi = new double[p];
+        double[] work = new double[p];
+        for (int j = 0; j < p; j++) {
+            work[j] = phi[j] = FastMath.tanh(parameters[j]);
+        }
+        // Durbin-Levinson recursion
+        for (int j = 1; j < p; j++) {
+            double a = phi[j];
+            for (int k = 0; k < j; k++) {
+                work[k] -= a * phi[j - k - 1];
+            }
+            System.arraycopy(work, 0, phi, 0, j);
+        }
+        return phi;
+    }
+
+    private static double[] difference(double[] y, int d) {
+        double[] x = y;
+        for (int i = 0; i < d; i++) {
+            double[] diff = new double[x.length - 1];
+            for (int t = 1; t < x.length; t++) {
+                diff[t - 1] = x[t] - x[t - 1];
+            }
+            x = diff;
+        }
+        return x;
+    }
+
+    private static double[] center(double[] w, double mean) {
+        double[] x = new double[w.length];
+        for (int t = 0; t < w.length; t++) {
+            x[t] = w[t] - mean;
+        }
+        return x;
+    }
+
+    private static double mean(double[] x) {
+        double sum = 0;
+        for (double v : x) {
+            sum += v;
+        }
+        return sum / x.length;
+    }
+
+    private static boolean isConstant(double[] x) {
+        for (double v : x) {
+            if (v != x[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
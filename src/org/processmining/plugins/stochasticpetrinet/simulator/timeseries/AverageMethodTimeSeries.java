@@ -5,25 +5,57 @@ import org.utils.datastructures.LimitedQueue;
 
 /**
  * The simplest form of model to fit to a data set is the average.
+ * <p>
+ * The mean is updated online, when observations are appended. The percentiles are recomputed on demand.
  *
  * @author Andreas Rogge-Solti
  */
 public class AverageMethodTimeSeries extends TimeSeries<Double> {
 
+    /**
+     * the available observations in the window (null, if outdated)
+     */
     protected DescriptiveStatistics stats;
 
+    private double sum;
+    private int count;
+
     protected void fit(LimitedQueue<Observation<Double>> currentObservations) {
-        stats = new DescriptiveStatistics();
+        stats = null;
+        sum = 0;
+        count = 0;
         for (Observation<Double> obs : currentObservations) {
             if (!Double.isNaN(obs.observation)) {
-                stats.addValue(obs.observation);
+                sum += obs.observation;
+                count++;
             }
         }
     }
 
+    protected boolean update(Observation<Double> added, Observation<Double> evicted) {
+        if (evicted != null && isAvailable(evicted.observation)) {
+            sum -= evicted.observation;
+            count--;
+        }
+        if (isAvailable(added.observation)) {
+            sum += added.observation;
+            count++;
+        }
+        stats = null;
+        return true;
+    }
+
     protected Prediction<Double> getPrediction(int h, Object... payload) {
+        if (stats == null) {
+            stats = new DescriptiveStatistics();
+            for (Observation<Double> obs : getCurrentObservations()) {
+                if (!Double.isNaN(obs.observation)) {
+                    stats.addValue(obs.observation);
+                }
+            }
+        }
         Prediction<Double> prediction = new Prediction<>();
-        prediction.prediction = stats.getMean();
+        prediction.prediction = count > 0 ? sum / count : Double.NaN;
         prediction.lower5Percentile = stats.getPercentile(5);
         prediction.upper95Percentile = stats.getPercentile(95);
         return prediction;
@@ -16,6 +16,11 @@ public class DriftMethodTimeSeries extends TimeSeries<Double> {
     double firstObservation;
     double lastObservation;
 
+    /**
+     * position of the first available observation in the window (-1, if there is none)
+     */
+    private int firstPosition;
+
     protected void fit(LimitedQueue<Observation<Double>> currentObservations) {
         T = currentObservations.size();
         firstObservation = findFirstNonNanObservations(currentObservations);
@@ -27,13 +32,33 @@ public class DriftMethodTimeSeries extends TimeSeries<Double> {
             Observation<Double> obs = currentObservations.get(i);
             if (!Double.isNaN(obs.observation)) {
                 T -= i;
+                firstPosition = i;
                 return obs.observation;
             }
         }
         // only NaNs in the observations!!
+        firstPosition = -1;
         return 0.0;
     }
 
+    protected boolean update(Observation<Double> added, Observation<Double> evicted) {
+        LimitedQueue<Observation<Double>> currentObservations = getCurrentObservations();
+        if (evicted != null && firstPosition >= 0) {
+            firstPosition--;
+        }
+        if (firstPosition < 0) {
+            // the first available observation left the window (or there was none)
+            T = currentObservations.size();
+            firstObservation = findFirstNonNanObservations(currentObservations);
+        } else {
+            T = currentObservations.size() - firstPosition;
+        }
+        if (isAvailable(added.observation)) {
+            lastObservation = added.observation;
+        }
+        return true;
+    }
+
     protected Prediction<Double> getPrediction(int h, Object... payload) {
         double pred;
         if (T > 1) {
@@ -0,0 +1,165 @@
+package org.processmining.plugins.stochasticpetrinet.simulator.timeseries;
+
+import org.processmining.plugins.stochasticpetrinet.prediction.timeseries.TimeSeriesConfiguration.MissingDataHandling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates training data entries per time index (as counts or as averages) and keeps a {@link TimeSeries}
+ * of these aggregates up to date.
+ * <p>
+ * Entries are added as they become available (in the order of the training data), such that rolling forecasts
+ * only process the new entries of each step. New aggregates are appended to the time series, which updates its
+ * model online. Only if an entry changes an aggregate that is already part of the time series, the window of the
+ * time series is rebuilt.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class IncrementalAggregation {
+
+    /**
+     * whether the aggregate of an index is the average of its entries' values (or the number of entries)
+     */
+    private final boolean average;
+
+    /**
+     * time index -> {sum of values, number of entries}
+     */
+    private final TreeMap<Long, double[]> aggregates;
+
+    private double sumOfAggregates;
+
+    private int consumed;
+
+    /**
+     * the index of the next observation to append to the time series
+     */
+    private long nextIndex;
+
+    /**
+     * whether the time series contains the aggregates (up to {@link #nextIndex})
+     */
+    private boolean synced;
+
+    /**
+     * @param average if true, each index is aggregated into the average of the values, otherwise into the number of entries
+     */
+    public IncrementalAggregation(boolean average) {
+        this.average = average;
+        this.aggregates = new TreeMap<>();
+        clear();
+    }
+
+    public void clear() {
+        aggregates.clear();
+        sumOfAggregates = 0;
+        consumed = 0;
+        synced = false;
+    }
+
+    /**
+     * @return the number of entries added so far
+     */
+    public int getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param index the time index of the entry
+     * @param value the value of the entry (ignored, when counting)
+     */
+    public void add(long index, double value) {
+        double[] aggregate = aggregates.get(index);
+        if (aggregate == null) {
+            aggregate = new double[2];
+            aggregates.put(index, aggregate);
+        } else {
+            sumOfAggregates -= getAggregate(aggregate);
+        }
+        aggregate[0] += value;
+        aggregate[1]++;
+        sumOfAggregates += getAggregate(aggregate);
+        consumed++;
+        if (index < nextIndex) {
+            // already part of the time series
+            synced = false;
+        }
+    }
+
+    /**
+     * @return the number of time indices with entries
+     */
+    public int size() {
+        return aggregates.size();
+    }
+
+    /**
+     * @return the mean of the aggregates over all time indices with entries
+     */
+    public double getMean() {
+        return sumOfAggregates / aggregates.size();
+    }
+
+    /**
+     * Brings the time series up to date: it contains the aggregates from the first time index with entries
+     * to the last one before the given index (missing indices in between are handled as configured).
+     * The time series must only be updated by this aggregation.
+     *
+     * @param series              the {@link TimeSeries} to update
+     * @param index               the current time index
+     * @param missingDataHandling how to fill indices without entries
+     * @return the time index of the last observation in the time series
+     */
+    public long updateSeries(TimeSeries<Double> series, long index, MissingDataHandling missingDataHandling) {
+        Long last = aggregates.lowerKey(index);
+        long lastIndex = last != null ? last : aggregates.firstKey();
+        if (!synced || lastIndex < nextIndex - 1) {
+            // (re)build the window
+            List<Observation<Double>> observations = new ArrayList<>();
+            for (long i = Math.max(aggregates.firstKey(), lastIndex - series.getLag()); i <= lastIndex; i++) {
+                observations.add(createObservation(i, missingDataHandling));
+            }
+            series.resetTo(observations);
+        } else {
+            for (long i = nextIndex; i <= lastIndex; i++) {
+                series.addObservation(createObservation(i, missingDataHandling));
+            }
+        }
+        nextIndex = lastIndex + 1;
+        synced = true;
+        return lastIndex;
+    }
+
+    private Observation<Double> createObservation(long index, MissingDataHandling missingDataHandling) {
+        Observation<Double> observation = new Observation<>();
+        observation.timestamp = index; // no real time stamp but rather the time index in the time series
+        double[] aggregate = aggregates.get(index);
+        if (aggregate != null) {
+            observation.observation = getAggregate(aggregate);
+        } else {
+            // missing value!
+            switch (missingDataHandling) {
+                case KEEP_AS_NAN:
+                    observation.observation = Double.NaN;
+                    break;
+                case REPLACE_WITH_LAST_OBSERVATION:
+                    Map.Entry<Long, double[]> lastEntry = aggregates.lowerEntry(index);
+                    observation.observation = getAggregate(lastEntry.getValue());
+                    break;
+                case REPLACE_WITH_MEAN:
+                default:
+                    observation.observation = getMean();
+            }
+        }
+        return observation;
+    }
+
+    private double getAggregate(double[] aggregate) {
+        return average ? aggregate[0] / aggregate[1] : aggregate[1];
+    }
+}
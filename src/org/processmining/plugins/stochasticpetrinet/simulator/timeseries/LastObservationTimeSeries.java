@@ -13,6 +13,10 @@ public class LastObservationTimeSeries extends TimeSeries<Double> {
     protected void fit(LimitedQueue<Observation<Double>> currentObservations) {
     }
 
+    protected boolean update(Observation<Double> added, Observation<Double> evicted) {
+        return true;
+    }
+
     protected Prediction<Double> getPrediction(int h, Object... payload) {
         return new Prediction<Double>(this.lastObservation, this.lastObservation, this.lastObservation);
     }
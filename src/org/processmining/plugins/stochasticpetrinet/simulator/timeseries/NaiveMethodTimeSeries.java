@@ -13,6 +13,11 @@ public class NaiveMethodTimeSeries extends TimeSeries<Double> {
         // nothing to do
     }
 
+    protected boolean update(Observation<Double> added, Observation<Double> evicted) {
+        // nothing to do
+        return true;
+    }
+
     protected Prediction<Double> getPrediction(int h, Object... payload) {
         Prediction<Double> prediction = new Prediction<>();
         prediction.prediction = findLastAvailableObservation().observation;
@@ -0,0 +1,68 @@
+package org.processmining.plugins.stochasticpetrinet.simulator.timeseries;
+
+import org.processmining.plugins.stochasticpetrinet.distribution.RProvider;
+import org.processmining.plugins.stochasticpetrinet.prediction.timeseries.TimeSeriesConfiguration.AvailableScripts;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REngineException;
+import org.utils.datastructures.LimitedQueue;
+
+/**
+ * Forecasts with a seasonal ARIMA model selected by <code>auto.arima</code> of R's forecast package
+ * (see scripts/auto_arima.r): the hourly series is treated as multi-seasonal with daily and weekly periods (24 and 168),
+ * outliers and missing values are replaced by <code>tsclean</code>, and AR and MA orders up to 20 are considered.
+ * <p>
+ * Unlike {@link AutoArimaTimeSeries}, whose models are non-seasonal and fitted in the JVM, all series of this type
+ * share the (single threaded) R session, which is therefore locked (on {@link RProvider}) while fitting and forecasting.
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class SeasonalAutoArimaRTimeSeries extends RTimeSeries<Double> {
+
+    public SeasonalAutoArimaRTimeSeries() {
+        synchronized (RProvider.class) {
+            loadScriptJRI(AvailableScripts.AUTO_ARIMA_SCRIPT);
+        }
+        setKey("seasonalArima");
+    }
+
+    protected void fit(LimitedQueue<Observation<Double>> currentObservations) {
+        double[] passedArguments = new double[currentObservations.size()];
+        int i = 0;
+        for (Observation<Double> obs : currentObservations) {
+            passedArguments[i++] = obs.observation;
+        }
+        synchronized (RProvider.class) {
+            try {
+                rEngine.assign("data", new REXPDouble(passedArguments));
+                rEngine.parseAndEval(key + " <- getFit(y=data)");
+            } catch (REngineException e) {
+                e.printStackTrace();
+            } catch (REXPMismatchException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    protected Prediction<Double> getPrediction(int h, Object... payload) {
+        int horizon = Math.max(1, h);
+        synchronized (RProvider.class) {
+            try {
+                // the forecast contains the means, the 80% and 95% lower bounds, and the 80% and 95% upper bounds
+                REXP exp = rEngine.parseAndEval("getForecast(fit=" + key + ", h=" + horizon + ")");
+                double[] forecastArray = exp.asDoubles();
+                return new Prediction<>(forecastArray[horizon - 1], forecastArray[3 * horizon - 1], forecastArray[5 * horizon - 1]);
+            } catch (REngineException e) {
+                e.printStackTrace();
+            } catch (REXPMismatchException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    protected boolean isAvailable(Double observation) {
+        return !Double.isNaN(observation);
+    }
+}
@@ -12,6 +12,11 @@ public class SeasonalNaiveMethodTimeSeries extends TimeSeries<Double> {
         // nothing to do
     }
 
+    protected boolean update(Observation<Double> added, Observation<Double> evicted) {
+        // nothing to do
+        return true;
+    }
+
     protected Prediction<Double> getPrediction(int h, Object... payload) {
         Prediction<Double> prediction = new Prediction<>();
         long index = getLastObservation().timestamp + h;
@@ -65,8 +65,42 @@ public abstract class TimeSeries<H> {
         return getPrediction(h, payload);
     }
 
+    /**
+     * Appends an observation (evicting the oldest one, if the window is full).
+     * The fitted model is updated online, if the subclass supports it (see {@link #update(Observation, Observation)}),
+     * otherwise it is fitted again upon the next prediction.
+     *
+     * @param observation the newest {@link Observation}
+     */
     public void addObservation(Observation<H> observation) {
+        Observation<H> oldest = currentObservations.isEmpty() ? null : currentObservations.peek();
         this.currentObservations.add(observation);
+        Observation<H> evicted = oldest != null && currentObservations.peek() != oldest ? oldest : null;
+        if (upToDate) {
+            upToDate = update(observation, evicted);
+        }
+    }
+
+    /**
+     * Subclasses can update their fitted model online, when an observation is appended.
+     *
+     * @param added   the appended observation (already contained in the current observations)
+     * @param evicted the oldest observation that left the window (or null)
+     * @return true, if the model is up to date, false, if it needs to be fitted again (default)
+     */
+    protected boolean update(Observation<H> added, Observation<H> evicted) {
+        return false;
+    }
+
+    protected LimitedQueue<Observation<H>> getCurrentObservations() {
+        return currentObservations;
+    }
+
+    /**
+     * @return the number of observations used for predictions
+     */
+    public int getLag() {
+        return lag;
     }
 
     public Observation<H> getLastObservation() {
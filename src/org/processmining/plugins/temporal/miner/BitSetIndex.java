@@ -0,0 +1,81 @@
+package org.processmining.plugins.temporal.miner;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns compact ids to the sets of events that are seen between two events of a trace.
+ * <p>
+ * The id of the empty set is 0. When scanning a trace, the sets only grow by one event at a time, so
+ * {@link #add(int, int)} derives the id of the next set from the id of the current one, without copying the set.
+ * Not thread-safe: each thread that builds a part of a {@link TemporalProfile} uses its own index.
+ *
+ * @author Andreas Rogge-Solti
+ */
+class BitSetIndex {
+
+    private final List<BitSet> sets;
+
+    private final Map<BitSet, Integer> ids;
+
+    /**
+     * caches the transitions (set id, added element) -> set id
+     */
+    private final TLongIntHashMap successors;
+
+    public BitSetIndex() {
+        this.sets = new ArrayList<>();
+        this.ids = new HashMap<>();
+        this.successors = new TLongIntHashMap(64, 0.5f, -1, -1);
+        getId(new BitSet());
+    }
+
+    /**
+     * @param set a set of event ids (must not be changed afterwards)
+     * @return the id of the set
+     */
+    public int getId(BitSet set) {
+        Integer id = ids.get(set);
+        if (id == null) {
+            id = sets.size();
+            sets.add(set);
+            ids.put(set, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param setId   the id of a set
+     * @param element an event id
+     * @return the id of the union of the set and the element
+     */
+    public int add(int setId, int element) {
+        long key = ((long) setId << 32) | element;
+        int successor = successors.get(key);
+        if (successor < 0) {
+            BitSet set = sets.get(setId);
+            if (set.get(element)) {
+                successor = setId;
+            } else {
+                BitSet union = (BitSet) set.clone();
+                union.set(element);
+                successor = getId(union);
+            }
+            successors.put(key, successor);
+        }
+        return successor;
+    }
+
+    public BitSet get(int setId) {
+        return sets.get(setId);
+    }
+
+    public int size() {
+        return sets.size();
+    }
+}
@@ -1,92 +1,111 @@
 package org.processmining.plugins.temporal.miner;
 
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.Table;
 import gnu.trove.TLongCollection;
 import gnu.trove.iterator.TLongIterator;
+import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.linked.TLongLinkedList;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.deckfour.xes.extension.std.XConceptExtension;
 import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 
+import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class TemporalProfile {
 
     private BiMap<String, Integer> eventToId;
 
-    private Table<Integer, Integer, TemporalTraces> temporalTraceTable;
+    /**
+     * the distances between the events with ids i <= j, stored at {@link #getPairKey(int, int)}
+     */
+    private TLongObjectHashMap<TemporalTraces> temporalTraceTable;
 
     public TemporalProfile(XLog log) {
+        this(log, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param log     the log
+     * @param threads the number of threads that collect the distances (each one on a consecutive part of the traces)
+     */
+    public TemporalProfile(XLog log, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
         this.eventToId = HashBiMap.create();
-        this.temporalTraceTable = HashBasedTable.create();
-        init(log);
+        init(log, threads);
     }
 
-    private void init(XLog log) {
-        // collect all events first and assign an id in the eventToId map.
+    private void init(XLog log, int threads) {
+        // collect all events first: assign an id in the eventToId map and store the ids and times of the events
+        // of all traces in consecutive arrays
+        final int[] traceStarts = new int[log.size() + 1];
+        for (int i = 0; i < log.size(); i++) {
+            traceStarts[i + 1] = traceStarts[i] + log.get(i).size();
+        }
+        final int[] ids = new int[traceStarts[log.size()]];
+        final long[] times = new long[ids.length];
+        int pos = 0;
         for (XTrace trace : log) {
             for (XEvent e : trace) {
-                getId(e);
+                Date timestamp = XTimeExtension.instance().extractTimestamp(e);
+                if (timestamp == null) {
+                    throw new IllegalArgumentException("Event " + XConceptExtension.instance().extractName(e) + " has no time stamp!");
+                }
+                ids[pos] = getId(e);
+                times[pos] = timestamp.getTime();
+                pos++;
             }
         }
-        // try to identify triggering events, that is, for each combination of events store all temporal distances
-        for (XTrace trace : log) {
-            int currentEventPos = 0;
-            for (XEvent event : trace) {
-                long currentEventTime = XTimeExtension.instance().extractTimestamp(event).getTime();
-                int eventId = getId(event);
-                // go through all potential enabling events (basically all other events and store the distances in the table)
-
-                Iterator<XEvent> traceIter = trace.iterator();
-                int otherEventPos = 0;
-
-                // traverse backward from current event
-                int pointer = currentEventPos;
-                BitSet eventsSeenBetween = new BitSet();
-                while (pointer > 0) {
-                    XEvent previousEvent = trace.get(pointer - 1);
-                    int otherEventId = getId(previousEvent);
-                    if (otherEventId >= eventId) {
-                        long otherEventTime = XTimeExtension.instance().extractTimestamp(previousEvent).getTime();
-                        addTimeInformation(eventId, otherEventId, currentEventTime - otherEventTime, eventsSeenBetween);
-                    }
-                    pointer--;
-                    eventsSeenBetween.set(otherEventId);
-                }
 
-                // traverse forward from current event
-                eventsSeenBetween = new BitSet();
-                pointer = currentEventPos;
-                while (pointer < trace.size() - 1) {
-                    XEvent nextEvent = trace.get(pointer + 1);
-                    int otherEventId = getId(nextEvent);
-                    if (otherEventId >= eventId) {
-                        long otherEventTime = XTimeExtension.instance().extractTimestamp(nextEvent).getTime();
-                        addTimeInformation(eventId, otherEventId, currentEventTime - otherEventTime, eventsSeenBetween);
+        // try to identify triggering events, that is, for each combination of events store all temporal distances
+        int shards = Math.max(1, Math.min(threads, log.size()));
+        if (shards == 1) {
+            ProfileShard shard = new ProfileShard();
+            shard.collect(traceStarts, ids, times, 0, log.size());
+            temporalTraceTable = shard.temporalTraces;
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
+        try {
+            List<Future<ProfileShard>> futures = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                final int fromTrace = (int) ((long) log.size() * s / shards);
+                final int toTrace = (int) ((long) log.size() * (s + 1) / shards);
+                futures.add(executor.submit(new Callable<ProfileShard>() {
+                    public ProfileShard call() {
+                        ProfileShard shard = new ProfileShard();
+                        shard.collect(traceStarts, ids, times, fromTrace, toTrace);
+                        return shard;
                     }
-                    pointer++;
-                    eventsSeenBetween.set(otherEventId);
-                }
-                currentEventPos++;
+                }));
             }
+            // merge in the order of the traces, such that the distances are in the same order as in a sequential run
+            ProfileShard merged = futures.get(0).get();
+            for (int s = 1; s < shards; s++) {
+                merged.addAll(futures.get(s).get());
+            }
+            temporalTraceTable = merged.temporalTraces;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Building the temporal profile failed!", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private void addTimeInformation(int eventId, int otherEventId, long tempDistance, BitSet inBetweeners) {
-        if (!temporalTraceTable.contains(eventId, otherEventId)) {
-            temporalTraceTable.put(eventId, otherEventId, new TemporalTraces());
-        }
-        temporalTraceTable.get(eventId, otherEventId).addOneEntry((BitSet) inBetweeners.clone(), tempDistance);
-    }
-
     private int getId(XEvent event) {
         String label = XConceptExtension.instance().extractName(event);
         return getId(label);
@@ -99,6 +118,10 @@ public class TemporalProfile {
         return eventToId.get(label);
     }
 
+    private static long getPairKey(int eventId, int otherEventId) {
+        return ((long) eventId << 32) | otherEventId;
+    }
+
     /**
      * @param eventId
      * @param sequenceSet
@@ -108,15 +131,19 @@ public class TemporalProfile {
         TLongCollection values = new TLongLinkedList();
         // collect all values from profile:
         for (int i = 0; i < eventId; i++) {
-            values.addAll(collectValues(temporalTraceTable.get(i, eventId), sequenceSet, true));
+            values.addAll(collectValues(temporalTraceTable.get(getPairKey(i, eventId)), sequenceSet, true));
         }
         for (int j = eventId + 1; j < eventToId.size(); j++) {
-            values.addAll(collectValues(temporalTraceTable.get(eventId, j), sequenceSet, false));
+            values.addAll(collectValues(temporalTraceTable.get(getPairKey(eventId, j)), sequenceSet, false));
         }
         return values;
     }
 
     private TLongCollection collectValues(TemporalTraces temporalTraces, BitSet sequenceSet, boolean invertResults) {
+        if (temporalTraces == null) {
+            // the events never occur together in a trace
+            return new TLongLinkedList();
+        }
         TLongCollection values = temporalTraces.getDistance(sequenceSet);
         if (invertResults) {
             TLongCollection invertedValues = new TLongLinkedList();
@@ -143,4 +170,78 @@ public class TemporalProfile {
         }
         return set;
     }
+
+    /**
+     * The distances collected from a consecutive part of the traces of a log, with its own index of the sets of
+     * events in between.
+     */
+    private static class ProfileShard {
+        private final BitSetIndex index;
+        private final TLongObjectHashMap<TemporalTraces> temporalTraces;
+
+        public ProfileShard() {
+            this.index = new BitSetIndex();
+            this.temporalTraces = new TLongObjectHashMap<TemporalTraces>();
+        }
+
+        public void collect(int[] traceStarts, int[] ids, long[] times, int fromTrace, int toTrace) {
+            for (int trace = fromTrace; trace < toTrace; trace++) {
+                int start = traceStarts[trace];
+                int end = traceStarts[trace + 1];
+                for (int current = start; current < end; current++) {
+                    int eventId = ids[current];
+                    long currentEventTime = times[current];
+                    // go through all potential enabling events (basically all other events and store the distances in the table)
+
+                    // traverse backward from current event
+                    int eventsSeenBetween = 0;
+                    for (int other = current - 1; other >= start; other--) {
+                        int otherEventId = ids[other];
+                        if (otherEventId >= eventId) {
+                            addTimeInformation(eventId, otherEventId, currentEventTime - times[other], eventsSeenBetween);
+                        }
+                        eventsSeenBetween = index.add(eventsSeenBetween, otherEventId);
+                    }
+
+                    // traverse forward from current event
+                    eventsSeenBetween = 0;
+                    for (int other = current + 1; other < end; other++) {
+                        int otherEventId = ids[other];
+                        if (otherEventId >= eventId) {
+                            addTimeInformation(eventId, otherEventId, currentEventTime - times[other], eventsSeenBetween);
+                        }
+                        eventsSeenBetween = index.add(eventsSeenBetween, otherEventId);
+                    }
+                }
+            }
+        }
+
+        private void addTimeInformation(int eventId, int otherEventId, long tempDistance, int inBetweeners) {
+            getTemporalTraces(getPairKey(eventId, otherEventId)).addOneEntry(inBetweeners, tempDistance);
+        }
+
+        private TemporalTraces getTemporalTraces(long pairKey) {
+            TemporalTraces traces = temporalTraces.get(pairKey);
+            if (traces == null) {
+                traces = new TemporalTraces(index);
+                temporalTraces.put(pairKey, traces);
+            }
+            return traces;
+        }
+
+        /**
+         * Appends the distances of a shard that covers the subsequent traces.
+         */
+        public void addAll(ProfileShard other) {
+            int[] setIdMap = new int[other.index.size()];
+            for (int setId = 0; setId < setIdMap.length; setId++) {
+                setIdMap[setId] = index.getId(other.index.get(setId));
+            }
+            TLongObjectIterator<TemporalTraces> iter = other.temporalTraces.iterator();
+            while (iter.hasNext()) {
+                iter.advance();
+                getTemporalTraces(iter.key()).addAll(iter.value(), setIdMap);
+            }
+        }
+    }
 }
@@ -1,25 +1,60 @@
 package org.processmining.plugins.temporal.miner;
 
 import gnu.trove.TLongCollection;
-import gnu.trove.list.linked.TLongLinkedList;
-import gnu.trove.map.TMap;
-import gnu.trove.map.hash.THashMap;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.util.BitSet;
 
+/**
+ * The temporal distances between two events, grouped by the set of events that occurred in between.
+ * The sets are referred to by their ids in a {@link BitSetIndex} that is shared by all pairs of events of a profile.
+ */
 public class TemporalTraces {
 
-    private TMap<BitSet, TLongCollection> traces;
+    private final BitSetIndex index;
+
+    private final TIntObjectHashMap<TLongArrayList> traces;
 
     public TemporalTraces() {
-        this.traces = new THashMap<BitSet, TLongCollection>();
+        this(new BitSetIndex());
+    }
+
+    TemporalTraces(BitSetIndex index) {
+        this.index = index;
+        this.traces = new TIntObjectHashMap<TLongArrayList>();
     }
 
     public void addOneEntry(BitSet set, long distance) {
-        if (!traces.containsKey(set)) {
-            traces.put(set, new TLongLinkedList());
+        addOneEntry(index.getId(set), distance);
+    }
+
+    void addOneEntry(int setId, long distance) {
+        getDistances(setId).add(distance);
+    }
+
+    /**
+     * Appends the distances of another instance (e.g., computed on another part of the log).
+     *
+     * @param other    the distances to append
+     * @param setIdMap maps the set ids of the other instance to the set ids of this instance
+     */
+    void addAll(TemporalTraces other, int[] setIdMap) {
+        TIntObjectIterator<TLongArrayList> iter = other.traces.iterator();
+        while (iter.hasNext()) {
+            iter.advance();
+            getDistances(setIdMap[iter.key()]).addAll(iter.value());
+        }
+    }
+
+    private TLongArrayList getDistances(int setId) {
+        TLongArrayList distances = traces.get(setId);
+        if (distances == null) {
+            distances = new TLongArrayList();
+            traces.put(setId, distances);
         }
-        traces.get(set).add(distance);
+        return distances;
     }
 
     /**
@@ -27,11 +62,13 @@ public class TemporalTraces {
      * @return
      */
     public TLongCollection getDistance(BitSet sequentialProfile) {
-        TLongCollection resultingTimes = new TLongLinkedList();
-        for (BitSet bitSet : traces.keySet()) {
-            if (!sequentialProfile.intersects(bitSet)) {
+        TLongArrayList resultingTimes = new TLongArrayList();
+        TIntObjectIterator<TLongArrayList> iter = traces.iterator();
+        while (iter.hasNext()) {
+            iter.advance();
+            if (!sequentialProfile.intersects(index.get(iter.key()))) {
                 // if they don't intersect, we assume that the intermediate events are in parallel and we return the times
-                resultingTimes.addAll(traces.get(bitSet));
+                resultingTimes.addAll(iter.value());
             }
         }
         return resultingTimes;
@@ -0,0 +1,80 @@
+package org.processmining.tests.plugins.stochasticnet.benchmark;
+
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.pnml.importing.StochasticNetDeserializer;
+import org.processmining.plugins.pnml.simple.PNMLRoot;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.generator.Generator;
+import org.processmining.plugins.stochasticpetrinet.generator.GeneratorConfig;
+import org.simpleframework.xml.Serializer;
+import org.simpleframework.xml.core.Persister;
+
+import java.io.File;
+
+/**
+ * Creates the nets of the benchmark fixtures.
+ * <p>
+ * A fixture is either the name of a model in the test files folder (e.g., "Race_AB_Loop"), or a generated net
+ * described as "generated:&lt;transitions&gt;:&lt;degree of parallelism&gt;:&lt;degree of loops&gt;"
+ * (the degrees are weights relative to sequences and exclusive choices, which both have weight 1, see {@link GeneratorConfig}).
+ *
+ * @author Andreas Rogge-Solti
+ */
+public class BenchmarkNets {
+
+    public static final String TEST_FOLDER = "tests/testfiles/";
+
+    public static final String GENERATED = "generated";
+
+    /**
+     * the seed of the {@link Generator}, such that all runs of a benchmark use the same nets
+     */
+    public static final long SEED = 1;
+
+    /**
+     * @param fixture the name of a model in the test files folder or the description of a generated net
+     * @return size 3 Object[] containing the {@link StochasticNet}, the initial {@link Marking} and the final {@link Marking} (may be null)
+     */
+    public static Object[] load(String fixture) throws Exception {
+        Object[] netAndMarkings;
+        if (fixture.startsWith(GENERATED + ":")) {
+            netAndMarkings = generate(fixture);
+        } else {
+            netAndMarkings = loadModel(fixture);
+        }
+        StochasticNet net = (StochasticNet) netAndMarkings[0];
+        if (netAndMarkings[1] == null) {
+            netAndMarkings[1] = StochasticNetUtils.getDefaultInitialMarking(net);
+        }
+        StochasticNetUtils.cacheInitialMarking(net, (Marking) netAndMarkings[1]);
+        if (netAndMarkings[2] != null) {
+            StochasticNetUtils.cacheFinalMarking(net, (Marking) netAndMarkings[2]);
+        }
+        return netAndMarkings;
+    }
+
+    private static Object[] generate(String fixture) {
+        String[] parts = fixture.split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected " + GENERATED + ":<transitions>:<parallelism>:<loops>, but got " + fixture);
+        }
+        GeneratorConfig config = new GeneratorConfig();
+        config.setName(fixture);
+        config.setTransitionSize(Integer.parseInt(parts[1]));
+        config.setDegreeOfParallelism(Integer.parseInt(parts[2]));
+        int loops = Integer.parseInt(parts[3]);
+        config.setContainsLoops(loops > 0);
+        config.setDegreeOfLoops(loops);
+        return new Generator(SEED).generateStochasticNet(config);
+    }
+
+    private static Object[] loadModel(String name) throws Exception {
+        Serializer serializer = new Persister();
+        if (!name.endsWith(".pnml")) {
+            name = name + ".pnml";
+        }
+        PNMLRoot pnml = serializer.read(PNMLRoot.class, new File(TEST_FOLDER + name));
+        return new StochasticNetDeserializer().convertToNet(null, pnml, name, false);
+    }
+}
@@ -0,0 +1,105 @@
+package org.processmining.tests.plugins.stochasticnet.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link GaussianKernelDistribution}: fitting it to observed values, evaluating its density
+ * and cumulative probability (interpolated or exact) and sampling from it (with and without truncation).
+ *
+ * @author Andreas Rogge-Solti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GaussianKernelBenchmark {
+
+    /**
+     * number of points where the density and the cumulative probability are evaluated (in turns)
+     */
+    public static final int POINTS = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int observations;
+
+    @Param({"false", "true"})
+    public boolean exactEvaluation;
+
+    private double[] values;
+    private GaussianKernelDistribution kernel;
+    private double[] points;
+    private double median;
+    private int next;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new Random(BenchmarkNets.SEED);
+        values = new double[observations];
+        for (int i = 0; i < observations; i++) {
+            // skewed and bimodal, like typical activity durations
+            values[i] = i % 4 == 0 ? Math.exp(3 + 0.3 * random.nextGaussian()) : Math.exp(1.5 + 0.5 * random.nextGaussian());
+        }
+        kernel = new GaussianKernelDistribution();
+        kernel.addValues(values);
+        kernel.setExactEvaluation(exactEvaluation);
+        points = new double[POINTS];
+        double lower = kernel.getReasonableLowerBound();
+        double upper = kernel.getReasonableUpperBound();
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = lower + (upper - lower) * random.nextDouble();
+        }
+        median = kernel.inverseCumulativeProbability(0.5);
+        // build the grid outside of the measurement
+        kernel.density(median);
+    }
+
+    @Benchmark
+    public GaussianKernelDistribution addValues() {
+        GaussianKernelDistribution fresh = new GaussianKernelDistribution();
+        fresh.addValues(values);
+        return fresh;
+    }
+
+    @Benchmark
+    public double density() {
+        return kernel.density(nextPoint());
+    }
+
+    @Benchmark
+    public double cumulativeProbability() {
+        return kernel.cumulativeProbability(nextPoint());
+    }
+
+    @Benchmark
+    public double sample() {
+        return kernel.sample(random);
+    }
+
+    @Benchmark
+    public double sampleWithConstraint() {
+        return kernel.sampleWithConstraint(median, random);
+    }
+
+    private double nextPoint() {
+        next = (next + 1) % POINTS;
+        return points[next];
+    }
+}
@@ -0,0 +1,101 @@
+package org.processmining.tests.plugins.stochasticnet.benchmark;
+
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.distribution.LogNormalDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.distribution.UniformRealDistribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link StochasticNetUtils#sampleWithConstraint}, i.e., sampling the remaining duration of a transition
+ * that has been enabled for some time already, for different distributions and truncation points.
+ *
+ * @author Andreas Rogge-Solti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+    @Param({"normal", "lognormal", "gamma", "exponential", "uniform", "kernel"})
+    public String distribution;
+
+    /**
+     * the truncation point given as the quantile of the distribution ("none" for no constraint)
+     */
+    @Param({"none", "0.5", "0.99"})
+    public String constraint;
+
+    private RealDistribution realDistribution;
+    private double positiveConstraint;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new Random(BenchmarkNets.SEED);
+        realDistribution = createDistribution(distribution, random);
+        realDistribution.reseedRandomGenerator(BenchmarkNets.SEED);
+        if ("none".equals(constraint)) {
+            positiveConstraint = Double.NEGATIVE_INFINITY;
+        } else {
+            positiveConstraint = realDistribution.inverseCumulativeProbability(Double.parseDouble(constraint));
+        }
+    }
+
+    @Benchmark
+    public double sampleWithConstraint() {
+        return StochasticNetUtils.sampleWithConstraint(realDistribution, positiveConstraint);
+    }
+
+    @Benchmark
+    public double sampleWithConstraintAndRandom() {
+        return StochasticNetUtils.sampleWithConstraint(realDistribution, positiveConstraint, random);
+    }
+
+    static RealDistribution createDistribution(String name, Random random) {
+        switch (name) {
+            case "normal":
+                return new NormalDistribution(10, 2);
+            case "lognormal":
+                return new LogNormalDistribution(2, 0.5);
+            case "gamma":
+                return new GammaDistribution(4, 2.5);
+            case "exponential":
+                return new ExponentialDistribution(10);
+            case "uniform":
+                return new UniformRealDistribution(5, 15);
+            case "kernel":
+                GaussianKernelDistribution kernel = new GaussianKernelDistribution();
+                double[] values = new double[1000];
+                for (int i = 0; i < values.length; i++) {
+                    // bimodal
+                    values[i] = i % 3 == 0 ? 5 + random.nextGaussian() : 12 + 2 * random.nextGaussian();
+                }
+                kernel.addValues(values);
+                return kernel;
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + name);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.processmining.tests.plugins.stochasticnet.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.IllegalTransitionException;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link EfficientStochasticNetSemanticsImpl}: building the index structures of a net, and random runs
+ * through the net via the transition ids and via the generic {@link Transition} collections (which the simulation uses).
+ * Each random run fires {@link #STEPS} transitions (starting over in the initial marking, when the net is dead).
+ *
+ * @author Andreas Rogge-Solti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SemanticsBenchmark {
+
+    public static final int STEPS = 1000;
+
+    @Param({"generated:20:1:0", "generated:100:1:0", "generated:100:4:0", "generated:100:1:2", "generated:500:2:1",
+            "Race_AB_Loop", "Parallel_Loop_A-F", "loopy_realistic", "CAISE_16_main_process"})
+    public String net;
+
+    private StochasticNet stochasticNet;
+    private Marking initialMarking;
+    private EfficientStochasticNetSemanticsImpl semantics;
+    private short[] initialState;
+    private int[] buffer;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Object[] netAndMarkings = BenchmarkNets.load(net);
+        stochasticNet = (StochasticNet) netAndMarkings[0];
+        initialMarking = (Marking) netAndMarkings[1];
+        semantics = new EfficientStochasticNetSemanticsImpl();
+        semantics.initialize(stochasticNet.getTransitions(), initialMarking);
+        initialState = semantics.getCurrentInternalState().clone();
+        buffer = new int[semantics.getNumberOfTransitions()];
+        random = new Random(BenchmarkNets.SEED);
+    }
+
+    @Benchmark
+    public EfficientStochasticNetSemanticsImpl initialize() {
+        EfficientStochasticNetSemanticsImpl fresh = new EfficientStochasticNetSemanticsImpl();
+        fresh.initialize(stochasticNet.getTransitions(), initialMarking);
+        return fresh;
+    }
+
+    @Benchmark
+    public int fireByIds() throws IllegalTransitionException {
+        semantics.setCurrentState(initialState);
+        int fired = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int executable = semantics.getExecutableTransitionIds(buffer);
+            if (executable == 0) {
+                semantics.setCurrentState(initialState);
+                continue;
+            }
+            semantics.executeTransition(buffer[random.nextInt(executable)]);
+            fired++;
+        }
+        return fired;
+    }
+
+    @Benchmark
+    public int fireByTransitions() throws IllegalTransitionException {
+        semantics.setCurrentState(initialMarking);
+        int fired = 0;
+        for (int step = 0; step < STEPS; step++) {
+            Collection<Transition> executable = semantics.getExecutableTransitions();
+            if (executable.isEmpty()) {
+                semantics.setCurrentState(initialMarking);
+                continue;
+            }
+            Iterator<Transition> iterator = executable.iterator();
+            for (int skip = random.nextInt(executable.size()); skip > 0; skip--) {
+                iterator.next();
+            }
+            semantics.executeExecutableTransition(iterator.next());
+            fired++;
+        }
+        return fired;
+    }
+}
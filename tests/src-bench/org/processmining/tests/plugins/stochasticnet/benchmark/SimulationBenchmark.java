@@ -0,0 +1,82 @@
+package org.processmining.tests.plugins.stochasticnet.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
+import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
+import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PNSimulator#simulateOneTrace}, i.e., the simulation of one case from the initial marking
+ * until the final marking is reached (or the net is dead), with and without creating the events of the trace.
+ *
+ * @author Andreas Rogge-Solti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    /**
+     * upper bound on the events of a trace (for nets with loops)
+     */
+    public static final int MAX_EVENTS = 1000;
+
+    @Param({"generated:20:1:0", "generated:100:1:0", "generated:100:4:0", "generated:100:1:2", "generated:500:2:1",
+            "Race_AB_Loop", "Parallel_Loop_A-F", "loopy_realistic", "CAISE_16_main_process"})
+    public String net;
+
+    /**
+     * whether only the end time of the trace is computed (see {@link PNSimulatorConfig#setSimulateTraceless(boolean)})
+     */
+    @Param({"false", "true"})
+    public boolean traceless;
+
+    private StochasticNet stochasticNet;
+    private Marking initialMarking;
+    private Marking finalMarking;
+    private EfficientStochasticNetSemanticsImpl semantics;
+    private PNSimulator simulator;
+    private PNSimulatorConfig config;
+    private long traceStart;
+    private long traceId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Object[] netAndMarkings = BenchmarkNets.load(net);
+        stochasticNet = (StochasticNet) netAndMarkings[0];
+        initialMarking = (Marking) netAndMarkings[1];
+        finalMarking = (Marking) netAndMarkings[2];
+        semantics = new EfficientStochasticNetSemanticsImpl();
+        simulator = new PNSimulator();
+        config = new PNSimulatorConfig(1, stochasticNet.getTimeUnit(), BenchmarkNets.SEED, 1, MAX_EVENTS, stochasticNet.getExecutionPolicy());
+        // initializes the simulator (and the distributions of the transitions)
+        simulator.simulate(null, stochasticNet, semantics, config, initialMarking, finalMarking);
+        config.setSimulateTraceless(traceless);
+        traceStart = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public Object simulateOneTrace() {
+        semantics.initialize(stochasticNet.getTransitions(), initialMarking);
+        return simulator.simulateOneTrace(stochasticNet, semantics, config, initialMarking, traceStart, traceStart,
+                traceId++, false, finalMarking);
+    }
+}
@@ -1,10 +1,20 @@
 package org.processmining.tests.plugins.stochasticnet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
@@ -19,9 +29,13 @@ import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetImpl;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.plugins.filter.context.LoadAnnotationPlugin;
 import org.processmining.plugins.petrinet.manifestreplayresult.Manifest;
+import org.processmining.plugins.petrinet.manifestreplayresult.ManifestEvClassPattern;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.enricher.PerformanceEnricher;
 import org.processmining.plugins.stochasticpetrinet.enricher.PerformanceEnricherConfig;
 import org.processmining.plugins.stochasticpetrinet.enricher.PerformanceEnricherPlugin;
+import org.processmining.plugins.stochasticpetrinet.enricher.StochasticManifestCollector;
+import org.processmining.plugins.stochasticpetrinet.enricher.TransitionFittingMetrics;
 import org.processmining.plugins.stochasticpetrinet.enricher.experiment.PerformanceEnricherExperimentPlugin.ExperimentType;
 
 public class EnricherTest {
@@ -61,6 +75,276 @@ public class EnricherTest {
 	
 	@Test
 	public void testEnricherLoad() {
+		Manifest manifest = createManifest();
+
+		PerformanceEnricherConfig enricherConfig = new PerformanceEnricherConfig(DistributionType.GAUSSIAN_KERNEL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, true);
+		Object[] netAndMarking = PerformanceEnricherPlugin.transform(null, manifest, enricherConfig);
+		
+		StochasticNet enrichedNet = (StochasticNet) netAndMarking[0];
+		Iterator<Transition> iter = enrichedNet.getTransitions().iterator();
+		iter.next();
+		System.out.println(((TimedTransition)iter.next()).getTrainingData());
+	}
+
+	@Test
+	public void testParallelFittingEqualsSequentialFitting() {
+		PerformanceEnricherConfig sequentialConfig = new PerformanceEnricherConfig(DistributionType.NORMAL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, false);
+		sequentialConfig.setFittingThreads(1);
+		PerformanceEnricher sequentialEnricher = new PerformanceEnricher();
+		StochasticNet sequentialNet = (StochasticNet) sequentialEnricher.transform(null, createManifest(), sequentialConfig)[0];
+
+		PerformanceEnricherConfig parallelConfig = new PerformanceEnricherConfig(DistributionType.NORMAL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, false);
+		parallelConfig.setFittingThreads(4);
+		PerformanceEnricher parallelEnricher = new PerformanceEnricher();
+		StochasticNet parallelNet = (StochasticNet) parallelEnricher.transform(null, createManifest(), parallelConfig)[0];
+
+		Iterator<Transition> sequentialIter = sequentialNet.getTransitions().iterator();
+		Iterator<Transition> parallelIter = parallelNet.getTransitions().iterator();
+		while (sequentialIter.hasNext()) {
+			TimedTransition sequential = (TimedTransition) sequentialIter.next();
+			TimedTransition parallel = (TimedTransition) parallelIter.next();
+			Assert.assertEquals(sequential.getLabel(), parallel.getLabel());
+			Assert.assertEquals(sequential.getDistributionType(), parallel.getDistributionType());
+			Assert.assertArrayEquals(sequential.getDistributionParameters(), parallel.getDistributionParameters(), 0);
+			Assert.assertEquals(sequential.getWeight(), parallel.getWeight(), 0);
+		}
+		Assert.assertFalse(parallelIter.hasNext());
+
+		List<TransitionFittingMetrics> metrics = parallelEnricher.getFittingMetrics();
+		Assert.assertEquals(parallelNet.getTransitions().size(), metrics.size());
+		for (TransitionFittingMetrics metric : metrics) {
+			Assert.assertEquals(3, metric.getObservedValues());
+			Assert.assertNotNull(metric.getDistributionType());
+			Assert.assertTrue(metric.getDurationMillis() >= 0);
+		}
+	}
+
+	/**
+	 * The cases are split unevenly among the threads (the number of threads does not divide the number of cases).
+	 */
+	@Test
+	public void testParallelCollectionEqualsSequentialCollection() {
+		// overlapping cases of different variants (concurrency in both orders, with and without rework)
+		String[][] variants = new String[][]{
+				{"a", "b", "c", "d"},
+				{"a", "c", "b", "d"},
+				{"a", "b", "r", "b", "c", "d"},
+				{"a", "c", "b", "r", "b", "d"},
+				{"a", "b", "r", "c", "b", "r", "b", "d"}};
+		XLog log = XFactoryRegistry.instance().currentDefault().createLog();
+		for (int i = 0; i < 47; i++) {
+			XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
+			long time = 7 * i;
+			for (String activity : variants[i % variants.length]) {
+				TestUtils.addEvent(activity, trace, time);
+				time += 1 + (i * activity.charAt(0)) % 13;
+			}
+			log.add(trace);
+		}
+		Manifest manifest = createConcurrentLoopManifest(log);
+		PerformanceEnricherConfig sequentialConfig = new PerformanceEnricherConfig(DistributionType.NORMAL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, false);
+		StochasticManifestCollector sequential = new StochasticManifestCollector((ManifestEvClassPattern) manifest, sequentialConfig);
+		sequential.collectDataFromManifest(null);
+		Assert.assertEquals(5, sequential.getMarkingBasedSelections().size());
+
+		for (int threads : new int[]{4, 5}) {
+			PerformanceEnricherConfig parallelConfig = new PerformanceEnricherConfig(DistributionType.NORMAL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, false);
+			parallelConfig.setCollectingThreads(threads);
+			StochasticManifestCollector parallel = new StochasticManifestCollector((ManifestEvClassPattern) manifest, parallelConfig);
+			parallel.collectDataFromManifest(null);
+			assertSameCollectedData(manifest, sequential, parallel);
+		}
+	}
+
+	private static void assertSameCollectedData(Manifest manifest, StochasticManifestCollector sequential, StochasticManifestCollector parallel) {
+		for (Transition t : manifest.getNet().getTransitions()) {
+			int index = sequential.getEncOfTrans(t);
+			Assert.assertEquals(index, parallel.getEncOfTrans(t));
+			Assert.assertEquals(sequential.getFiringTimes(index), parallel.getFiringTimes(index));
+			Assert.assertEquals(sequential.getCensoredFiringTimes(index), parallel.getCensoredFiringTimes(index));
+			Assert.assertEquals(sequential.getTrainingData(index), parallel.getTrainingData(index));
+		}
+		Map<String, int[]> sequentialSelections = sequential.getMarkingBasedSelections();
+		Map<String, int[]> parallelSelections = parallel.getMarkingBasedSelections();
+		Assert.assertEquals(sequentialSelections.keySet(), parallelSelections.keySet());
+		for (String marking : sequentialSelections.keySet()) {
+			Assert.assertArrayEquals(sequentialSelections.get(marking), parallelSelections.get(marking));
+		}
+		Assert.assertEquals(sequential.getMeanTraceFitness(), parallel.getMeanTraceFitness(), 0);
+		Assert.assertEquals(sequential.getMaxTraceDuration(), parallel.getMaxTraceDuration(), 0);
+	}
+
+	/**
+	 * Replays cases with concurrent branches (b || c) and a loop (r redoes b) and compares the collected data
+	 * with values derived by hand from the race with enabling memory. The same values must result, if all markings
+	 * have the same hash (and the collisions have to be resolved by the tokens), and if the cases are replayed in parallel.
+	 */
+	@Test
+	public void testCollectionOfConcurrentLoopingCases() {
+		Manifest manifest = createConcurrentLoopManifest();
+		// the expected durations of the events of each case
+		double[][] expectedDurations = new double[][]{
+				{0, 10, 15, 15},
+				{0, 5, 12, 8, 2, 8},
+				{0, 3, 3, 10, 9, 5}};
+		Map<String, List<Double>> expectedCensoredTimes = new HashMap<String, List<Double>>();
+		expectedCensoredTimes.put("a", new ArrayList<Double>());
+		expectedCensoredTimes.put("b", new ArrayList<Double>());
+		expectedCensoredTimes.put("c", new ArrayList<Double>());
+		// d loses against r in the second case, r loses against d at the end of each case
+		expectedCensoredTimes.put("d", Arrays.asList(8.0));
+		expectedCensoredTimes.put("r", Arrays.asList(20.0, 8.0, 5.0));
+
+		Map<String, List<Double>> expectedFiringTimes = new HashMap<String, List<Double>>();
+		Map<String, StringBuilder> expectedTrainingData = new HashMap<String, StringBuilder>();
+		XLog log = ((ManifestEvClassPattern) manifest).getLog();
+		for (int i = 0; i < log.size(); i++) {
+			for (int j = 0; j < log.get(i).size(); j++) {
+				XEvent event = log.get(i).get(j);
+				String name = XConceptExtension.instance().extractName(event);
+				if (!expectedFiringTimes.containsKey(name)) {
+					expectedFiringTimes.put(name, new ArrayList<Double>());
+					expectedTrainingData.put(name, new StringBuilder(StochasticManifestCollector.RELATIVE_DURATION + ";"
+							+ StochasticManifestCollector.SYSTEM_LOAD + ";" + StochasticManifestCollector.TIMESTAMP + "\n"));
+				}
+				expectedFiringTimes.get(name).add(expectedDurations[i][j]);
+				long load = ((XAttributeDiscrete) event.getAttributes().get(LoadAnnotationPlugin.CONTEXT_LOAD)).getValue();
+				expectedTrainingData.get(name).append(expectedDurations[i][j]).append(";").append(load).append(";")
+						.append(XTimeExtension.instance().extractTimestamp(event).getTime()).append("\n");
+			}
+		}
+
+		// markings by their marked places, with the firing counts of the transitions in them
+		List<Place> places = new ArrayList<Place>(manifest.getNet().getPlaces());
+		Map<String, Map<String, Integer>> expectedSelections = new HashMap<String, Map<String, Integer>>();
+		addSelections(expectedSelections, places, new String[]{"pStart"}, "a", 3);
+		addSelections(expectedSelections, places, new String[]{"p1", "p2"}, "b", 2, "c", 2);
+		addSelections(expectedSelections, places, new String[]{"p2", "p3"}, "c", 1, "r", 1);
+		addSelections(expectedSelections, places, new String[]{"p1", "p4"}, "b", 3);
+		addSelections(expectedSelections, places, new String[]{"p3", "p4"}, "d", 3, "r", 1);
+
+		for (int threads = 1; threads <= 2; threads++) {
+			PerformanceEnricherConfig config = new PerformanceEnricherConfig(DistributionType.NORMAL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, false);
+			config.setCollectingThreads(threads);
+			StochasticManifestCollector[] collectors = new StochasticManifestCollector[]{
+					new StochasticManifestCollector((ManifestEvClassPattern) manifest, config),
+					new CollidingManifestCollector((ManifestEvClassPattern) manifest, config)};
+			for (StochasticManifestCollector collector : collectors) {
+				collector.collectDataFromManifest(null);
+				for (Transition t : manifest.getNet().getTransitions()) {
+					int index = collector.getEncOfTrans(t);
+					Assert.assertEquals(t.getLabel(), expectedFiringTimes.get(t.getLabel()), collector.getFiringTimes(index));
+					Assert.assertEquals(t.getLabel(), expectedCensoredTimes.get(t.getLabel()), collector.getCensoredFiringTimes(index));
+					Assert.assertEquals(t.getLabel(), expectedTrainingData.get(t.getLabel()).toString(), collector.getTrainingData(index));
+				}
+				Map<String, int[]> selections = collector.getMarkingBasedSelections();
+				Assert.assertEquals(expectedSelections.keySet(), selections.keySet());
+				for (Map.Entry<String, Map<String, Integer>> marking : expectedSelections.entrySet()) {
+					for (Transition t : manifest.getNet().getTransitions()) {
+						Integer count = marking.getValue().get(t.getLabel());
+						Assert.assertEquals(marking.getKey() + " " + t.getLabel(), count == null ? 0 : count.intValue(),
+								selections.get(marking.getKey())[collector.getEncOfTrans(t)]);
+					}
+				}
+				Assert.assertEquals(1, collector.getMeanTraceFitness(), 0);
+				Assert.assertEquals(30, collector.getMaxTraceDuration(), 0);
+			}
+		}
+	}
+
+	private static void addSelections(Map<String, Map<String, Integer>> selections, List<Place> places, String[] markedPlaces, Object... labelsAndCounts) {
+		short[] marking = new short[places.size()];
+		for (String markedPlace : markedPlaces) {
+			for (int i = 0; i < places.size(); i++) {
+				if (places.get(i).getLabel().equals(markedPlace)) {
+					marking[i] = 1;
+				}
+			}
+		}
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < labelsAndCounts.length; i += 2) {
+			counts.put((String) labelsAndCounts[i], (Integer) labelsAndCounts[i + 1]);
+		}
+		selections.put(cern.colt.Arrays.toString(marking), counts);
+	}
+
+	/**
+	 * Hashes all markings to 0.
+	 */
+	private static class CollidingManifestCollector extends StochasticManifestCollector {
+		public CollidingManifestCollector(ManifestEvClassPattern manifest, PerformanceEnricherConfig config) {
+			super(manifest, config);
+		}
+
+		protected long[] createPlaceHashes(int placeCount) {
+			return new long[placeCount];
+		}
+	}
+
+	/**
+	 * The net a -> (b, with rework r || c) -> d.
+	 */
+	private Manifest createConcurrentLoopManifest() {
+		XLog log = XFactoryRegistry.instance().currentDefault().createLog();
+		XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
+		TestUtils.addEvent("a", trace, 10);
+		TestUtils.addEvent("b", trace, 20);
+		TestUtils.addEvent("c", trace, 25);
+		TestUtils.addEvent("d", trace, 40);
+		log.add(trace);
+
+		trace = XFactoryRegistry.instance().currentDefault().createTrace();
+		TestUtils.addEvent("a", trace, 0);
+		TestUtils.addEvent("c", trace, 5);
+		TestUtils.addEvent("b", trace, 12);
+		TestUtils.addEvent("r", trace, 20);
+		TestUtils.addEvent("b", trace, 22);
+		TestUtils.addEvent("d", trace, 30);
+		log.add(trace);
+
+		trace = XFactoryRegistry.instance().currentDefault().createTrace();
+		TestUtils.addEvent("a", trace, 100);
+		TestUtils.addEvent("b", trace, 103);
+		TestUtils.addEvent("r", trace, 106);
+		TestUtils.addEvent("c", trace, 110);
+		TestUtils.addEvent("b", trace, 115);
+		TestUtils.addEvent("d", trace, 120);
+		log.add(trace);
+		return createConcurrentLoopManifest(log);
+	}
+
+	private Manifest createConcurrentLoopManifest(XLog log) {
+		XLog annotatedLog = new LoadAnnotationPlugin().addNumberOfInstancesInSystemToLogHeadless(null, log);
+
+		Petrinet net = new PetrinetImpl("concurrent loop");
+		Place pStart = net.addPlace("pStart");
+		Place p1 = net.addPlace("p1");
+		Place p2 = net.addPlace("p2");
+		Place p3 = net.addPlace("p3");
+		Place p4 = net.addPlace("p4");
+		Place pEnd = net.addPlace("pEnd");
+		Transition tA = net.addTransition("a");
+		Transition tB = net.addTransition("b");
+		Transition tR = net.addTransition("r");
+		Transition tC = net.addTransition("c");
+		Transition tD = net.addTransition("d");
+		net.addArc(pStart, tA);
+		net.addArc(tA, p1);
+		net.addArc(tA, p2);
+		net.addArc(p1, tB);
+		net.addArc(tB, p3);
+		net.addArc(p3, tR);
+		net.addArc(tR, p1);
+		net.addArc(p2, tC);
+		net.addArc(tC, p4);
+		net.addArc(p3, tD);
+		net.addArc(p4, tD);
+		net.addArc(tD, pEnd);
+
+		return (Manifest) StochasticNetUtils.replayLog(null, net, annotatedLog, true, true);
+	}
+
+	private Manifest createManifest() {
 		XLog log = XFactoryRegistry.instance().currentDefault().createLog();
 		XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
 		
@@ -104,14 +388,6 @@ public class EnricherTest {
 		Marking initialMarking = new Marking();
 		initialMarking.add(pStart);
 
-		Manifest manifest = (Manifest)StochasticNetUtils.replayLog(null, net, annotatedLog, true, true);
-
-		PerformanceEnricherConfig enricherConfig = new PerformanceEnricherConfig(DistributionType.GAUSSIAN_KERNEL, TimeUnit.MILLISECONDS, ExecutionPolicy.RACE_ENABLING_MEMORY, null, true);
-		Object[] netAndMarking = PerformanceEnricherPlugin.transform(null, manifest, enricherConfig);
-		
-		StochasticNet enrichedNet = (StochasticNet) netAndMarking[0];
-		Iterator<Transition> iter = enrichedNet.getTransitions().iterator();
-		iter.next();
-		System.out.println(((TimedTransition)iter.next()).getTrainingData());
+		return (Manifest)StochasticNetUtils.replayLog(null, net, annotatedLog, true, true);
 	}
 }
@@ -143,7 +143,6 @@ public class PredictionPerformanceTest {
 		XTrace observedSubTrace = StochasticNetUtils.getSubTrace(trace, monitoringTime);
 		
 		TimePredictor predictor = new TimePredictor(true);
-//		StochasticNetUtils.useCache(true);
 		// start performance analysis:
 		long beforePrediction = System.currentTimeMillis();
 		Pair<Double,Double> predictedDurationAndConfidence = predictor.predict(net, observedSubTrace, new Date(monitoringTime), initialMarking);
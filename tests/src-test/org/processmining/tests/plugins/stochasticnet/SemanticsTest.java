@@ -1,12 +1,20 @@
 package org.processmining.tests.plugins.stochasticnet;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.models.semantics.petrinet.impl.EfficientTimedMarking;
-import org.processmining.models.semantics.petrinet.impl.NormalizedMarkingCache;
+import org.processmining.models.semantics.petrinet.impl.StochasticNetSemanticsImpl;
+import org.processmining.models.semantics.petrinet.impl.TimedMarkingStore;
 
 public class SemanticsTest {
 
@@ -24,7 +32,7 @@ public class SemanticsTest {
 		marking.pack();
 		
 		
-		NormalizedMarkingCache.getInstance().clearCache();
+		EfficientTimedMarking.clearCachedMarkings();
 		
 		marking.unpack();
 		Assert.assertTrue(marking.equalsMarking(new short[]{1,1,0,0}));
@@ -32,4 +40,79 @@ public class SemanticsTest {
 		System.out.println(marking.toString());
 		
 	}
+
+	@Test
+	public void testEfficientMarkingFiringAndShiftedEquality() throws Exception {
+		short[] fork = new short[]{-1, 0, 2, 0};
+		short[] join = new short[]{0, -1, -1, 1};
+		EfficientTimedMarking marking = new EfficientTimedMarking(new short[]{1, 1, 0, 0}, 0);
+		Assert.assertEquals(5, marking.executeTransitionWithDuration(fork, 5));
+		Assert.assertEquals(8, marking.executeTransitionWithDuration(join, 3));
+		Assert.assertTrue(marking.equalsMarking(new short[]{0, 0, 1, 1}));
+
+		// the same firings started 100 time units later lead to an equal (normalized) marking
+		EfficientTimedMarking shifted = new EfficientTimedMarking(new short[]{1, 1, 0, 0}, 100);
+		shifted.executeTransitionWithDuration(fork, 5);
+		shifted.executeTransitionWithDuration(join, 3);
+		Assert.assertEquals(marking, shifted);
+		Assert.assertEquals(marking.hashCode(), shifted.hashCode());
+		shifted.pack();
+		Assert.assertEquals(marking.hashCode(), shifted.hashCode());
+		// packed and unpacked markings are compared in both directions
+		Assert.assertEquals(marking, shifted);
+		Assert.assertEquals(shifted, marking);
+		EfficientTimedMarking other = new EfficientTimedMarking(new short[]{1, 1, 0, 0}, 0);
+		other.executeTransitionWithDuration(fork, 5);
+		other.executeTransitionWithDuration(join, 4);
+		Assert.assertFalse(other.equals(shifted));
+		Assert.assertFalse(shifted.equals(other));
+		Assert.assertEquals(3, shifted.executeTransitionAtTime(new short[]{0, 0, -1, 1}, 108));
+	}
+
+	@Test
+	public void testTimedMarkingStoreSharesEqualMarkings() throws Exception {
+		TimedMarkingStore store = new TimedMarkingStore(2);
+		int[] first = new int[]{1, 0, 0, 2, 3, 5};
+		Assert.assertSame(first, store.canonicalize(first));
+		Assert.assertSame(first, store.canonicalize(new int[]{1, 0, 0, 2, 3, 5}));
+		Assert.assertEquals(1, store.getHits());
+
+		// least recently used markings are evicted
+		store.canonicalize(new int[]{0, 1, 4});
+		store.canonicalize(new int[]{2, 0, 0});
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals(1, store.getEvictions());
+		Assert.assertFalse(store.contains(first));
+	}
+
+	@Test
+	public void testIncrementalEnablingMatchesDefaultSemantics() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Parallel_Loop_A-F", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking initialMarking = (Marking) netAndMarking[1];
+
+		StochasticNetSemanticsImpl reference = new StochasticNetSemanticsImpl();
+		reference.initialize(net.getTransitions(), initialMarking);
+		EfficientStochasticNetSemanticsImpl efficient = new EfficientStochasticNetSemanticsImpl();
+		efficient.initialize(net.getTransitions(), initialMarking);
+
+		int[] buffer = new int[efficient.getNumberOfTransitions()];
+		Random random = new Random(1);
+		for (int step = 0; step < 1000; step++) {
+			Collection<Transition> expected = reference.getExecutableTransitions();
+			if (expected.isEmpty()) {
+				reference.setCurrentState(initialMarking);
+				efficient.setCurrentState(initialMarking);
+				expected = reference.getExecutableTransitions();
+			}
+			Assert.assertEquals(new HashSet<Transition>(expected), new HashSet<Transition>(efficient.getExecutableTransitions()));
+			int count = efficient.getExecutableTransitionIds(buffer);
+			Assert.assertEquals(expected.size(), count);
+
+			Transition toFire = efficient.getTransition((short) buffer[random.nextInt(count)]);
+			reference.executeExecutableTransition(toFire);
+			efficient.executeExecutableTransition(toFire);
+			Assert.assertEquals(reference.getCurrentState(), efficient.getCurrentState());
+		}
+	}
 }
@@ -3,28 +3,49 @@ package org.processmining.tests.plugins.stochasticnet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.in.XesXmlParser;
 import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 import org.junit.Assert;
 import org.junit.Test;
+import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.ExecutionPolicy;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeUnit;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.StochasticNetImpl;
+import org.processmining.models.semantics.Semantics;
 import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.models.semantics.petrinet.impl.EfficientStochasticNetSemanticsImpl;
 import org.processmining.models.semantics.petrinet.impl.StochasticNetSemanticsImpl;
 import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
 import org.processmining.plugins.stochasticpetrinet.converter.ConvertDistributionsPlugin;
+import org.processmining.plugins.stochasticpetrinet.prediction.BatchTimePredictor;
+import org.processmining.plugins.stochasticpetrinet.prediction.RemainingTimeCache;
+import org.processmining.plugins.stochasticpetrinet.prediction.TimePredictor;
+import org.processmining.plugins.stochasticpetrinet.simulator.CsvLogSink;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
 import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
+import org.processmining.plugins.stochasticpetrinet.simulator.SimulatedLogSink;
+import org.processmining.plugins.stochasticpetrinet.simulator.XesLogSink;
 
 public class SimulatorTest {
 
@@ -186,6 +207,92 @@ public class SimulatorTest {
 		Assert.assertEquals(96, log.size());
 		
 	}
+
+	@Test
+	public void testExplorationSpillingToDiskFindsSameTraces() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Parallel_Loop_A-F",true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+
+		PNSimulatorConfig config = new PNSimulatorConfig(1000,TimeUnit.MINUTES,0,1,15,ExecutionPolicy.RACE_ENABLING_MEMORY);
+		config.setDeterministicBoundedStateSpaceExploration(true);
+		XLog log = new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, StochasticNetUtils.getFinalMarking(null, net));
+
+		config.setMaxFrontierStatesInMemory(4);
+		XLog spilledLog = new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, StochasticNetUtils.getFinalMarking(null, net));
+
+		Assert.assertEquals(log.size(), spilledLog.size());
+		double previousLogProbability = 0;
+		for (XTrace trace : log) {
+			double logProbability = StochasticNetUtils.getLogProbability(trace);
+			// best-first: the most likely traces come first
+			Assert.assertTrue(logProbability <= previousLogProbability + 1e-12);
+			previousLogProbability = logProbability;
+		}
+		Map<String, Double> probabilities = getProbabilitiesOfTraces(log);
+		Map<String, Double> spilledProbabilities = getProbabilitiesOfTraces(spilledLog);
+		Assert.assertEquals(probabilities.keySet(), spilledProbabilities.keySet());
+		for (String trace : probabilities.keySet()) {
+			Assert.assertEquals(probabilities.get(trace), spilledProbabilities.get(trace), 1e-12);
+		}
+
+		// the quantile is reached with the most likely traces
+		config.setQuantile(0.5);
+		XLog quantileLog = new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, StochasticNetUtils.getFinalMarking(null, net));
+		double mass = 0;
+		for (XTrace trace : quantileLog) {
+			mass += Math.exp(StochasticNetUtils.getLogProbability(trace));
+		}
+		Assert.assertTrue(mass >= 0.5);
+		Assert.assertTrue(quantileLog.size() < log.size());
+	}
+
+	/**
+	 * Two exponential transitions race for the token of the start place: the faster one (with three times the rate)
+	 * should win in three quarters of the cases, i.e., the rates are normalized by their sum, and not by the sum of weights.
+	 */
+	@Test
+	public void testExplorationOfRacingTransitionsUsesRates() throws Exception {
+		StochasticNet net = new StochasticNetImpl("race");
+		net.setExecutionPolicy(ExecutionPolicy.RACE_ENABLING_MEMORY);
+		net.setTimeUnit(TimeUnit.MINUTES);
+		Place startPlace = net.addPlace("start");
+		Place endPlace = net.addPlace("end");
+		// the parameter of the exponential distribution is its mean
+		TimedTransition slow = net.addTimedTransition("slow", DistributionType.EXPONENTIAL, 1);
+		TimedTransition fast = net.addTimedTransition("fast", DistributionType.EXPONENTIAL, 1. / 3);
+		net.addArc(startPlace, slow);
+		net.addArc(startPlace, fast);
+		net.addArc(slow, endPlace);
+		net.addArc(fast, endPlace);
+		Marking marking = new Marking();
+		marking.add(startPlace);
+		Marking finalMarking = new Marking();
+		finalMarking.add(endPlace);
+
+		PNSimulatorConfig config = new PNSimulatorConfig(1000,TimeUnit.MINUTES,0,1,15,ExecutionPolicy.RACE_ENABLING_MEMORY);
+		config.setDeterministicBoundedStateSpaceExploration(true);
+		XLog log = new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, finalMarking);
+
+		Assert.assertEquals(2, log.size());
+		Map<String, Double> probabilities = new HashMap<>();
+		for (XTrace trace : log) {
+			Assert.assertEquals(1, trace.size());
+			probabilities.put(XConceptExtension.instance().extractName(trace.get(0)), Math.exp(StochasticNetUtils.getLogProbability(trace)));
+		}
+		Assert.assertEquals(0.25, probabilities.get("slow"), 1e-9);
+		Assert.assertEquals(0.75, probabilities.get("fast"), 1e-9);
+	}
+
+	private Map<String, Double> getProbabilitiesOfTraces(XLog log) {
+		Map<String, Double> probabilities = new HashMap<>();
+		for (XTrace trace : log) {
+			String key = StochasticNetUtils.debugTrace(trace, true);
+			double probability = Math.exp(StochasticNetUtils.getLogProbability(trace));
+			probabilities.put(key, probabilities.containsKey(key) ? probabilities.get(key) + probability : probability);
+		}
+		return probabilities;
+	}
 	
 	@Test
 	public void testPNMLModel() throws Exception {
@@ -237,7 +344,172 @@ public class SimulatorTest {
 		}
 	}
 	
-	
+	@Test
+	public void testTracelessKernelMatchesTraceSimulation() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+
+		for (ExecutionPolicy policy : ExecutionPolicy.values()) {
+			PNSimulatorConfig config = new PNSimulatorConfig(1, TimeUnit.MINUTES, 0, 1, 1000, policy);
+			SummaryStatistics plainDurations = simulateDurations(net, new StochasticNetSemanticsImpl(), config, marking, 2000);
+			config.setSimulateTraceless(true);
+			SummaryStatistics kernelDurations = simulateDurations(net, new EfficientStochasticNetSemanticsImpl(), config, marking, 2000);
+			System.out.println(policy + ": mean duration (trace simulation) " + plainDurations.getMean() + ", (traceless kernel) " + kernelDurations.getMean());
+			Assert.assertEquals(plainDurations.getMean(), kernelDurations.getMean(), 0.1 * plainDurations.getMean());
+		}
+	}
+
+	@Test
+	public void testParallelPredictionMatchesSequentialPrediction() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XTrace emptyTrace = XFactoryRegistry.instance().currentDefault().createTrace();
+
+		Pair<Double, Double> sequential = new TimePredictor(false).predict(net, emptyTrace, new Date(0), marking);
+		TimePredictor parallelPredictor = new TimePredictor(false, 4);
+		Pair<Double, Double> parallel = parallelPredictor.predict(net, emptyTrace, new Date(0), marking);
+		Pair<Double, Double> repeated = parallelPredictor.predict(net, emptyTrace, new Date(0), marking);
+		System.out.println("sequential prediction: " + sequential.getFirst() + ", parallel prediction: " + parallel.getFirst());
+		Assert.assertEquals(sequential.getFirst(), parallel.getFirst(), 0.1 * sequential.getFirst());
+		// same seed and parallelism yield the same prediction
+		Assert.assertEquals(parallel.getFirst(), repeated.getFirst(), 0.0);
+	}
+
+	@Test
+	public void testBatchPredictionSharesSimulationOfEqualMarkings() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XLog runningCases = XFactoryRegistry.instance().currentDefault().createLog();
+		for (int i = 0; i < 3; i++) {
+			runningCases.add(XFactoryRegistry.instance().currentDefault().createTrace());
+		}
+		Pair<Double, Double> single = new TimePredictor(false).predict(net, runningCases.get(0), new Date(0), marking);
+		List<Pair<Double, Double>> batch = new BatchTimePredictor(new TimePredictor(false), 2).predict(net, runningCases, new Date(0), marking, false);
+		Assert.assertEquals(3, batch.size());
+		Assert.assertEquals(single.getFirst(), batch.get(0).getFirst(), 0.1 * single.getFirst());
+		// all cases are in the same marking and share the simulated continuations
+		Assert.assertEquals(batch.get(0).getFirst(), batch.get(1).getFirst(), 0.0);
+		Assert.assertEquals(batch.get(0).getFirst(), batch.get(2).getFirst(), 0.0);
+	}
+
+	@Test
+	public void testBatchPredictionSharesSimulationOfSimilarElapsedTimes() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XLog runningCases = XFactoryRegistry.instance().currentDefault().createLog();
+		for (long lastEventTime : new long[]{0, 20000}) {
+			XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
+			TestUtils.addEvent("A", trace, lastEventTime);
+			runningCases.add(trace);
+		}
+		// the elapsed times (50 and 30 seconds) differ by less than a bucket
+		List<Pair<Double, Double>> batch = new BatchTimePredictor(new TimePredictor(true), 2).predict(net, runningCases, new Date(50000), marking, false);
+		Assert.assertEquals(2, batch.size());
+		// the cases share the simulated continuations, shifted by the times of their last events
+		Assert.assertEquals(batch.get(0).getFirst() + 20000, batch.get(1).getFirst(), 1e-6);
+		Assert.assertEquals(batch.get(0).getSecond(), batch.get(1).getSecond(), 1e-6);
+	}
+
+	@Test
+	public void testRemainingTimeCacheReusesSimulationOfSameMarking() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XTrace emptyTrace = XFactoryRegistry.instance().currentDefault().createTrace();
+
+		TimePredictor predictor = new TimePredictor(false);
+		RemainingTimeCache cache = new RemainingTimeCache();
+		predictor.setCache(cache);
+		Pair<Double, Double> first = predictor.predict(net, emptyTrace, new Date(0), marking);
+		Pair<Double, Double> later = predictor.predict(net, emptyTrace, new Date(1000), marking);
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.getHits());
+		// the cached end times are shifted to the later start
+		Assert.assertEquals(first.getFirst() + 1000, later.getFirst(), 1e-6);
+		Assert.assertEquals(first.getSecond(), later.getSecond(), 1e-6);
+
+		// replacing a distribution invalidates the cached simulations of the net
+		TimedTransition transition = (TimedTransition) net.getTransitions().iterator().next();
+		transition.setDistribution(new NormalDistribution(5, 1));
+		predictor.predict(net, emptyTrace, new Date(0), marking);
+		Assert.assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testRemainingTimeCacheSeparatesTimeConstraintAndExecutionPolicy() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XTrace emptyTrace = XFactoryRegistry.instance().currentDefault().createTrace();
+
+		RemainingTimeCache cache = new RemainingTimeCache();
+		TimePredictor unconstrained = new TimePredictor(false);
+		unconstrained.setCache(cache);
+		TimePredictor constrained = new TimePredictor(true);
+		constrained.setCache(cache);
+		unconstrained.predict(net, emptyTrace, new Date(0), marking);
+		// no time has elapsed, but the constrained simulation is not shared with the unconstrained one
+		constrained.predict(net, emptyTrace, new Date(0), marking);
+		Assert.assertEquals(2, cache.getMisses());
+		unconstrained.predict(net, emptyTrace, new Date(0), marking);
+		constrained.predict(net, emptyTrace, new Date(0), marking);
+		Assert.assertEquals(2, cache.getHits());
+
+		// changing the execution policy invalidates the cached simulations of the net
+		net.setExecutionPolicy(net.getExecutionPolicy() == ExecutionPolicy.GLOBAL_PRESELECTION ? ExecutionPolicy.RACE_ENABLING_MEMORY : ExecutionPolicy.GLOBAL_PRESELECTION);
+		unconstrained.predict(net, emptyTrace, new Date(0), marking);
+		Assert.assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testBatchPredictionUsesRemainingTimeCache() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB_Loop", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+		XLog runningCases = XFactoryRegistry.instance().currentDefault().createLog();
+		for (int i = 0; i < 3; i++) {
+			runningCases.add(XFactoryRegistry.instance().currentDefault().createTrace());
+		}
+
+		TimePredictor predictor = new TimePredictor(false);
+		RemainingTimeCache cache = new RemainingTimeCache();
+		predictor.setCache(cache);
+		Pair<Double, Double> first = predictor.predict(net, runningCases.get(0), new Date(0), marking);
+		for (int threads = 1; threads <= 2; threads++) {
+			List<Pair<Double, Double>> batch = new BatchTimePredictor(predictor, threads).predict(net, runningCases, new Date(1000), marking, false);
+			Assert.assertEquals(threads, cache.getHits());
+			Assert.assertEquals(1, cache.getMisses());
+			// the cached end times are shifted to the later start of the cases
+			for (Pair<Double, Double> prediction : batch) {
+				Assert.assertEquals(first.getFirst() + 1000, prediction.getFirst(), 1e-6);
+				Assert.assertEquals(first.getSecond(), prediction.getSecond(), 1e-6);
+			}
+		}
+	}
+
+	private SummaryStatistics simulateDurations(StochasticNet net, Semantics<Marking, Transition> semantics, PNSimulatorConfig config, Marking marking, int runs) {
+		PNSimulator simulator = new PNSimulator();
+		SummaryStatistics durations = new SummaryStatistics();
+		for (int i = 0; i < runs; i++) {
+			semantics.initialize(net.getTransitions(), marking);
+			Object result = simulator.simulateOneTrace(net, semantics, config, marking, 0, 0, i, false, null);
+			long end = result instanceof XTrace ? lastTimestamp((XTrace) result) : (Long) result;
+			durations.addValue(end);
+		}
+		return durations;
+	}
+
+	private long lastTimestamp(XTrace trace) {
+		long last = 0;
+		for (XEvent event : trace) {
+			last = Math.max(last, XTimeExtension.instance().extractTimestamp(event).getTime());
+		}
+		return last;
+	}
 
 	private Map<String, Integer> getEventCounts(XLog logPreselection, String... names) {
 		Map<String,Integer> counts = new HashMap<String, Integer>();
@@ -256,7 +528,128 @@ public class SimulatorTest {
 		return counts;
 	}
 
+	@Test
+	public void testStreamedSimulationWritesAllTraces() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+
+		PNSimulatorConfig config = new PNSimulatorConfig(200, TimeUnit.MINUTES, 0, 1, 1000, ExecutionPolicy.RACE_ENABLING_MEMORY);
+		// small buffers to force several writes
+		ByteArrayOutputStream xes = new ByteArrayOutputStream();
+		ByteArrayOutputStream csv = new ByteArrayOutputStream();
+		final XesLogSink xesSink = new XesLogSink(xes, 128);
+		final CsvLogSink csvSink = new CsvLogSink(csv, 128);
+		final List<XTrace> traces = new ArrayList<>();
+		long simulatedTraces = new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, null, new SimulatedLogSink() {
+			public void startLog(String logName) {
+				xesSink.startLog(logName);
+				csvSink.startLog(logName);
+			}
+
+			public void addTrace(XTrace trace) {
+				traces.add(trace);
+				xesSink.addTrace(trace);
+				csvSink.addTrace(trace);
+			}
 
-	
+			public void endLog() {
+				xesSink.endLog();
+				csvSink.endLog();
+			}
 
+			public void close() {
+				xesSink.close();
+				csvSink.close();
+			}
+		});
+		assertEquals(200, simulatedTraces);
+		assertEquals(200, traces.size());
+
+		XLog streamedLog = new XesXmlParser().parse(new ByteArrayInputStream(xes.toByteArray())).get(0);
+		assertEquals(traces.size(), streamedLog.size());
+		int events = 0;
+		for (int i = 0; i < traces.size(); i++) {
+			assertEquals(traces.get(i).size(), streamedLog.get(i).size());
+			for (int j = 0; j < traces.get(i).size(); j++) {
+				assertEquals(XConceptExtension.instance().extractName(traces.get(i).get(j)), XConceptExtension.instance().extractName(streamedLog.get(i).get(j)));
+				assertEquals(XTimeExtension.instance().extractTimestamp(traces.get(i).get(j)), XTimeExtension.instance().extractTimestamp(streamedLog.get(i).get(j)));
+			}
+			events += traces.get(i).size();
+		}
+
+		String[] lines = new String(csv.toByteArray(), "UTF-8").split("\\n");
+		// header and one line per event
+		assertEquals(events + 1, lines.length);
+	}
+
+	@Test
+	public void testFailedStreamedSimulationIsNotEnded() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+
+		PNSimulatorConfig config = new PNSimulatorConfig(200, TimeUnit.MINUTES, 0, 1, 1000, ExecutionPolicy.RACE_ENABLING_MEMORY);
+		ByteArrayOutputStream xes = new ByteArrayOutputStream();
+		final XesLogSink xesSink = new XesLogSink(xes, 128);
+		try {
+			new PNSimulator().simulate(null, net, new StochasticNetSemanticsImpl(), config, marking, null, new SimulatedLogSink() {
+				private int traces = 0;
+
+				public void startLog(String logName) {
+					xesSink.startLog(logName);
+				}
+
+				public void addTrace(XTrace trace) {
+					if (++traces > 100) {
+						throw new IllegalStateException("simulation failed");
+					}
+					xesSink.addTrace(trace);
+				}
+
+				public void endLog() {
+					xesSink.endLog();
+				}
+
+				public void close() {
+					xesSink.close();
+				}
+			});
+			Assert.fail("The failure of the sink should be passed on!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		String written = new String(xes.toByteArray(), "UTF-8");
+		Assert.assertTrue(written.contains("</trace>"));
+		// the log of the failed simulation is not closed, and thus can not be mistaken for a complete log
+		Assert.assertFalse(written.contains("</log>"));
+	}
+
+	@Test
+	public void testParallelLogGenerationDoesNotDependOnThreadCount() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("Race_AB", true);
+		StochasticNet net = (StochasticNet) netAndMarking[0];
+		Marking marking = (Marking) netAndMarking[1];
+
+		PNSimulatorConfig config = new PNSimulatorConfig(500, TimeUnit.MINUTES, 42, 1, 1000, ExecutionPolicy.RACE_ENABLING_MEMORY);
+		config.setStartTime(new Date(0));
+		XLog sequentialLog = new PNSimulator().simulateInParallel(null, net, new StochasticNetSemanticsImpl(), config, marking, null, 1);
+		XLog parallelLog = new PNSimulator().simulateInParallel(null, net, new StochasticNetSemanticsImpl(), config, marking, null, 4);
+
+		assertEquals(500, parallelLog.size());
+		assertEquals(sequentialLog.size(), parallelLog.size());
+		for (int i = 0; i < sequentialLog.size(); i++) {
+			XTrace sequentialTrace = sequentialLog.get(i);
+			XTrace parallelTrace = parallelLog.get(i);
+			assertEquals(XConceptExtension.instance().extractName(sequentialTrace), XConceptExtension.instance().extractName(parallelTrace));
+			assertEquals(sequentialTrace.size(), parallelTrace.size());
+			for (int j = 0; j < sequentialTrace.size(); j++) {
+				assertEquals(XConceptExtension.instance().extractName(sequentialTrace.get(j)), XConceptExtension.instance().extractName(parallelTrace.get(j)));
+				assertEquals(XTimeExtension.instance().extractTimestamp(sequentialTrace.get(j)), XTimeExtension.instance().extractTimestamp(parallelTrace.get(j)));
+			}
+		}
+		// the race between A and B is still decided by the durations (7:1, see testFiringPolicyPreselection_vs_Race)
+		Map<String, Integer> counts = getEventCounts(parallelLog, "A", "B");
+		Assert.assertEquals(1.0 / 7, counts.get("B") / (double) counts.get("A"), 0.05);
+	}
 }
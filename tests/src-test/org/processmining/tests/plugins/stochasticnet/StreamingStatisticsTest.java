@@ -0,0 +1,71 @@
+package org.processmining.tests.plugins.stochasticnet;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.prediction.StreamingStatistics;
+
+public class StreamingStatisticsTest {
+
+	@Test
+	public void testStreamingStatisticsMatchDescriptiveStatistics() {
+		Random random = new Random(1);
+		DescriptiveStatistics exact = new DescriptiveStatistics();
+		StreamingStatistics streaming = new StreamingStatistics();
+		StreamingStatistics firstHalf = new StreamingStatistics();
+		StreamingStatistics secondHalf = new StreamingStatistics();
+		for (int i = 0; i < 100000; i++) {
+			// simulated end times are absolute time stamps
+			double value = 1.4e12 + Math.exp(random.nextGaussian()) * 3600000;
+			exact.addValue(value);
+			streaming.addValue(value);
+			(i < 30000 ? firstHalf : secondHalf).addValue(value);
+		}
+		firstHalf.merge(secondHalf);
+		for (StreamingStatistics stats : new StreamingStatistics[]{streaming, firstHalf}) {
+			Assert.assertEquals(exact.getN(), stats.getN());
+			Assert.assertEquals(exact.getMean(), stats.getMean(), 1);
+			Assert.assertEquals(exact.getStandardDeviation(), stats.getStandardDeviation(), 1e-6 * exact.getStandardDeviation());
+			Assert.assertEquals(exact.getMin(), stats.getMin(), 0);
+			Assert.assertEquals(exact.getMax(), stats.getMax(), 0);
+			for (double p : new double[]{1, 10, 50, 90, 99}) {
+				double percentile = exact.getPercentile(p);
+				Assert.assertEquals(p / 100, stats.getCumulativeProbability(percentile), 0.002);
+				Assert.assertEquals(percentile, stats.getPercentile(p), 0.01 * (percentile - 1.4e12));
+			}
+		}
+	}
+
+	/**
+	 * Cached statistics are read by several threads, so reading must not change them.
+	 */
+	@Test
+	public void testReadingDoesNotChangeStatistics() {
+		Random random = new Random(1);
+		StreamingStatistics stats = new StreamingStatistics();
+		StreamingStatistics other = new StreamingStatistics();
+		for (int i = 0; i < 1500; i++) {
+			stats.addValue(random.nextGaussian());
+			other.addValue(random.nextGaussian());
+		}
+		// values are still buffered, reading works on a compressed copy
+		double[] percentiles = new double[]{stats.getPercentile(10), stats.getPercentile(50), stats.getPercentile(90)};
+		double cdf = stats.getCumulativeProbability(0.5);
+		Assert.assertEquals(percentiles[1], stats.getPercentile(50), 0);
+
+		StreamingStatistics merged = new StreamingStatistics();
+		merged.merge(other);
+		double otherMedian = other.getPercentile(50);
+
+		stats.compress();
+		Assert.assertEquals(percentiles[0], stats.getPercentile(10), 0);
+		Assert.assertEquals(percentiles[1], stats.getPercentile(50), 0);
+		Assert.assertEquals(percentiles[2], stats.getPercentile(90), 0);
+		Assert.assertEquals(cdf, stats.getCumulativeProbability(0.5), 0);
+		other.compress();
+		Assert.assertEquals(otherMedian, other.getPercentile(50), 0);
+		Assert.assertEquals(otherMedian, merged.getPercentile(50), 0);
+	}
+}
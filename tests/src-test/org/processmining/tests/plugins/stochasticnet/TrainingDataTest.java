@@ -0,0 +1,48 @@
+package org.processmining.tests.plugins.stochasticnet;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.enricher.StochasticManifestCollector;
+import org.processmining.plugins.stochasticpetrinet.enricher.TrainingData;
+
+public class TrainingDataTest {
+
+	@Test
+	public void testPrefixStatisticsMatchScanOfPastEntries(){
+		Random random = new Random(1);
+		int entries = 2000;
+		long[] times = new long[entries];
+		double[] durations = new double[entries];
+		String d = StochasticManifestCollector.DELIMITER;
+		StringBuilder csv = new StringBuilder(StochasticManifestCollector.RELATIVE_DURATION + d + StochasticManifestCollector.SYSTEM_LOAD + d + StochasticManifestCollector.TIMESTAMP);
+		for (int i = 0; i < entries; i++) {
+			// unordered, with duplicate timestamps
+			times[i] = 1000000000000L + random.nextInt(500) * 60000L;
+			durations[i] = 10000 + random.nextGaussian() * 3;
+			csv.append("\n").append(durations[i]).append(d).append(random.nextInt(10)).append(d).append(times[i]);
+		}
+		TrainingData data = TrainingData.parse(csv.toString());
+		Assert.assertEquals(entries, data.size());
+
+		for (int cutoff = 0; cutoff < 520; cutoff += 7) {
+			long time = 1000000000000L + cutoff * 60000L;
+			DescriptiveStatistics stats = new DescriptiveStatistics();
+			for (int i = 0; i < entries; i++) {
+				if (times[i] < time) {
+					stats.addValue(durations[i]);
+				}
+			}
+			int n = data.countBefore(time);
+			Assert.assertEquals(stats.getN(), n);
+			if (n > 0) {
+				Assert.assertEquals(stats.getMean(), data.getMean(n), 1e-9);
+				Assert.assertEquals(stats.getStandardDeviation(), data.getStandardDeviation(n), 1e-9);
+				Assert.assertEquals(n, data.getDurations(n).length);
+				Assert.assertTrue(data.getTimestamp(n - 1) < time);
+			}
+		}
+	}
+}
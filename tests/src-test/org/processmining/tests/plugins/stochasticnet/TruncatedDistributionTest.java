@@ -1,13 +1,18 @@
 package org.processmining.tests.plugins.stochasticnet;
 
 import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.RealDistribution;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.Assert;
 import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
 import org.processmining.plugins.stochasticpetrinet.distribution.TruncatedDistributionFactory;
 
+import java.util.Random;
+
 public class TruncatedDistributionTest {
 
 	public static final int SAMPLESIZE = 10000;
@@ -43,4 +48,89 @@ public class TruncatedDistributionTest {
 		System.out.println("numerical mean: "+truncatedDist.getNumericalMean());
 		Assert.assertTrue(Math.abs(truncatedStats.getMean()-truncatedDist.getNumericalMean())<TOLERANCE);
 	}
+
+	@Test
+	public void testConstrainedNormalFarInTail() throws Exception {
+		double mean = 10, sd = 2, constraint = 40;
+		RealDistribution dist = new NormalDistribution(mean, sd);
+		Random random = new Random(1);
+		DescriptiveStatistics truncatedStats = new DescriptiveStatistics();
+		for (int i = 0; i < SAMPLESIZE; i++) {
+			truncatedStats.addValue(StochasticNetUtils.sampleWithConstraint(dist, constraint, random));
+		}
+		Assert.assertTrue(truncatedStats.getMin() > constraint);
+		// the conditional mean is about constraint + sd^2/(constraint-mean) this far in the tail
+		Assert.assertEquals(constraint + sd * sd / (constraint - mean), truncatedStats.getMean(), 0.05);
+	}
+
+	@Test
+	public void testConstrainedKernelMatchesRejection() throws Exception {
+		GaussianKernelDistribution dist = new GaussianKernelDistribution();
+		dist.addValues(new double[]{1, 2, 2.5, 3, 5, 8, 13});
+		double constraint = 6;
+		Random random = new Random(1);
+		DescriptiveStatistics exactStats = new DescriptiveStatistics();
+		DescriptiveStatistics rejectionStats = new DescriptiveStatistics();
+		while (rejectionStats.getN() < SAMPLESIZE) {
+			exactStats.addValue(dist.sampleWithConstraint(constraint, random));
+			double sample = dist.sample(random);
+			if (sample > constraint) {
+				rejectionStats.addValue(sample);
+			}
+		}
+		Assert.assertTrue(exactStats.getMin() > constraint);
+		Assert.assertEquals(rejectionStats.getMean(), exactStats.getMean(), TOLERANCE);
+
+		// constraints far beyond all observations are still handled without rejection
+		double farConstraint = 1000;
+		Assert.assertTrue(dist.sampleWithConstraint(farConstraint, random) > farConstraint);
+	}
+
+	@Test
+	public void testConstrainedKernelBelowBulkMatchesRejection() throws Exception {
+		GaussianKernelDistribution dist = new GaussianKernelDistribution();
+		dist.addValues(new double[]{1, 2, 2.5, 3, 5, 8, 13});
+		// most of the mass is above the constraint, so plain samples are tried first
+		double constraint = 2;
+		Random random = new Random(1);
+		DescriptiveStatistics constrainedStats = new DescriptiveStatistics();
+		DescriptiveStatistics rejectionStats = new DescriptiveStatistics();
+		while (rejectionStats.getN() < SAMPLESIZE) {
+			constrainedStats.addValue(dist.sampleWithConstraint(constraint, random));
+			double sample = dist.sample(random);
+			if (sample > constraint) {
+				rejectionStats.addValue(sample);
+			}
+		}
+		Assert.assertTrue(constrainedStats.getMin() > constraint);
+		Assert.assertEquals(rejectionStats.getMean(), constrainedStats.getMean(), TOLERANCE);
+	}
+
+	/**
+	 * Distributions without a closed form inverse are sampled on the tabulated cumulative distribution function.
+	 */
+	@Test
+	public void testConstrainedGammaMatchesRejection() throws Exception {
+		GammaDistribution gamma = new GammaDistribution(4, 2.5);
+		gamma.reseedRandomGenerator(1);
+		double constraint = 12;
+		Random random = new Random(1);
+		DescriptiveStatistics constrainedStats = new DescriptiveStatistics();
+		DescriptiveStatistics rejectionStats = new DescriptiveStatistics();
+		DescriptiveStatistics plainStats = new DescriptiveStatistics();
+		while (rejectionStats.getN() < SAMPLESIZE) {
+			constrainedStats.addValue(StochasticNetUtils.sampleWithConstraint(gamma, constraint, random));
+			plainStats.addValue(StochasticNetUtils.sample(gamma, random));
+			double sample = gamma.sample();
+			if (sample > constraint) {
+				rejectionStats.addValue(sample);
+			}
+		}
+		Assert.assertTrue(constrainedStats.getMin() > constraint);
+		Assert.assertEquals(rejectionStats.getMean(), constrainedStats.getMean(), TOLERANCE);
+		Assert.assertEquals(rejectionStats.getPercentile(50), constrainedStats.getPercentile(50), TOLERANCE);
+		Assert.assertEquals(rejectionStats.getPercentile(90), constrainedStats.getPercentile(90), 2 * TOLERANCE);
+		Assert.assertEquals(gamma.getNumericalMean(), plainStats.getMean(), TOLERANCE);
+		Assert.assertEquals(Math.sqrt(gamma.getNumericalVariance()), plainStats.getStandardDeviation(), TOLERANCE);
+	}
 }
@@ -21,7 +21,7 @@ public class HistorgramTest {
 		dist.addValues(samples);
 		
 		for (int i = 0; i < 1000000000; i++){
-			StochasticNetUtils.sampleWithConstraint(dist, "empty", nDist.sample());
+			StochasticNetUtils.sampleWithConstraint(dist, nDist.sample());
 		}
 	}
 }
@@ -0,0 +1,42 @@
+package org.processmining.tests.plugins.stochasticnet.distribution;
+
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianKernelDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.GaussianReflectionKernelDistribution;
+
+public class KernelDensityGridTest {
+
+	@Test
+	public void testGridMatchesExactEvaluation(){
+		ExponentialDistribution source = new ExponentialDistribution(20);
+		source.reseedRandomGenerator(1);
+		double[] values = source.sample(500);
+
+		GaussianKernelDistribution fast = new GaussianKernelDistribution();
+		fast.addValues(values);
+		GaussianKernelDistribution exact = new GaussianKernelDistribution();
+		exact.addValues(values);
+		exact.setExactEvaluation(true);
+
+		for (double x = -50; x < 300; x += 0.731) {
+			double exactDensity = exact.density(x);
+			Assert.assertEquals(exactDensity, fast.density(x), 1e-4 * exactDensity + 1e-15);
+			Assert.assertEquals(exact.cumulativeProbability(x), fast.cumulativeProbability(x), 1e-8);
+		}
+	}
+
+	@Test
+	public void testReflectionDensityUsesBothKernelSides(){
+		GaussianReflectionKernelDistribution dist = new GaussianReflectionKernelDistribution(0);
+		dist.addValues(new double[]{0.5, 1, 1.5, 2, 4});
+		Assert.assertEquals(0, dist.density(-1), 0);
+		GaussianReflectionKernelDistribution exact = new GaussianReflectionKernelDistribution(0);
+		exact.addValues(new double[]{0.5, 1, 1.5, 2, 4});
+		exact.setExactEvaluation(true);
+		for (double x = 0; x < 10; x += 0.37) {
+			Assert.assertEquals(exact.density(x), dist.density(x), 1e-4 * exact.density(x) + 1e-15);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.processmining.tests.plugins.stochasticnet.distribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.distribution.LogSplineDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.NonConvergenceException;
+
+public class LogSplineDistributionTest {
+
+	@Test
+	public void testFitGamma() throws NonConvergenceException{
+		GammaDistribution gamma = new GammaDistribution(4, 2.5);
+		gamma.reseedRandomGenerator(1);
+		LogSplineDistribution logspline = new LogSplineDistribution();
+		logspline.addValues(gamma.sample(2000));
+
+		Assert.assertEquals(gamma.getNumericalMean(), logspline.getNumericalMean(), 0.5);
+		for (double x = 0.5; x < 30; x += 0.5) {
+			Assert.assertEquals(gamma.density(x), logspline.density(x), 0.02);
+		}
+		for (double p = 0.01; p < 1; p += 0.037) {
+			Assert.assertEquals(p, logspline.cumulativeProbability(logspline.inverseCumulativeProbability(p)), 1e-8);
+		}
+		Assert.assertEquals(0, logspline.cumulativeProbability(0), 0);
+		Assert.assertEquals(0, logspline.density(-1), 0);
+	}
+
+	/**
+	 * The durations are observed only if they are shorter than a competing exponential duration (the race policy),
+	 * which is accounted for by the censored values.
+	 */
+	@Test
+	public void testCensoringCorrectsBias() throws NonConvergenceException{
+		GammaDistribution gamma = new GammaDistribution(4, 2.5);
+		gamma.reseedRandomGenerator(1);
+		Random random = new Random(1);
+		List<Double> observed = new ArrayList<Double>();
+		List<Double> censored = new ArrayList<Double>();
+		for (int i = 0; i < 1000; i++) {
+			double duration = gamma.sample();
+			double competitor = -10 * Math.log(1 - random.nextDouble());
+			if (duration < competitor) {
+				observed.add(duration);
+			} else {
+				censored.add(competitor);
+			}
+		}
+		LogSplineDistribution biased = new LogSplineDistribution();
+		biased.addValues(StochasticNetUtils.getAsDoubleArray(observed));
+		LogSplineDistribution corrected = new LogSplineDistribution();
+		corrected.initWithValues(StochasticNetUtils.getAsDoubleArray(observed), StochasticNetUtils.getAsDoubleArray(censored));
+
+		Assert.assertTrue(biased.getNumericalMean() < 8.5);
+		Assert.assertEquals(gamma.getNumericalMean(), corrected.getNumericalMean(), 1);
+	}
+
+	@Test
+	public void testBoundedSupport() throws NonConvergenceException{
+		LogSplineDistribution logspline = new LogSplineDistribution(20);
+		logspline.addValues(new double[]{1, 2, 2.5, 3, 4, 4.5, 5, 7, 8, 11});
+		Assert.assertEquals(20, logspline.getSupportUpperBound(), 0);
+		Assert.assertEquals(1, logspline.cumulativeProbability(20), 1e-8);
+		Assert.assertEquals(0, logspline.density(21), 0);
+	}
+
+	/**
+	 * A bound far above the observed values (e.g., the longest trace duration) must not change the fit:
+	 * the mass of the tail lies close to the largest value.
+	 */
+	@Test
+	public void testFarBoundedSupportMatchesUnboundedSupport() throws NonConvergenceException{
+		GammaDistribution gamma = new GammaDistribution(4, 1);
+		gamma.reseedRandomGenerator(1);
+		List<Double> values = new ArrayList<Double>();
+		while (values.size() < 500) {
+			double value = gamma.sample();
+			if (value <= 10) {
+				values.add(value);
+			}
+		}
+		LogSplineDistribution unbounded = new LogSplineDistribution();
+		unbounded.addValues(StochasticNetUtils.getAsDoubleArray(values));
+		LogSplineDistribution bounded = new LogSplineDistribution(1e6);
+		bounded.addValues(StochasticNetUtils.getAsDoubleArray(values));
+
+		Assert.assertEquals(1, bounded.cumulativeProbability(1e6), 1e-12);
+		Assert.assertEquals(unbounded.getLogLikelihood(), bounded.getLogLikelihood(), 1e-6);
+		Assert.assertEquals(unbounded.getNumericalMean(), bounded.getNumericalMean(), 1e-6);
+		for (double x = 0.25; x < 40; x += 0.25) {
+			Assert.assertEquals(unbounded.cumulativeProbability(x), bounded.cumulativeProbability(x), 1e-6);
+		}
+		for (double p = 0.01; p < 1; p += 0.037) {
+			Assert.assertEquals(unbounded.inverseCumulativeProbability(p), bounded.inverseCumulativeProbability(p), 1e-6);
+		}
+	}
+
+	@Test(expected = NonConvergenceException.class)
+	public void testTooFewDistinctValues() throws NonConvergenceException{
+		new LogSplineDistribution().addValues(1, 2, 2, 1);
+	}
+}
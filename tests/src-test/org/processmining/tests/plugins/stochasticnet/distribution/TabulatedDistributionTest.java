@@ -0,0 +1,117 @@
+package org.processmining.tests.plugins.stochasticnet.distribution;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.distribution.LogNormalDistribution;
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.models.connections.GraphLayoutConnection;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.DistributionType;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.TimedTransition;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.StochasticNetImpl;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.pnml.exporting.StochasticNetToPNMLConverter;
+import org.processmining.plugins.pnml.importing.StochasticNetDeserializer;
+import org.processmining.plugins.pnml.simple.PNMLRoot;
+import org.processmining.plugins.stochasticpetrinet.distribution.LogSplineDistribution;
+import org.processmining.plugins.stochasticpetrinet.distribution.NonConvergenceException;
+import org.processmining.plugins.stochasticpetrinet.distribution.TabulatedDistribution;
+import org.simpleframework.xml.Serializer;
+import org.simpleframework.xml.core.Persister;
+
+public class TabulatedDistributionTest {
+
+	@Test
+	public void testTableMatchesDistribution(){
+		GammaDistribution gamma = new GammaDistribution(4, 2.5);
+		TabulatedDistribution table = TabulatedDistribution.tabulate(gamma);
+
+		Assert.assertEquals(0, table.getSupportLowerBound(), 0);
+		Assert.assertEquals(gamma.inverseCumulativeProbability(1 - TabulatedDistribution.TAIL_PROBABILITY), table.getSupportUpperBound(), 1e-6);
+		for (double x = -1; x < 60; x += 0.173) {
+			Assert.assertEquals(gamma.density(x), table.density(x), 1e-5);
+			Assert.assertEquals(gamma.cumulativeProbability(x), table.cumulativeProbability(x), 1e-5);
+		}
+		for (double p = 0.01; p < 0.99; p += 0.0071) {
+			double quantile = gamma.inverseCumulativeProbability(p);
+			Assert.assertEquals(quantile, table.inverseCumulativeProbability(p), 1e-3 * quantile);
+		}
+		Assert.assertEquals(gamma.getNumericalMean(), table.getNumericalMean(), 1e-3);
+		Assert.assertEquals(gamma.getNumericalVariance(), table.getNumericalVariance(), 1e-2);
+	}
+
+	/**
+	 * A support that is bounded far above the mass (e.g., by the longest trace duration) is cut at the
+	 * 1-{@link TabulatedDistribution#TAIL_PROBABILITY} quantile, such that the grid covers the values.
+	 */
+	@Test
+	public void testTableOfFarBoundedSupportCoversValues() throws NonConvergenceException{
+		GammaDistribution gamma = new GammaDistribution(4, 2.5);
+		gamma.reseedRandomGenerator(1);
+		LogSplineDistribution logspline = new LogSplineDistribution(1e6);
+		logspline.addValues(gamma.sample(1000));
+		TabulatedDistribution table = TabulatedDistribution.tabulate(logspline);
+
+		Assert.assertEquals(logspline.inverseCumulativeProbability(1 - TabulatedDistribution.TAIL_PROBABILITY), table.getSupportUpperBound(), 1e-6);
+		for (double x = 0; x < 60; x += 0.173) {
+			Assert.assertEquals(logspline.density(x), table.density(x), 1e-4);
+			Assert.assertEquals(logspline.cumulativeProbability(x), table.cumulativeProbability(x), 1e-4);
+		}
+		Assert.assertEquals(logspline.getNumericalMean(), table.getNumericalMean(), 1e-2);
+	}
+
+	@Test
+	public void testParametersRestoreTable(){
+		TabulatedDistribution table = TabulatedDistribution.tabulate(new LogNormalDistribution(1, 0.5));
+		TabulatedDistribution restored = TabulatedDistribution.fromParameters(table.getParameters());
+		for (double x = 0; x < 20; x += 0.31) {
+			Assert.assertEquals(table.density(x), restored.density(x), 0);
+			Assert.assertEquals(table.cumulativeProbability(x), restored.cumulativeProbability(x), 0);
+		}
+		Assert.assertEquals(table.inverseCumulativeProbability(0.42), restored.inverseCumulativeProbability(0.42), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParameters(){
+		TabulatedDistribution.fromParameters(new double[]{3, 0, 1, 0.5, 0.5});
+	}
+
+	/**
+	 * The tables of a log-spline are stored in the PNML, such that it can be used without R after importing the model.
+	 */
+	@Test
+	public void testSnapshotIsRestoredFromPNML() throws Exception {
+		TabulatedDistribution table = TabulatedDistribution.tabulate(new LogNormalDistribution(1, 0.5));
+		StochasticNet net = new StochasticNetImpl("snapshot");
+		Place start = net.addPlace("start");
+		Place end = net.addPlace("end");
+		TimedTransition transition = net.addTimedTransition("A", DistributionType.UNDEFINED);
+		transition.setDistributionType(DistributionType.LOGSPLINE);
+		transition.setDistributionSnapshot(table.getParameters());
+		net.addArc(start, transition);
+		net.addArc(transition, end);
+		Marking initialMarking = new Marking();
+		initialMarking.add(start);
+
+		PNMLRoot root = new StochasticNetToPNMLConverter().convertNet(net, initialMarking, new GraphLayoutConnection(net));
+		Serializer serializer = new Persister();
+		StringWriter writer = new StringWriter();
+		serializer.write(root, writer);
+		PNMLRoot pnml = serializer.read(PNMLRoot.class, new StringReader(writer.toString()));
+		StochasticNet importedNet = (StochasticNet) new StochasticNetDeserializer().convertToNet(null, pnml, "snapshot", false)[0];
+
+		Transition imported = importedNet.getTransitions().iterator().next();
+		Assert.assertTrue(imported instanceof TimedTransition);
+		TimedTransition importedTimed = (TimedTransition) imported;
+		Assert.assertEquals(DistributionType.LOGSPLINE, importedTimed.getDistributionType());
+		Assert.assertTrue(importedTimed.getDistribution() instanceof TabulatedDistribution);
+		for (double x = 0; x < 20; x += 0.31) {
+			Assert.assertEquals(table.density(x), importedTimed.getDistribution().density(x), 1e-12);
+		}
+	}
+}
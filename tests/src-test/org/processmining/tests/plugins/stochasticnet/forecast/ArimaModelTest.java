@@ -0,0 +1,101 @@
+package org.processmining.tests.plugins.stochasticnet.forecast;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.ArimaModel;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.AutoArimaTimeSeries;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Observation;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Prediction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the ARIMA models fitted in Java with the outputs of R (stats::arima, forecast::auto.arima)
+ * on the "lh" data set (luteinizing hormone in blood samples, datasets package).
+ */
+public class ArimaModelTest {
+
+    private static final double[] LH = new double[]{2.4, 2.4, 2.4, 2.2, 2.1, 1.5, 2.3, 2.3, 2.5, 2.0, 1.9, 1.7, 2.2, 1.8,
+            3.2, 3.2, 2.7, 2.2, 2.2, 1.9, 1.9, 1.8, 2.7, 3.0, 2.3, 2.0, 2.0, 2.9, 2.9, 2.7, 2.7, 2.3, 2.6, 2.4, 1.8, 1.7,
+            1.5, 1.4, 2.1, 3.3, 3.5, 3.5, 3.1, 2.6, 2.1, 3.4, 3.0, 2.9};
+
+    @Test
+    public void testAr1MatchesR() {
+        // arima(lh, order = c(1,0,0))
+        ArimaModel model = ArimaModel.fit(LH, 1, 0, 0, true);
+        Assert.assertEquals(0.5739, model.getArCoefficients()[0], 1e-3);
+        Assert.assertEquals(2.4133, model.getMean(), 1e-3);
+        Assert.assertEquals(0.1975, model.getSigma2(), 1e-3);
+        Assert.assertEquals(-29.38, model.getLogLikelihood(), 1e-2);
+        Assert.assertEquals(64.76, model.getAic(), 1e-2);
+    }
+
+    @Test
+    public void testAr3MatchesR() {
+        // arima(lh, order = c(3,0,0))
+        ArimaModel model = ArimaModel.fit(LH, 3, 0, 0, true);
+        Assert.assertArrayEquals(new double[]{0.6448, -0.0634, -0.2198}, model.getArCoefficients(), 1e-3);
+        Assert.assertEquals(2.3931, model.getMean(), 1e-3);
+        Assert.assertEquals(0.1787, model.getSigma2(), 1e-3);
+        Assert.assertEquals(-27.09, model.getLogLikelihood(), 1e-2);
+        Assert.assertEquals(64.18, model.getAic(), 1e-2);
+
+        // predict(arima(lh, order = c(3,0,0)), n.ahead = 12)
+        double[][] forecast = model.forecast(12);
+        Assert.assertArrayEquals(new double[]{2.460173, 2.270829, 2.198597, 2.260696, 2.346933, 2.414479, 2.438918,
+                2.431440, 2.410223, 2.391645, 2.382653, 2.382697}, forecast[0], 1e-3);
+        Assert.assertArrayEquals(new double[]{0.4226823, 0.5029332, 0.5245256, 0.5247161, 0.5305499, 0.5369159,
+                0.5388045, 0.5388448, 0.5391043, 0.5395174, 0.5396991, 0.5397140}, forecast[1], 1e-3);
+    }
+
+    @Test
+    public void testArma11MatchesR() {
+        // arima(lh, order = c(1,0,1))
+        ArimaModel model = ArimaModel.fit(LH, 1, 0, 1, true);
+        Assert.assertEquals(0.4522, model.getArCoefficients()[0], 1e-3);
+        Assert.assertEquals(0.1982, model.getMaCoefficients()[0], 1e-3);
+        Assert.assertEquals(2.4101, model.getMean(), 1e-3);
+        Assert.assertEquals(0.1923, model.getSigma2(), 1e-3);
+        Assert.assertEquals(-28.76, model.getLogLikelihood(), 1e-2);
+    }
+
+    @Test
+    public void testAutoArimaMatchesR() {
+        // auto.arima(lh): ARIMA(1,0,0) with non-zero mean, AICc=65.3
+        ArimaModel model = ArimaModel.autoArima(LH);
+        Assert.assertEquals(1, model.getP());
+        Assert.assertEquals(0, model.getD());
+        Assert.assertEquals(0, model.getQ());
+        Assert.assertTrue(model.isIncludeConstant());
+        Assert.assertEquals(65.30, model.getAicc(), 1e-2);
+    }
+
+    @Test
+    public void testRandomWalkIsDifferenced() {
+        Random random = new Random(1);
+        double[] walk = new double[500];
+        for (int i = 1; i < walk.length; i++) {
+            walk[i] = walk[i - 1] + random.nextGaussian();
+        }
+        Assert.assertEquals(1, ArimaModel.getNumberOfDifferences(walk));
+    }
+
+    @Test
+    public void testTimeSeriesPredictionWithMissingValues() {
+        List<Observation<Double>> observations = new ArrayList<>();
+        for (int i = 0; i < LH.length; i++) {
+            Observation<Double> observation = new Observation<>();
+            observation.timestamp = i;
+            observation.observation = i == 10 || i == 20 ? Double.NaN : LH[i];
+            observations.add(observation);
+        }
+        AutoArimaTimeSeries series = new AutoArimaTimeSeries();
+        series.resetTo(observations);
+        Prediction<Double> prediction = series.predict(1);
+        Assert.assertFalse(Double.isNaN(prediction.prediction));
+        Assert.assertTrue(prediction.lower5Percentile < prediction.prediction);
+        Assert.assertTrue(prediction.prediction < prediction.upper95Percentile);
+    }
+}
@@ -0,0 +1,172 @@
+package org.processmining.tests.plugins.stochasticnet.forecast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.processmining.framework.util.Pair;
+import org.processmining.plugins.stochasticpetrinet.prediction.timeseries.TimeSeriesConfiguration.MissingDataHandling;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.AverageMethodTimeSeries;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.DriftMethodTimeSeries;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.IncrementalAggregation;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.NaiveMethodTimeSeries;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Observation;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.Prediction;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.SeasonalNaiveMethodTimeSeries;
+import org.processmining.plugins.stochasticpetrinet.simulator.timeseries.TimeSeries;
+import org.utils.datastructures.Aggregate;
+
+public class IncrementalTimeSeriesTest {
+
+	@Test
+	public void testOnlineUpdatesMatchRefitting() throws Exception {
+		List<Class<? extends TimeSeries<Double>>> types = new ArrayList<>();
+		types.add(NaiveMethodTimeSeries.class);
+		types.add(DriftMethodTimeSeries.class);
+		types.add(AverageMethodTimeSeries.class);
+		types.add(SeasonalNaiveMethodTimeSeries.class);
+		for (Class<? extends TimeSeries<Double>> type : types) {
+			Random random = new Random(3);
+			TimeSeries<Double> online = type.newInstance();
+			TimeSeries<Double> refitted = type.newInstance();
+			List<Observation<Double>> observations = new ArrayList<>();
+			// more observations than fit into the window
+			for (int i = 0; i < 1000; i++) {
+				double value = i > 0 && random.nextDouble() < 0.1 ? Double.NaN : random.nextDouble() * 10 + i * 0.01;
+				Observation<Double> observation = createObservation(i, value);
+				online.addObservation(observation);
+				observations.add(observation);
+				if (i < 50) {
+					continue;
+				}
+				refitted.resetTo(observations);
+				Prediction<Double> expected = refitted.predict(2);
+				Prediction<Double> actual = online.predict(2);
+				Assert.assertEquals(type.getSimpleName(), expected.prediction, actual.prediction, 1e-9);
+				Assert.assertEquals(type.getSimpleName(), expected.lower5Percentile, actual.lower5Percentile, 1e-9);
+				Assert.assertEquals(type.getSimpleName(), expected.upper95Percentile, actual.upper95Percentile, 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * The window of the time series must contain the aggregates of all training data so far
+	 * (grouped by {@link Aggregate}, as the simulator did before aggregating incrementally).
+	 */
+	@Test
+	public void testIncrementalAggregationMatchesFullAggregation() {
+		for (boolean average : new boolean[]{true, false}) {
+			Random random = new Random(5);
+			IncrementalAggregation incremental = new IncrementalAggregation(average);
+			WindowTimeSeries series = new WindowTimeSeries();
+			List<Pair<Long, Double>> entries = new ArrayList<>();
+			for (int i = 0; i < 3000; i++) {
+				// some entries belong to indices that are already part of the series, and some indices have no entries
+				long index = i / 3 + (i / 3 % 7 == 6 ? 1 : 0) - (random.nextDouble() < 0.05 ? random.nextInt(5) : 0);
+				double value = random.nextDouble();
+				incremental.add(index, value);
+				entries.add(new Pair<>(index, value));
+				if (incremental.size() < 2) {
+					continue;
+				}
+				long now = i / 3 + 1;
+				long lastIndex = incremental.updateSeries(series, now, MissingDataHandling.REPLACE_WITH_LAST_OBSERVATION);
+
+				List<Observation<Double>> expected = aggregate(entries, average, now);
+				Assert.assertEquals(expected.get(expected.size() - 1).timestamp, lastIndex);
+				// the window holds the latest aggregates
+				List<Observation<Double>> window = series.getWindow();
+				Assert.assertTrue(window.size() >= Math.min(expected.size(), series.getLag()));
+				int offset = expected.size() - window.size();
+				for (int j = 0; j < window.size(); j++) {
+					Assert.assertEquals(expected.get(offset + j).timestamp, window.get(j).timestamp);
+					Assert.assertEquals(expected.get(offset + j).observation, window.get(j).observation, 1e-9);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIncrementalAggregationOfFewEntries() {
+		IncrementalAggregation counts = new IncrementalAggregation(false);
+		IncrementalAggregation averages = new IncrementalAggregation(true);
+		long[] indices = {0, 0, 1, 3, 3, 3};
+		double[] values = {1, 2, 4, 1, 2, 6};
+		for (int i = 0; i < indices.length; i++) {
+			counts.add(indices[i], values[i]);
+			averages.add(indices[i], values[i]);
+		}
+		WindowTimeSeries countSeries = new WindowTimeSeries();
+		WindowTimeSeries averageSeries = new WindowTimeSeries();
+		Assert.assertEquals(3, counts.updateSeries(countSeries, 4, MissingDataHandling.REPLACE_WITH_LAST_OBSERVATION));
+		Assert.assertEquals(3, averages.updateSeries(averageSeries, 4, MissingDataHandling.REPLACE_WITH_MEAN));
+		// index 2 has no entries
+		double[] expectedCounts = {2, 1, 1, 3};
+		double[] expectedAverages = {1.5, 4, (1.5 + 4 + 3) / 3, 3};
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(i, countSeries.getWindow().get(i).timestamp);
+			Assert.assertEquals(expectedCounts[i], countSeries.getWindow().get(i).observation, 1e-12);
+			Assert.assertEquals(expectedAverages[i], averageSeries.getWindow().get(i).observation, 1e-12);
+		}
+	}
+
+	/**
+	 * @return the aggregates of the entries before the current index, with missing indices replaced by the last observation
+	 */
+	private List<Observation<Double>> aggregate(List<Pair<Long, Double>> entries, boolean average, long now) {
+		Aggregate.Function<Pair<Long, Double>, Long> groupBy = new Aggregate.Function<Pair<Long, Double>, Long>() {
+			public Long apply(Pair<Long, Double> entry) {
+				return entry.getFirst();
+			}
+		};
+		Map<Long, ? extends Number> aggregates;
+		if (average) {
+			aggregates = Aggregate.avg(entries, groupBy, new Aggregate.Function<Pair<Long, Double>, Double>() {
+				public Double apply(Pair<Long, Double> entry) {
+					return entry.getSecond();
+				}
+			});
+		} else {
+			aggregates = Aggregate.sum(entries, groupBy, new Aggregate.Function<Pair<Long, Double>, Integer>() {
+				public Integer apply(Pair<Long, Double> entry) {
+					return 1;
+				}
+			});
+		}
+		long first = aggregates.keySet().iterator().next();
+		long last = first;
+		for (long index : aggregates.keySet()) {
+			if (index < now) {
+				last = index;
+			}
+		}
+		List<Observation<Double>> observations = new ArrayList<>();
+		double previous = Double.NaN;
+		for (long index = first; index <= last; index++) {
+			if (aggregates.containsKey(index)) {
+				previous = aggregates.get(index).doubleValue();
+			}
+			observations.add(createObservation(index, previous));
+		}
+		return observations;
+	}
+
+	private Observation<Double> createObservation(long index, double value) {
+		Observation<Double> observation = new Observation<>();
+		observation.timestamp = index;
+		observation.observation = value;
+		return observation;
+	}
+
+	/**
+	 * Exposes the observations of the window
+	 */
+	private static class WindowTimeSeries extends AverageMethodTimeSeries {
+		public List<Observation<Double>> getWindow() {
+			return new ArrayList<>(getCurrentObservations());
+		}
+	}
+}
@@ -1,17 +1,100 @@
 package org.processmining.tests.plugins.stochasticnet.measure;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.deckfour.xes.classification.XEventClass;
+import org.deckfour.xes.classification.XEventClasses;
+import org.deckfour.xes.info.XLogInfoFactory;
+import org.deckfour.xes.info.impl.XLogInfoImpl;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.junit.Assert;
 import org.junit.Test;
 import org.processmining.models.graphbased.directed.petrinet.StochasticNet;
+import org.processmining.models.graphbased.directed.petrinet.StochasticNet.TimeUnit;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.stochasticpetrinet.StochasticNetUtils;
+import org.processmining.plugins.stochasticpetrinet.generator.Generator;
+import org.processmining.plugins.stochasticpetrinet.generator.GeneratorConfig;
+import org.processmining.plugins.stochasticpetrinet.measures.AbstractionLevel;
 import org.processmining.plugins.stochasticpetrinet.measures.ComputedMeasures;
 import org.processmining.plugins.stochasticpetrinet.measures.MeasureConfig;
 import org.processmining.plugins.stochasticpetrinet.measures.MeasurePlugin;
+import org.processmining.plugins.stochasticpetrinet.measures.ListAbstractionLevel;
 import org.processmining.plugins.stochasticpetrinet.measures.MeasureProvider;
+import org.processmining.plugins.stochasticpetrinet.measures.MultiSetAbstractionLevel;
+import org.processmining.plugins.stochasticpetrinet.measures.SetAbstractionLevel;
 import org.processmining.plugins.stochasticpetrinet.measures.entropy.EntropyCalculatorApproximate;
 import org.processmining.plugins.stochasticpetrinet.measures.entropy.EntropyCalculatorQuantile;
+import org.processmining.plugins.stochasticpetrinet.measures.entropy.Outcome;
+import org.processmining.plugins.stochasticpetrinet.measures.entropy.OutcomeProbabilityExplorer;
+import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulator;
+import org.processmining.plugins.stochasticpetrinet.simulator.PNSimulatorConfig;
 import org.processmining.tests.plugins.stochasticnet.TestUtils;
 
 public class EntropyTest {
 
+	@Test
+	public void testExplorerMatchesExploredLog() throws Exception {
+		AbstractionLevel[] levels = new AbstractionLevel[]{new ListAbstractionLevel(), new MultiSetAbstractionLevel(), new SetAbstractionLevel()};
+		for (long seed = 1; seed <= 5; seed++) {
+			GeneratorConfig config = new GeneratorConfig();
+			config.setTransitionSize(12);
+			config.setDegreeOfParallelism(2);
+			Object[] netAndMarkings = new Generator(seed).generateStochasticNet(config);
+			StochasticNet net = (StochasticNet) netAndMarkings[0];
+			Marking initialMarking = (Marking) netAndMarkings[1];
+
+			// all traces of the net with their probabilities
+			PNSimulatorConfig simulatorConfig = new PNSimulatorConfig(Integer.MAX_VALUE, TimeUnit.MINUTES);
+			simulatorConfig.setDeterministicBoundedStateSpaceExploration(true);
+			XLog log = new PNSimulator().simulate(null, net, StochasticNetUtils.getSemantics(net), simulatorConfig, initialMarking);
+			XEventClasses eventClasses = XLogInfoFactory.createLogInfo(log, XLogInfoImpl.STANDARD_CLASSIFIER).getEventClasses();
+			Map<XEventClass, Integer> encoding = new HashMap<>();
+			for (XEventClass eventClass : eventClasses.getClasses()) {
+				encoding.put(eventClass, encoding.size());
+			}
+
+			for (AbstractionLevel level : levels) {
+				Map<Outcome, Double> expected = new HashMap<>();
+				for (XTrace trace : log) {
+					Outcome outcome = new Outcome(trace, level, eventClasses, encoding);
+					double probability = Math.exp(StochasticNetUtils.getLogProbability(trace));
+					expected.put(outcome, expected.containsKey(outcome) ? expected.get(outcome) + probability : probability);
+				}
+				OutcomeProbabilityExplorer explorer = new OutcomeProbabilityExplorer(level);
+				Map<Outcome, Double> actual = explorer.computeOutcomeProbabilities(net, initialMarking);
+				Assert.assertEquals(expected.size(), actual.size());
+				Assert.assertEquals(getEntropy(expected), getEntropy(actual), 1e-9);
+				Assert.assertEquals(0, explorer.getUnexploredMass(), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testExplorerConvergesInLoops() throws Exception {
+		Object[] netAndMarking = TestUtils.loadModel("loopy_free_choice", true);
+		StochasticNet model = (StochasticNet) netAndMarking[0];
+
+		OutcomeProbabilityExplorer explorer = new OutcomeProbabilityExplorer(new SetAbstractionLevel());
+		Map<Outcome, Double> outcomes = explorer.computeOutcomeProbabilities(model, (Marking) netAndMarking[1]);
+		double sum = 0;
+		for (double probability : outcomes.values()) {
+			sum += probability;
+		}
+		Assert.assertEquals(1, sum, 1e-6);
+		Assert.assertEquals(1 - sum, explorer.getUnexploredMass(), 1e-9);
+	}
+
+	private static double getEntropy(Map<Outcome, Double> outcomes) {
+		double entropy = 0;
+		for (double p : outcomes.values()) {
+			entropy -= p * Math.log(p) / Math.log(2);
+		}
+		return entropy;
+	}
+
 	@Test
 	public void testEntropySequence() throws Exception {
 		Object[] netAndMarking = TestUtils.loadModel("parallel2", true);
@@ -1,18 +1,31 @@
 package org.processmining.tests.plugins.temporal;
 
+import gnu.trove.TLongCollection;
 import org.deckfour.xes.extension.std.XConceptExtension;
 import org.deckfour.xes.factory.XFactoryRegistry;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
+import org.junit.Assert;
 import org.junit.Test;
 import org.processmining.plugins.temporal.miner.TemporalProfile;
 import org.processmining.plugins.temporal.miner.TemporalProfileOptimizer;
 import org.processmining.tests.plugins.stochasticnet.TestUtils;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
 public class TemporalProfileTest {
 
 	@Test
 	public void testProfileGenerator() throws Exception {
+		TemporalProfile profile = new TemporalProfile(createLog());
+		
+		TemporalProfileOptimizer optimizer = new TemporalProfileOptimizer();
+		optimizer.getLocallyOptimalModel(profile);
+	}
+
+	private static XLog createLog() {
 		XLog log = XFactoryRegistry.instance().currentDefault().createLog();
 		XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
 		XConceptExtension.instance().assignName(trace, "tr1");
@@ -29,10 +42,56 @@ public class TemporalProfileTest {
 		
 		log.add(trace);
 		log.add(trace2);
-		
-		TemporalProfile profile = new TemporalProfile(log);
-		
-		TemporalProfileOptimizer optimizer = new TemporalProfileOptimizer();
-		optimizer.getLocallyOptimalModel(profile);
+		return log;
+	}
+
+	@Test
+	public void testDurationsForEvent() throws Exception {
+		XLog log = createLog();
+		for (int threads = 1; threads <= 2; threads++) {
+			TemporalProfile profile = new TemporalProfile(log, threads);
+			Assert.assertEquals(4, profile.getEventCount());
+
+			// B (id 1) is 3 and 6 after A, 2 before and 1 after C, and 4 before D
+			assertDurations(new long[]{-4, -2, 1, 3, 6}, profile.getDurationsForEvent(1, new BitSet()));
+			// ignore the distance from A in trace 2, as C occurs in between
+			BitSet sequenceSet = new BitSet();
+			sequenceSet.set(2);
+			assertDurations(new long[]{-4, -2, 1, 3}, profile.getDurationsForEvent(1, sequenceSet));
+			// D (id 3) only occurs in trace 2
+			assertDurations(new long[]{4, 5, 10}, profile.getDurationsForEvent(3, new BitSet()));
+		}
+	}
+
+	@Test
+	public void testParallelProfileEqualsSequentialProfile() throws Exception {
+		Random random = new Random(1);
+		XLog log = XFactoryRegistry.instance().currentDefault().createLog();
+		for (int i = 0; i < 200; i++) {
+			XTrace trace = XFactoryRegistry.instance().currentDefault().createTrace();
+			long time = 0;
+			for (int j = random.nextInt(15); j > 0; j--) {
+				time += random.nextInt(100);
+				TestUtils.addEvent(String.valueOf((char) ('A' + random.nextInt(6))), trace, time);
+			}
+			log.add(trace);
+		}
+		TemporalProfile sequential = new TemporalProfile(log, 1);
+		TemporalProfile parallel = new TemporalProfile(log, 4);
+		Assert.assertEquals(sequential.getEventCount(), parallel.getEventCount());
+		for (int eventId = 0; eventId < sequential.getEventCount(); eventId++) {
+			BitSet sequenceSet = new BitSet();
+			sequenceSet.set((eventId + 1) % sequential.getEventCount());
+			assertDurations(sequential.getDurationsForEvent(eventId, new BitSet()).toArray(), parallel.getDurationsForEvent(eventId, new BitSet()));
+			assertDurations(sequential.getDurationsForEvent(eventId, sequenceSet).toArray(), parallel.getDurationsForEvent(eventId, sequenceSet));
+		}
+	}
+
+	private static void assertDurations(long[] expected, TLongCollection durations) {
+		long[] sortedExpected = expected.clone();
+		Arrays.sort(sortedExpected);
+		long[] actual = durations.toArray();
+		Arrays.sort(actual);
+		Assert.assertArrayEquals(sortedExpected, actual);
 	}
 }